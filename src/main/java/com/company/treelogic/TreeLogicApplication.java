@@ -1,28 +1,39 @@
 package com.company.treelogic;
 
+import com.company.treelogic.datasource.ReadReplicaRoutingDataSource;
+import com.company.treelogic.datasource.ReadReplicaStickiness;
 import com.google.common.base.Strings;
 import com.vaadin.flow.component.page.AppShellConfigurator;
 import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.server.PWA;
 import com.vaadin.flow.theme.Theme;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 
 @Push
 @Theme(value = "TreeLogic")
 @PWA(name = "TreeLogic", shortName = "TreeLogic", offline = false)
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 public class TreeLogicApplication implements AppShellConfigurator {
 
     @Autowired
@@ -40,12 +51,30 @@ public class TreeLogicApplication implements AppShellConfigurator {
     }
 
     @Bean
-    @Primary
     @ConfigurationProperties("main.datasource.hikari")
-    DataSource dataSource(final DataSourceProperties dataSourceProperties) {
+    DataSource primaryDataSource(final DataSourceProperties dataSourceProperties) {
         return dataSourceProperties.initializeDataSourceBuilder().build();
     }
 
+    @Bean
+    ReadReplicaStickiness readReplicaStickiness(
+            @Value("${main.datasource.replica.sticky-window:5s}") final Duration stickyWindow) {
+        return new ReadReplicaStickiness(stickyWindow);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(@Qualifier("primaryDataSource") final DataSource primaryDataSource,
+                          @Qualifier("replicaDataSource") final ObjectProvider<DataSource> replicaDataSource,
+                          final ReadReplicaStickiness readReplicaStickiness) {
+        DataSource replica = replicaDataSource.getIfAvailable();
+        if (replica == null) {
+            return primaryDataSource;
+        }
+        return new LazyConnectionDataSourceProxy(
+                new ReadReplicaRoutingDataSource(primaryDataSource, replica, readReplicaStickiness));
+    }
+
     @EventListener
     public void printApplicationUrl(final ApplicationStartedEvent event) {
         LoggerFactory.getLogger(TreeLogicApplication.class).info("Application started at "
@@ -0,0 +1,315 @@
+package com.company.treelogic.api;
+
+import com.company.treelogic.app.MetaFieldRevisionTracker;
+import com.company.treelogic.app.MetaFieldRevisionTracker.Stamp;
+import com.company.treelogic.entity.MetaField;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jmix.core.AccessManager;
+import io.jmix.core.Metadata;
+import io.jmix.core.accesscontext.CrudEntityContext;
+import io.jmix.core.metamodel.model.MetaClass;
+import io.jmix.security.constraint.PolicyStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * API chỉ đọc cho cây MetaField, dành cho hệ thống bên ngoài. Xác thực bởi {@code apiFilterChain} trong
+ * {@link com.company.treelogic.security.TreeLogicSecurityConfiguration}; mỗi request kiểm tra quyền đọc MetaField của
+ * người gọi qua {@link AccessManager} (không đủ quyền -&gt; {@code 403}).
+ * <ul>
+ *     <li>{@code GET /api/meta-fields/roots} - các node gốc</li>
+ *     <li>{@code GET /api/meta-fields/{id}/children} - con trực tiếp</li>
+ *     <li>{@code GET /api/meta-fields/{id}/subtree} - toàn bộ hậu duệ (không gồm chính node)</li>
+ *     <li>{@code GET /api/meta-fields/{id}/path} - đường đi từ gốc tới node</li>
+ * </ul>
+ * Danh sách phân trang theo keyset: {@code ?after=<id cuối trang trước>&limit=<n>}, trang tiếp theo lấy từ trường
+ * {@code next} của kết quả ({@code null} = hết). Gốc và con trực tiếp trả về theo thứ tự anh em ({@code SORT_KEY});
+ * cây con đi theo keyset trên {@code ROOT_ID} (node gốc) hoặc chỉ mục con trong bộ nhớ (node bên trong), không dựng
+ * lại cả cây con bằng CTE đệ quy cho mỗi trang.
+ * <p>
+ * JSON được ghi thẳng từ ResultSet ra response (không qua ORM, không dựng list trong bộ nhớ). ETag / Last-Modified
+ * là revision của {@link com.company.treelogic.app.MetaFieldChangeLog}, lấy qua {@link MetaFieldRevisionTracker}:
+ * trước khi trả lời, tracker đọc nốt phần đuôi log ({@link MetaFieldRevisionTracker#catchUp()}), nên thay đổi từ
+ * instance khác cũng đổi ETag. Request có {@code If-None-Match} khớp nhận {@code 304} sau đúng một truy vấn theo
+ * khoá chính. Luôn đọc từ DB chính: replica có thể trễ hơn revision đã gắn vào ETag.
+ */
+@RestController
+@RequestMapping("/api/meta-fields")
+public class MetaFieldTreeController {
+
+    static final int DEFAULT_LIMIT = 500;
+    static final int MAX_LIMIT = 5000;
+
+    private static final String COLUMNS = "ID, PARENT_ID, NAME, DESCRIPTION";
+    // Thứ tự anh em, đọc thẳng từ chỉ mục (PARENT_ID, SORT_KEY, ID); con trỏ "after" vẫn là id của dòng cuối
+    private static final String SIBLING_ORDER = "order by SORT_KEY, ID limit ?";
+    private static final String AFTER_SIBLING = "(SORT_KEY, ID) > (select SORT_KEY, ID from META_FIELD where ID = ?) ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MetaFieldRevisionTracker revisionTracker;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private AccessManager accessManager;
+    @Autowired
+    private PolicyStore policyStore;
+    @Autowired
+    private Metadata metadata;
+
+    @GetMapping("/roots")
+    public ResponseEntity<StreamingResponseBody> roots(@RequestParam(required = false) UUID after,
+                                                       @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit,
+                                                       WebRequest request) {
+        if (!isReadPermitted()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        revisionTracker.catchUp();
+        int pageSize = pageSize(limit);
+        String sql = after == null
+                ? "select " + COLUMNS + " from META_FIELD where PARENT_ID is null " + SIBLING_ORDER
+                : "select " + COLUMNS + " from META_FIELD where PARENT_ID is null and " + AFTER_SIBLING
+                + SIBLING_ORDER;
+        Object[] args = after == null ? new Object[]{pageSize} : new Object[]{after, pageSize};
+        return page(revisionTracker.getGlobalStamp(), request, sql, args, pageSize);
+    }
+
+    @GetMapping("/{id}/children")
+    public ResponseEntity<StreamingResponseBody> children(@PathVariable UUID id,
+                                                          @RequestParam(required = false) UUID after,
+                                                          @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit,
+                                                          WebRequest request) {
+        if (!isReadPermitted()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        revisionTracker.catchUp();
+        if (isUnknown(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        int pageSize = pageSize(limit);
+        String sql = after == null
+                ? "select " + COLUMNS + " from META_FIELD where PARENT_ID = ? " + SIBLING_ORDER
+                : "select " + COLUMNS + " from META_FIELD where PARENT_ID = ? and " + AFTER_SIBLING + SIBLING_ORDER;
+        Object[] args = after == null ? new Object[]{id, pageSize} : new Object[]{id, after, pageSize};
+        return page(revisionTracker.getSubtreeStamp(id), request, sql, args, pageSize);
+    }
+
+    @GetMapping("/{id}/subtree")
+    public ResponseEntity<StreamingResponseBody> subtree(@PathVariable UUID id,
+                                                         @RequestParam(required = false) UUID after,
+                                                         @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit,
+                                                         WebRequest request) {
+        if (!isReadPermitted()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        revisionTracker.catchUp();
+        if (!revisionTracker.isLoaded()) {
+            // Chưa có chỉ mục cây trong bộ nhớ (đang khởi động)
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+        if (isUnknown(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        int pageSize = pageSize(limit);
+        if (revisionTracker.getParentId(id) == null) {
+            // Cả cây: keyset trên chỉ mục (ROOT_ID, ID), mỗi trang O(limit)
+            String sql = "select " + COLUMNS + " from META_FIELD where ROOT_ID = ? and ID <> ? "
+                    + (after == null ? "" : "and ID > ? ")
+                    + "order by ID limit ?";
+            Object[] args = after == null ? new Object[]{id, id, pageSize} : new Object[]{id, id, after, pageSize};
+            return page(revisionTracker.getSubtreeStamp(id), request, sql, args, pageSize);
+        }
+        // Cây con bên trong: chọn id của trang từ chỉ mục con trong bộ nhớ, rồi đọc đúng các dòng đó theo khoá chính
+        List<UUID> ids = descendantPage(id, after, pageSize + 1);
+        UUID next = ids.size() > pageSize ? ids.get(pageSize - 1) : null;
+        List<UUID> pageIds = ids.subList(0, Math.min(ids.size(), pageSize));
+        String sql = pageIds.isEmpty() ? null : "select " + COLUMNS + " from META_FIELD where ID in ("
+                + String.join(", ", Collections.nCopies(pageIds.size(), "?")) + ") order by ID";
+        return page(revisionTracker.getSubtreeStamp(id), request, sql, pageIds.toArray(), next);
+    }
+
+    @GetMapping("/{id}/path")
+    public ResponseEntity<StreamingResponseBody> path(@PathVariable UUID id, WebRequest request) {
+        if (!isReadPermitted()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        revisionTracker.catchUp();
+        if (isUnknown(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        Stamp stamp = revisionTracker.getPathStamp(id);
+        if (notModified(stamp, request)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        String sql = "with recursive ANCESTORS (" + COLUMNS + ", DEPTH) as ("
+                + "select " + COLUMNS + ", 0 from META_FIELD where ID = ? "
+                + "union all "
+                + "select m.ID, m.PARENT_ID, m.NAME, m.DESCRIPTION, p.DEPTH + 1 from META_FIELD m "
+                + "join ANCESTORS p on m.ID = p.PARENT_ID where p.DEPTH < 1000) "
+                + "select " + COLUMNS + " from ANCESTORS order by DEPTH desc";
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = jsonFactory().createGenerator(out)) {
+                json.writeStartArray();
+                jdbcTemplate.query(sql, rs -> {
+                    writeRow(json, rs);
+                }, id);
+                json.writeEndArray();
+            }
+        };
+        return ok(stamp, body);
+    }
+
+    /**
+     * Một trang danh sách: {@code {"items": [...], "next": "<id>" | null}}. Trang đầy ({@code pageSize} dòng) thì
+     * {@code next} là id của dòng cuối.
+     */
+    private ResponseEntity<StreamingResponseBody> page(Stamp stamp, WebRequest request,
+                                                       String sql, Object[] args, int pageSize) {
+        return page(stamp, request, sql, args, (count, last) -> count == pageSize ? last : null);
+    }
+
+    /**
+     * Như trên, với con trỏ trang tiếp theo đã biết trước.
+     *
+     * @param sql Null = trang rỗng, không truy vấn
+     */
+    private ResponseEntity<StreamingResponseBody> page(Stamp stamp, WebRequest request,
+                                                       String sql, Object[] args, UUID next) {
+        return page(stamp, request, sql, args, (count, last) -> next);
+    }
+
+    private ResponseEntity<StreamingResponseBody> page(Stamp stamp, WebRequest request, String sql, Object[] args,
+                                                       BiFunction<Integer, UUID, UUID> next) {
+        if (notModified(stamp, request)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = jsonFactory().createGenerator(out)) {
+                UUID[] last = {null};
+                int[] count = {0};
+                json.writeStartObject();
+                json.writeArrayFieldStart("items");
+                if (sql != null) {
+                    jdbcTemplate.query(sql, rs -> {
+                        last[0] = writeRow(json, rs);
+                        count[0]++;
+                    }, args);
+                }
+                json.writeEndArray();
+                UUID nextId = next.apply(count[0], last[0]);
+                json.writeStringField("next", nextId != null ? nextId.toString() : null);
+                json.writeEndObject();
+            }
+        };
+        return ok(stamp, body);
+    }
+
+    /**
+     * Tối đa {@code limit} hậu duệ của {@code id} có id lớn hơn {@code after}, theo thứ tự {@link UUID#compareTo}:
+     * duyệt chỉ mục con trong bộ nhớ, giữ các id nhỏ nhất bằng heap giới hạn - không truy vấn DB.
+     */
+    private List<UUID> descendantPage(UUID id, UUID after, int limit) {
+        PriorityQueue<UUID> smallest = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        Deque<UUID> stack = new ArrayDeque<>(revisionTracker.getChildren(id));
+        while (!stack.isEmpty()) {
+            UUID current = stack.pop();
+            stack.addAll(revisionTracker.getChildren(current));
+            if (after != null && current.compareTo(after) <= 0) {
+                continue;
+            }
+            smallest.add(current);
+            if (smallest.size() > limit) {
+                smallest.poll();
+            }
+        }
+        List<UUID> result = new ArrayList<>(smallest);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Quyền đọc MetaField của người gọi. API đọc bằng SQL trực tiếp nên ràng buộc theo dòng (row-level policy) không
+     * áp dụng được: tài khoản có ràng buộc như vậy trên MetaField bị từ chối cả API.
+     */
+    private boolean isReadPermitted() {
+        MetaClass metaClass = metadata.getClass(MetaField.class);
+        CrudEntityContext context = new CrudEntityContext(metaClass);
+        accessManager.applyRegisteredConstraints(context);
+        return context.isReadPermitted() && policyStore.getRowLevelPolicies(metaClass).findAny().isEmpty();
+    }
+
+    private boolean isUnknown(UUID id) {
+        return revisionTracker.isLoaded() && !revisionTracker.contains(id);
+    }
+
+    private boolean notModified(Stamp stamp, WebRequest request) {
+        return stamp != null && request.checkNotModified(etag(stamp), stamp.modifiedAt());
+    }
+
+    private ResponseEntity<StreamingResponseBody> ok(Stamp stamp, StreamingResponseBody body) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache());
+        if (stamp != null) {
+            builder.eTag(etag(stamp)).lastModified(stamp.modifiedAt());
+        }
+        return builder.body(body);
+    }
+
+    private static String etag(Stamp stamp) {
+        return "\"r" + stamp.revision() + "\"";
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    private JsonFactory jsonFactory() {
+        return objectMapper.getFactory();
+    }
+
+    private static UUID writeRow(JsonGenerator json, ResultSet rs) throws SQLException {
+        UUID id = rs.getObject("ID", UUID.class);
+        UUID parentId = rs.getObject("PARENT_ID", UUID.class);
+        try {
+            json.writeStartObject();
+            json.writeStringField("id", id.toString());
+            json.writeStringField("parentId", parentId != null ? parentId.toString() : null);
+            json.writeStringField("name", rs.getString("NAME"));
+            json.writeStringField("description", rs.getString("DESCRIPTION"));
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return id;
+    }
+}
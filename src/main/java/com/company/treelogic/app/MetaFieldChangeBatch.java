@@ -0,0 +1,19 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaFieldChange;
+
+import java.util.List;
+
+/**
+ * Kết quả của {@link MetaFieldChangeLog#changesSince(long, int)}.
+ *
+ * @param changes        Các thay đổi có revision &gt; revision yêu cầu, theo thứ tự revision
+ * @param toRevision     Revision đã đọc tới (dùng làm tham số cho lần gọi tiếp theo)
+ * @param hasMore        Còn thay đổi chưa trả về (vượt limit)
+ * @param resyncRequired Revision yêu cầu đã bị compaction xoá - phải bootstrap lại bằng snapshot
+ */
+public record MetaFieldChangeBatch(List<MetaFieldChange> changes,
+                                   long toRevision,
+                                   boolean hasMore,
+                                   boolean resyncRequired) {
+}
@@ -0,0 +1,93 @@
+package com.company.treelogic.app;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.shared.Registration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Kênh phát thay đổi MetaField trong phạm vi server (một node).
+ * <p>
+ * Các delta của một transaction được gom lại và chỉ phát <b>sau khi commit</b>, thành một lô. Mỗi UI đăng ký nhận
+ * lô delta qua {@code UI.access} (đẩy về trình duyệt bằng kênh {@code @Push} sẵn có) và tự vá container của mình.
+ */
+@Component
+public class MetaFieldChangeBus {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldChangeBus.class);
+
+    private static final Object TX_DELTAS_KEY = new Object();
+
+    private final Set<Consumer<List<MetaFieldDelta>>> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Đăng ký nhận delta cho một UI. Listener chạy trong {@code ui.access}, tức là dưới khoá session của UI đó.
+     *
+     * @return Registration - phải gọi {@code remove()} khi view đóng
+     */
+    public Registration subscribe(UI ui, Consumer<List<MetaFieldDelta>> listener) {
+        return subscribe(deltas -> ui.access(() -> listener.accept(deltas)));
+    }
+
+    /**
+     * Đăng ký nhận delta phía server (cache, index...). Listener chạy đồng bộ trên thread vừa commit,
+     * nên phải nhanh và không được truy cập DB.
+     *
+     * @return Registration - gọi {@code remove()} để huỷ đăng ký
+     */
+    public Registration subscribe(Consumer<List<MetaFieldDelta>> listener) {
+        Consumer<List<MetaFieldDelta>> subscriber = listener::accept;
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /**
+     * Ghi nhận một delta. Trong transaction: phát sau khi commit (huỷ nếu rollback); ngoài transaction: phát ngay.
+     */
+    @SuppressWarnings("unchecked")
+    public void collect(MetaFieldDelta delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(List.of(delta));
+            return;
+        }
+        List<MetaFieldDelta> txDeltas =
+                (List<MetaFieldDelta>) TransactionSynchronizationManager.getResource(TX_DELTAS_KEY);
+        if (txDeltas == null) {
+            List<MetaFieldDelta> deltas = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(TX_DELTAS_KEY, deltas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(List.copyOf(deltas));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TX_DELTAS_KEY);
+                }
+            });
+            txDeltas = deltas;
+        }
+        txDeltas.add(delta);
+    }
+
+    private void publish(List<MetaFieldDelta> deltas) {
+        for (Consumer<List<MetaFieldDelta>> subscriber : subscribers) {
+            try {
+                subscriber.accept(deltas);
+            } catch (RuntimeException e) {
+                // UI đã đóng / session hết hạn: bỏ qua, không ảnh hưởng các subscriber khác
+                log.debug("Cannot deliver MetaField deltas", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaFieldChange;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import io.jmix.core.TimeSource;
+import io.jmix.core.UnconstrainedDataManager;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Log thay đổi có revision của MetaField ({@code META_FIELD_CHANGE}).
+ * <p>
+ * Mỗi insert / update / delete MetaField ghi một dòng trong <b>cùng transaction</b> (xem
+ * {@link com.company.treelogic.listener.MetaFieldEventListener}). Revision lấy từ một dòng đếm duy nhất
+ * ({@code META_FIELD_REVISION}, ID = 1) bằng {@code UPDATE ... + 1}: khoá dòng giữ tới khi commit, nên các writer
+ * được xếp hàng và thứ tự revision trùng với thứ tự commit - bên đọc không bao giờ thấy "lỗ" revision bị lấp sau.
+ * <p>
+ * Bên tiêu thụ (cache, replica, index tìm kiếm, view mở lại) giữ revision cuối đã áp dụng và gọi
+ * {@link #changesSince(long, int)}. Nếu bị tụt quá xa (revision đã bị compaction xoá), bootstrap lại bằng
+ * {@link #snapshot(int, Consumer)} rồi đọc tiếp phần đuôi từ revision snapshot trả về.
+ */
+@Component
+public class MetaFieldChangeLog {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldChangeLog.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private UnconstrainedDataManager unconstrainedDataManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TimeSource timeSource;
+    @Autowired
+    private MetaFieldChangeLogProperties properties;
+
+    /**
+     * Ghi một thay đổi vào log. Phải được gọi trong transaction đang ghi MetaField.
+     *
+     * @return Revision được cấp
+     */
+    public long append(MetaFieldDelta delta) {
+        entityManager.createNativeQuery(
+                        "update META_FIELD_REVISION set CURRENT_REVISION = CURRENT_REVISION + 1 where ID = 1")
+                .executeUpdate();
+        long revision = ((Number) entityManager.createNativeQuery(
+                        "select CURRENT_REVISION from META_FIELD_REVISION where ID = 1")
+                .getSingleResult()).longValue();
+
+        MetaFieldChange change = unconstrainedDataManager.create(MetaFieldChange.class);
+        change.setRevision(revision);
+        change.setMetaFieldId(delta.id());
+        change.setType(delta.type());
+        change.setParentId(delta.parentId());
+        change.setName(delta.name());
+        change.setDescription(delta.description());
+        change.setSortKey(delta.sortKey());
+        change.setChangedAt(timeSource.now().toOffsetDateTime());
+        entityManager.persist(change);
+        return revision;
+    }
+
+    /**
+     * Revision mới nhất đã commit.
+     */
+    public long getCurrentRevision() {
+        Long revision = jdbcTemplate.queryForObject(
+                "select CURRENT_REVISION from META_FIELD_REVISION where ID = 1", Long.class);
+        return revision != null ? revision : 0L;
+    }
+
+    /**
+     * Revision nhỏ nhất còn đọc tiếp được: bên tiêu thụ có revision thấp hơn mức này phải đọc lại snapshot.
+     */
+    public long getCompactedRevision() {
+        Long revision = jdbcTemplate.queryForObject(
+                "select COMPACTED_REVISION from META_FIELD_REVISION where ID = 1", Long.class);
+        return revision != null ? revision : 0L;
+    }
+
+    /**
+     * Các thay đổi có revision lớn hơn {@code revision}, theo thứ tự revision.
+     *
+     * @param revision Revision cuối cùng bên tiêu thụ đã áp dụng (0 = từ đầu)
+     * @param limit    Số dòng tối đa
+     */
+    public MetaFieldChangeBatch changesSince(long revision, int limit) {
+        if (revision < getCompactedRevision()) {
+            return new MetaFieldChangeBatch(List.of(), revision, false, true);
+        }
+        List<MetaFieldChange> changes = unconstrainedDataManager.load(MetaFieldChange.class)
+                .query("select e from MetaFieldChange e where e.revision > :revision order by e.revision")
+                .parameter("revision", revision)
+                .maxResults(limit + 1)
+                .list();
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = new ArrayList<>(changes.subList(0, limit));
+        }
+        long toRevision = changes.isEmpty() ? revision : changes.get(changes.size() - 1).getRevision();
+        return new MetaFieldChangeBatch(changes, toRevision, hasMore, false);
+    }
+
+    /**
+     * Đọc toàn bộ bảng META_FIELD theo từng chunk (keyset trên ID) để bootstrap bên tiêu thụ.
+     * <p>
+     * Revision được đọc <b>trước</b> khi quét bảng, nên mọi thay đổi commit trong lúc quét đều nằm trong phần đuôi
+     * {@code changesSince(revision)}. Một số thay đổi đó có thể đã có mặt trong snapshot - vô hại, vì mỗi dòng log
+     * mang trạng thái đầy đủ của node và được áp dụng theo kiểu upsert / xoá.
+     *
+     * @param chunkSize Số dòng mỗi chunk
+     * @param consumer  Nhận từng chunk
+     * @return Revision để đọc tiếp phần đuôi
+     */
+    public long snapshot(int chunkSize, Consumer<List<MetaFieldRow>> consumer) {
+        long revision = getCurrentRevision();
+        UUID afterId = null;
+        while (true) {
+            List<MetaFieldRow> chunk = afterId == null
+                    ? jdbcTemplate.query("select ID, PARENT_ID, NAME, DESCRIPTION from META_FIELD "
+                            + "order by ID limit ?", (rs, i) -> toRow(rs), chunkSize)
+                    : jdbcTemplate.query("select ID, PARENT_ID, NAME, DESCRIPTION from META_FIELD "
+                            + "where ID > ? order by ID limit ?", (rs, i) -> toRow(rs), afterId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            consumer.accept(chunk);
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1).id();
+        }
+        return revision;
+    }
+
+    /**
+     * Compaction định kỳ:
+     * <ol>
+     *     <li>Dòng cũ hơn {@code collapse-after} mà node đã có dòng mới hơn thì bị xoá. An toàn cho mọi bên tiêu thụ,
+     *     vì dòng mới hơn đã chứa trạng thái đầy đủ.</li>
+     *     <li>Dòng DELETE cũ hơn {@code tombstone-retention} bị xoá hẳn và {@code COMPACTED_REVISION} được nâng lên:
+     *     bên tiêu thụ dừng ở revision thấp hơn sẽ bị yêu cầu đọc lại snapshot.</li>
+     * </ol>
+     */
+    @Scheduled(fixedDelayString = "${treelogic.change-log.compaction-interval:1h}",
+            initialDelayString = "${treelogic.change-log.compaction-interval:1h}")
+    @Transactional
+    public void compact() {
+        OffsetDateTime now = timeSource.now().toOffsetDateTime();
+
+        int collapsed = jdbcTemplate.update("delete from META_FIELD_CHANGE c where c.CHANGED_AT < ? "
+                        + "and exists (select 1 from META_FIELD_CHANGE n "
+                        + "where n.META_FIELD_ID = c.META_FIELD_ID and n.REVISION > c.REVISION)",
+                Timestamp.from(now.minus(properties.collapseAfter()).toInstant()));
+
+        Timestamp tombstoneCutoff = Timestamp.from(now.minus(properties.tombstoneRetention()).toInstant());
+        Long purgedUpTo = jdbcTemplate.queryForObject("select max(REVISION) from META_FIELD_CHANGE "
+                        + "where CHANGE_TYPE = ? and CHANGED_AT < ?",
+                Long.class, MetaFieldChangeType.DELETE.getId(), tombstoneCutoff);
+        int purged = 0;
+        if (purgedUpTo != null) {
+            purged = jdbcTemplate.update("delete from META_FIELD_CHANGE where CHANGE_TYPE = ? and REVISION <= ?",
+                    MetaFieldChangeType.DELETE.getId(), purgedUpTo);
+            jdbcTemplate.update("update META_FIELD_REVISION set COMPACTED_REVISION = ? "
+                    + "where ID = 1 and COMPACTED_REVISION < ?", purgedUpTo, purgedUpTo);
+        }
+        if (collapsed > 0 || purged > 0) {
+            log.info("MetaField change log compacted: {} superseded, {} tombstones removed", collapsed, purged);
+        }
+    }
+
+    private static MetaFieldRow toRow(ResultSet rs) throws SQLException {
+        return new MetaFieldRow(rs.getObject("ID", UUID.class), rs.getObject("PARENT_ID", UUID.class),
+                rs.getString("NAME"), rs.getString("DESCRIPTION"));
+    }
+}
@@ -0,0 +1,17 @@
+package com.company.treelogic.app;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình compaction của log thay đổi MetaField.
+ *
+ * @param collapseAfter      Các dòng cũ hơn khoảng này chỉ giữ lại dòng mới nhất của mỗi node
+ * @param tombstoneRetention Dòng DELETE cũ hơn khoảng này bị xoá hẳn; consumer chậm hơn phải đọc lại snapshot
+ */
+@ConfigurationProperties(prefix = "treelogic.change-log")
+public record MetaFieldChangeLogProperties(@DefaultValue("1d") Duration collapseAfter,
+                                           @DefaultValue("7d") Duration tombstoneRetention) {
+}
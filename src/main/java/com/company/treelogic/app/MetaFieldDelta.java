@@ -0,0 +1,39 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaFieldChange;
+import com.company.treelogic.entity.MetaFieldChangeType;
+
+import java.util.UUID;
+
+/**
+ * Thay đổi gọn của một MetaField đã commit, được gửi tới các UI đang mở cây.
+ *
+ * @param type        Loại thay đổi
+ * @param id          Id node
+ * @param parentId    Id cha sau thay đổi (với DELETE: cha trước khi xoá)
+ * @param name        Tên sau thay đổi (null với DELETE)
+ * @param description Mô tả sau thay đổi (null với DELETE)
+ * @param sortKey     Khoá thứ tự anh em sau thay đổi (null với DELETE), xem
+ *                    {@link MetaFieldSortKeys}: đổi thứ tự dưới cùng cha là một UPDATE chỉ khác khoá này
+ * @param revision    Revision trong {@link MetaFieldChangeLog} (0 = chưa ghi log)
+ */
+public record MetaFieldDelta(MetaFieldChangeType type,
+                             UUID id,
+                             UUID parentId,
+                             String name,
+                             String description,
+                             String sortKey,
+                             long revision) {
+
+    public MetaFieldDelta withRevision(long revision) {
+        return new MetaFieldDelta(type, id, parentId, name, description, sortKey, revision);
+    }
+
+    /**
+     * Dựng lại delta từ một dòng của {@link MetaFieldChangeLog}.
+     */
+    public static MetaFieldDelta from(MetaFieldChange change) {
+        return new MetaFieldDelta(change.getType(), change.getMetaFieldId(), change.getParentId(),
+                change.getName(), change.getDescription(), change.getSortKey(), change.getRevision());
+    }
+}
@@ -0,0 +1,172 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.engine.CompressedBitmap;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cấp và tra cứu {@code META_FIELD.ORDINAL}: số nguyên ổn định cho từng node, để một tập node lưu được dưới dạng
+ * {@link CompressedBitmap} thay vì danh sách UUID.
+ * <p>
+ * Ordinal được cấp từ bộ đếm {@code META_FIELD_REVISION.LAST_ORDINAL} (cùng cách với revision của
+ * {@link MetaFieldChangeLog}), không dùng lại sau khi node bị xoá. Node cấp liền nhau thường nằm gần nhau trên cây
+ * (cùng được import / tạo), nên một nhánh được chọn thường gồm ít dải liên tiếp - bitmap nén rất tốt.
+ * <p>
+ * Ánh xạ id &rarr; ordinal giữ trong bộ nhớ (một map), chỉ nạp (JDBC, hai cột) ở lần dùng đầu tiên, sau đó cập
+ * nhật theo delta từ {@link MetaFieldChangeBus}. Chiều ngược lại chỉ cần cho vài marker của một profile nên tra thẳng
+ * DB theo lô ({@link #idsOf}), dùng index unique trên ORDINAL.
+ */
+@Component
+public class MetaFieldOrdinals {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldOrdinals.class);
+
+    private static final int BACKFILL_BATCH = 10000;
+    private static final int IN_BATCH = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+
+    private final Map<UUID, Integer> ordinals = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * Cấp một ordinal mới. Phải được gọi trong transaction đang ghi MetaField.
+     */
+    public int next() {
+        return reserve(1);
+    }
+
+    /**
+     * Ordinal của node, -1 nếu node không tồn tại.
+     */
+    public int ordinalOf(UUID id) {
+        ensureLoaded();
+        return ordinals.getOrDefault(id, -1);
+    }
+
+    /**
+     * Id của các node mang các ordinal trong bitmap (ordinal của node đã bị xoá không có trong kết quả). Một truy vấn
+     * cho mỗi {@value #IN_BATCH} ordinal.
+     */
+    public Map<Integer, UUID> idsOf(CompressedBitmap bitmap) {
+        List<Integer> all = new ArrayList<>();
+        bitmap.forEach(all::add);
+        Map<Integer, UUID> result = new HashMap<>();
+        for (int from = 0; from < all.size(); from += IN_BATCH) {
+            List<Integer> batch = all.subList(from, Math.min(from + IN_BATCH, all.size()));
+            String in = String.join(", ", Collections.nCopies(batch.size(), "?"));
+            jdbcTemplate.query("select ID, ORDINAL from META_FIELD where ORDINAL in (" + in + ")",
+                    rs -> {
+                        result.put(rs.getInt("ORDINAL"), rs.getObject("ID", UUID.class));
+                    }, batch.toArray());
+        }
+        return result;
+    }
+
+    /**
+     * Đánh số các dòng chưa có ordinal (dữ liệu có trước cột này), mỗi lô một transaction.
+     */
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        metaFieldChangeBus.subscribe(this::apply);
+        int total = 0;
+        UUID after = null;
+        List<UUID> batch;
+        do {
+            batch = after == null
+                    ? jdbcTemplate.queryForList("select ID from META_FIELD where ORDINAL is null "
+                    + "order by ID limit ?", UUID.class, BACKFILL_BATCH)
+                    : jdbcTemplate.queryForList("select ID from META_FIELD where ORDINAL is null and ID > ? "
+                    + "order by ID limit ?", UUID.class, after, BACKFILL_BATCH);
+            if (!batch.isEmpty()) {
+                List<UUID> rows = batch;
+                total += transactionTemplate.execute(status -> backfill(rows));
+                after = batch.get(batch.size() - 1);
+            }
+        } while (batch.size() == BACKFILL_BATCH);
+        if (total > 0) {
+            log.info("Assigned ordinals to {} MetaField rows", total);
+        }
+    }
+
+    private int backfill(List<UUID> batch) {
+        int first = reserve(batch.size());
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            args.add(new Object[]{first + i, batch.get(i)});
+        }
+        jdbcTemplate.batchUpdate("update META_FIELD set ORDINAL = ? where ID = ? and ORDINAL is null", args);
+        return batch.size();
+    }
+
+    /**
+     * Giữ {@code count} ordinal liên tiếp.
+     *
+     * @return Ordinal đầu tiên
+     */
+    private int reserve(int count) {
+        jdbcTemplate.update("update META_FIELD_REVISION set LAST_ORDINAL = LAST_ORDINAL + ? where ID = 1", count);
+        Integer last = jdbcTemplate.queryForObject("select LAST_ORDINAL from META_FIELD_REVISION where ID = 1",
+                Integer.class);
+        return last - count + 1;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            jdbcTemplate.query("select ID, ORDINAL from META_FIELD where ORDINAL is not null",
+                    rs -> put(rs.getObject("ID", UUID.class), rs.getInt("ORDINAL")));
+            loaded = true;
+            log.debug("Loaded ordinals of {} MetaField nodes", ordinals.size());
+        }
+    }
+
+    private synchronized void apply(List<MetaFieldDelta> deltas) {
+        if (!loaded) {
+            return;
+        }
+        List<UUID> inserted = new ArrayList<>();
+        for (MetaFieldDelta delta : deltas) {
+            if (delta.type() == MetaFieldChangeType.INSERT) {
+                inserted.add(delta.id());
+            } else if (delta.type() == MetaFieldChangeType.DELETE) {
+                ordinals.remove(delta.id());
+            }
+        }
+        for (int from = 0; from < inserted.size(); from += IN_BATCH) {
+            List<UUID> batch = inserted.subList(from, Math.min(from + IN_BATCH, inserted.size()));
+            String in = String.join(", ", Collections.nCopies(batch.size(), "?"));
+            jdbcTemplate.query("select ID, ORDINAL from META_FIELD where ORDINAL is not null and ID in (" + in + ")",
+                    rs -> put(rs.getObject("ID", UUID.class), rs.getInt("ORDINAL")), batch.toArray());
+        }
+    }
+
+    private void put(UUID id, int ordinal) {
+        ordinals.put(id, ordinal);
+    }
+}
@@ -0,0 +1,271 @@
+package com.company.treelogic.app;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache đường dẫn (breadcrumb) {@code "Gốc / A / B"} của các node MetaField, lưu dạng trie dùng chung tiền tố: mỗi
+ * node trỏ tới một {@link Segment} (tên của nó + segment của cha), các node có cùng đường dẫn dùng chung một segment.
+ * Bộ nhớ cho chuỗi tỉ lệ với số segment khác nhau, không với tổng độ dài các đường dẫn.
+ * <p>
+ * Tra cứu node đã cache là O(độ sâu), không truy vấn DB. Node chưa có được nạp theo lô bằng một CTE đệ quy (cả chuỗi
+ * tổ tiên, đọc từ DB chính - replica có thể trễ sau khi vừa đổi tên), rồi cache cả chuỗi: node có trong cache thì mọi
+ * tổ tiên của nó cũng có.
+ * <p>
+ * Theo {@link MetaFieldChangeBus}: đổi tên / di chuyển / xoá một node chỉ bỏ cache của cây con bên dưới nó (phần đang
+ * được cache); segment không còn ai dùng được dọn khỏi trie.
+ */
+@Component
+public class MetaFieldPaths {
+
+    private static final String SEPARATOR = " / ";
+    // Số id tối đa trong một danh sách IN (...)
+    private static final int IN_BATCH = 1000;
+
+    /**
+     * Một nút của trie: tên node và nút của cha. Bất biến trừ {@code children} / {@code refs} (giữ bởi khoá của
+     * {@link MetaFieldPaths}).
+     */
+    static final class Segment {
+
+        final Segment parent;
+        final String name;
+        final Map<String, Segment> children = new HashMap<>();
+        // Số node trỏ tới + số segment con
+        int refs;
+
+        Segment(Segment parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        String path() {
+            List<String> names = new ArrayList<>();
+            for (Segment current = this; current.parent != null; current = current.parent) {
+                names.add(current.name);
+            }
+            Collections.reverse(names);
+            return String.join(SEPARATOR, names);
+        }
+    }
+
+    record Row(UUID id, String name) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+    @Autowired
+    private MetaFieldRevisionTracker metaFieldRevisionTracker;
+
+    // Gốc ảo của trie (cha của các node gốc), đường dẫn rỗng
+    private final Segment root = new Segment(null, null);
+    private final Map<UUID, Segment> segments = new ConcurrentHashMap<>();
+    // Tăng mỗi lần bỏ cache: kết quả nạp bắt đầu trước đó có thể đã cũ, không được ghi vào cache
+    private long epoch;
+
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        metaFieldChangeBus.subscribe(this::apply);
+    }
+
+    /**
+     * Đường dẫn đầy đủ của node (kể cả tên của nó), rỗng nếu node không tồn tại.
+     */
+    public String getPath(UUID id) {
+        return getPaths(List.of(id)).get(id);
+    }
+
+    /**
+     * Đường dẫn đầy đủ của node nếu đã có trong cache, không truy vấn DB (VD: trong renderer của grid, sau khi đã nạp
+     * trước bằng {@link #getPaths} cho cả lô dòng).
+     *
+     * @return null nếu node chưa được cache
+     */
+    public String getCachedPath(UUID id) {
+        Segment segment = segments.get(id);
+        return segment != null ? segment.path() : null;
+    }
+
+    /**
+     * Đường dẫn đầy đủ của từng node (kể cả tên của nó). Một truy vấn cho mọi node chưa có trong cache.
+     */
+    public Map<UUID, String> getPaths(Collection<UUID> ids) {
+        Map<UUID, String> paths = new HashMap<>();
+        resolve(ids).forEach((id, segment) -> paths.put(id, segment.path()));
+        return paths;
+    }
+
+    /**
+     * Đường dẫn từ gốc tới cha của từng node, VD: {@code "Gốc / Nhánh"}; node gốc có đường dẫn rỗng.
+     */
+    public Map<UUID, String> getParentPaths(Collection<UUID> ids) {
+        Map<UUID, String> paths = new HashMap<>();
+        resolve(ids).forEach((id, segment) -> paths.put(id, segment.parent != null ? segment.parent.path() : ""));
+        return paths;
+    }
+
+    private Map<UUID, Segment> resolve(Collection<UUID> ids) {
+        Map<UUID, Segment> result = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID id : ids) {
+            Segment segment = segments.get(id);
+            if (segment != null) {
+                result.put(id, segment);
+            } else {
+                missing.add(id);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += IN_BATCH) {
+            result.putAll(load(missing.subList(from, Math.min(from + IN_BATCH, missing.size()))));
+        }
+        for (UUID id : ids) {
+            result.putIfAbsent(id, root);
+        }
+        return result;
+    }
+
+    /**
+     * Nạp chuỗi tổ tiên (gốc trước) của các node rồi ghi vào trie.
+     */
+    private Map<UUID, Segment> load(List<UUID> ids) {
+        long startEpoch = currentEpoch();
+        return store(query(ids), startEpoch);
+    }
+
+    synchronized long currentEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Chuỗi tổ tiên (gốc trước, kể cả chính node) của từng node, một truy vấn.
+     */
+    Map<UUID, List<Row>> query(List<UUID> ids) {
+        String sql = "with recursive ANCESTORS (START_ID, ID, PARENT_ID, NAME, DEPTH) as ("
+                + "select ID, ID, PARENT_ID, NAME, 0 from META_FIELD where ID in ("
+                + String.join(", ", Collections.nCopies(ids.size(), "?")) + ") "
+                + "union all "
+                + "select a.START_ID, m.ID, m.PARENT_ID, m.NAME, a.DEPTH + 1 from META_FIELD m "
+                + "join ANCESTORS a on m.ID = a.PARENT_ID where a.DEPTH < 1000) "
+                + "select START_ID, ID, NAME from ANCESTORS order by START_ID, DEPTH desc";
+        Map<UUID, List<Row>> chains = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            chains.computeIfAbsent(rs.getObject("START_ID", UUID.class), id -> new ArrayList<>())
+                    .add(new Row(rs.getObject("ID", UUID.class), Objects.toString(rs.getString("NAME"), "")));
+        }, ids.toArray());
+        return chains;
+    }
+
+    /**
+     * Ghi các chuỗi vào trie, trừ khi cache đã bị bỏ (đổi tên / di chuyển) kể từ {@code startEpoch}: khi đó chuỗi có
+     * thể đã cũ, chỉ được dùng cho lần gọi này.
+     */
+    Map<UUID, Segment> store(Map<UUID, List<Row>> chains, long startEpoch) {
+        Map<UUID, Segment> result = new HashMap<>();
+        synchronized (this) {
+            boolean cacheable = epoch == startEpoch;
+            chains.forEach((startId, chain) -> {
+                Segment parent = root;
+                for (Row row : chain) {
+                    Segment segment = cacheable ? segments.get(row.id()) : null;
+                    if (segment == null) {
+                        segment = cacheable ? intern(parent, row.name()) : new Segment(parent, row.name());
+                        if (cacheable) {
+                            segment.refs++;
+                            segments.put(row.id(), segment);
+                        }
+                    }
+                    parent = segment;
+                }
+                result.put(startId, parent);
+            });
+        }
+        return result;
+    }
+
+    private Segment intern(Segment parent, String name) {
+        return parent.children.computeIfAbsent(name, n -> {
+            parent.refs++;
+            return new Segment(parent, n);
+        });
+    }
+
+    synchronized void apply(List<MetaFieldDelta> deltas) {
+        for (MetaFieldDelta delta : deltas) {
+            Segment cached = segments.get(delta.id());
+            switch (delta.type()) {
+                case INSERT -> {
+                    // Cha đã có trong cache: thêm luôn, không cần truy vấn khi hiển thị
+                    Segment parent = delta.parentId() != null ? segments.get(delta.parentId()) : root;
+                    if (parent != null && cached == null) {
+                        Segment segment = intern(parent, Objects.toString(delta.name(), ""));
+                        segment.refs++;
+                        segments.put(delta.id(), segment);
+                    }
+                }
+                case UPDATE -> {
+                    // Chỉ đổi mô tả: đường dẫn không đổi
+                    if (cached != null && !cached.name.equals(Objects.toString(delta.name(), ""))) {
+                        invalidate(delta.id());
+                    }
+                }
+                case MOVE, DELETE -> invalidate(delta.id());
+            }
+        }
+    }
+
+    /**
+     * Bỏ cache của node và các hậu duệ đang được cache (hậu duệ chỉ có trong cache khi chính node có).
+     */
+    private void invalidate(UUID id) {
+        epoch++;
+        Deque<UUID> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            UUID current = stack.pop();
+            Segment segment = segments.remove(current);
+            if (segment == null) {
+                continue;
+            }
+            release(segment);
+            stack.addAll(metaFieldRevisionTracker.getChildren(current));
+        }
+    }
+
+    /**
+     * Số segment đang có trong trie (không tính gốc ảo).
+     */
+    synchronized int segmentCount() {
+        int count = 0;
+        Deque<Segment> stack = new ArrayDeque<>(root.children.values());
+        while (!stack.isEmpty()) {
+            Segment segment = stack.pop();
+            count++;
+            stack.addAll(segment.children.values());
+        }
+        return count;
+    }
+
+    private void release(Segment segment) {
+        for (Segment current = segment; current.parent != null && --current.refs == 0; current = current.parent) {
+            current.parent.children.remove(current.name);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.company.treelogic.app;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Cấu hình nạp trước con của node khi mở cây MetaField (xem {@link com.company.treelogic.generic.TreePrefetcher}).
+ *
+ * @param enabled   Tắt = chỉ dựa vào nạp dần theo tầng
+ * @param batchSize Số dòng tối đa của một truy vấn nạp trước
+ * @param maxRows   Tổng số dòng nạp trước tối đa của một view
+ */
+@ConfigurationProperties(prefix = "treelogic.tree.prefetch")
+public record MetaFieldPrefetchProperties(@DefaultValue("true") boolean enabled,
+                                          @DefaultValue("500") int batchSize,
+                                          @DefaultValue("20000") int maxRows) {
+}
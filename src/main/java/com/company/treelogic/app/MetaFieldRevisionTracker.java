@@ -0,0 +1,340 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaFieldChangeType;
+import com.company.treelogic.engine.TreeAggregates;
+import com.company.treelogic.engine.TreeAggregates.Aggregate;
+import io.jmix.core.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Giữ trong bộ nhớ revision (theo {@link MetaFieldChangeLog}) của từng node và của cả cây con bên dưới nó, để
+ * trả lời "cây con / đường dẫn này đã đổi chưa" mà không cần truy vấn DB (ETag, cache...). Cùng chỉ mục cha - con đó
+ * cũng nuôi {@link TreeAggregates} (số hậu duệ, số lá, chiều sâu) của từng node.
+ * <p>
+ * Khi khởi động, quan hệ cha - con được lấy từ {@link MetaFieldSnapshot} (nếu có) rồi đuổi theo phần đuôi của log
+ * thay đổi; không có snapshot thì nạp bằng JDBC (chỉ hai cột UUID). Mọi node nhận revision của điểm nạp làm mốc.
+ * Sau đó tracker chỉ cập nhật bằng cách đọc tiếp phần đuôi của log ({@link #catchUp()}), theo đúng thứ tự revision:
+ * ngay sau mỗi lô commit trên instance này ({@link MetaFieldChangeBus}), định kỳ
+ * ({@code treelogic.change-log.poll-interval}) và trước mỗi request của API. Nhờ vậy thay đổi commit trên instance
+ * khác, hay do writer JDBC ghi log trực tiếp, cũng được phản ánh. Mỗi thay đổi nâng revision của chính node và của
+ * mọi tổ tiên (với MOVE là cả chuỗi tổ tiên cũ lẫn mới).
+ */
+@Component
+public class MetaFieldRevisionTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldRevisionTracker.class);
+
+    private static final int CATCH_UP_BATCH = 5000;
+
+    /**
+     * Revision và thời điểm thay đổi gần nhất.
+     *
+     * @param revision   Revision trong {@link MetaFieldChangeLog}
+     * @param modifiedAt Epoch millis
+     */
+    public record Stamp(long revision, long modifiedAt) {
+
+        Stamp max(Stamp other) {
+            return other == null || revision >= other.revision ? this : other;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TimeSource timeSource;
+    @Autowired
+    private MetaFieldChangeLog metaFieldChangeLog;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+    @Autowired
+    private MetaFieldSnapshotStore metaFieldSnapshotStore;
+
+    private final Map<UUID, UUID> parentOf = new ConcurrentHashMap<>();
+    private final Map<UUID, Stamp> selfStamps = new ConcurrentHashMap<>();
+    private final Map<UUID, Stamp> subtreeStamps = new ConcurrentHashMap<>();
+    private final Set<UUID> nodes = ConcurrentHashMap.newKeySet();
+    private final TreeAggregates<UUID> aggregates = new TreeAggregates<>(parentOf::get);
+
+    private volatile Stamp baseline;
+    private volatile Stamp global;
+    // Revision cuối của log đã áp dụng
+    private volatile long revision;
+
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        // Delta của bus chỉ là tín hiệu: thay đổi được đọc lại từ log để không vượt trước revision của instance khác
+        metaFieldChangeBus.subscribe(deltas -> catchUp());
+        initialize();
+    }
+
+    /**
+     * Áp dụng các thay đổi đã commit sau revision cuối đã áp dụng. Khi không có gì mới chỉ tốn một truy vấn theo khoá
+     * chính ({@code META_FIELD_REVISION}); log đã bị compaction vượt qua thì nạp lại toàn bộ.
+     */
+    @Scheduled(fixedDelayString = "${treelogic.change-log.poll-interval:5s}",
+            initialDelayString = "${treelogic.change-log.poll-interval:5s}")
+    public void catchUp() {
+        if (baseline == null || metaFieldChangeLog.getCurrentRevision() <= revision) {
+            return;
+        }
+        synchronized (this) {
+            if (baseline != null && !tail()) {
+                log.info("MetaField revision tracker fell behind the compacted log at revision {}", revision);
+                reload();
+            }
+        }
+    }
+
+    private synchronized void initialize() {
+        MetaFieldSnapshot snapshot = metaFieldSnapshotStore.load();
+        if (snapshot == null || !restore(snapshot)) {
+            reload();
+        }
+    }
+
+    /**
+     * Nạp từ snapshot rồi áp dụng các thay đổi sau revision của nó.
+     *
+     * @return false nếu snapshot quá cũ (phần đuôi đã bị compaction xoá)
+     */
+    private boolean restore(MetaFieldSnapshot snapshot) {
+        clear();
+        for (int i = 0; i < snapshot.size(); i++) {
+            UUID id = snapshot.id(i);
+            nodes.add(id);
+            int parentIndex = snapshot.parentIndex(i);
+            if (parentIndex >= 0) {
+                parentOf.put(id, snapshot.id(parentIndex));
+            }
+        }
+        aggregates.rebuild(nodes);
+        Stamp stamp = new Stamp(snapshot.getRevision(), snapshot.getCreatedAt());
+        baseline = stamp;
+        global = stamp;
+        revision = snapshot.getRevision();
+
+        if (!tail()) {
+            log.info("MetaField snapshot at revision {} is older than the compacted log", snapshot.getRevision());
+            clear();
+            return false;
+        }
+        log.debug("MetaField revision tracker restored {} nodes, caught up to revision {}", nodes.size(), revision);
+        return true;
+    }
+
+    /**
+     * Đọc và áp dụng phần đuôi của log từ {@link #revision}.
+     *
+     * @return false nếu phần đuôi đã bị compaction xoá
+     */
+    private boolean tail() {
+        MetaFieldChangeBatch batch;
+        do {
+            batch = metaFieldChangeLog.changesSince(revision, CATCH_UP_BATCH);
+            if (batch.resyncRequired()) {
+                return false;
+            }
+            apply(batch.changes().stream().map(MetaFieldDelta::from).toList());
+            revision = batch.toRevision();
+        } while (batch.hasMore());
+        return true;
+    }
+
+    /**
+     * Nạp lại toàn bộ quan hệ cha - con; mọi node nhận revision hiện tại làm mốc.
+     */
+    public synchronized void reload() {
+        Stamp stamp = new Stamp(metaFieldChangeLog.getCurrentRevision(), timeSource.currentTimeMillis());
+
+        clear();
+        jdbcTemplate.query("select ID, PARENT_ID from META_FIELD", rs -> {
+            UUID id = rs.getObject("ID", UUID.class);
+            UUID parentId = rs.getObject("PARENT_ID", UUID.class);
+            nodes.add(id);
+            if (parentId != null) {
+                parentOf.put(id, parentId);
+            }
+        });
+        aggregates.rebuild(nodes);
+        revision = stamp.revision();
+        baseline = stamp;
+        global = stamp;
+        log.debug("MetaField revision tracker loaded {} nodes at revision {}", nodes.size(), stamp.revision());
+    }
+
+    public boolean isLoaded() {
+        return baseline != null;
+    }
+
+    public boolean contains(UUID id) {
+        return nodes.contains(id);
+    }
+
+    /**
+     * Số node hiện có trong cây (0 khi chưa nạp xong).
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Node {@code id} là chính {@code ancestorId} hoặc nằm trong cây con của nó (đi ngược chuỗi cha, O(độ sâu)).
+     */
+    public boolean isSameOrDescendant(UUID id, UUID ancestorId) {
+        Set<UUID> visited = new HashSet<>();
+        for (UUID current = id; current != null && visited.add(current); current = parentOf.get(current)) {
+            if (current.equals(ancestorId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Các node có con trong {@code levels} tầng đầu tiên tính từ {@code rootIds} (kể cả chính chúng), theo chiều rộng
+     * - tức là những node cần mở để hiện ra đúng {@code levels} tầng. Duyệt chỉ mục con trong bộ nhớ.
+     *
+     * @param maxNodes Dừng khi đã gom đủ số node này
+     */
+    public List<UUID> collectExpandable(Collection<UUID> rootIds, int levels, int maxNodes) {
+        List<UUID> result = new ArrayList<>();
+        List<UUID> level = new ArrayList<>(rootIds);
+        for (int depth = 0; depth < levels && !level.isEmpty(); depth++) {
+            List<UUID> next = new ArrayList<>();
+            for (UUID id : level) {
+                Set<UUID> children = aggregates.getChildren(id);
+                if (!children.isEmpty()) {
+                    if (result.size() >= maxNodes) {
+                        return result;
+                    }
+                    result.add(id);
+                    next.addAll(children);
+                }
+            }
+            level = next;
+        }
+        return result;
+    }
+
+    /**
+     * Id cha hiện tại của node (null = node gốc hoặc không biết), từ chỉ mục trong bộ nhớ.
+     */
+    public UUID getParentId(UUID id) {
+        return parentOf.get(id);
+    }
+
+    /**
+     * Con trực tiếp hiện tại của node (chỉ đọc), từ chỉ mục trong bộ nhớ.
+     */
+    public Set<UUID> getChildren(UUID id) {
+        return aggregates.getChildren(id);
+    }
+
+    /**
+     * Số hậu duệ / số lá / chiều sâu của cây con bên dưới node, duy trì tăng dần theo các delta.
+     */
+    public Aggregate getAggregate(UUID id) {
+        return aggregates.get(id);
+    }
+
+    /**
+     * Thay đổi gần nhất ở bất kỳ đâu trong cây.
+     */
+    public Stamp getGlobalStamp() {
+        return global;
+    }
+
+    /**
+     * Thay đổi gần nhất của node hoặc bất kỳ hậu duệ nào của nó.
+     */
+    public Stamp getSubtreeStamp(UUID id) {
+        return subtreeStamps.getOrDefault(id, baseline);
+    }
+
+    /**
+     * Thay đổi gần nhất trên đường đi từ gốc tới node (đổi tên / di chuyển bất kỳ tổ tiên nào).
+     */
+    public Stamp getPathStamp(UUID id) {
+        Stamp stamp = baseline;
+        Set<UUID> visited = new HashSet<>();
+        for (UUID current = id; current != null && visited.add(current); current = parentOf.get(current)) {
+            stamp = selfStamps.getOrDefault(current, baseline).max(stamp);
+        }
+        return stamp;
+    }
+
+    private void apply(List<MetaFieldDelta> deltas) {
+        long now = timeSource.currentTimeMillis();
+        for (MetaFieldDelta delta : deltas) {
+            Stamp stamp = new Stamp(delta.revision(), now);
+            UUID oldParentId = parentOf.get(delta.id());
+            boolean known = nodes.contains(delta.id());
+            List<UUID> touched = new ArrayList<>();
+            touched.add(delta.id());
+            touched.add(delta.parentId());
+            touched.add(oldParentId);
+
+            if (delta.type() == MetaFieldChangeType.DELETE) {
+                aggregates.detach(delta.id(), oldParentId);
+                aggregates.remove(delta.id());
+                nodes.remove(delta.id());
+                parentOf.remove(delta.id());
+                selfStamps.remove(delta.id());
+                subtreeStamps.remove(delta.id());
+                touched.remove(0);
+            } else {
+                boolean moved = known && !Objects.equals(oldParentId, delta.parentId());
+                if (moved) {
+                    aggregates.detach(delta.id(), oldParentId);
+                }
+                nodes.add(delta.id());
+                if (delta.parentId() != null) {
+                    parentOf.put(delta.id(), delta.parentId());
+                } else {
+                    parentOf.remove(delta.id());
+                }
+                if (moved || !known) {
+                    aggregates.attach(delta.id(), delta.parentId());
+                }
+                selfStamps.put(delta.id(), stamp);
+            }
+            for (UUID id : touched) {
+                markAncestors(id, stamp);
+            }
+            global = stamp.max(global);
+        }
+    }
+
+    private void clear() {
+        baseline = null;
+        parentOf.clear();
+        selfStamps.clear();
+        subtreeStamps.clear();
+        nodes.clear();
+    }
+
+    private void markAncestors(UUID id, Stamp stamp) {
+        Set<UUID> visited = new HashSet<>();
+        for (UUID current = id; current != null && visited.add(current); current = parentOf.get(current)) {
+            subtreeStamps.merge(current, stamp, Stamp::max);
+        }
+    }
+}
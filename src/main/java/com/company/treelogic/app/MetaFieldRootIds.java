@@ -0,0 +1,110 @@
+package com.company.treelogic.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Duy trì cột phi chuẩn hoá {@code META_FIELD.ROOT_ID} (id node gốc của cây chứa node), để truy vấn, bộ lọc và view
+ * chỉ làm việc trong một cây qua các chỉ mục bắt đầu bằng {@code ROOT_ID}.
+ * <p>
+ * Node mới nhận ROOT_ID của cha khi lưu; di chuyển sang cây khác cập nhật node và cây con của nó theo từng tầng (chi
+ * phí tỉ lệ với cây con bị di chuyển). Các hàm ghi phải chạy trong transaction đang ghi MetaField (xem
+ * {@link com.company.treelogic.listener.MetaFieldEventListener}).
+ */
+@Component
+public class MetaFieldRootIds {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldRootIds.class);
+
+    private static final int IN_BATCH = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * ROOT_ID cho node mới dưới {@code parentId}.
+     *
+     * @return null nếu cha chưa có ROOT_ID (VD: cha được tạo cùng lô) - khi đó {@link #assignIfMissing} điền sau
+     */
+    public UUID rootOf(UUID parentId) {
+        List<UUID> rootIds = jdbcTemplate.queryForList("select ROOT_ID from META_FIELD where ID = ?",
+                UUID.class, parentId);
+        return rootIds.isEmpty() ? null : rootIds.get(0);
+    }
+
+    /**
+     * Gán ROOT_ID cho node vừa thêm nếu lúc lưu chưa xác định được. Không làm gì nếu đã có.
+     */
+    public void assignIfMissing(UUID id, UUID parentId) {
+        if (parentId == null) {
+            jdbcTemplate.update("update META_FIELD set ROOT_ID = ID where ID = ? and ROOT_ID is null", id);
+        } else {
+            jdbcTemplate.update("update META_FIELD set ROOT_ID = (select p.ROOT_ID from META_FIELD p where p.ID = ?) "
+                    + "where ID = ? and ROOT_ID is null", parentId, id);
+        }
+    }
+
+    /**
+     * Cập nhật ROOT_ID của node vừa di chuyển và của cả cây con (chỉ khi cây thay đổi).
+     *
+     * @return Số dòng được cập nhật
+     */
+    public int assign(UUID id, UUID parentId) {
+        UUID rootId = parentId == null ? id : rootOf(parentId);
+        if (rootId == null) {
+            return 0;
+        }
+        int updated = jdbcTemplate.update("update META_FIELD set ROOT_ID = ? "
+                + "where ID = ? and (ROOT_ID is null or ROOT_ID <> ?)", rootId, id, rootId);
+        if (updated == 0) {
+            // Di chuyển trong cùng một cây: cây con giữ nguyên ROOT_ID
+            return 0;
+        }
+        List<UUID> level = List.of(id);
+        while (!level.isEmpty()) {
+            List<UUID> next = new ArrayList<>();
+            for (int from = 0; from < level.size(); from += IN_BATCH) {
+                List<UUID> batch = level.subList(from, Math.min(from + IN_BATCH, level.size()));
+                String in = String.join(", ", Collections.nCopies(batch.size(), "?"));
+                List<Object> args = new ArrayList<>(batch.size() + 1);
+                args.add(rootId);
+                args.addAll(batch);
+                updated += jdbcTemplate.update("update META_FIELD set ROOT_ID = ? where PARENT_ID in (" + in + ")",
+                        args.toArray());
+                next.addAll(jdbcTemplate.queryForList("select ID from META_FIELD where PARENT_ID in (" + in + ")",
+                        UUID.class, batch.toArray()));
+            }
+            level = next;
+        }
+        return updated;
+    }
+
+    /**
+     * Điền ROOT_ID còn thiếu (dữ liệu có trước cột này), mỗi câu lệnh xử lý một tầng.
+     */
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        int total = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update("update META_FIELD c "
+                    + "set ROOT_ID = (select p.ROOT_ID from META_FIELD p where p.ID = c.PARENT_ID) "
+                    + "where c.ROOT_ID is null and c.PARENT_ID in (select p.ID from META_FIELD p "
+                    + "where p.ROOT_ID is not null)");
+            total += updated;
+        } while (updated > 0);
+        if (total > 0) {
+            log.info("Backfilled ROOT_ID of {} MetaField rows", total);
+        }
+    }
+}
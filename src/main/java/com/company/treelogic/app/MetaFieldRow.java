@@ -0,0 +1,9 @@
+package com.company.treelogic.app;
+
+import java.util.UUID;
+
+/**
+ * Một dòng META_FIELD đọc thẳng từ JDBC (không qua ORM), dùng cho các đường đọc khối lượng lớn.
+ */
+public record MetaFieldRow(UUID id, UUID parentId, String name, String description) {
+}
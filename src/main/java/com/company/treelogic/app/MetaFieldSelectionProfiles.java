@@ -0,0 +1,133 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.SelectionProfile;
+import com.company.treelogic.engine.CompressedBitmap;
+import com.company.treelogic.engine.SubtreeSelection;
+import io.jmix.core.DataManager;
+import io.jmix.core.TimeSource;
+import io.jmix.core.security.CurrentAuthentication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Profile lựa chọn có tên của người dùng hiện tại: các marker của một {@link SubtreeSelection} trên cây MetaField
+ * (gốc cây con được chọn / bị loại trừ), lưu thành hai {@link CompressedBitmap} các ordinal (xem
+ * {@link MetaFieldOrdinals}).
+ * <p>
+ * Ghi / đọc profile tỉ lệ với số marker, không với số node được chọn: chọn một nhánh 1 triệu node chỉ lưu một
+ * ordinal. Hợp / giao / hiệu giữa lựa chọn hiện tại và profile làm trên marker ({@link SubtreeSelection#combine}).
+ * Như mọi {@link SubtreeSelection}, lựa chọn gắn với đường đi: node bị di chuyển sau khi lưu nhận trạng thái của vị
+ * trí mới.
+ */
+@Service
+public class MetaFieldSelectionProfiles {
+
+    @Autowired
+    private DataManager dataManager;
+    @Autowired
+    private CurrentAuthentication currentAuthentication;
+    @Autowired
+    private TimeSource timeSource;
+    @Autowired
+    private MetaFieldOrdinals metaFieldOrdinals;
+    @Autowired
+    private MetaFieldRevisionTracker metaFieldRevisionTracker;
+
+    /**
+     * Tên các profile của người dùng hiện tại, theo thứ tự chữ cái.
+     */
+    public List<String> getNames() {
+        return dataManager.loadValues("select e.name from SelectionProfile e "
+                        + "where e.username = :username order by e.name")
+                .properties("name")
+                .parameter("username", currentUsername())
+                .list()
+                .stream()
+                .map(value -> value.<String>getValue("name"))
+                .toList();
+    }
+
+    /**
+     * Lựa chọn đã lưu, quan hệ cha - con lấy từ chỉ mục trong bộ nhớ của {@link MetaFieldRevisionTracker}. Marker của
+     * node đã bị xoá được bỏ qua.
+     *
+     * @return null nếu người dùng hiện tại không có profile tên này
+     */
+    public SubtreeSelection<UUID> load(String name) {
+        SelectionProfile profile = find(name).orElse(null);
+        if (profile == null) {
+            return null;
+        }
+        SubtreeSelection<UUID> selection = new SubtreeSelection<>(metaFieldRevisionTracker::getParentId);
+        CompressedBitmap data = CompressedBitmap.deserialize(profile.getData());
+        if (profile.getExcluded() == null) {
+            // Định dạng cũ: mọi node được chọn, nén lại thành marker một lần. O(số node &times; số con)
+            Set<UUID> members = new HashSet<>(metaFieldOrdinals.idsOf(data).values());
+            selection.replaceWith(members, metaFieldRevisionTracker::getChildren);
+            return selection;
+        }
+        CompressedBitmap excluded = CompressedBitmap.deserialize(profile.getExcluded());
+        Map<Integer, UUID> ids = metaFieldOrdinals.idsOf(data.or(excluded));
+        Map<UUID, Boolean> markers = new HashMap<>();
+        data.forEach(ordinal -> putMarker(markers, ids.get(ordinal), true));
+        excluded.forEach(ordinal -> putMarker(markers, ids.get(ordinal), false));
+        selection.applyMarkers(markers);
+        return selection;
+    }
+
+    /**
+     * Lưu (hoặc ghi đè) profile của người dùng hiện tại.
+     *
+     * @return Số node được chọn (tính từ số hậu duệ tại các marker, không liệt kê node)
+     */
+    public long save(String name, SubtreeSelection<UUID> selection) {
+        CompressedBitmap included = new CompressedBitmap();
+        CompressedBitmap excluded = new CompressedBitmap();
+        selection.forEachMarker((id, selected) -> {
+            int ordinal = metaFieldOrdinals.ordinalOf(id);
+            if (ordinal >= 0) {
+                (selected ? included : excluded).add(ordinal);
+            }
+        });
+        long nodeCount = selection.countSelected(id -> metaFieldRevisionTracker.getAggregate(id).descendants() + 1);
+
+        SelectionProfile profile = find(name).orElseGet(() -> {
+            SelectionProfile created = dataManager.create(SelectionProfile.class);
+            created.setUsername(currentUsername());
+            created.setName(name);
+            return created;
+        });
+        profile.setData(included.serialize());
+        profile.setExcluded(excluded.serialize());
+        profile.setNodeCount(nodeCount);
+        profile.setUpdatedAt(timeSource.now().toOffsetDateTime());
+        dataManager.save(profile);
+        return nodeCount;
+    }
+
+    private static void putMarker(Map<UUID, Boolean> markers, UUID id, boolean selected) {
+        if (id != null) {
+            markers.put(id, selected);
+        }
+    }
+
+    private Optional<SelectionProfile> find(String name) {
+        return dataManager.load(SelectionProfile.class)
+                .query("select e from SelectionProfile e where e.username = :username and e.name = :name")
+                .parameter("username", currentUsername())
+                .parameter("name", name)
+                .optional();
+    }
+
+    private String currentUsername() {
+        return currentAuthentication.getUser().getUsername();
+    }
+}
@@ -0,0 +1,72 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaFieldChangeType;
+import com.company.treelogic.engine.SharedSubtreeSelection;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.shared.Registration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Lựa chọn "included" dùng chung cho mọi phiên đang bật chế độ chọn chung trên cây MetaField (trong phạm vi một
+ * node server, giống {@link MetaFieldChangeBus}).
+ * <p>
+ * Quan hệ cha - con lấy từ chỉ mục trong bộ nhớ của {@link MetaFieldRevisionTracker}, nên mọi phiên thấy cùng một
+ * cây dù container của từng phiên nạp tới đâu. Mỗi thay đổi được đẩy tới các UI đã đăng ký qua {@code UI.access}
+ * (kênh {@code @Push}). Khi node bị di chuyển sang cây khác, marker của nó được chuyển theo.
+ */
+@Component
+public class MetaFieldSharedSelection {
+
+    @Autowired
+    private MetaFieldRevisionTracker metaFieldRevisionTracker;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+
+    private SharedSubtreeSelection<UUID> selection;
+
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        metaFieldChangeBus.subscribe(deltas -> {
+            Map<UUID, UUID> newParents = new HashMap<>();
+            for (MetaFieldDelta delta : deltas) {
+                if (delta.type() == MetaFieldChangeType.MOVE) {
+                    newParents.put(delta.id(), delta.parentId());
+                }
+            }
+            if (!newParents.isEmpty()) {
+                getSelection().rehome(newParents);
+            }
+        });
+    }
+
+    public synchronized SharedSubtreeSelection<UUID> getSelection() {
+        if (selection == null) {
+            selection = new SharedSubtreeSelection<>(metaFieldRevisionTracker::getParentId);
+        }
+        return selection;
+    }
+
+    /**
+     * Đăng ký nhận thông báo thay đổi cho một UI. Listener chạy trong {@code ui.access}, chỉ với thay đổi đến từ nơi
+     * khác: UI vừa ghi đã tự refresh phần bị ảnh hưởng.
+     *
+     * @return Registration - phải gọi {@code remove()} khi view đóng hoặc tắt chế độ chọn chung
+     */
+    public Registration subscribe(UI ui, Runnable listener) {
+        Runnable subscriber = () -> {
+            // Listener chạy trên thread vừa ghi: là request của chính UI này thì không đẩy lại
+            if (UI.getCurrent() != ui) {
+                ui.access(listener::run);
+            }
+        };
+        getSelection().addChangeListener(subscriber);
+        return () -> getSelection().removeChangeListener(subscriber);
+    }
+}
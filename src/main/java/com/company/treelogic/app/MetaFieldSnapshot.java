@@ -0,0 +1,213 @@
+package com.company.treelogic.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Ảnh chụp nhị phân của cả rừng MetaField, đọc qua memory-mapped file (không parse, không tạo object cho tới khi
+ * cần).
+ * <p>
+ * Định dạng (big-endian):
+ * <pre>
+ * header   magic:int  version:int  revision:long  createdAt:long  nodeCount:int  stringCount:int  heapBytes:int
+ * ids      nodeCount x (msb:long, lsb:long)
+ * parents  nodeCount x int      chỉ số của cha trong mảng ids, -1 = gốc
+ * names    nodeCount x int      chỉ số trong từ điển chuỗi, -1 = null
+ * descs    nodeCount x int      như names
+ * strings  (stringCount + 1) x int   offset của từng chuỗi trong heap
+ * heap     heapBytes x byte     các chuỗi UTF-8 không trùng lặp, nối liền
+ * crc      int                  CRC32 của toàn bộ phần trước
+ * </pre>
+ * Tên / mô tả lặp lại chỉ được lưu một lần (dictionary encoding).
+ */
+public final class MetaFieldSnapshot {
+
+    static final int MAGIC = 0x544C534E; // "TLSN"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private final ByteBuffer buffer;
+    private final long revision;
+    private final long createdAt;
+    private final int size;
+    private final int parentsOffset;
+    private final int namesOffset;
+    private final int descriptionsOffset;
+    private final int stringsOffset;
+    private final int heapOffset;
+
+    private MetaFieldSnapshot(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_BYTES + 4 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a MetaField snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Unsupported MetaField snapshot version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.revision = buffer.getLong(8);
+        this.createdAt = buffer.getLong(16);
+        this.size = buffer.getInt(24);
+        int stringCount = buffer.getInt(28);
+        int heapBytes = buffer.getInt(32);
+
+        this.parentsOffset = HEADER_BYTES + size * 16;
+        this.namesOffset = parentsOffset + size * 4;
+        this.descriptionsOffset = namesOffset + size * 4;
+        this.stringsOffset = descriptionsOffset + size * 4;
+        this.heapOffset = stringsOffset + (stringCount + 1) * 4;
+
+        int length = heapOffset + heapBytes;
+        if (buffer.capacity() != length + 4 || buffer.getInt(length) != crc(buffer, length)) {
+            throw new IllegalStateException("Corrupted MetaField snapshot");
+        }
+    }
+
+    /**
+     * Map file ở chế độ chỉ đọc. Vùng map vẫn hợp lệ sau khi channel đóng.
+     *
+     * @throws IllegalStateException nếu file sai định dạng / hỏng
+     */
+    public static MetaFieldSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MetaFieldSnapshot(buffer);
+        }
+    }
+
+    /**
+     * Ghi snapshot ra file tạm rồi đổi tên (atomic), nên bên đọc không bao giờ thấy file ghi dở.
+     *
+     * @param revision  Revision của {@link MetaFieldChangeLog} mà các dòng phản ánh
+     * @param createdAt Thời điểm chụp (epoch millis)
+     */
+    public static void write(Path file, long revision, long createdAt, List<MetaFieldRow> rows) throws IOException {
+        int size = rows.size();
+        Map<UUID, Integer> indexes = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            indexes.put(rows.get(i).id(), i);
+        }
+
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<Integer> stringOffsets = new ArrayList<>();
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        int[] names = new int[size];
+        int[] descriptions = new int[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = intern(rows.get(i).name(), dictionary, stringOffsets, heap);
+            descriptions[i] = intern(rows.get(i).description(), dictionary, stringOffsets, heap);
+        }
+        stringOffsets.add(heap.size());
+        byte[] heapBytes = heap.toByteArray();
+
+        int length = HEADER_BYTES + size * (16 + 4 + 4 + 4) + stringOffsets.size() * 4 + heapBytes.length;
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length + 4L);
+                out.putInt(MAGIC).putInt(VERSION).putLong(revision).putLong(createdAt)
+                        .putInt(size).putInt(stringOffsets.size() - 1).putInt(heapBytes.length);
+                for (MetaFieldRow row : rows) {
+                    out.putLong(row.id().getMostSignificantBits()).putLong(row.id().getLeastSignificantBits());
+                }
+                for (MetaFieldRow row : rows) {
+                    Integer parentIndex = row.parentId() != null ? indexes.get(row.parentId()) : null;
+                    out.putInt(parentIndex != null ? parentIndex : -1);
+                }
+                for (int name : names) {
+                    out.putInt(name);
+                }
+                for (int description : descriptions) {
+                    out.putInt(description);
+                }
+                for (int offset : stringOffsets) {
+                    out.putInt(offset);
+                }
+                out.put(heapBytes);
+                out.putInt(crc(out, length));
+                out.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public UUID id(int index) {
+        int offset = HEADER_BYTES + index * 16;
+        return new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+    }
+
+    /**
+     * @return Chỉ số của cha, -1 nếu là node gốc
+     */
+    public int parentIndex(int index) {
+        return buffer.getInt(parentsOffset + index * 4);
+    }
+
+    public String name(int index) {
+        return string(buffer.getInt(namesOffset + index * 4));
+    }
+
+    public String description(int index) {
+        return string(buffer.getInt(descriptionsOffset + index * 4));
+    }
+
+    private String string(int ref) {
+        if (ref < 0) {
+            return null;
+        }
+        int from = buffer.getInt(stringsOffset + ref * 4);
+        int to = buffer.getInt(stringsOffset + (ref + 1) * 4);
+        byte[] bytes = new byte[to - from];
+        buffer.get(heapOffset + from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int intern(String value, Map<String, Integer> dictionary,
+                              List<Integer> offsets, ByteArrayOutputStream heap) {
+        if (value == null) {
+            return -1;
+        }
+        return dictionary.computeIfAbsent(value, key -> {
+            offsets.add(heap.size());
+            heap.writeBytes(key.getBytes(StandardCharsets.UTF_8));
+            return offsets.size() - 1;
+        });
+    }
+
+    private static int crc(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(length));
+        return (int) crc.getValue();
+    }
+}
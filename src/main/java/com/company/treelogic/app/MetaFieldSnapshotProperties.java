@@ -0,0 +1,20 @@
+package com.company.treelogic.app;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Cấu hình file snapshot nhị phân của cây MetaField.
+ *
+ * @param enabled  Ghi snapshot định kỳ và dùng nó khi khởi động
+ * @param file     Đường dẫn file
+ * @param interval Chu kỳ ghi (chỉ ghi khi revision đã đổi)
+ */
+@ConfigurationProperties(prefix = "treelogic.snapshot")
+public record MetaFieldSnapshotProperties(@DefaultValue("true") boolean enabled,
+                                          @DefaultValue(".jmix/snapshot/meta-field.snap") Path file,
+                                          @DefaultValue("15m") Duration interval) {
+}
@@ -0,0 +1,80 @@
+package com.company.treelogic.app;
+
+import io.jmix.core.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ghi định kỳ và nạp lúc khởi động file {@link MetaFieldSnapshot}.
+ * <p>
+ * Bên dùng (VD: {@link MetaFieldRevisionTracker}) nạp snapshot rồi đọc tiếp phần đuôi
+ * {@link MetaFieldChangeLog#changesSince(long, int)} từ {@link MetaFieldSnapshot#getRevision()}, thay vì quét lại
+ * cả bảng META_FIELD.
+ */
+@Component
+public class MetaFieldSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldSnapshotStore.class);
+
+    private static final int CHUNK_SIZE = 10_000;
+
+    @Autowired
+    private MetaFieldChangeLog metaFieldChangeLog;
+    @Autowired
+    private TimeSource timeSource;
+    @Autowired
+    private MetaFieldSnapshotProperties properties;
+
+    private volatile long writtenRevision = -1;
+
+    /**
+     * @return Snapshot đã map, hoặc null nếu tắt / chưa có / không đọc được (khi đó phải nạp từ DB)
+     */
+    public MetaFieldSnapshot load() {
+        if (!properties.enabled() || !Files.isReadable(properties.file())) {
+            return null;
+        }
+        try {
+            MetaFieldSnapshot snapshot = MetaFieldSnapshot.map(properties.file());
+            writtenRevision = snapshot.getRevision();
+            log.info("MetaField snapshot loaded: {} nodes at revision {}", snapshot.size(), snapshot.getRevision());
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot load MetaField snapshot {}, falling back to database", properties.file(), e);
+            return null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${treelogic.snapshot.interval:15m}",
+            initialDelayString = "${treelogic.snapshot.interval:15m}")
+    public void writeIfChanged() {
+        if (!properties.enabled() || metaFieldChangeLog.getCurrentRevision() == writtenRevision) {
+            return;
+        }
+        write();
+    }
+
+    /**
+     * Chụp lại toàn bộ bảng và ghi đè file snapshot.
+     */
+    public synchronized void write() {
+        long createdAt = timeSource.currentTimeMillis();
+        List<MetaFieldRow> rows = new ArrayList<>();
+        long revision = metaFieldChangeLog.snapshot(CHUNK_SIZE, rows::addAll);
+        try {
+            MetaFieldSnapshot.write(properties.file(), revision, createdAt, rows);
+            writtenRevision = revision;
+            log.debug("MetaField snapshot written: {} nodes at revision {}", rows.size(), revision);
+        } catch (IOException e) {
+            log.warn("Cannot write MetaField snapshot {}", properties.file(), e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.company.treelogic.app;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Cấu hình khoá sắp xếp anh em của MetaField.
+ *
+ * @param maxLength Nhóm anh em có khoá dài hơn ngưỡng này được cân bằng lại ở lần chạy nền tiếp theo
+ */
+@ConfigurationProperties(prefix = "treelogic.sort-key")
+public record MetaFieldSortKeyProperties(@DefaultValue("16") int maxLength) {
+}
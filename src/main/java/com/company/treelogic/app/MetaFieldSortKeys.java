@@ -0,0 +1,295 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import com.company.treelogic.engine.FractionalIndex;
+import io.jmix.core.DataManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Thứ tự anh em của MetaField theo khoá {@code SORT_KEY} ({@link FractionalIndex}), đọc thẳng từ chỉ mục
+ * {@code (PARENT_ID, SORT_KEY, ID)}: truy vấn con không cần sắp xếp trong bộ nhớ.
+ * <p>
+ * Chèn / di chuyển chỉ ghi đúng một dòng (khoá mới nằm giữa hai anh em kề bên); node đổi cha mà không kèm vị trí
+ * thì về cuối danh sách con của cha mới. Khoá dài dần khi liên tục chèn vào cùng một khe; {@link #rebalance()} chạy
+ * nền và chỉ đánh lại khoá cho nhóm anh em có khoá vượt {@code treelogic.sort-key.max-length} (hoặc có khoá trùng).
+ * <p>
+ * Mọi đường ghi khoá dựa trên khoá anh em (cấp khoá cuối, di chuyển, cân bằng lại) khoá nhóm anh em trước khi đọc
+ * ({@link #lockSiblings}): khoá dòng của node cha, hoặc dòng {@code META_FIELD_REVISION} cho nhóm node gốc. Khoá giữ
+ * tới khi commit, nên cân bằng lại không ghi đè khoá mà một lần di chuyển đồng thời vừa tính từ khoá cũ (và ngược
+ * lại), kể cả giữa nhiều instance.
+ */
+@Component
+public class MetaFieldSortKeys {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldSortKeys.class);
+
+    @Autowired
+    private DataManager dataManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MetaFieldSortKeyProperties properties;
+    @Autowired
+    private MetaFieldChangeLog metaFieldChangeLog;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+
+    /**
+     * Khoá để thêm node vào cuối danh sách con của {@code parentId} (null = node gốc).
+     * <p>
+     * Trong một transaction, khoá cuối đã cấp cho mỗi cha được nhớ lại: nhiều node cùng cha được lưu trong một lần
+     * (VD: {@link MetaFieldTreeDiff#merge}) nhận các khoá tăng dần, không cùng đọc một giá trị max rồi trùng khoá. Mỗi
+     * cha chỉ đọc max trên chỉ mục một lần cho cả lô.
+     */
+    public String keyForLast(UUID parentId) {
+        return keyForLast(parentId, null);
+    }
+
+    /**
+     * Như {@link #keyForLast(UUID)}, bỏ qua khoá hiện tại của chính node {@code excludedId} (node đang được chuyển
+     * sang cha này, dòng của nó đã mang {@code PARENT_ID} mới).
+     */
+    public String keyForLast(UUID parentId, UUID excludedId) {
+        Map<UUID, String> lastKeys = transactionLastKeys();
+        String last;
+        if (lastKeys.containsKey(parentId)) {
+            last = lastKeys.get(parentId);
+        } else {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                lockSiblings(parentId);
+            }
+            last = loadLastKey(parentId, excludedId);
+        }
+        String key = FractionalIndex.between(last, null);
+        lastKeys.put(parentId, key);
+        return key;
+    }
+
+    /**
+     * Đưa node vừa đổi cha (không kèm khoá mới) về cuối danh sách con của cha mới: khoá cũ thuộc về thứ tự của cha cũ.
+     * Phải được gọi trong transaction đang ghi MetaField, sau khi dòng đã mang {@code PARENT_ID} mới.
+     *
+     * @return Khoá mới đã ghi
+     */
+    public String assignLast(UUID id, UUID parentId) {
+        String key = keyForLast(parentId, id);
+        jdbcTemplate.update("update META_FIELD set SORT_KEY = ? where ID = ?", key, id);
+        return key;
+    }
+
+    /**
+     * Di chuyển node tới ngay trước / sau node {@code targetId}, cùng cha với nó (kéo thả trên cây). Anh em kề bên đọc
+     * bằng một truy vấn keyset trên chỉ mục {@code (PARENT_ID, SORT_KEY, ID)}.
+     *
+     * @param before true = đứng trước {@code targetId}, false = đứng sau
+     * @return Node đã lưu
+     */
+    public MetaField moveNextTo(UUID id, UUID targetId, boolean before) {
+        return transactionTemplate.execute(status -> {
+            UUID parentId = jdbcTemplate.queryForObject(
+                    "select PARENT_ID from META_FIELD where ID = ?", UUID.class, targetId);
+            lockSiblings(parentId);
+            // Đọc khoá sau khi đã khoá nhóm: cân bằng lại không thể đổi nó trước khi lần di chuyển này commit
+            String sortKey = loadSortKey(targetId);
+            return moveNextTo(id, targetId, before, parentId, sortKey);
+        });
+    }
+
+    private MetaField moveNextTo(UUID id, UUID targetId, boolean before, UUID parentId, String sortKey) {
+        String parentCondition = parentId == null ? "PARENT_ID is null" : "PARENT_ID = ?";
+        String sql = before
+                ? "select ID from META_FIELD where " + parentCondition + " and ID <> ? "
+                + "and (SORT_KEY < ? or (SORT_KEY = ? and ID < ?)) order by SORT_KEY desc, ID desc limit 1"
+                : "select ID from META_FIELD where " + parentCondition + " and ID <> ? "
+                + "and (SORT_KEY > ? or (SORT_KEY = ? and ID > ?)) order by SORT_KEY, ID limit 1";
+        List<Object> args = new ArrayList<>();
+        if (parentId != null) {
+            args.add(parentId);
+        }
+        args.addAll(List.of(id, sortKey, sortKey, targetId));
+        List<UUID> neighbours = jdbcTemplate.queryForList(sql, UUID.class, args.toArray());
+        UUID neighbour = neighbours.isEmpty() ? null : neighbours.get(0);
+        return before
+                ? moveBetween(id, parentId, neighbour, targetId)
+                : moveBetween(id, parentId, targetId, neighbour);
+    }
+
+    /**
+     * Di chuyển node tới dưới {@code parentId}, nằm giữa hai anh em {@code previousId} và {@code nextId}. Chỉ dòng
+     * của chính node được ghi (cha + khoá), các anh em giữ nguyên. Nhóm anh em của cha cũ và cha mới bị khoá tới khi
+     * commit.
+     *
+     * @param parentId   Cha mới (null = node gốc)
+     * @param previousId Anh em đứng trước (null = đầu danh sách)
+     * @param nextId     Anh em đứng sau (null = cuối danh sách)
+     * @return Node đã lưu
+     */
+    public MetaField moveBetween(UUID id, UUID parentId, UUID previousId, UUID nextId) {
+        return transactionTemplate.execute(status -> {
+            UUID oldParentId = jdbcTemplate.queryForObject(
+                    "select PARENT_ID from META_FIELD where ID = ?", UUID.class, id);
+            lockSiblings(oldParentId, parentId);
+            return doMoveBetween(id, parentId, previousId, nextId);
+        });
+    }
+
+    private MetaField doMoveBetween(UUID id, UUID parentId, UUID previousId, UUID nextId) {
+        MetaField metaField = dataManager.load(MetaField.class).id(id).one();
+        String before = previousId != null ? loadSortKey(previousId) : null;
+        String after = nextId != null ? loadSortKey(nextId) : null;
+        if (previousId == null && nextId == null) {
+            before = parentId == null
+                    ? jdbcTemplate.queryForObject("select max(SORT_KEY) from META_FIELD "
+                    + "where PARENT_ID is null and ID <> ?", String.class, id)
+                    : jdbcTemplate.queryForObject("select max(SORT_KEY) from META_FIELD "
+                    + "where PARENT_ID = ? and ID <> ?", String.class, parentId, id);
+        }
+        // Anh em trùng khoá (chưa cân bằng lại): xếp ngay sau anh em đứng trước
+        metaField.setSortKey(before != null && before.equals(after)
+                ? FractionalIndex.between(before, null)
+                : FractionalIndex.between(before, after));
+        metaField.setParent(parentId != null ? dataManager.getReference(MetaField.class, parentId) : null);
+        return dataManager.save(metaField);
+    }
+
+    /**
+     * Đánh lại khoá cho các nhóm anh em có khoá quá dài hoặc trùng nhau (VD: dữ liệu cũ mang khoá mặc định). Mỗi nhóm
+     * trong một transaction riêng, khoá mới là các số nguyên liên tiếp ngắn nhất có thể, giữ nguyên thứ tự hiện tại;
+     * các anh em trùng khoá được xếp theo tên rồi ID (thay vì theo UUID ngẫu nhiên).
+     * <p>
+     * Khoá được ghi bằng JDBC (không qua {@code EntityChangedEvent}), nên mỗi dòng đổi khoá được ghi tay vào
+     * {@link MetaFieldChangeLog} và {@link MetaFieldChangeBus} như một UPDATE: revision tăng, ETag và các phiên đang
+     * mở cây thấy thứ tự mới.
+     */
+    @Scheduled(fixedDelayString = "${treelogic.sort-key.rebalance-interval:1h}",
+            initialDelayString = "${treelogic.sort-key.rebalance-interval:1h}")
+    public void rebalance() {
+        List<UUID> parentIds = jdbcTemplate.queryForList("select PARENT_ID from META_FIELD "
+                + "where char_length(SORT_KEY) > ? "
+                + "union select PARENT_ID from META_FIELD group by PARENT_ID, SORT_KEY having count(*) > 1",
+                UUID.class, properties.maxLength());
+        for (UUID parentId : parentIds) {
+            int count = transactionTemplate.execute(status -> rebalance(parentId));
+            log.info("Rewrote {} MetaField sort keys under {}", count, parentId);
+        }
+    }
+
+    /**
+     * Cân bằng lại ngay khi khởi động thay vì chờ lượt chạy nền đầu tiên: dữ liệu có trước cột {@code SORT_KEY} mang
+     * cùng khoá mặc định {@code a0}, và cho tới khi được đánh lại khoá, thứ tự anh em chỉ còn dựa vào ID.
+     */
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        rebalance();
+    }
+
+    private int rebalance(UUID parentId) {
+        lockSiblings(parentId);
+        String parentCondition = parentId == null ? "PARENT_ID is null" : "PARENT_ID = ?";
+        Object[] parentArgs = parentId == null ? new Object[0] : new Object[]{parentId};
+        List<MetaFieldDelta> rows = jdbcTemplate.query("select ID, NAME, DESCRIPTION, SORT_KEY from META_FIELD "
+                        + "where " + parentCondition + " order by SORT_KEY, NAME, ID",
+                (rs, rowNum) -> new MetaFieldDelta(MetaFieldChangeType.UPDATE, rs.getObject("ID", UUID.class),
+                        parentId, rs.getString("NAME"), rs.getString("DESCRIPTION"), rs.getString("SORT_KEY"), 0L),
+                parentArgs);
+        List<String> keys = FractionalIndex.sequence(rows.size());
+        List<MetaFieldDelta> changed = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            MetaFieldDelta row = rows.get(i);
+            if (!Objects.equals(row.sortKey(), keys.get(i))) {
+                changed.add(new MetaFieldDelta(row.type(), row.id(), parentId, row.name(), row.description(),
+                        keys.get(i), 0L));
+            }
+        }
+        List<Object[]> args = new ArrayList<>(changed.size());
+        for (MetaFieldDelta delta : changed) {
+            args.add(new Object[]{delta.sortKey(), delta.id()});
+        }
+        jdbcTemplate.batchUpdate("update META_FIELD set SORT_KEY = ? where ID = ?", args);
+        for (MetaFieldDelta delta : changed) {
+            long revision = metaFieldChangeLog.append(delta);
+            metaFieldChangeBus.collect(delta.withRevision(revision));
+        }
+        return changed.size();
+    }
+
+    /**
+     * Khoá các nhóm anh em của những cha đã cho (null = nhóm node gốc) tới hết transaction hiện tại: update không đổi
+     * giá trị trên dòng cha, hoặc trên dòng {@code META_FIELD_REVISION} cho nhóm node gốc. Khoá theo một thứ tự cố
+     * định (nhóm gốc trước, rồi theo ID) để hai lần di chuyển ngược chiều không deadlock.
+     */
+    private void lockSiblings(UUID... parentIds) {
+        SortedSet<UUID> groups = new TreeSet<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        groups.addAll(Arrays.asList(parentIds));
+        for (UUID parentId : groups) {
+            if (parentId == null) {
+                jdbcTemplate.update("update META_FIELD_REVISION set CURRENT_REVISION = CURRENT_REVISION where ID = 1");
+            } else {
+                jdbcTemplate.update("update META_FIELD set SORT_KEY = SORT_KEY where ID = ?", parentId);
+            }
+        }
+    }
+
+    private String loadLastKey(UUID parentId, UUID excludedId) {
+        String parentCondition = parentId == null ? "PARENT_ID is null" : "PARENT_ID = ?";
+        List<Object> args = new ArrayList<>();
+        if (parentId != null) {
+            args.add(parentId);
+        }
+        if (excludedId != null) {
+            args.add(excludedId);
+        }
+        return jdbcTemplate.queryForObject("select max(SORT_KEY) from META_FIELD where " + parentCondition
+                + (excludedId != null ? " and ID <> ?" : ""), String.class, args.toArray());
+    }
+
+    /**
+     * Khoá cuối đã cấp theo cha trong transaction hiện tại (map mới, không giữ lại, nếu không có transaction).
+     */
+    @SuppressWarnings("unchecked")
+    private Map<UUID, String> transactionLastKeys() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new HashMap<>();
+        }
+        Map<UUID, String> lastKeys = (Map<UUID, String>) TransactionSynchronizationManager.getResource(this);
+        if (lastKeys == null) {
+            lastKeys = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, lastKeys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MetaFieldSortKeys.this);
+                }
+            });
+        }
+        return lastKeys;
+    }
+
+    private String loadSortKey(UUID id) {
+        return jdbcTemplate.queryForObject("select SORT_KEY from META_FIELD where ID = ?", String.class, id);
+    }
+}
@@ -0,0 +1,215 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.engine.MerkleTree;
+import com.company.treelogic.engine.MerkleTree.Change;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import io.jmix.core.DataManager;
+import io.jmix.core.FetchPlan;
+import io.jmix.core.SaveContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * So sánh một cây MetaField nhập từ bên ngoài (VD: file import, cùng id với META_FIELD) với dữ liệu hiện có mà không
+ * nạp lại cả bảng, rồi áp dụng phần chênh lệch thành một lô.
+ * <p>
+ * Giữ trong bộ nhớ một {@link MerkleTree} của META_FIELD: nội dung của mỗi node là (id, tên, mô tả), thứ tự anh em
+ * ({@code SORT_KEY}) không tính. Nạp một lần khi khởi động (qua {@link MetaFieldChangeLog#snapshot}), sau đó cập nhật
+ * theo delta từ {@link MetaFieldChangeBus}, mỗi delta O(độ sâu). Khi so sánh chỉ phải băm cây nhập vào; phần so sánh
+ * chỉ đi xuống những nhánh có mã băm khác nhau ({@link MerkleTree#diff}).
+ * <p>
+ * Chỉ phản ánh thay đổi commit trên node hiện tại (giống {@link MetaFieldChangeBus}).
+ */
+@Component
+public class MetaFieldTreeDiff {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldTreeDiff.class);
+
+    private static final int CHUNK_SIZE = 10000;
+    // Số id tối đa trong một danh sách IN (...)
+    private static final int IN_BATCH = 1000;
+
+    @Autowired
+    private DataManager dataManager;
+    @Autowired
+    private MetaFieldChangeLog metaFieldChangeLog;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+
+    // Đọc / ghi dưới khoá của this; nạp lại thì thay cả cây
+    private MerkleTree<UUID> hashes = new MerkleTree<>();
+    private boolean loaded;
+    // Khác null khi đang nạp lại: delta tới trong lúc quét, áp dụng sau khi quét xong
+    private List<MetaFieldDelta> pending;
+    // Chỉ một lượt nạp lại tại một thời điểm; không giữ khoá của this trong lúc quét
+    private final Object reloadLock = new Object();
+
+    @EventListener
+    public void onApplicationReady(final ApplicationReadyEvent event) {
+        metaFieldChangeBus.subscribe(this::apply);
+        reload();
+    }
+
+    /**
+     * Băm lại toàn bộ bảng vào một cây mới, không chặn việc nhận delta: delta commit trong lúc quét được giữ lại rồi
+     * áp dụng lên cây mới (upsert / xoá) trước khi thay cây cũ, nên không bị mất.
+     */
+    public void reload() {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            MerkleTree<UUID> scanned = new MerkleTree<>();
+            metaFieldChangeLog.snapshot(CHUNK_SIZE, chunk -> chunk.forEach(row ->
+                    scanned.add(row.id(), row.parentId(), contentHash(row.id(), row.name(), row.description()))));
+            scanned.rebuild();
+            synchronized (this) {
+                update(scanned, pending);
+                pending = null;
+                hashes = scanned;
+                loaded = true;
+            }
+            log.debug("MetaField tree hashes loaded for {} nodes", scanned.size());
+        }
+    }
+
+    /**
+     * Mã băm của node kèm toàn bộ cây con (0 nếu node không tồn tại).
+     */
+    public synchronized long getSubtreeHash(UUID id) {
+        return hashes.getHash(id);
+    }
+
+    /**
+     * Tập thay đổi nhỏ nhất để META_FIELD trở thành cây {@code imported} (toàn bộ cây, khớp node theo id), theo thứ tự
+     * áp dụng được (xem {@link MerkleTree#diff}).
+     */
+    public List<Change<UUID>> diff(Collection<MetaFieldRow> imported) {
+        // Băm cây nhập vào ngoài khoá: chỉ phần so sánh cần trạng thái hiện tại ổn định
+        MerkleTree<UUID> target = new MerkleTree<>();
+        for (MetaFieldRow row : imported) {
+            target.add(row.id(), row.parentId(), contentHash(row.id(), row.name(), row.description()));
+        }
+        target.rebuild();
+        synchronized (this) {
+            if (!loaded) {
+                throw new IllegalStateException("MetaField tree hashes are not loaded yet");
+            }
+            return MerkleTree.diff(hashes, target);
+        }
+    }
+
+    /**
+     * Áp dụng tập thay đổi của {@link #diff} trong một lần lưu (một transaction): thêm / di chuyển / sửa rồi xoá, lấy
+     * tên và mô tả từ {@code imported}. Log thay đổi, {@code ROOT_ID}, ordinal... được cập nhật như mọi lần lưu khác.
+     * Node di chuyển được listener lưu MetaField xếp cuối danh sách con của cha mới
+     * ({@link MetaFieldSortKeys#assignLast}), không mang {@code SORT_KEY} của cha cũ sang.
+     */
+    public void merge(Collection<MetaFieldRow> imported, List<Change<UUID>> changes) {
+        Map<UUID, MetaFieldRow> rows = new HashMap<>();
+        imported.forEach(row -> rows.put(row.id(), row));
+
+        List<UUID> existingIds = changes.stream()
+                .filter(change -> change.type() == Change.Type.MOVE || change.type() == Change.Type.UPDATE)
+                .map(Change::id)
+                .distinct()
+                .toList();
+        Map<UUID, MetaField> entities = new HashMap<>();
+        for (int from = 0; from < existingIds.size(); from += IN_BATCH) {
+            dataManager.load(MetaField.class)
+                    .ids(existingIds.subList(from, Math.min(from + IN_BATCH, existingIds.size())))
+                    .fetchPlan(FetchPlan.BASE)
+                    .list()
+                    .forEach(metaField -> entities.put(metaField.getId(), metaField));
+        }
+
+        SaveContext saveContext = new SaveContext();
+        List<MetaField> removed = new ArrayList<>();
+        for (Change<UUID> change : changes) {
+            MetaFieldRow row = rows.get(change.id());
+            switch (change.type()) {
+                case ADD -> {
+                    MetaField metaField = dataManager.create(MetaField.class);
+                    metaField.setId(change.id());
+                    metaField.setName(Objects.toString(row.name(), ""));
+                    metaField.setDescription(row.description());
+                    metaField.setParent(parentOf(change.parentId(), entities));
+                    entities.put(change.id(), metaField);
+                    saveContext.saving(metaField);
+                }
+                case MOVE -> {
+                    MetaField metaField = existing(change.id(), entities);
+                    metaField.setParent(parentOf(change.parentId(), entities));
+                    saveContext.saving(metaField);
+                }
+                case UPDATE -> {
+                    MetaField metaField = existing(change.id(), entities);
+                    metaField.setName(Objects.toString(row.name(), ""));
+                    metaField.setDescription(row.description());
+                    saveContext.saving(metaField);
+                }
+                case REMOVE -> removed.add(dataManager.getReference(MetaField.class, change.id()));
+            }
+        }
+        // Đã theo thứ tự con trước cha
+        saveContext.removing(removed);
+        dataManager.save(saveContext);
+    }
+
+    private static MetaField existing(UUID id, Map<UUID, MetaField> entities) {
+        MetaField metaField = entities.get(id);
+        if (metaField == null) {
+            // Bị xoá sau lần diff: tập thay đổi đã cũ
+            throw new IllegalStateException("MetaField " + id + " no longer exists, diff again");
+        }
+        return metaField;
+    }
+
+    private MetaField parentOf(UUID parentId, Map<UUID, MetaField> entities) {
+        if (parentId == null) {
+            return null;
+        }
+        // Cha vừa được thêm trong cùng lô: dùng chính instance đó
+        MetaField parent = entities.get(parentId);
+        return parent != null ? parent : dataManager.getReference(MetaField.class, parentId);
+    }
+
+    synchronized void apply(List<MetaFieldDelta> deltas) {
+        if (pending != null) {
+            pending.addAll(deltas);
+        } else if (loaded) {
+            update(hashes, deltas);
+        }
+        // Chưa nạp lần nào: reload() sẽ đọc trạng thái mới nhất
+    }
+
+    private static void update(MerkleTree<UUID> tree, List<MetaFieldDelta> deltas) {
+        for (MetaFieldDelta delta : deltas) {
+            if (delta.type() == MetaFieldChangeType.DELETE) {
+                tree.remove(delta.id());
+            } else {
+                tree.put(delta.id(), delta.parentId(), contentHash(delta.id(), delta.name(), delta.description()));
+            }
+        }
+    }
+
+    /**
+     * Mô tả null và rỗng được coi như nhau: import không phân biệt hai trường hợp này.
+     */
+    private static long contentHash(UUID id, String name, String description) {
+        return MerkleTree.hash(id, Objects.toString(name, ""), Objects.toString(description, ""));
+    }
+}
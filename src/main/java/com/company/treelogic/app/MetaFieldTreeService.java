@@ -0,0 +1,352 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.datasource.ReadReplicaRouting;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.engine.TreeAggregates.Aggregate;
+import io.jmix.core.DataManager;
+import io.jmix.core.FetchPlan;
+import io.jmix.core.FetchPlans;
+import io.jmix.core.FluentLoader;
+import io.jmix.core.LoadContext;
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.LogicalCondition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Truy vấn cây MetaField theo từng phần (chunk), dùng keyset trên thứ tự anh em {@code (SORT_KEY, ID)} để mỗi chunk
+ * có chi phí cố định và trả về đã sắp xếp sẵn từ chỉ mục.
+ */
+@Component
+public class MetaFieldTreeService {
+
+    // Số id tối đa trong một danh sách IN (...)
+    private static final int IN_BATCH = 1000;
+
+    @Autowired
+    private DataManager dataManager;
+    @Autowired
+    private FetchPlans fetchPlans;
+    @Autowired
+    private MetaFieldRevisionTracker metaFieldRevisionTracker;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MetaFieldPaths metaFieldPaths;
+
+    /**
+     * Lấy một chunk node gốc (không có cha), theo thứ tự anh em.
+     *
+     * @param after Node cuối cùng của chunk trước (null = chunk đầu tiên)
+     * @param limit Số dòng tối đa
+     */
+    public List<MetaField> loadRootsChunk(MetaField after, int limit) {
+        String query = after == null
+                ? "select e from MetaField e where e.parent is null order by e.sortKey, e.id"
+                : "select e from MetaField e where e.parent is null "
+                + "and (e.sortKey > :sortKey or (e.sortKey = :sortKey and e.id > :afterId)) "
+                + "order by e.sortKey, e.id";
+        return ReadReplicaRouting.readOnly(() -> {
+            FluentLoader.ByQuery<MetaField> loader = dataManager.load(MetaField.class)
+                    .query(query)
+                    .fetchPlan(treeFetchPlan())
+                    .maxResults(limit);
+            if (after != null) {
+                loader.parameter("sortKey", after.getSortKey())
+                        .parameter("afterId", after.getId());
+            }
+            return loader.list();
+        });
+    }
+
+    /**
+     * Như {@link #loadRootsChunk(MetaField, int)}; khi giới hạn trong một cây thì chỉ có đúng node gốc của cây đó.
+     *
+     * @param rootId Id node gốc của cây (null = mọi cây)
+     */
+    public List<MetaField> loadRootsChunk(UUID rootId, MetaField after, int limit) {
+        if (rootId == null) {
+            return loadRootsChunk(after, limit);
+        }
+        if (after != null) {
+            return List.of();
+        }
+        return ReadReplicaRouting.readOnly(() -> dataManager.load(MetaField.class)
+                .id(rootId)
+                .fetchPlan(treeFetchPlan())
+                .optional()
+                .map(List::of)
+                .orElse(List.of()));
+    }
+
+    /**
+     * Lấy một chunk con trực tiếp của các node cho trước (một truy vấn {@code PARENT_ID IN (...)}), nhóm theo cha và
+     * theo thứ tự anh em trong từng nhóm - đúng thứ tự của chỉ mục {@code (PARENT_ID, SORT_KEY, ID)}.
+     *
+     * @param parentIds Id các node cha
+     * @param after     Node cuối cùng của chunk trước (null = chunk đầu tiên)
+     * @param limit     Số dòng tối đa
+     */
+    public List<MetaField> loadChildrenChunk(Collection<UUID> parentIds, MetaField after, int limit) {
+        return loadChildrenChunk(null, parentIds, after, limit);
+    }
+
+    /**
+     * Như {@link #loadChildrenChunk(Collection, MetaField, int)} nhưng giới hạn trong một cây: truy vấn đi theo chỉ mục
+     * {@code (ROOT_ID, PARENT_ID, SORT_KEY, ID)}, không chạm tới dòng của các cây khác.
+     *
+     * @param rootId Id node gốc của cây (null = mọi cây)
+     */
+    public List<MetaField> loadChildrenChunk(UUID rootId, Collection<UUID> parentIds, MetaField after, int limit) {
+        if (parentIds.isEmpty()) {
+            return List.of();
+        }
+        String scope = rootId != null ? "e.rootId = :rootId and " : "";
+        String query = after == null
+                ? "select e from MetaField e where " + scope + "e.parent.id in :parentIds "
+                + "order by e.parent.id, e.sortKey, e.id"
+                : "select e from MetaField e where " + scope + "e.parent.id in :parentIds "
+                + "and (e.parent.id > :parentId or (e.parent.id = :parentId "
+                + "and (e.sortKey > :sortKey or (e.sortKey = :sortKey and e.id > :afterId)))) "
+                + "order by e.parent.id, e.sortKey, e.id";
+        return ReadReplicaRouting.readOnly(() -> {
+            FluentLoader.ByQuery<MetaField> loader = dataManager.load(MetaField.class)
+                    .query(query)
+                    .parameter("parentIds", parentIds)
+                    .fetchPlan(treeFetchPlan())
+                    .maxResults(limit);
+            if (rootId != null) {
+                loader.parameter("rootId", rootId);
+            }
+            if (after != null) {
+                loader.parameter("parentId", after.getParent().getId())
+                        .parameter("sortKey", after.getSortKey())
+                        .parameter("afterId", after.getId());
+            }
+            return loader.list();
+        });
+    }
+
+    /**
+     * Node gốc của các cây có tên bắt đầu bằng {@code prefix}, sắp theo tên (dùng cho ô chọn cây).
+     */
+    public List<MetaField> searchRoots(String prefix, int offset, int limit) {
+        return ReadReplicaRouting.readOnly(() -> dataManager.load(MetaField.class)
+                .query("select e from MetaField e where e.parent is null and e.name like :pattern escape '\\' "
+                        + "order by e.name, e.id")
+                .parameter("pattern", escapeLike(prefix != null ? prefix : "") + "%")
+                .fetchPlan(treeFetchPlan())
+                .firstResult(offset)
+                .maxResults(limit)
+                .list());
+    }
+
+    /**
+     * Chạy truy vấn của loader (kèm điều kiện genericFilter, phân trang) trong DB rồi bổ sung mọi tổ tiên của các node
+     * khớp, để TreeDataGrid hiển thị kết quả đúng vị trí trong cây thay vì thành node mồ côi.
+     * <p>
+     * Số truy vấn cố định (node khớp, id tổ tiên qua CTE đệ quy, entity tổ tiên), chi phí tỉ lệ với số node khớp
+     * &times; độ sâu, không phụ thuộc kích thước bảng. Node khớp giữ thứ tự của loader; tổ tiên được nối phía sau,
+     * theo thứ tự anh em.
+     */
+    public List<MetaField> loadWithAncestors(LoadContext<MetaField> loadContext) {
+        return loadWithAncestors(loadContext, dataManager::loadList);
+    }
+
+    /**
+     * Như {@link #loadWithAncestors(LoadContext)}, nhưng node khớp được lấy qua {@code matchLoader} (VD: một trang
+     * của {@code KeysetPagination}); tổ tiên được bổ sung sau, không tính vào trang.
+     */
+    public List<MetaField> loadWithAncestors(LoadContext<MetaField> loadContext,
+                                             Function<LoadContext<MetaField>, List<MetaField>> matchLoader) {
+        return ReadReplicaRouting.readOnly(() -> {
+            List<MetaField> result = new ArrayList<>(matchLoader.apply(loadContext));
+            Set<UUID> loaded = new HashSet<>();
+            result.forEach(metaField -> loaded.add(metaField.getId()));
+
+            List<UUID> ancestorIds = loadAncestorIds(loaded).stream()
+                    .filter(id -> !loaded.contains(id))
+                    .toList();
+            FetchPlan fetchPlan = loadContext.getFetchPlan() != null ? loadContext.getFetchPlan() : treeFetchPlan();
+            List<MetaField> ancestors = new ArrayList<>(ancestorIds.size());
+            for (int from = 0; from < ancestorIds.size(); from += IN_BATCH) {
+                ancestors.addAll(dataManager.load(MetaField.class)
+                        .query("select e from MetaField e where e.id in :ids")
+                        .parameter("ids", ancestorIds.subList(from, Math.min(from + IN_BATCH, ancestorIds.size())))
+                        .fetchPlan(fetchPlan)
+                        .list());
+            }
+            ancestors.sort(Comparator.comparing(MetaField::getSortKey,
+                            Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(MetaField::getId));
+            result.addAll(ancestors);
+            return result;
+        });
+    }
+
+    /**
+     * Số node khớp điều kiện của loader, cho tổng ước lượng của phân trang: không có điều kiện thì lấy từ chỉ mục
+     * trong bộ nhớ (không truy vấn), có điều kiện thì COUNT trên replica.
+     */
+    public long countMatches(LoadContext<MetaField> loadContext) {
+        if (!hasCondition(loadContext) && metaFieldRevisionTracker.isLoaded()) {
+            return metaFieldRevisionTracker.size();
+        }
+        return ReadReplicaRouting.readOnly(() -> dataManager.getCount(loadContext));
+    }
+
+    /**
+     * Truy vấn của loader có điều kiện lọc (VD: từ genericFilter) hay không.
+     */
+    public boolean hasCondition(LoadContext<MetaField> loadContext) {
+        LoadContext.Query query = loadContext.getQuery();
+        Condition condition = query != null ? query.getCondition() : null;
+        return condition != null
+                && !(condition instanceof LogicalCondition logical && logical.getConditions().isEmpty());
+    }
+
+    /**
+     * Id mọi tổ tiên (không gồm chính các node) của các node cho trước, không trùng lặp.
+     */
+    public Set<UUID> loadAncestorIds(Collection<UUID> ids) {
+        Set<UUID> ancestors = new HashSet<>();
+        List<UUID> list = new ArrayList<>(ids);
+        for (int from = 0; from < list.size(); from += IN_BATCH) {
+            List<UUID> batch = list.subList(from, Math.min(from + IN_BATCH, list.size()));
+            String sql = "with recursive ANCESTORS (ID, PARENT_ID, DEPTH) as ("
+                    + "select ID, PARENT_ID, 0 from META_FIELD where ID in (" + placeholders(batch.size()) + ") "
+                    + "union all "
+                    + "select m.ID, m.PARENT_ID, a.DEPTH + 1 from META_FIELD m "
+                    + "join ANCESTORS a on m.ID = a.PARENT_ID where a.DEPTH < 1000) "
+                    + "select distinct ID from ANCESTORS where DEPTH > 0";
+            ReadReplicaRouting.readOnly(() -> ancestors.addAll(
+                    jdbcTemplate.queryForList(sql, UUID.class, batch.toArray())));
+        }
+        return ancestors;
+    }
+
+    /**
+     * Tìm node theo tiền tố tên (phân biệt hoa thường), sắp theo {@code (NAME, ID)}. Dùng cho ô chọn cha: mỗi lần gõ /
+     * cuộn chỉ đọc một trang nhỏ, trang sau nối tiếp trang trước bằng keyset trên chỉ mục {@code (NAME, ID)}.
+     * <p>
+     * Cây con bị loại trừ được lọc ngay trong SQL: node gốc qua {@code ROOT_ID} (không duyệt cây), node bên trong qua
+     * {@code NOT IN} cây con (CTE đệ quy) - không đọc rồi bỏ dòng trong bộ nhớ.
+     *
+     * @param prefix          Tiền tố tên (rỗng = mọi node)
+     * @param excludedSubtree Bỏ qua node này và mọi hậu duệ của nó (null = không loại trừ)
+     * @param after           Node cuối của trang trước (null = trang đầu)
+     * @param limit           Số dòng tối đa
+     */
+    public List<MetaField> searchByNamePrefix(String prefix, UUID excludedSubtree, MetaField after, int limit) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        boolean excludedIsRoot = excludedSubtree != null && metaFieldRevisionTracker.isLoaded()
+                && metaFieldRevisionTracker.contains(excludedSubtree)
+                && metaFieldRevisionTracker.getParentId(excludedSubtree) == null;
+        if (excludedSubtree != null && !excludedIsRoot) {
+            sql.append("with recursive SUBTREE (ID) as (select ID from META_FIELD where ID = ? union all "
+                    + "select m.ID from META_FIELD m join SUBTREE s on m.PARENT_ID = s.ID) ");
+            args.add(excludedSubtree);
+        }
+        sql.append("select ID from META_FIELD where NAME like ? escape '\\' ");
+        args.add(escapeLike(prefix != null ? prefix : "") + "%");
+        if (after != null) {
+            sql.append("and (NAME > ? or (NAME = ? and ID > ?)) ");
+            args.addAll(List.of(after.getName(), after.getName(), after.getId()));
+        }
+        if (excludedIsRoot) {
+            sql.append("and (ROOT_ID is null or ROOT_ID <> ?) ");
+            args.add(excludedSubtree);
+        } else if (excludedSubtree != null) {
+            sql.append("and ID not in (select ID from SUBTREE) ");
+        }
+        sql.append("order by NAME, ID limit ?");
+        args.add(limit);
+
+        return ReadReplicaRouting.readOnly(() -> {
+            List<UUID> ids = jdbcTemplate.queryForList(sql.toString(), UUID.class, args.toArray());
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            Map<UUID, Integer> positions = new HashMap<>();
+            ids.forEach(id -> positions.put(id, positions.size()));
+            List<MetaField> page = new ArrayList<>(dataManager.load(MetaField.class)
+                    .ids(ids)
+                    .fetchPlan(treeFetchPlan())
+                    .list());
+            page.sort(Comparator.comparing(metaField -> positions.get(metaField.getId())));
+            return page;
+        });
+    }
+
+    /**
+     * Đường dẫn (breadcrumb) từ gốc tới cha của từng node, VD: {@code "Gốc / Nhánh"}; node gốc có đường dẫn rỗng.
+     * Lấy từ cache trie của {@link MetaFieldPaths}, chỉ truy vấn cho node chưa có trong cache.
+     */
+    public Map<UUID, String> loadPaths(Collection<UUID> ids) {
+        return metaFieldPaths.getParentPaths(ids);
+    }
+
+    /**
+     * Id các con trực tiếp hiện tại của node, từ chỉ mục trong bộ nhớ (không truy vấn DB).
+     */
+    public Collection<UUID> getChildIds(UUID id) {
+        return metaFieldRevisionTracker.getChildren(id);
+    }
+
+    /**
+     * Node {@code id} là chính {@code ancestorId} hoặc nằm trong cây con của nó, từ chỉ mục trong bộ nhớ.
+     */
+    public boolean isSameOrDescendant(UUID id, UUID ancestorId) {
+        return metaFieldRevisionTracker.isSameOrDescendant(id, ancestorId);
+    }
+
+    /**
+     * Số hậu duệ, số lá và chiều sâu của cây con bên dưới node. Lấy từ chỉ mục trong bộ nhớ (được duy trì tăng dần),
+     * không truy vấn DB.
+     */
+    public Aggregate getAggregate(UUID id) {
+        return metaFieldRevisionTracker.getAggregate(id);
+    }
+
+    /**
+     * Id các node cần mở để hiện {@code levels} tầng bên dưới {@code rootIds}, tính phía server từ chỉ mục cha - con
+     * trong bộ nhớ (không mở đệ quy trên grid, không truy vấn DB).
+     *
+     * @param maxNodes Giới hạn số node được mở trong một lần
+     */
+    public List<UUID> collectExpandable(Collection<UUID> rootIds, int levels, int maxNodes) {
+        return metaFieldRevisionTracker.collectExpandable(rootIds, levels, maxNodes);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Fetch plan cho hiển thị cây: thuộc tính cơ bản + tên của cha (tránh lazy load từng dòng).
+     */
+    public FetchPlan treeFetchPlan() {
+        return fetchPlans.builder(MetaField.class)
+                .addFetchPlan(FetchPlan.BASE)
+                .add("parent", FetchPlan.BASE)
+                .build();
+    }
+}
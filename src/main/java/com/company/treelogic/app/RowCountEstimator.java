@@ -0,0 +1,118 @@
+package com.company.treelogic.app;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jmix.core.DataManager;
+import io.jmix.core.LoadContext;
+import io.jmix.core.MetadataTools;
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Ước lượng rẻ số dòng khớp một LoadContext, cho nhãn "~N dòng" của phân trang (VD:
+ * {@link com.company.treelogic.generic.KeysetPagination}) - không chạy {@code count(*)} chính xác mỗi lần mở view.
+ * <ul>
+ *   <li>Không điều kiện: số dòng trong thống kê bảng của HSQLDB ({@code INFORMATION_SCHEMA.SYSTEM_TABLESTATS}),
+ *   không quét bảng.</li>
+ *   <li>Có điều kiện (hoặc không đọc được thống kê): {@code count(*)} thật, nhưng kết quả được cache theo (entity,
+ *   truy vấn, điều kiện, tham số) trong {@code treelogic.list.count-cache-expire-after} - mở lại view / lặp lại cùng
+ *   filter không đếm lại.</li>
+ * </ul>
+ */
+@Component
+public class RowCountEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(RowCountEstimator.class);
+
+    private static final int CACHE_SIZE = 1000;
+
+    @Autowired
+    private DataManager dataManager;
+    @Autowired
+    private MetadataTools metadataTools;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${treelogic.list.count-cache-expire-after:1m}")
+    private Duration expireAfter;
+
+    private Cache<String, Long> counts;
+
+    @PostConstruct
+    protected void initCache() {
+        counts = Caffeine.newBuilder()
+                .maximumSize(CACHE_SIZE)
+                .expireAfterWrite(expireAfter)
+                .build();
+    }
+
+    public <E> long estimate(LoadContext<E> loadContext) {
+        LoadContext.Query query = loadContext.getQuery();
+        Condition condition = query != null ? query.getCondition() : null;
+        if (isEmpty(condition)) {
+            Long cardinality = tableCardinality(metadataTools.getDatabaseTable(loadContext.getEntityMetaClass()));
+            if (cardinality != null) {
+                return cardinality;
+            }
+        }
+        String key = loadContext.getEntityMetaClass().getName()
+                + '|' + (query != null ? query.getQueryString() : "")
+                + '|' + describe(condition)
+                + '|' + (query != null ? new TreeMap<>(query.getParameters()) : "");
+        return counts.get(key, k -> dataManager.getCount(loadContext));
+    }
+
+    private Long tableCardinality(String table) {
+        if (table == null) {
+            return null;
+        }
+        try {
+            List<Long> rows = jdbcTemplate.queryForList("select CARDINALITY from INFORMATION_SCHEMA.SYSTEM_TABLESTATS "
+                    + "where TABLE_SCHEMA = current_schema and TABLE_NAME = ?", Long.class, table.toUpperCase());
+            return rows.isEmpty() ? null : rows.get(0);
+        } catch (DataAccessException e) {
+            // CSDL khác HSQLDB: dùng count đã cache
+            log.debug("Table statistics not available for {}", table, e);
+            return null;
+        }
+    }
+
+    private static boolean isEmpty(Condition condition) {
+        return condition == null
+                || (condition instanceof LogicalCondition logical && logical.getConditions().isEmpty());
+    }
+
+    /**
+     * Mô tả điều kiện đủ để phân biệt hai filter khác nhau (làm khoá cache).
+     */
+    private static String describe(Condition condition) {
+        if (condition == null) {
+            return "";
+        }
+        if (condition instanceof PropertyCondition property) {
+            return property.getProperty() + ' ' + property.getOperation() + ' ' + property.getParameterValue();
+        }
+        if (condition instanceof LogicalCondition logical) {
+            StringBuilder description = new StringBuilder(logical.getType().name()).append('(');
+            for (Condition child : logical.getConditions()) {
+                description.append(describe(child)).append(';');
+            }
+            return description.append(')').toString();
+        }
+        // Loại điều kiện khác (VD: JPQL): mỗi instance một khoá
+        return condition.getClass().getName() + '@' + System.identityHashCode(condition);
+    }
+}
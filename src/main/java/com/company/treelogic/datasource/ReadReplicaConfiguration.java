@@ -0,0 +1,33 @@
+package com.company.treelogic.datasource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Pool kết nối tới replica, chỉ được tạo khi khai báo {@code main.datasource.replica.url}.
+ * <p>
+ * Replica chỉ nhận lệnh đọc; việc đồng bộ dữ liệu từ primary sang replica nằm ngoài ứng dụng (replication của DB).
+ */
+@Configuration
+@ConditionalOnProperty(name = "main.datasource.replica.url")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("main.datasource.replica")
+    DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("main.datasource.replica.hikari")
+    DataSource replicaDataSource(
+            @Qualifier("replicaDataSourceProperties") final DataSourceProperties replicaDataSourceProperties) {
+        return replicaDataSourceProperties.initializeDataSourceBuilder().build();
+    }
+}
@@ -0,0 +1,50 @@
+package com.company.treelogic.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Đánh dấu đoạn code chỉ đọc để {@link ReadReplicaRoutingDataSource} định tuyến sang replica.
+ * <p>
+ * Dùng cho các loader {@code readOnly="true"}: transaction do {@code DataManager} mở khi load không được đánh dấu
+ * read-only, nên phải đánh dấu tường minh.
+ * <p>
+ * <b>Chỉ bọc các thao tác load</b> - mọi câu lệnh trong scope (kể cả ghi) đều có thể bị gửi sang replica.
+ *
+ * <pre>{@code
+ * @Install(to = "metaFieldsDl", target = Target.DATA_LOADER)
+ * private List<MetaField> metaFieldsDlLoadDelegate(final LoadContext<MetaField> loadContext) {
+ *     return ReadReplicaRouting.readOnly(() -> dataManager.loadList(loadContext));
+ * }
+ * }</pre>
+ */
+public final class ReadReplicaRouting {
+
+    private static final ThreadLocal<Integer> DEPTH = ThreadLocal.withInitial(() -> 0);
+
+    private ReadReplicaRouting() {
+    }
+
+    /**
+     * Chạy {@code action} ở chế độ chỉ đọc.
+     */
+    public static <T> T readOnly(Supplier<T> action) {
+        DEPTH.set(DEPTH.get() + 1);
+        try {
+            return action.get();
+        } finally {
+            int depth = DEPTH.get() - 1;
+            if (depth == 0) {
+                DEPTH.remove();
+            } else {
+                DEPTH.set(depth);
+            }
+        }
+    }
+
+    /**
+     * @return true nếu luồng hiện tại đang trong {@link #readOnly(Supplier)}
+     */
+    public static boolean isReadOnly() {
+        return DEPTH.get() > 0;
+    }
+}
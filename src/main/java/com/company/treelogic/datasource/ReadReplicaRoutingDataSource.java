@@ -0,0 +1,151 @@
+package com.company.treelogic.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * DataSource định tuyến giữa primary và replica:
+ * <ul>
+ *     <li>Transaction read-only hoặc code trong {@link ReadReplicaRouting#readOnly} &rarr; replica</li>
+ *     <li>Còn lại (ghi, Liquibase, transaction thường) &rarr; primary</li>
+ *     <li>User vừa commit thao tác ghi (xem {@link ReadReplicaStickiness}) &rarr; primary cho cả lệnh đọc</li>
+ * </ul>
+ * Connection tới primary được theo dõi: khi có câu lệnh INSERT/UPDATE/DELETE/MERGE, user hiện tại được đánh dấu
+ * "vừa ghi" sau khi transaction commit.
+ * <p>
+ * Phải được bọc bởi {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: JpaTransactionManager
+ * lấy connection ngay khi bắt đầu transaction, lúc đó cờ read-only của transaction chưa được thiết lập.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final Object WRITE_SYNCHRONIZATION_KEY = new Object();
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReadReplicaStickiness stickiness;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, DataSource replica, ReadReplicaStickiness stickiness) {
+        this.primary = primary;
+        this.replica = replica;
+        this.stickiness = stickiness;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return isReplicaRoute() ? replica.getConnection() : trackWrites(primary.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return isReplicaRoute()
+                ? replica.getConnection(username, password)
+                : trackWrites(primary.getConnection(username, password));
+    }
+
+    /**
+     * @return true nếu lệnh tiếp theo trên luồng hiện tại được phép đọc từ replica
+     */
+    protected boolean isReplicaRoute() {
+        boolean readOnly = ReadReplicaRouting.isReadOnly()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        return readOnly && !stickiness.isSticky();
+    }
+
+    private Connection trackWrites(Connection target) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new WriteTrackingHandler(target));
+    }
+
+    private void onWrite() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stickiness.markWrite();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(WRITE_SYNCHRONIZATION_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(WRITE_SYNCHRONIZATION_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stickiness.markWrite();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(WRITE_SYNCHRONIZATION_KEY);
+            }
+        });
+    }
+
+    private static boolean isWriteStatement(Object sql) {
+        if (!(sql instanceof String text)) {
+            return false;
+        }
+        String head = text.stripLeading();
+        head = head.substring(0, Math.min(6, head.length())).toLowerCase(Locale.ROOT);
+        return head.startsWith("insert") || head.startsWith("update")
+                || head.startsWith("delete") || head.startsWith("merge");
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class WriteTrackingHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        WriteTrackingHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "prepareStatement", "prepareCall":
+                    if (isWriteStatement(args[0])) {
+                        onWrite();
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            Object result = invokeTarget(target, method, args);
+            if (result instanceof Statement statement && "createStatement".equals(method.getName())) {
+                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{Statement.class},
+                        (statementProxy, statementMethod, statementArgs) -> {
+                            String name = statementMethod.getName();
+                            if ((name.startsWith("execute") || "addBatch".equals(name))
+                                    && statementArgs != null && isWriteStatement(statementArgs[0])) {
+                                onWrite();
+                            }
+                            return invokeTarget(statement, statementMethod, statementArgs);
+                        });
+            }
+            return result;
+        }
+    }
+}
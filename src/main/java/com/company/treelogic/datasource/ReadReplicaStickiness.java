@@ -0,0 +1,48 @@
+package com.company.treelogic.datasource;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ghi nhớ thời điểm ghi gần nhất của từng user để đảm bảo "read-your-writes": trong khoảng {@code window} sau
+ * một commit có ghi dữ liệu, các lệnh đọc của user đó vẫn đi vào primary (replica có thể chưa bắt kịp).
+ */
+public class ReadReplicaStickiness {
+
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    private final long windowMillis;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReadReplicaStickiness(Duration window) {
+        this.windowMillis = window.toMillis();
+    }
+
+    /**
+     * Đánh dấu user hiện tại vừa commit thao tác ghi.
+     */
+    public void markWrite() {
+        long now = System.currentTimeMillis();
+        lastWrites.put(currentUserKey(), now);
+        if (lastWrites.size() > CLEANUP_THRESHOLD) {
+            lastWrites.values().removeIf(time -> now - time >= windowMillis);
+        }
+    }
+
+    /**
+     * @return true nếu user hiện tại phải đọc từ primary
+     */
+    public boolean isSticky() {
+        Long lastWrite = lastWrites.get(currentUserKey());
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < windowMillis;
+    }
+
+    private static String currentUserKey() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getName() != null ? authentication.getName() : "";
+    }
+}
@@ -0,0 +1,102 @@
+package com.company.treelogic.diagnostics;
+
+import com.vaadin.flow.component.HasElement;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinRequestInterceptor;
+import com.vaadin.flow.server.VaadinResponse;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.server.VaadinSession;
+import io.jmix.flowui.view.View;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Bật bộ đếm câu lệnh SQL theo request Vaadin (tắt bằng {@code treelogic.diagnostics.sql.enabled=false}).
+ * <p>
+ * DataSource chính (bean {@code dataSource}) được bọc bởi {@link StatementCountingDataSource}; mỗi request Vaadin
+ * mở một {@link SqlStatementCollector.Scope}, nguồn phát sinh là view đang hiển thị trên UI.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "treelogic.diagnostics.sql", name = "enabled", havingValue = "true",
+        matchIfMissing = true)
+public class SqlDiagnosticsConfiguration {
+
+    static final String DATA_SOURCE_BEAN_NAME = "dataSource";
+
+    @Bean
+    SqlDiagnosticsReporter sqlDiagnosticsReporter(final SqlDiagnosticsProperties properties,
+                                                  final ObjectProvider<MeterRegistry> meterRegistry) {
+        SqlDiagnosticsReporter reporter = new SqlDiagnosticsReporter(properties, meterRegistry.getIfAvailable());
+        SqlStatementCollector.setReporter(reporter::report);
+        SqlStatementCollector.setOriginResolver(SqlDiagnosticsConfiguration::resolveCurrentViewId);
+        return reporter;
+    }
+
+    @Bean
+    static BeanPostProcessor statementCountingDataSourcePostProcessor(
+            final ObjectProvider<SqlDiagnosticsReporter> reporter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (DATA_SOURCE_BEAN_NAME.equals(beanName) && bean instanceof DataSource dataSource
+                        && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource(dataSource,
+                            sql -> reporter.getObject().onStatement(sql));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    VaadinServiceInitListener sqlDiagnosticsServiceInitListener() {
+        return (ServiceInitEvent event) -> event.addVaadinRequestInterceptor(new RequestScopeInterceptor());
+    }
+
+    private static String resolveCurrentViewId() {
+        UI ui = UI.getCurrent();
+        if (ui == null) {
+            return null;
+        }
+        List<HasElement> chain = ui.getInternals().getActiveRouterTargetsChain();
+        for (HasElement target : chain) {
+            if (target instanceof View<?> view) {
+                return view.getId().orElse(view.getClass().getSimpleName());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Mở scope khi request bắt đầu và đóng (báo cáo) khi request kết thúc.
+     */
+    private static class RequestScopeInterceptor implements VaadinRequestInterceptor {
+
+        @Override
+        public void requestStart(VaadinRequest request, VaadinResponse response) {
+            SqlStatementCollector.open(null);
+        }
+
+        @Override
+        public void handleException(VaadinRequest request, VaadinResponse response,
+                                    VaadinSession vaadinSession, Exception t) {
+        }
+
+        @Override
+        public void requestEnd(VaadinRequest request, VaadinResponse response, VaadinSession session) {
+            SqlStatementCollector.Scope scope = SqlStatementCollector.current();
+            if (scope != null) {
+                scope.close();
+            }
+        }
+    }
+}
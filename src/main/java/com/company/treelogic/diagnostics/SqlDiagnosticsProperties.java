@@ -0,0 +1,19 @@
+package com.company.treelogic.diagnostics;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Cấu hình bộ đếm câu lệnh SQL theo từng request / thao tác trên view.
+ *
+ * @param enabled         Bật/tắt việc bọc DataSource để đếm câu lệnh
+ * @param warnThreshold   Tổng số câu lệnh trong một scope vượt ngưỡng này thì ghi cảnh báo
+ * @param repeatThreshold Một "hình dạng" câu lệnh lặp lại từ ngưỡng này trở lên thì coi là nghi N+1
+ * @param topShapes       Số hình dạng câu lệnh lặp nhiều nhất được in ra trong log cảnh báo
+ */
+@ConfigurationProperties(prefix = "treelogic.diagnostics.sql")
+public record SqlDiagnosticsProperties(@DefaultValue("true") boolean enabled,
+                                       @DefaultValue("50") int warnThreshold,
+                                       @DefaultValue("10") int repeatThreshold,
+                                       @DefaultValue("5") int topShapes) {
+}
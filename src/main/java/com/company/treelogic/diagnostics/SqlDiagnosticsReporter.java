@@ -0,0 +1,94 @@
+package com.company.treelogic.diagnostics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Nhận kết quả của từng scope đã đóng: ghi metrics và ghi cảnh báo khi vượt ngưỡng.
+ * <p>
+ * Metrics (tag {@code origin} = view id / tên thao tác):
+ * <ul>
+ *     <li>{@code treelogic.sql.statements} - tổng số câu lệnh đã thực thi (kể cả ngoài scope)</li>
+ *     <li>{@code treelogic.sql.statements.per.scope} - phân phối số câu lệnh trong một scope</li>
+ *     <li>{@code treelogic.sql.n-plus-one} - số scope có câu lệnh lặp từ {@code repeatThreshold} lần trở lên</li>
+ * </ul>
+ */
+public class SqlDiagnosticsReporter {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlDiagnosticsReporter.class);
+
+    private final SqlDiagnosticsProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Counter statementCounter;
+
+    /**
+     * @param meterRegistry Có thể null nếu không có Micrometer - khi đó chỉ ghi log
+     */
+    public SqlDiagnosticsReporter(SqlDiagnosticsProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.statementCounter = meterRegistry != null
+                ? Counter.builder("treelogic.sql.statements")
+                .description("SQL statements executed through the main DataSource")
+                .register(meterRegistry)
+                : null;
+    }
+
+    /**
+     * Gọi cho mỗi câu lệnh được thực thi.
+     */
+    public void onStatement(String sql) {
+        if (statementCounter != null) {
+            statementCounter.increment();
+        }
+    }
+
+    /**
+     * Gọi khi scope ngoài cùng được đóng.
+     */
+    public void report(SqlStatementCollector.Scope scope) {
+        if (scope.getTotal() == 0) {
+            return;
+        }
+        String origin = scope.getOrigin();
+
+        List<Map.Entry<String, Integer>> repeated = scope.getShapes().entrySet().stream()
+                .filter(entry -> entry.getValue() >= properties.repeatThreshold())
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()))
+                .collect(Collectors.toList());
+
+        if (meterRegistry != null) {
+            DistributionSummary.builder("treelogic.sql.statements.per.scope")
+                    .description("SQL statements executed within one Vaadin request or view action")
+                    .tag("origin", origin)
+                    .register(meterRegistry)
+                    .record(scope.getTotal());
+            if (!repeated.isEmpty()) {
+                meterRegistry.counter("treelogic.sql.n-plus-one", "origin", origin).increment();
+            }
+        }
+
+        if (!repeated.isEmpty() || scope.getTotal() > properties.warnThreshold()) {
+            log.warn("{} SQL statements executed by '{}' ({} distinct shapes). Most repeated: {}",
+                    scope.getTotal(), origin, scope.getShapes().size(), formatTop(scope));
+        } else if (log.isDebugEnabled()) {
+            log.debug("{} SQL statements executed by '{}'", scope.getTotal(), origin);
+        }
+    }
+
+    private String formatTop(SqlStatementCollector.Scope scope) {
+        return scope.getShapes().entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()))
+                .limit(properties.topShapes())
+                .map(entry -> "\n  " + entry.getValue() + "x " + entry.getKey())
+                .collect(Collectors.joining());
+    }
+}
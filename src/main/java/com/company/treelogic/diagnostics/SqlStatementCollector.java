@@ -0,0 +1,153 @@
+package com.company.treelogic.diagnostics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Gom các câu lệnh SQL được thực thi trên luồng hiện tại vào một "scope" (một request Vaadin hoặc một thao tác
+ * trên view).
+ * <p>
+ * Câu lệnh được chuẩn hoá về "hình dạng" (bỏ literal, gộp danh sách {@code IN (...)}) để các câu chỉ khác nhau
+ * ở tham số được đếm chung &rarr; dễ nhận ra mẫu N+1 (cùng một SELECT lặp lại theo từng dòng).
+ * <p>
+ * Scope lồng nhau không tạo scope mới: câu lệnh luôn được tính cho scope ngoài cùng.
+ *
+ * <pre>{@code
+ * try (SqlStatementCollector.Scope scope = SqlStatementCollector.open("MetaField.lookup#expandAll")) {
+ *     // ... thao tác truy vấn ...
+ * }
+ * }</pre>
+ */
+public final class SqlStatementCollector {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static volatile Supplier<String> originResolver = () -> null;
+    private static volatile Consumer<Scope> reporter = scope -> {
+    };
+
+    private SqlStatementCollector() {
+    }
+
+    /**
+     * Mở scope cho luồng hiện tại. Nếu đã có scope đang mở thì trả về scope lồng (không làm gì khi đóng).
+     *
+     * @param origin Nguồn phát sinh (view id, tên thao tác...), có thể null - khi đó sẽ được xác định lúc
+     *               có câu lệnh đầu tiên
+     */
+    public static Scope open(String origin) {
+        Scope current = CURRENT.get();
+        if (current != null) {
+            current.nesting++;
+            return current;
+        }
+        Scope scope = new Scope(origin);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return Scope đang mở trên luồng hiện tại hoặc null
+     */
+    public static Scope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Ghi nhận một câu lệnh vừa được thực thi. Không có scope thì bỏ qua.
+     */
+    static void record(String sql) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.add(sql);
+        }
+    }
+
+    /**
+     * Hàm xác định nguồn phát sinh khi scope được mở mà chưa biết origin (VD: view hiện tại của UI).
+     */
+    static void setOriginResolver(Supplier<String> resolver) {
+        originResolver = resolver != null ? resolver : () -> null;
+    }
+
+    /**
+     * Hàm nhận kết quả khi scope ngoài cùng được đóng (ghi log / metrics).
+     */
+    static void setReporter(Consumer<Scope> consumer) {
+        reporter = consumer != null ? consumer : scope -> {
+        };
+    }
+
+    /**
+     * Chuẩn hoá câu SQL về hình dạng dùng để gom nhóm.
+     */
+    public static String shapeOf(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("IN (?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    /**
+     * Scope đếm câu lệnh. Không thread-safe: chỉ dùng trên luồng đã mở nó.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private String origin;
+        private int nesting;
+        private int total;
+        private final Map<String, Integer> shapes = new HashMap<>();
+
+        private Scope(String origin) {
+            this.origin = origin;
+        }
+
+        private void add(String sql) {
+            if (origin == null) {
+                origin = originResolver.get();
+            }
+            total++;
+            shapes.merge(shapeOf(sql), 1, Integer::sum);
+        }
+
+        public String getOrigin() {
+            return origin != null ? origin : "unknown";
+        }
+
+        public void setOrigin(String origin) {
+            this.origin = origin;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return Số lần thực thi theo từng hình dạng câu lệnh
+         */
+        public Map<String, Integer> getShapes() {
+            return shapes;
+        }
+
+        @Override
+        public void close() {
+            if (nesting > 0) {
+                nesting--;
+                return;
+            }
+            CURRENT.remove();
+            reporter.accept(this);
+        }
+    }
+}
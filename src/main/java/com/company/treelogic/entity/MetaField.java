@@ -10,7 +10,12 @@ import java.util.UUID;
 
 @JmixEntity
 @Table(name = "META_FIELD", indexes = {
-        @Index(name = "IDX_META_FIELD_PARENT", columnList = "PARENT_ID")
+        @Index(name = "IDX_META_FIELD_PARENT_SORT", columnList = "PARENT_ID, SORT_KEY, ID"),
+        @Index(name = "IDX_META_FIELD_NAME", columnList = "NAME, ID"),
+        @Index(name = "IDX_META_FIELD_ROOT_PARENT_SORT", columnList = "ROOT_ID, PARENT_ID, SORT_KEY, ID"),
+        @Index(name = "IDX_META_FIELD_ROOT_NAME", columnList = "ROOT_ID, NAME, ID"),
+        @Index(name = "IDX_META_FIELD_ROOT_ID", columnList = "ROOT_ID, ID"),
+        @Index(name = "IDX_META_FIELD_ORDINAL", columnList = "ORDINAL", unique = true)
 })
 @Entity
 public class MetaField {
@@ -23,13 +28,36 @@ public class MetaField {
     @Transient
     private Boolean included;
 
+    /**
+     * Bắt buộc: {@code (NAME, ID)} là khoá của phân trang keyset.
+     */
     @InstanceName
-    @Column(name = "NAME")
+    @Column(name = "NAME", nullable = false)
     private String name;
 
     @Column(name = "DESCRIPTION")
     private String description;
 
+    /**
+     * Khoá sắp xếp giữa các anh em (xem {@link com.company.treelogic.engine.FractionalIndex}).
+     */
+    @Column(name = "SORT_KEY", nullable = false)
+    private String sortKey;
+
+    /**
+     * Id node gốc của cây chứa node này (node gốc trỏ về chính nó). Phi chuẩn hoá, duy trì khi thêm / di chuyển
+     * (xem {@link com.company.treelogic.app.MetaFieldRootIds}).
+     */
+    @Column(name = "ROOT_ID")
+    private UUID rootId;
+
+    /**
+     * Số thứ tự ổn định của node (không đổi khi di chuyển / đổi tên), dùng làm phần tử trong bitmap của
+     * {@link SelectionProfile} (xem {@link com.company.treelogic.app.MetaFieldOrdinals}).
+     */
+    @Column(name = "ORDINAL")
+    private Integer ordinal;
+
     @JoinColumn(name = "PARENT_ID")
     @ManyToOne(fetch = FetchType.LAZY)
     private MetaField parent;
@@ -50,6 +78,30 @@ public class MetaField {
         this.parent = parent;
     }
 
+    public UUID getRootId() {
+        return rootId;
+    }
+
+    public void setRootId(UUID rootId) {
+        this.rootId = rootId;
+    }
+
+    public Integer getOrdinal() {
+        return ordinal;
+    }
+
+    public void setOrdinal(Integer ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
     public String getDescription() {
         return description;
     }
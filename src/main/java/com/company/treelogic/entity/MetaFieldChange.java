@@ -0,0 +1,122 @@
+package com.company.treelogic.entity;
+
+import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Một dòng trong log thay đổi của MetaField. {@code revision} tăng dần theo đúng thứ tự commit.
+ * Mỗi dòng chứa trạng thái đầy đủ của node sau thay đổi, nên bên tiêu thụ áp dụng theo kiểu upsert.
+ */
+@JmixEntity
+@Table(name = "META_FIELD_CHANGE", indexes = {
+        @Index(name = "IDX_META_FIELD_CHANGE_REVISION", columnList = "REVISION", unique = true),
+        @Index(name = "IDX_META_FIELD_CHANGE_NODE", columnList = "META_FIELD_ID, REVISION")
+})
+@Entity
+public class MetaFieldChange {
+    @JmixGeneratedValue
+    @Column(name = "ID", nullable = false)
+    @Id
+    private UUID id;
+
+    @Column(name = "REVISION", nullable = false)
+    private Long revision;
+
+    @Column(name = "META_FIELD_ID", nullable = false)
+    private UUID metaFieldId;
+
+    @Column(name = "CHANGE_TYPE", nullable = false)
+    private String type;
+
+    @Column(name = "PARENT_ID")
+    private UUID parentId;
+
+    @Column(name = "NAME")
+    private String name;
+
+    @Column(name = "DESCRIPTION")
+    private String description;
+
+    @Column(name = "SORT_KEY")
+    private String sortKey;
+
+    @Column(name = "CHANGED_AT")
+    private OffsetDateTime changedAt;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public Long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(Long revision) {
+        this.revision = revision;
+    }
+
+    public UUID getMetaFieldId() {
+        return metaFieldId;
+    }
+
+    public void setMetaFieldId(UUID metaFieldId) {
+        this.metaFieldId = metaFieldId;
+    }
+
+    public MetaFieldChangeType getType() {
+        return type == null ? null : MetaFieldChangeType.fromId(type);
+    }
+
+    public void setType(MetaFieldChangeType type) {
+        this.type = type == null ? null : type.getId();
+    }
+
+    public UUID getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(UUID parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    public OffsetDateTime getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(OffsetDateTime changedAt) {
+        this.changedAt = changedAt;
+    }
+
+}
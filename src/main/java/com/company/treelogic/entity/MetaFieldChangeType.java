@@ -0,0 +1,35 @@
+package com.company.treelogic.entity;
+
+import io.jmix.core.metamodel.datatype.EnumClass;
+import org.springframework.lang.Nullable;
+
+public enum MetaFieldChangeType implements EnumClass<String> {
+
+    INSERT("I"),
+    UPDATE("U"),
+    /**
+     * Đổi cha (có thể kèm đổi tên / mô tả).
+     */
+    MOVE("M"),
+    DELETE("D");
+
+    private final String id;
+
+    MetaFieldChangeType(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public static MetaFieldChangeType fromId(String id) {
+        for (MetaFieldChangeType at : MetaFieldChangeType.values()) {
+            if (at.getId().equals(id)) {
+                return at;
+            }
+        }
+        return null;
+    }
+}
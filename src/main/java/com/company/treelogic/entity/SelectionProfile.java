@@ -0,0 +1,107 @@
+package com.company.treelogic.entity;
+
+import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.metamodel.annotation.InstanceName;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Lựa chọn trên cây MetaField được người dùng đặt tên và lưu lại, ở dạng marker của
+ * {@link com.company.treelogic.engine.SubtreeSelection}: {@code data} / {@code excluded} là
+ * {@link com.company.treelogic.engine.CompressedBitmap} đã serialize, chứa {@code MetaField.ordinal} của các gốc cây
+ * con được chọn / bị loại trừ (xem {@link com.company.treelogic.app.MetaFieldSelectionProfiles}).
+ * <p>
+ * {@code excluded} null: profile lưu theo định dạng cũ, {@code data} chứa ordinal của mọi node được chọn.
+ */
+@JmixEntity
+@Table(name = "SELECTION_PROFILE", indexes = {
+        @Index(name = "IDX_SELECTION_PROFILE_USER_NAME", columnList = "USERNAME, NAME", unique = true)
+})
+@Entity
+public class SelectionProfile {
+    @JmixGeneratedValue
+    @Column(name = "ID", nullable = false)
+    @Id
+    private UUID id;
+
+    @Column(name = "USERNAME", nullable = false)
+    private String username;
+
+    @InstanceName
+    @Column(name = "NAME", nullable = false)
+    private String name;
+
+    @Lob
+    @Column(name = "DATA_", nullable = false)
+    private byte[] data;
+
+    @Lob
+    @Column(name = "EXCLUDED")
+    private byte[] excluded;
+
+    @Column(name = "NODE_COUNT", nullable = false)
+    private Long nodeCount;
+
+    @Column(name = "UPDATED_AT")
+    private OffsetDateTime updatedAt;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public byte[] getExcluded() {
+        return excluded;
+    }
+
+    public void setExcluded(byte[] excluded) {
+        this.excluded = excluded;
+    }
+
+    public Long getNodeCount() {
+        return nodeCount;
+    }
+
+    public void setNodeCount(Long nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    public OffsetDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(OffsetDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+}
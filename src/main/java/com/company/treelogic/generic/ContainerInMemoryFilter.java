@@ -1,9 +1,14 @@
 package com.company.treelogic.generic;
 
+import com.company.treelogic.engine.TreeIndex;
+import io.jmix.core.entity.EntityValues;
 import io.jmix.flowui.model.CollectionContainer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -19,6 +24,9 @@ import java.util.stream.Collectors;
  * </ol>
  * <p>
  * Thường dùng cho các trường <b>@Transient</b> (không thể query DB) hoặc lọc tạm thời.
+ * <p>
+ * Với dữ liệu cây (container của TreeDataGrid), khởi tạo kèm hàm lấy cha: kết quả giữ cấu trúc cây - node khớp cùng
+ * toàn bộ tổ tiên của chúng, theo {@link TreeIndex#retainWithAncestors}.
  *
  * <h2>HƯỚNG DẪN SỬ DỤNG:</h2>
  * <pre>{@code
@@ -69,12 +77,22 @@ public class ContainerInMemoryFilter<T> {
     private final CollectionContainer<T> container;
     private List<T> snapshotList = null; // Backup dữ liệu gốc
     private Predicate<T> activePredicate = null; // Điều kiện lọc đang áp dụng
+    private final Function<T, T> parentGetter; // null = danh sách phẳng
 
     /**
      * @param container Container dữ liệu cần lọc
      */
     public ContainerInMemoryFilter(CollectionContainer<T> container) {
+        this(container, null);
+    }
+
+    /**
+     * @param container    Container dữ liệu cây cần lọc
+     * @param parentGetter Hàm lấy parent (VD: Entity::getParent); tổ tiên của node khớp được giữ lại
+     */
+    public ContainerInMemoryFilter(CollectionContainer<T> container, Function<T, T> parentGetter) {
         this.container = container;
+        this.parentGetter = parentGetter;
     }
 
     /**
@@ -139,10 +157,32 @@ public class ContainerInMemoryFilter<T> {
 
     private void applyFilterInternal() {
         if (snapshotList != null && activePredicate != null) {
-            List<T> filteredResults = snapshotList.stream()
+            List<T> filteredResults = parentGetter != null
+                    ? retainWithAncestors()
+                    : snapshotList.stream()
                     .filter(activePredicate)
                     .collect(Collectors.toList());
             container.setItems(filteredResults);
         }
     }
+
+    private List<T> retainWithAncestors() {
+        TreeIndex<Object> index = new TreeIndex<>();
+        Map<Object, T> items = new HashMap<>();
+        for (T item : snapshotList) {
+            Object id = EntityValues.getId(item);
+            T parent = parentGetter.apply(item);
+            index.add(id, parent != null ? EntityValues.getId(parent) : null);
+            items.put(id, item);
+        }
+        List<T> result = new ArrayList<>();
+        // Giữ thứ tự của snapshot (thứ tự anh em như lúc nạp)
+        for (Object id : index.retainWithAncestors(id -> activePredicate.test(items.get(id)))) {
+            T item = items.get(id);
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package com.company.treelogic.generic;
+
+import com.vaadin.flow.component.HasComponents;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.icon.VaadinIcon;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Messages;
+import io.jmix.core.Sort;
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionLoader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Phân trang keyset ("seek") cho CollectionLoader, thay cho {@code simplePagination} (offset / limit).
+ * <p>
+ * Mỗi trang là một truy vấn {@code where (key, id) > (khoá cuối trang trước) order by key, id limit n + 1} trên chỉ
+ * mục {@code (key, id)}: chi phí như nhau ở trang 1 hay trang 10000, không quét rồi bỏ các dòng phía trước. Trang
+ * trước / trang cuối dùng cùng truy vấn với thứ tự đảo ngược. Dòng thứ {@code n + 1} chỉ để biết còn trang sau.
+ * <p>
+ * Tổng số dòng là ước lượng: chỉ đếm (qua {@code counter}) khi loader được nạp từ bên ngoài (mở view, đổi filter),
+ * không đếm lại khi chuyển trang. Nạp từ bên ngoài luôn quay về trang đầu.
+ * <p>
+ * Khoá sắp xếp phải không null; cặp {@code (key, id)} là duy nhất nên thứ tự ổn định kể cả khi khoá trùng.
+ *
+ * <pre>{@code
+ * // onInit
+ * usersPagination = new KeysetPagination<>(usersDl, "username", User::getUsername, User::getId,
+ *         pageSize, rowCountEstimator::estimate, messages);
+ * usersPagination.attachTo(paginationPanel);
+ *
+ * // Load delegate của loader
+ * @Install(to = "usersDl", target = Target.DATA_LOADER)
+ * private List<User> usersDlLoadDelegate(final LoadContext<User> loadContext) {
+ *     return usersPagination.load(loadContext, dataManager::loadList);
+ * }
+ * }</pre>
+ *
+ * @param <E> Kiểu Entity
+ */
+public class KeysetPagination<E> {
+
+    private static final String ID_PROPERTY = "id";
+
+    enum Move {
+        FIRST,
+        NEXT,
+        PREVIOUS,
+        LAST
+    }
+
+    private final CollectionLoader<E> loader;
+    private final String keyProperty;
+    private final Function<E, Object> keyGetter;
+    private final Function<E, Object> idGetter;
+    private final int pageSize;
+    private final ToLongFunction<LoadContext<E>> counter;
+    private final Messages messages;
+
+    // Khác null khi lần nạp tới do chính các nút chuyển trang gây ra
+    private Move pending;
+    private E firstRow;
+    private E lastRow;
+    private boolean hasPrevious;
+    private boolean hasNext;
+    private int pageIndex;
+    private long approximateCount;
+
+    private JmixButton firstBtn;
+    private JmixButton previousBtn;
+    private JmixButton nextBtn;
+    private JmixButton lastBtn;
+    private Span statusLabel;
+
+    /**
+     * @param loader      Loader của danh sách (phải dùng {@link #load} trong load delegate)
+     * @param keyProperty Thuộc tính sắp xếp, có chỉ mục {@code (key, id)} (VD: {@code "username"})
+     * @param keyGetter   Hàm lấy giá trị khoá sắp xếp của một dòng
+     * @param idGetter    Hàm lấy id của một dòng
+     * @param pageSize    Số dòng mỗi trang
+     * @param counter     Đếm (hoặc ước lượng) số dòng khớp điều kiện của LoadContext; chỉ gọi khi đổi filter
+     * @param messages    Để lấy nhãn trạng thái
+     */
+    public KeysetPagination(CollectionLoader<E> loader,
+                            String keyProperty,
+                            Function<E, Object> keyGetter,
+                            Function<E, Object> idGetter,
+                            int pageSize,
+                            ToLongFunction<LoadContext<E>> counter,
+                            Messages messages) {
+        this.loader = loader;
+        this.keyProperty = keyProperty;
+        this.keyGetter = keyGetter;
+        this.idGetter = idGetter;
+        this.pageSize = pageSize;
+        this.counter = counter;
+        this.messages = messages;
+    }
+
+    /**
+     * Tạo các nút đầu / trước / sau / cuối và nhãn trạng thái trong {@code panel}.
+     */
+    public void attachTo(HasComponents panel) {
+        firstBtn = createButton(VaadinIcon.ANGLE_DOUBLE_LEFT, Move.FIRST);
+        previousBtn = createButton(VaadinIcon.ANGLE_LEFT, Move.PREVIOUS);
+        nextBtn = createButton(VaadinIcon.ANGLE_RIGHT, Move.NEXT);
+        lastBtn = createButton(VaadinIcon.ANGLE_DOUBLE_RIGHT, Move.LAST);
+        statusLabel = new Span();
+        panel.add(firstBtn, previousBtn, statusLabel, nextBtn, lastBtn);
+        updateControls();
+    }
+
+    /**
+     * Nạp một trang: thêm điều kiện keyset, thứ tự và giới hạn vào {@code loadContext} rồi gọi {@code delegate}.
+     *
+     * @param delegate Truy vấn thật (VD: {@code dataManager::loadList}); phải trả về đúng thứ tự và số dòng của
+     *                 LoadContext
+     * @return Các dòng của trang, theo thứ tự tăng dần của khoá
+     */
+    public List<E> load(LoadContext<E> loadContext, Function<LoadContext<E>, List<E>> delegate) {
+        LoadContext.Query query = loadContext.getQuery();
+        Move move = pending != null ? pending : Move.FIRST;
+        if (pending == null) {
+            // Mở view / đổi filter: đếm một lần cho điều kiện mới
+            query.setFirstResult(0);
+            query.setMaxResults(0);
+            approximateCount = counter.applyAsLong(loadContext);
+        }
+        pending = null;
+        if ((move == Move.NEXT && lastRow == null) || (move == Move.PREVIOUS && firstRow == null)) {
+            move = Move.FIRST;
+        }
+
+        Condition seek = switch (move) {
+            case NEXT -> after(lastRow);
+            case PREVIOUS -> before(firstRow);
+            default -> null;
+        };
+        if (seek != null) {
+            query.setCondition(query.getCondition() != null ? LogicalCondition.and(query.getCondition(), seek) : seek);
+        }
+        boolean backward = move == Move.PREVIOUS || move == Move.LAST;
+        query.setSort(Sort.by(backward ? Sort.Direction.DESC : Sort.Direction.ASC, keyProperty, ID_PROPERTY));
+        query.setFirstResult(0);
+        query.setMaxResults(pageSize + 1);
+
+        List<E> rows = new ArrayList<>(delegate.apply(loadContext));
+        boolean more = rows.size() > pageSize;
+        if (more) {
+            rows.remove(rows.size() - 1);
+        }
+        if (backward) {
+            Collections.reverse(rows);
+        }
+        onPageLoaded(move, rows, more);
+        return rows;
+    }
+
+    /**
+     * Cập nhật trạng thái sau khi một trang được nạp.
+     *
+     * @param rows Các dòng của trang theo thứ tự tăng dần
+     * @param more Truy vấn còn dòng phía sau trang theo hướng đi ({@code n + 1} dòng)
+     */
+    void onPageLoaded(Move move, List<E> rows, boolean more) {
+        switch (move) {
+            case FIRST -> {
+                pageIndex = 0;
+                hasPrevious = false;
+                hasNext = more;
+            }
+            case NEXT -> {
+                pageIndex++;
+                hasPrevious = true;
+                hasNext = more;
+            }
+            case PREVIOUS -> {
+                hasPrevious = more;
+                pageIndex = more ? Math.max(pageIndex - 1, 1) : 0;
+                hasNext = true;
+            }
+            case LAST -> {
+                hasPrevious = more;
+                pageIndex = more ? Math.max(pageCount() - 1, 1) : 0;
+                hasNext = false;
+            }
+        }
+        // Trang rỗng (VD: dòng vừa bị xoá): giữ mốc cũ để vẫn quay lại được
+        if (!rows.isEmpty()) {
+            firstRow = rows.get(0);
+            lastRow = rows.get(rows.size() - 1);
+        } else if (move == Move.FIRST) {
+            firstRow = null;
+            lastRow = null;
+        }
+        updateControls();
+    }
+
+    int getPageIndex() {
+        return pageIndex;
+    }
+
+    boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    boolean hasNext() {
+        return hasNext;
+    }
+
+    E getFirstRow() {
+        return firstRow;
+    }
+
+    E getLastRow() {
+        return lastRow;
+    }
+
+    private void navigate(Move move) {
+        pending = move;
+        loader.load();
+    }
+
+    /**
+     * {@code (key, id) > (key, id)} của dòng cho trước.
+     */
+    private Condition after(E row) {
+        Object key = keyGetter.apply(row);
+        return LogicalCondition.or(
+                PropertyCondition.greater(keyProperty, key),
+                LogicalCondition.and(
+                        PropertyCondition.equal(keyProperty, key),
+                        PropertyCondition.greater(ID_PROPERTY, idGetter.apply(row))));
+    }
+
+    /**
+     * {@code (key, id) < (key, id)} của dòng cho trước.
+     */
+    private Condition before(E row) {
+        Object key = keyGetter.apply(row);
+        return LogicalCondition.or(
+                PropertyCondition.less(keyProperty, key),
+                LogicalCondition.and(
+                        PropertyCondition.equal(keyProperty, key),
+                        PropertyCondition.less(ID_PROPERTY, idGetter.apply(row))));
+    }
+
+    private int pageCount() {
+        return (int) Math.max(1, (approximateCount + pageSize - 1) / pageSize);
+    }
+
+    private JmixButton createButton(VaadinIcon icon, Move move) {
+        JmixButton button = new JmixButton();
+        button.setIcon(icon.create());
+        button.addThemeName("icon");
+        button.addThemeName("tertiary");
+        button.addClickListener(event -> navigate(move));
+        return button;
+    }
+
+    private void updateControls() {
+        if (statusLabel == null) {
+            return;
+        }
+        firstBtn.setEnabled(hasPrevious);
+        previousBtn.setEnabled(hasPrevious);
+        nextBtn.setEnabled(hasNext);
+        lastBtn.setEnabled(hasNext);
+        statusLabel.setText(String.format(messages.getMessage(KeysetPagination.class, "keysetPagination.status"),
+                pageIndex + 1, pageCount(), approximateCount));
+    }
+}
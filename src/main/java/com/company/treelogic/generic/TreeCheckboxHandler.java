@@ -1,30 +1,46 @@
 package com.company.treelogic.generic;
 
+import com.company.treelogic.engine.SelectionHistory;
+import com.company.treelogic.engine.SharedSubtreeSelection;
+import com.company.treelogic.engine.SubtreeSelection;
+import com.company.treelogic.engine.SubtreeSelection.Delta;
+import com.company.treelogic.engine.TreeIndex;
 import io.jmix.core.entity.EntityValues;
 import io.jmix.flowui.component.grid.TreeDataGrid;
 import io.jmix.flowui.model.CollectionContainer;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.function.BiConsumer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
- * Generic Handler xử lý logic Checkbox đệ quy trên TreeDataGrid (cho cột Boolean tùy chỉnh).
+ * Generic Handler xử lý logic Checkbox đệ quy trên TreeDataGrid (cho cột checkbox tùy chỉnh).
  * <p>
  * <strong>Logic hoạt động:</strong>
  * <ul>
- *   <li>Tích cha &rarr; Tự động tích tất cả con cháu.</li>
- *   <li>Tích con &rarr; Tự động tích ngược lên cha, ông (đánh dấu nhánh được chọn).</li>
- *   <li>Bỏ tích cha &rarr; Tự động bỏ tích tất cả con cháu.</li>
- *   <li>Bỏ tích con &rarr; Chỉ bỏ tích cha nếu <b>TẤT CẢ</b> anh em khác đều không được chọn.</li>
+ *   <li>Tích cha &rarr; Cả nhánh (cha + con cháu) được chọn.</li>
+ *   <li>Tích con &rarr; Cha, ông hiển thị "chọn một phần" (đánh dấu nhánh được chọn).</li>
+ *   <li>Bỏ tích cha &rarr; Bỏ chọn cả nhánh.</li>
+ *   <li>Bỏ tích con &rarr; Cha chỉ còn được đánh dấu nếu vẫn còn hậu duệ khác được chọn.</li>
  * </ul>
+ * Lựa chọn được lưu nén trong {@link SubtreeSelection} (gốc được chọn + ngoại lệ), không ghi cờ lên từng entity:
+ * tích một nhánh 1 triệu node chỉ tốn một marker. Trạng thái từng dòng được tính khi render, O(độ sâu).
+ * Mặc định lựa chọn là riêng của handler; {@link #setSharedSelection} chuyển sang một {@link SharedSubtreeSelection}
+ * dùng chung giữa nhiều phiên.
+ * <p>
+ * Mỗi thao tác được ghi vào nhật ký hoàn tác dưới dạng {@link Delta} (chỉ các marker đã đổi); {@link #undo} /
+ * {@link #redo} áp dụng lại đúng delta đó và chỉ refresh các dòng bị ảnh hưởng. Ở chế độ dùng chung, delta chỉ được
+ * áp dụng khi phiên khác chưa đổi lại các node đó; nếu đã đổi, bước đó bị bỏ khỏi nhật ký ({@link HistoryResult}).
  *
  * <strong>Cách sử dụng:</strong>
  * <pre>{@code
  * // 1. Khai báo biến trong Controller
- * private TreeCheckboxHandler<MetaField> treeCheckboxHandler;
+ * private TreeCheckboxHandler<MetaField, UUID> treeCheckboxHandler;
  *
  * // 2. Khởi tạo trong onInit
  * @Subscribe
@@ -32,58 +48,101 @@ import java.util.stream.Collectors;
  *     treeCheckboxHandler = new TreeCheckboxHandler<>(
  *         metaFieldsDataGrid,      // Grid hiển thị
  *         metaFieldsDc,            // Container dữ liệu
- *         MetaField::getParent,    // Hàm lấy cha
- *         MetaField::getIncluded,  // Hàm lấy giá trị boolean
- *         MetaField::setIncluded   // Hàm set giá trị boolean
+ *         MetaField::getParent     // Hàm lấy cha
  *     );
  * }
  *
- * // 3. Gọi trong Renderer (cho cột checkbox)
+ * // 3. Gọi trong Renderer (cho cột checkbox) - LitRenderer render phía client, không tạo component cho từng dòng
  * @Supply(to = "metaFieldsDataGrid.included", subject = "renderer")
  * private Renderer<MetaField> includedRenderer() {
- *     return new ComponentRenderer<>(item -> {
- *         JmixCheckbox checkbox = uiComponents.create(JmixCheckbox.class);
- *         checkbox.setValue(Boolean.TRUE.equals(item.getIncluded()));
- *
- *         checkbox.addValueChangeListener(e -> {
+ *     return LitRenderer.<MetaField>of(TreeCheckboxHandler.CHECKBOX_TEMPLATE)
+ *             .withProperty("checked", item -> treeCheckboxHandler.getState(item) != CheckState.UNCHECKED)
+ *             .withProperty("indeterminate", item -> treeCheckboxHandler.getState(item) == CheckState.INDETERMINATE)
  *             // GỌI HÀM NÀY ĐỂ XỬ LÝ LOGIC:
- *             boolean isChecked = Boolean.TRUE.equals(e.getValue());
- *             treeCheckboxHandler.onItemCheckedChange(item, isChecked);
- *         });
- *         return checkbox;
- *     });
+ *             .withFunction("toggle", item -> treeCheckboxHandler.toggle(item));
  * }
+ *
+ * // 4. Khi cần danh sách đầy đủ (export, lưu...)
+ * List<MetaField> selected = treeCheckboxHandler.getSelectedItems();
  * }</pre>
  *
  * @param <T> Kiểu Entity (Ví dụ: MetaField)
+ * @param <K> Kiểu Id của Entity (Ví dụ: UUID)
  */
-public class TreeCheckboxHandler<T> {
+public class TreeCheckboxHandler<T, K> {
+
+    /**
+     * Template LitRenderer cho cột checkbox: cần property {@code checked}, {@code indeterminate} và function
+     * {@code toggle} (chỉ gửi key của dòng về server).
+     */
+    public static final String CHECKBOX_TEMPLATE =
+            "<vaadin-checkbox ?checked=${item.checked} .indeterminate=${item.indeterminate} "
+                    + "@change=${toggle}></vaadin-checkbox>";
+
+    /**
+     * Trạng thái hiển thị của một dòng.
+     */
+    public enum CheckState {
+        UNCHECKED,
+        CHECKED,
+        /**
+         * Chỉ một phần cây con được chọn.
+         */
+        INDETERMINATE
+    }
+
+    /**
+     * Kết quả của {@link #undo} / {@link #redo}.
+     */
+    public enum HistoryResult {
+        APPLIED,
+        /**
+         * Không còn bước nào.
+         */
+        EMPTY,
+        /**
+         * Phiên khác đã đổi marker của các node thuộc bước này (chế độ dùng chung): cây bị đổi được giữ nguyên và
+         * bước bị bỏ khỏi nhật ký.
+         */
+        CONFLICT
+    }
+
+    private static final int HISTORY_OPERATIONS = 50;
+    private static final int HISTORY_ENTRIES = 100_000;
 
     private final TreeDataGrid<T> treeDataGrid;
     private final CollectionContainer<T> container;
     private final Function<T, T> parentGetter;
-    private final Function<T, Boolean> checkedGetter;
-    private final BiConsumer<T, Boolean> checkedSetter;
+    private final SubtreeSelection<K> selection;
+    // Khác null = chế độ dùng chung, lựa chọn riêng ở trên được giữ nguyên để quay lại
+    private SharedSubtreeSelection<K> sharedSelection;
+    private final SelectionHistory<K> history = new SelectionHistory<>(HISTORY_OPERATIONS, HISTORY_ENTRIES);
 
     /**
      * Constructor
      *
-     * @param treeDataGrid  Grid hiển thị (để refresh UI)
-     * @param container     Data Container chứa dữ liệu
-     * @param parentGetter  Hàm lấy parent (VD: Entity::getParent)
-     * @param checkedGetter Hàm lấy giá trị boolean (VD: Entity::getIncluded)
-     * @param checkedSetter Hàm set giá trị boolean (VD: Entity::setIncluded)
+     * @param treeDataGrid Grid hiển thị (để refresh UI)
+     * @param container    Data Container chứa dữ liệu
+     * @param parentGetter Hàm lấy parent (VD: Entity::getParent)
      */
     public TreeCheckboxHandler(TreeDataGrid<T> treeDataGrid,
                                CollectionContainer<T> container,
-                               Function<T, T> parentGetter,
-                               Function<T, Boolean> checkedGetter,
-                               BiConsumer<T, Boolean> checkedSetter) {
+                               Function<T, T> parentGetter) {
         this.treeDataGrid = treeDataGrid;
         this.container = container;
         this.parentGetter = parentGetter;
-        this.checkedGetter = checkedGetter;
-        this.checkedSetter = checkedSetter;
+        this.selection = new SubtreeSelection<>(this::getParentId);
+        // Cha lấy từ container: dòng được nạp / thay / đổi cha thì số marker trong cây con phải tính lại
+        container.addCollectionChangeListener(event -> selection.invalidateCounts());
+        container.addItemPropertyChangeListener(event -> selection.invalidateCounts());
+    }
+
+    /**
+     * Đảo trạng thái một dòng (dùng cho function {@code toggle} của LitRenderer): dòng chưa chọn hoặc chọn một phần
+     * thì chọn cả nhánh, dòng đã chọn đầy đủ thì bỏ chọn.
+     */
+    public void toggle(T item) {
+        onItemCheckedChange(item, getState(item) != CheckState.CHECKED);
     }
 
     /**
@@ -93,88 +152,168 @@ public class TreeCheckboxHandler<T> {
      * @param value Giá trị mới (true/false)
      */
     public void onItemCheckedChange(T item, boolean value) {
-        // 1. Cập nhật giá trị cho item hiện tại
-        checkedSetter.accept(item, value);
-
-        // 2. Chạy logic đệ quy
-        if (value) {
-            // Case A: Tích chọn
-            propagateDown(item, true); // Cha -> Con
-            propagateUpCheck(item);    // Con -> Cha
+        // 1. Ghi một marker cho cả nhánh (không duyệt con cháu)
+        K id = EntityValues.getId(item);
+        Consumer<SubtreeSelection<K>> operation = value
+                ? target -> target.select(id)
+                : target -> target.deselect(id);
+        AtomicReference<Delta<K>> delta = new AtomicReference<>();
+        if (sharedSelection != null) {
+            // Nguyên tử trên cây chứa node; các phiên khác được báo qua listener của lựa chọn dùng chung.
+            // Thao tác có thể chạy lại khi tranh chấp: delta của lần chạy cuối (lần được công bố) được giữ
+            sharedSelection.update(id, target -> delta.set(target.recordChanges(operation)));
         } else {
-            // Case B: Bỏ chọn
-            propagateDown(item, false); // Cha -> Con
-            propagateUpUncheck(item);   // Con -> Cha (có điều kiện)
+            delta.set(selection.recordChanges(operation));
         }
+        history.push(delta.get());
+
+        // 2. Refresh các dòng bị ảnh hưởng (nhánh đổi marker + tổ tiên của chúng)
+        refresh(delta.get());
+    }
 
-        // 3. Refresh Grid để UI cập nhật các dòng bị ảnh hưởng
+    /**
+     * Áp dụng một thao tác lên toàn bộ lựa chọn (VD: nạp profile) rồi refresh Grid. Có thể hoàn tác như một bước.
+     */
+    public void updateSelection(Consumer<SubtreeSelection<K>> operation) {
+        Delta<K> delta = sharedSelection != null
+                ? sharedSelection.updateAll(operation)
+                : selection.recordChanges(operation);
+        history.push(delta);
         treeDataGrid.getDataProvider().refreshAll();
     }
 
-    // =========================================================================
-    // LOGIC ĐỆ QUY (INTERNAL)
-    // =========================================================================
+    /**
+     * Hoàn tác thao tác gần nhất: khôi phục đúng các marker nó đã đổi. Ở chế độ dùng chung, thay đổi của phiên khác
+     * trên các node khác không bị ảnh hưởng; nếu phiên khác đã đổi chính các marker này thì không ghi đè.
+     */
+    public HistoryResult undo() {
+        Delta<K> delta = history.undo();
+        if (delta == null) {
+            return HistoryResult.EMPTY;
+        }
+        return applyMarkers(delta, delta.after(), delta.before());
+    }
 
-    private void propagateDown(T parent, boolean value) {
-        List<T> children = getChildrenInContainer(parent);
-        for (T child : children) {
-            // Chỉ update nếu giá trị khác nhau (tối ưu)
-            if (!Objects.equals(checkedGetter.apply(child), value)) {
-                checkedSetter.accept(child, value);
-                // Tiếp tục đệ quy
-                propagateDown(child, value);
-            }
+    /**
+     * Làm lại thao tác vừa hoàn tác, với cùng điều kiện như {@link #undo}.
+     */
+    public HistoryResult redo() {
+        Delta<K> delta = history.redo();
+        if (delta == null) {
+            return HistoryResult.EMPTY;
         }
+        return applyMarkers(delta, delta.before(), delta.after());
     }
 
-    private void propagateUpCheck(T child) {
-        T parent = getActualParent(child);
-        if (parent != null) {
-            // Nếu cha chưa tích -> Tích cha và đi tiếp lên trên
-            if (!Boolean.TRUE.equals(checkedGetter.apply(parent))) {
-                checkedSetter.accept(parent, true);
-                propagateUpCheck(parent);
-            }
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Chuyển sang lựa chọn dùng chung ({@code null} = quay lại lựa chọn riêng của handler). Nhật ký hoàn tác bị xoá
+     * vì các delta cũ thuộc về lựa chọn kia.
+     */
+    public void setSharedSelection(SharedSubtreeSelection<K> sharedSelection) {
+        this.sharedSelection = sharedSelection;
+        history.clear();
+        treeDataGrid.getDataProvider().refreshAll();
+    }
+
+    public CheckState getState(T item) {
+        K id = EntityValues.getId(item);
+        SubtreeSelection<K> selection = sharedSelection != null ? sharedSelection.treeOf(id) : this.selection;
+        boolean selected = selection.isSelected(id);
+        if (selection.isPartial(id)) {
+            return CheckState.INDETERMINATE;
         }
+        return selected ? CheckState.CHECKED : CheckState.UNCHECKED;
     }
 
-    private void propagateUpUncheck(T child) {
-        T parent = getActualParent(child);
-        if (parent != null) {
-            // Kiểm tra xem cha có đang được tích không
-            if (Boolean.TRUE.equals(checkedGetter.apply(parent))) {
+    /**
+     * Dòng được chọn, hoặc là tổ tiên của một dòng được chọn (dùng cho bộ lọc "Only included").
+     */
+    public boolean isChecked(T item) {
+        return getState(item) != CheckState.UNCHECKED;
+    }
 
-                // Kiểm tra xem còn anh em nào được chọn không?
-                boolean hasSelectedSiblings = getChildrenInContainer(parent).stream()
-                        .anyMatch(sibling -> Boolean.TRUE.equals(checkedGetter.apply(sibling)));
+    /**
+     * Lựa chọn hiện tại. Ở chế độ dùng chung đây là bản sao chụp tại thời điểm gọi - thay đổi phải đi qua
+     * {@link #updateSelection}.
+     */
+    public SubtreeSelection<K> getSelection() {
+        return sharedSelection != null ? sharedSelection.snapshot() : selection;
+    }
 
-                // Nếu KHÔNG còn ai -> Bỏ tích cha
-                if (!hasSelectedSiblings) {
-                    checkedSetter.accept(parent, false);
-                    // Tiếp tục kiểm tra lên trên
-                    propagateUpUncheck(parent);
-                }
-            }
+    /**
+     * Liệt kê đầy đủ các dòng được chọn trong container. Chi phí O(kích thước container) - chỉ gọi khi thật sự cần.
+     */
+    public List<T> getSelectedItems() {
+        TreeIndex<K> index = new TreeIndex<>();
+        for (T item : container.getItems()) {
+            K id = EntityValues.getId(item);
+            index.add(id, getParentId(id));
         }
+        List<T> result = new ArrayList<>();
+        getSelection().forEachSelected(index::getChildren, id -> {
+            T item = container.getItemOrNull(id);
+            if (item != null) {
+                result.add(item);
+            }
+        });
+        return result;
     }
 
     // =========================================================================
     // HELPER METHODS
     // =========================================================================
 
-    private List<T> getChildrenInContainer(T parent) {
-        return container.getItems().stream()
-                .filter(item -> Objects.equals(parent, parentGetter.apply(item)))
-                .collect(Collectors.toList());
+    /**
+     * Ghi {@code markers} của một bước trong nhật ký. Lựa chọn riêng chỉ phiên này ghi nên luôn khớp {@code expected};
+     * lựa chọn dùng chung đi qua CAS của từng cây và bước bị bỏ nếu có xung đột.
+     */
+    private HistoryResult applyMarkers(Delta<K> delta, Map<K, Boolean> expected, Map<K, Boolean> markers) {
+        HistoryResult result = HistoryResult.APPLIED;
+        if (sharedSelection == null) {
+            selection.applyMarkers(markers);
+        } else if (!sharedSelection.applyMarkersIfUnchanged(expected, markers)) {
+            history.discard(delta);
+            result = HistoryResult.CONFLICT;
+        }
+        refresh(delta);
+        return result;
+    }
+
+    /**
+     * Refresh có chọn lọc: mỗi node đổi marker kèm cây con đang hiển thị của nó, và chuỗi tổ tiên (trạng thái "một
+     * phần" có thể đổi). Chi phí O(số marker đổi &times; độ sâu), không phụ thuộc kích thước cây.
+     */
+    private void refresh(Delta<K> delta) {
+        Set<K> ancestors = new HashSet<>();
+        for (K id : delta.keys()) {
+            T item = container.getItemOrNull(id);
+            if (item == null) {
+                // Node chưa được nạp vào container: không có dòng nào để refresh
+                continue;
+            }
+            treeDataGrid.getDataProvider().refreshItem(item, true);
+            for (T parent = parentGetter.apply(item); parent != null && ancestors.add(EntityValues.getId(parent));
+                 parent = parentGetter.apply(parent)) {
+                treeDataGrid.getDataProvider().refreshItem(parent);
+            }
+        }
     }
 
-    private T getActualParent(T child) {
-        T parentRef = parentGetter.apply(child);
-        if (parentRef == null) {
+    private K getParentId(K id) {
+        T item = container.getItemOrNull(id);
+        if (item == null) {
             return null;
         }
+        T parentRef = parentGetter.apply(item);
         // Dùng EntityValues để lấy ID an toàn cho mọi Jmix Entity
-        Object id = EntityValues.getId(parentRef);
-        return container.getItemOrNull(id);
+        return parentRef != null ? EntityValues.getId(parentRef) : null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,206 @@
+package com.company.treelogic.generic;
+
+import io.jmix.flowui.backgroundtask.BackgroundTask;
+import io.jmix.flowui.backgroundtask.BackgroundTaskHandler;
+import io.jmix.flowui.backgroundtask.BackgroundWorker;
+import io.jmix.flowui.backgroundtask.TaskLifeCycle;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.view.View;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Nạp cây vào CollectionContainer trên background task, theo từng tầng (gốc &rarr; con &rarr; cháu...) và theo
+ * từng chunk. Mỗi chunk được đẩy lên UI (qua {@code @Push}) ngay khi tải xong, nên những dòng đầu tiên hiển thị
+ * sau đúng một truy vấn nhỏ, bất kể bảng lớn đến đâu.
+ * <p>
+ * Task gắn với view: view đóng thì task tự huỷ.
+ *
+ * <pre>{@code
+ * treeChunkLoader = new TreeChunkLoader<>(this, backgroundWorker, metaFieldsDc, MetaField::getId,
+ *         (parentIds, after, limit) -> parentIds == null
+ *                 ? metaFieldTreeService.loadRootsChunk(after, limit)
+ *                 : metaFieldTreeService.loadChildrenChunk(parentIds, after, limit),
+ *         500);
+ * treeChunkLoader.start(loaded -> progressBar.setVisible(true), () -> progressBar.setVisible(false));
+ * }</pre>
+ *
+ * @param <T> Kiểu Entity
+ * @param <K> Kiểu Id
+ */
+public class TreeChunkLoader<T, K> {
+
+    /**
+     * Nguồn dữ liệu của một chunk.
+     */
+    @FunctionalInterface
+    public interface ChunkSource<T, K> {
+        /**
+         * @param parentIds Id các node cha (null = lấy node gốc)
+         * @param after     Phần tử cuối của chunk trước trong cùng nhóm cha (null = chunk đầu tiên); nguồn tự chọn
+         *                  khoá keyset (VD: cha + khoá sắp xếp + id), kết quả phải được sắp xếp theo đúng khoá đó
+         * @param limit     Số dòng tối đa
+         */
+        List<T> load(Collection<K> parentIds, T after, int limit);
+    }
+
+    private final View<?> owner;
+    private final BackgroundWorker backgroundWorker;
+    private final CollectionContainer<T> container;
+    private final Function<T, K> idGetter;
+    private final ChunkSource<T, K> source;
+    private final int chunkSize;
+
+    private BackgroundTaskHandler<Integer> taskHandler;
+
+    /**
+     * @param owner            View sở hữu (task bị huỷ khi view đóng)
+     * @param backgroundWorker BackgroundWorker của Jmix
+     * @param container        Container nhận dữ liệu
+     * @param idGetter         Hàm lấy id (VD: Entity::getId)
+     * @param source           Truy vấn một chunk
+     * @param chunkSize        Số dòng mỗi chunk (cũng là số id cha tối đa trong một truy vấn con)
+     */
+    public TreeChunkLoader(View<?> owner,
+                           BackgroundWorker backgroundWorker,
+                           CollectionContainer<T> container,
+                           Function<T, K> idGetter,
+                           ChunkSource<T, K> source,
+                           int chunkSize) {
+        this.owner = owner;
+        this.backgroundWorker = backgroundWorker;
+        this.container = container;
+        this.idGetter = idGetter;
+        this.source = source;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Xoá dữ liệu hiện có và bắt đầu nạp lại. Task cũ (nếu đang chạy) bị huỷ.
+     *
+     * @param onProgress Gọi trên UI thread sau mỗi chunk, tham số là tổng số dòng đã nạp
+     * @param onFinish   Gọi trên UI thread khi nạp xong, bị huỷ hoặc lỗi
+     */
+    public void start(Consumer<Integer> onProgress, Runnable onFinish) {
+        cancel();
+        container.getMutableItems().clear();
+
+        taskHandler = backgroundWorker.handle(new ChunkTask(onProgress, onFinish));
+        taskHandler.execute();
+    }
+
+    /**
+     * Huỷ task đang chạy (nếu có). Các chunk đã đẩy lên vẫn giữ nguyên trong container.
+     */
+    public void cancel() {
+        if (taskHandler != null && taskHandler.isAlive()) {
+            taskHandler.cancel();
+        }
+        taskHandler = null;
+    }
+
+    public boolean isRunning() {
+        return taskHandler != null && taskHandler.isAlive();
+    }
+
+    private class ChunkTask extends BackgroundTask<List<T>, Integer> {
+
+        private final Consumer<Integer> onProgress;
+        private final Runnable onFinish;
+        private int loaded;
+
+        ChunkTask(Consumer<Integer> onProgress, Runnable onFinish) {
+            super(30, TimeUnit.MINUTES, owner);
+            this.onProgress = onProgress;
+            this.onFinish = onFinish;
+        }
+
+        @Override
+        public Integer run(TaskLifeCycle<List<T>> taskLifeCycle) throws Exception {
+            int total = 0;
+            List<K> level = null; // null = tầng gốc
+
+            while (!taskLifeCycle.isCancelled() && !taskLifeCycle.isInterrupted()) {
+                List<K> nextLevel = new ArrayList<>();
+                if (level == null) {
+                    total += loadGroup(null, nextLevel, taskLifeCycle);
+                } else {
+                    for (int from = 0; from < level.size() && !taskLifeCycle.isCancelled(); from += chunkSize) {
+                        List<K> parentIds = new ArrayList<>(
+                                level.subList(from, Math.min(from + chunkSize, level.size())));
+                        total += loadGroup(parentIds, nextLevel, taskLifeCycle);
+                    }
+                }
+                if (nextLevel.isEmpty()) {
+                    break;
+                }
+                level = nextLevel;
+            }
+            return total;
+        }
+
+        /**
+         * Nạp hết con của một nhóm cha (hoặc hết node gốc) theo keyset, đẩy từng chunk lên UI.
+         */
+        @SuppressWarnings("unchecked")
+        private int loadGroup(List<K> parentIds, List<K> collectedIds,
+                              TaskLifeCycle<List<T>> taskLifeCycle) throws InterruptedException {
+            int count = 0;
+            T after = null;
+            while (!taskLifeCycle.isCancelled()) {
+                List<T> chunk = source.load(parentIds, after, chunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                for (T item : chunk) {
+                    collectedIds.add(idGetter.apply(item));
+                }
+                after = chunk.get(chunk.size() - 1);
+                count += chunk.size();
+                taskLifeCycle.publish(chunk);
+
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void progress(List<List<T>> changes) {
+            List<T> items = new ArrayList<>();
+            for (List<T> chunk : changes) {
+                for (T item : chunk) {
+                    // Dòng đã có (VD: được TreePrefetcher nạp trước) không được thêm lần nữa
+                    if (container.getItemOrNull(idGetter.apply(item)) == null) {
+                        items.add(item);
+                    }
+                }
+            }
+            container.getMutableItems().addAll(items);
+            loaded += items.size();
+            onProgress.accept(loaded);
+        }
+
+        @Override
+        public void done(Integer result) {
+            onFinish.run();
+        }
+
+        @Override
+        public void canceled() {
+            onFinish.run();
+        }
+
+        @Override
+        public boolean handleException(Exception ex) {
+            onFinish.run();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.company.treelogic.generic;
+
+import io.jmix.flowui.backgroundtask.BackgroundTask;
+import io.jmix.flowui.backgroundtask.BackgroundWorker;
+import io.jmix.flowui.backgroundtask.TaskLifeCycle;
+import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.view.View;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Nạp trước (speculative prefetch) con của các node vừa hiện ra trên TreeDataGrid, để lần mở tiếp theo không phải
+ * chờ dữ liệu.
+ * <p>
+ * Khi một node được mở, các con của nó trở nên nhìn thấy; con nào còn thiếu hậu duệ trực tiếp trong container (VD:
+ * {@link TreeChunkLoader} chưa nạp tới tầng đó, hoặc container chỉ chứa kết quả filter) được gom lại và nạp con của
+ * chúng bằng <b>một</b> truy vấn {@code PARENT_ID IN (...)} trên background task. Kết quả được đưa vào container
+ * trên UI thread: node có nút mở ngay và lần mở sau lấy từ bộ nhớ.
+ * <p>
+ * Số con của từng node được biết trước ({@code childIds}, VD: chỉ mục trong bộ nhớ), nên mỗi lô chỉ gồm những nhóm
+ * con trọn vẹn trong {@link Policy#batchSize()} dòng. Tổng số dòng nạp trước của một view bị chặn bởi
+ * {@link Policy#maxRows()}.
+ *
+ * <pre>{@code
+ * prefetcher = new TreePrefetcher<>(this, backgroundWorker, metaFieldsDataGrid, metaFieldsDc, MetaField::getId,
+ *         metaFieldTreeService::getChildIds,
+ *         (parentIds, limit) -> metaFieldTreeService.loadChildrenChunk(parentIds, null, limit),
+ *         new TreePrefetcher.Policy(true, 500, 20000));
+ * }</pre>
+ *
+ * @param <T> Kiểu Entity
+ * @param <K> Kiểu Id
+ */
+public class TreePrefetcher<T, K> {
+
+    /**
+     * Chính sách nạp trước.
+     *
+     * @param enabled   Tắt = không nạp trước
+     * @param batchSize Số dòng tối đa của một truy vấn
+     * @param maxRows   Tổng số dòng tối đa được nạp trước trong một view (tính lại sau {@link #reset()})
+     */
+    public record Policy(boolean enabled, int batchSize, int maxRows) {
+    }
+
+    /**
+     * Nguồn dữ liệu: con trực tiếp của nhiều node trong một truy vấn.
+     */
+    @FunctionalInterface
+    public interface ChildrenSource<T, K> {
+        List<T> load(Collection<K> parentIds, int limit);
+    }
+
+    private final View<?> owner;
+    private final BackgroundWorker backgroundWorker;
+    private final CollectionContainer<T> container;
+    private final Function<T, K> idGetter;
+    private final Function<K, Collection<K>> childIds;
+    private final ChildrenSource<T, K> source;
+    private final Policy policy;
+
+    // Node đã được nạp trước (hoặc đang nạp) con: không nạp lại
+    private final Set<K> requested = new HashSet<>();
+    private int prefetchedRows;
+    // Tăng mỗi lần reset: kết quả của task bắt đầu trước đó thuộc về container cũ, bị bỏ
+    private int generation;
+
+    /**
+     * @param owner            View sở hữu (task bị huỷ khi view đóng)
+     * @param backgroundWorker BackgroundWorker của Jmix
+     * @param treeDataGrid     Grid cây: nạp trước khi có node được mở
+     * @param container        Container nhận dữ liệu
+     * @param idGetter         Hàm lấy id (VD: Entity::getId)
+     * @param childIds         Id các con hiện tại của một node, không truy vấn DB
+     * @param source           Truy vấn con của nhiều node
+     * @param policy           Chính sách nạp trước
+     */
+    public TreePrefetcher(View<?> owner,
+                          BackgroundWorker backgroundWorker,
+                          TreeDataGrid<T> treeDataGrid,
+                          CollectionContainer<T> container,
+                          Function<T, K> idGetter,
+                          Function<K, Collection<K>> childIds,
+                          ChildrenSource<T, K> source,
+                          Policy policy) {
+        this.owner = owner;
+        this.backgroundWorker = backgroundWorker;
+        this.container = container;
+        this.idGetter = idGetter;
+        this.childIds = childIds;
+        this.source = source;
+        this.policy = policy;
+
+        treeDataGrid.addExpandListener(event -> {
+            List<K> visible = new ArrayList<>();
+            event.getItems().forEach(item -> visible.addAll(childIds.apply(idGetter.apply(item))));
+            prefetch(visible);
+        });
+    }
+
+    /**
+     * Nạp trước con của các node đang nhìn thấy (VD: kết quả filter vừa nạp), nếu container còn thiếu.
+     */
+    public void prefetch(Collection<K> visibleIds) {
+        if (!policy.enabled()) {
+            return;
+        }
+        List<K> batch = new ArrayList<>();
+        int rows = 0;
+        for (K id : visibleIds) {
+            if (prefetchedRows + rows >= policy.maxRows()) {
+                break;
+            }
+            // Node không có trong container (VD: bị filter loại) không hiển thị, con của nó cũng không
+            if (requested.contains(id) || container.getItemOrNull(id) == null) {
+                continue;
+            }
+            Collection<K> children = childIds.apply(id);
+            // Nhóm quá lớn cho một lô: để TreeChunkLoader / lần mở sau lo
+            if (children.isEmpty() || rows + children.size() > policy.batchSize() || isLoaded(children)) {
+                continue;
+            }
+            batch.add(id);
+            rows += children.size();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        requested.addAll(batch);
+        prefetchedRows += rows;
+        backgroundWorker.handle(new PrefetchTask(batch, rows)).execute();
+    }
+
+    /**
+     * Quên các node đã nạp trước (gọi khi container được nạp lại từ đầu).
+     */
+    public void reset() {
+        requested.clear();
+        prefetchedRows = 0;
+        generation++;
+    }
+
+    private boolean isLoaded(Collection<K> ids) {
+        for (K id : ids) {
+            if (container.getItemOrNull(id) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class PrefetchTask extends BackgroundTask<Void, List<T>> {
+
+        private final List<K> parentIds;
+        private final int limit;
+        private final int taskGeneration = generation;
+
+        PrefetchTask(List<K> parentIds, int limit) {
+            super(1, TimeUnit.MINUTES, owner);
+            this.parentIds = parentIds;
+            this.limit = limit;
+        }
+
+        @Override
+        public List<T> run(TaskLifeCycle<Void> taskLifeCycle) {
+            return source.load(parentIds, limit);
+        }
+
+        @Override
+        public void done(List<T> result) {
+            if (taskGeneration != generation) {
+                return;
+            }
+            List<T> missing = new ArrayList<>();
+            for (T item : result) {
+                // TreeChunkLoader có thể đã nạp một phần trong lúc chờ
+                if (container.getItemOrNull(idGetter.apply(item)) == null) {
+                    missing.add(item);
+                }
+            }
+            container.getMutableItems().addAll(missing);
+        }
+
+        @Override
+        public boolean handleException(Exception ex) {
+            // Nạp trước chỉ là tối ưu: lỗi thì để lần mở / chunk loader nạp bình thường
+            if (taskGeneration == generation) {
+                parentIds.forEach(requested::remove);
+                prefetchedRows -= limit;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.company.treelogic.listener;
+
+import com.company.treelogic.app.MetaFieldChangeBus;
+import com.company.treelogic.app.MetaFieldChangeLog;
+import com.company.treelogic.app.MetaFieldDelta;
+import com.company.treelogic.app.MetaFieldOrdinals;
+import com.company.treelogic.app.MetaFieldRootIds;
+import com.company.treelogic.app.MetaFieldSortKeys;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import io.jmix.core.Id;
+import io.jmix.core.event.EntityChangedEvent;
+import io.jmix.core.event.EntitySavingEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Component
+public class MetaFieldEventListener {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+    @Autowired
+    private MetaFieldChangeLog metaFieldChangeLog;
+    @Autowired
+    private MetaFieldSortKeys metaFieldSortKeys;
+    @Autowired
+    private MetaFieldRootIds metaFieldRootIds;
+    @Autowired
+    private MetaFieldOrdinals metaFieldOrdinals;
+
+    @EventListener
+    public void onMetaFieldSaving(final EntitySavingEvent<MetaField> event) {
+        MetaField metaField = event.getEntity();
+        if (!event.isNewEntity()) {
+            return;
+        }
+        UUID parentId = metaField.getParent() != null ? metaField.getParent().getId() : null;
+        if (metaField.getSortKey() == null) {
+            // Node mới mặc định nằm cuối danh sách anh em
+            metaField.setSortKey(metaFieldSortKeys.keyForLast(parentId));
+        }
+        if (metaField.getRootId() == null) {
+            metaField.setRootId(parentId == null ? metaField.getId() : metaFieldRootIds.rootOf(parentId));
+        }
+        if (metaField.getOrdinal() == null) {
+            metaField.setOrdinal(metaFieldOrdinals.next());
+        }
+    }
+
+    @EventListener
+    public void onMetaFieldChangedBeforeCommit(final EntityChangedEvent<MetaField> event) {
+        MetaFieldDelta delta = toDelta(event);
+        if (delta == null) {
+            return;
+        }
+        // Cùng transaction với thay đổi: rollback thì log và ROOT_ID cũng rollback
+        if (delta.type() == MetaFieldChangeType.INSERT) {
+            metaFieldRootIds.assignIfMissing(delta.id(), delta.parentId());
+        } else if (delta.type() == MetaFieldChangeType.MOVE) {
+            metaFieldRootIds.assign(delta.id(), delta.parentId());
+            if (!event.getChanges().isChanged("sortKey")) {
+                // Đổi cha trên form sửa / khi merge: khoá cũ là vị trí dưới cha cũ
+                String sortKey = metaFieldSortKeys.assignLast(delta.id(), delta.parentId());
+                delta = new MetaFieldDelta(delta.type(), delta.id(), delta.parentId(), delta.name(),
+                        delta.description(), sortKey, 0L);
+            }
+        }
+        long revision = metaFieldChangeLog.append(delta);
+        metaFieldChangeBus.collect(delta.withRevision(revision));
+    }
+
+    private MetaFieldDelta toDelta(EntityChangedEvent<MetaField> event) {
+        UUID id = (UUID) event.getEntityId().getValue();
+
+        if (event.getType() == EntityChangedEvent.Type.DELETED) {
+            Id<MetaField> oldParent = event.getChanges().getOldValue("parent");
+            return new MetaFieldDelta(MetaFieldChangeType.DELETE, id,
+                    oldParent != null ? (UUID) oldParent.getValue() : null, null, null, null, 0L);
+        }
+
+        MetaFieldChangeType type = event.getType() == EntityChangedEvent.Type.CREATED
+                ? MetaFieldChangeType.INSERT
+                : event.getChanges().isChanged("parent") ? MetaFieldChangeType.MOVE : MetaFieldChangeType.UPDATE;
+
+        // Entity vừa được lưu trong chính transaction này nên đang nằm trong persistence context: find() trả về
+        // instance đó, không chạy một truy vấn cho mỗi dòng thay đổi
+        MetaField metaField = entityManager.find(MetaField.class, id);
+        if (metaField == null) {
+            return null;
+        }
+        return new MetaFieldDelta(type, id, metaField.getParent() != null ? metaField.getParent().getId() : null,
+                metaField.getName(), metaField.getDescription(), metaField.getSortKey(), 0L);
+    }
+}
@@ -1,22 +1,83 @@
 package com.company.treelogic.security;
 
 import com.company.treelogic.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jmix.core.MetadataTools;
+import io.jmix.core.UnconstrainedDataManager;
+import io.jmix.core.event.EntityChangedEvent;
+import io.jmix.securitydata.entity.RoleAssignmentEntity;
 import io.jmix.securitydata.user.AbstractDatabaseUserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
 
 @Primary
 @Component("UserRepository")
 public class DatabaseUserRepository extends AbstractDatabaseUserRepository<User> {
 
+    @Autowired
+    private UserCacheProperties userCacheProperties;
+    @Autowired
+    private MetadataTools metadataTools;
+    @Autowired
+    private UnconstrainedDataManager unconstrainedDataManager;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * Cache user + quyền theo username: mỗi lần đăng nhập / thay thế user / kiểm tra phiên không cần truy vấn
+     * {@code USER_} và bảng gán quyền. Bị xoá đúng mục khi User hoặc RoleAssignment của user đó thay đổi.
+     */
+    private Cache<String, CachedUser> userCache;
+
+    @PostConstruct
+    protected void initUserCache() {
+        userCache = Caffeine.newBuilder()
+                .maximumSize(userCacheProperties.maxSize())
+                .expireAfterWrite(userCacheProperties.expireAfter())
+                .recordStats()
+                .build();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, userCache, "treelogic.users");
+        }
+    }
+
     @Override
     protected Class<User> getUserClass() {
         return User.class;
     }
 
+    @Override
+    public User loadUserByUsername(final String username) throws UsernameNotFoundException {
+        if (!userCacheProperties.enabled()) {
+            return super.loadUserByUsername(username);
+        }
+        CachedUser cached = userCache.get(username, key -> {
+            User user = super.loadUserByUsername(key);
+            return new CachedUser(user.getId(), user, List.copyOf(user.getAuthorities()));
+        });
+
+        // Trả về bản sao: instance trong cache dùng chung cho mọi phiên, không được để bên ngoài sửa
+        User user = metadataTools.copy(cached.user());
+        user.setAuthorities(cached.authorities());
+        return user;
+    }
+
     @Override
     protected void initSystemUser(final User systemUser) {
         final Collection<GrantedAuthority> authorities = getGrantedAuthoritiesBuilder()
@@ -28,4 +89,27 @@ public class DatabaseUserRepository extends AbstractDatabaseUserRepository<User>
     @Override
     protected void initAnonymousUser(final User anonymousUser) {
     }
-}
\ No newline at end of file
+
+    @TransactionalEventListener
+    public void onUserChangedAfterCommit(final EntityChangedEvent<User> event) {
+        Object userId = event.getEntityId().getValue();
+        userCache.asMap().values().removeIf(cached -> Objects.equals(cached.userId(), userId));
+    }
+
+    @TransactionalEventListener
+    public void onRoleAssignmentChangedAfterCommit(final EntityChangedEvent<RoleAssignmentEntity> event) {
+        String oldUsername = event.getChanges().getOldValue("username");
+        if (oldUsername != null) {
+            userCache.invalidate(oldUsername);
+        }
+        if (event.getType() != EntityChangedEvent.Type.DELETED) {
+            unconstrainedDataManager.load(event.getEntityId())
+                    .optional()
+                    .map(RoleAssignmentEntity::getUsername)
+                    .ifPresent(userCache::invalidate);
+        }
+    }
+
+    private record CachedUser(UUID userId, User user, Collection<? extends GrantedAuthority> authorities) {
+    }
+}
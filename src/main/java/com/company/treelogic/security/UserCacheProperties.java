@@ -0,0 +1,19 @@
+package com.company.treelogic.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình cache user + quyền trong {@link DatabaseUserRepository}.
+ *
+ * @param enabled     Bật/tắt cache
+ * @param maxSize     Số user tối đa giữ trong cache
+ * @param expireAfter Thời gian sống của một mục kể từ lúc nạp
+ */
+@ConfigurationProperties(prefix = "treelogic.security.user-cache")
+public record UserCacheProperties(@DefaultValue("true") boolean enabled,
+                                  @DefaultValue("10000") long maxSize,
+                                  @DefaultValue("10m") Duration expireAfter) {
+}
@@ -0,0 +1,97 @@
+package com.company.treelogic.threading;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Chẩn đoán virtual thread bị "pin" vào carrier thread (chặn I/O bên trong {@code synchronized} / native frame).
+ * <p>
+ * Đọc sự kiện JFR {@code jdk.VirtualThreadPinned} trong tiến trình, phân loại theo frame JDBC đầu tiên trên stack
+ * (HSQLDB, Hikari, EclipseLink...) rồi ghi log + metrics {@code treelogic.threads.virtual.pinned}.
+ * Các đoạn pin trên đường JDBC là nơi virtual thread mất tác dụng và cần được xem lại trước tiên.
+ */
+public class VirtualThreadPinningMonitor implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final VirtualThreadsProperties properties;
+    private final MeterRegistry meterRegistry;
+    private RecordingStream recordingStream;
+
+    /**
+     * @param meterRegistry Có thể null - khi đó chỉ ghi log
+     */
+    public VirtualThreadPinningMonitor(VirtualThreadsProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT)
+                .withThreshold(properties.pinningThreshold())
+                .withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Virtual thread pinning monitor started (threshold {})", properties.pinningThreshold());
+    }
+
+    @Override
+    public void destroy() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = Optional.ofNullable(event.getStackTrace())
+                .map(RecordedStackTrace::getFrames)
+                .orElse(List.of());
+
+        String jdbcFrame = frames.stream()
+                .map(VirtualThreadPinningMonitor::frameName)
+                .filter(this::isJdbcFrame)
+                .findFirst()
+                .orElse(null);
+        String path = jdbcFrame != null ? "jdbc" : "other";
+
+        if (meterRegistry != null) {
+            meterRegistry.counter("treelogic.threads.virtual.pinned", "path", path).increment();
+        }
+
+        String stack = frames.stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> "\n  at " + frameName(frame))
+                .collect(Collectors.joining());
+        if (jdbcFrame != null) {
+            log.warn("Virtual thread pinned for {} ms on JDBC path ({}):{}",
+                    event.getDuration().toMillis(), jdbcFrame, stack);
+        } else {
+            log.info("Virtual thread pinned for {} ms:{}", event.getDuration().toMillis(), stack);
+        }
+    }
+
+    private boolean isJdbcFrame(String frameName) {
+        return properties.jdbcFramePrefixes().stream().anyMatch(frameName::startsWith);
+    }
+
+    private static String frameName(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
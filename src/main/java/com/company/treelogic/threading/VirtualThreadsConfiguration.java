@@ -0,0 +1,35 @@
+package com.company.treelogic.threading;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Chế độ virtual thread, bật bằng {@code spring.threads.virtual.enabled=true} (cần Java 21+).
+ * <p>
+ * Spring Boot tự chuyển request của Tomcat, {@code applicationTaskExecutor} ({@code @Async}) và scheduler sang
+ * virtual thread. Cấu hình này bổ sung {@link VirtualThreadPinningMonitor} để phát hiện các đoạn
+ * {@code synchronized} trên đường JDBC.
+ * <p>
+ * Background task của Jmix ({@code BackgroundWorker}) vẫn chạy trên pool riêng của Jmix (kích thước theo
+ * {@code jmix.ui.background-task.threads-count}): Jmix không có extension point được hỗ trợ để thay executor.
+ * <p>
+ * Mặc định (property không bật) ứng dụng vẫn chạy trên platform thread như cũ. Số đo so sánh hai chế độ: xem
+ * {@code VirtualThreadsComparisonTest}.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "treelogic.threads.virtual", name = "pinning-monitor", havingValue = "true",
+            matchIfMissing = true)
+    VirtualThreadPinningMonitor virtualThreadPinningMonitor(final VirtualThreadsProperties properties,
+                                                            final ObjectProvider<MeterRegistry> meterRegistry) {
+        return new VirtualThreadPinningMonitor(properties, meterRegistry.getIfAvailable());
+    }
+}
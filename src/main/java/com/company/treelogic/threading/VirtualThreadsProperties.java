@@ -0,0 +1,22 @@
+package com.company.treelogic.threading;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Cấu hình chế độ virtual thread (bổ sung cho {@code spring.threads.virtual.enabled}).
+ *
+ * @param pinningMonitor    Theo dõi sự kiện JFR {@code jdk.VirtualThreadPinned}
+ * @param pinningThreshold  Chỉ ghi nhận các lần pin lâu hơn ngưỡng này
+ * @param jdbcFramePrefixes Tiền tố class được coi là "đường JDBC" khi phân loại stack trace bị pin
+ */
+@ConfigurationProperties(prefix = "treelogic.threads.virtual")
+public record VirtualThreadsProperties(@DefaultValue("true") boolean pinningMonitor,
+                                       @DefaultValue("20ms") Duration pinningThreshold,
+                                       @DefaultValue({"org.hsqldb.", "com.zaxxer.hikari.",
+                                               "org.eclipse.persistence.", "java.sql."})
+                                       List<String> jdbcFramePrefixes) {
+}
@@ -0,0 +1,178 @@
+package com.company.treelogic.view.metafield;
+
+import com.company.treelogic.app.MetaFieldDelta;
+import com.company.treelogic.app.MetaFieldTreeService;
+import com.company.treelogic.entity.MetaField;
+import io.jmix.core.DataManager;
+import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.model.CollectionContainer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Vá container + TreeDataGrid của một view theo lô delta từ {@link com.company.treelogic.app.MetaFieldChangeBus},
+ * thay vì nạp lại cả bảng. Áp dụng lặp lại cùng một delta không gây sai lệch (idempotent).
+ * <p>
+ * Node mới chỉ được thêm khi cha của nó đang có trong container (nhánh chưa nạp / bị filter thì bỏ qua); node bị
+ * chuyển sang cha không có trong container (hoặc tách thành cây khác khi view chỉ hiển thị một cây) thì bị bỏ khỏi
+ * container cùng các hậu duệ.
+ * <p>
+ * Container giữ thứ tự anh em như lúc nạp ({@code SORT_KEY}, ID): node đổi khoá (kéo thả ở phiên khác, cân bằng lại
+ * khoá) hoặc đổi cha được đặt lại đúng chỗ giữa các anh em mới; node mới cũng được chèn đúng chỗ.
+ */
+class MetaFieldDeltaApplier {
+
+    // Như thứ tự truy vấn con: SORT_KEY rồi ID (khoá trùng trước khi cân bằng lại). UUID so theo chuỗi hex - cùng thứ
+    // tự byte với CSDL, khác UUID.compareTo (so có dấu)
+    private static final Comparator<MetaField> SIBLING_ORDER = Comparator
+            .comparing(MetaField::getSortKey, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(item -> item.getId().toString());
+
+    private final CollectionContainer<MetaField> container;
+    private final TreeDataGrid<MetaField> treeDataGrid;
+    private final DataManager dataManager;
+    private final MetaFieldTreeService metaFieldTreeService;
+    // false khi view chỉ hiển thị một cây: node gốc mới (cây khác) bị bỏ qua
+    private boolean acceptNewRoots = true;
+
+    MetaFieldDeltaApplier(CollectionContainer<MetaField> container,
+                          TreeDataGrid<MetaField> treeDataGrid,
+                          DataManager dataManager,
+                          MetaFieldTreeService metaFieldTreeService) {
+        this.container = container;
+        this.treeDataGrid = treeDataGrid;
+        this.dataManager = dataManager;
+        this.metaFieldTreeService = metaFieldTreeService;
+    }
+
+    void setAcceptNewRoots(boolean acceptNewRoots) {
+        this.acceptNewRoots = acceptNewRoots;
+    }
+
+    void apply(List<MetaFieldDelta> deltas) {
+        // Delta cuối cùng của mỗi node là trạng thái sau commit
+        Map<UUID, MetaFieldDelta> latest = new LinkedHashMap<>();
+        deltas.forEach(delta -> latest.put(delta.id(), delta));
+
+        List<UUID> toLoad = new ArrayList<>();
+        Set<UUID> detached = new HashSet<>();
+        boolean structureChanged = false;
+
+        for (MetaFieldDelta delta : latest.values()) {
+            MetaField existing = container.getItemOrNull(delta.id());
+            switch (delta.type()) {
+                case DELETE -> {
+                    if (existing != null) {
+                        container.getMutableItems().remove(existing);
+                    }
+                }
+                case INSERT, UPDATE, MOVE -> {
+                    if (existing == null) {
+                        if (isParentLoaded(delta.parentId())) {
+                            toLoad.add(delta.id());
+                        }
+                    } else if (delta.parentId() == null && !acceptNewRoots && existing.getParent() != null) {
+                        // Nhánh bị tách thành cây riêng: không còn thuộc cây đang xem, kể cả các hậu duệ
+                        detached.add(existing.getId());
+                    } else if (!Objects.equals(parentIdOf(existing), delta.parentId())
+                            && !isParentLoaded(delta.parentId())) {
+                        // Chuyển sang nhánh chưa nạp / bị filter: bỏ khỏi view như DELETE, không hiện thành gốc giả
+                        detached.add(existing.getId());
+                    } else {
+                        existing.setName(delta.name());
+                        existing.setDescription(delta.description());
+                        boolean moved = !Objects.equals(parentIdOf(existing), delta.parentId());
+                        // Dòng log cũ (trước khi thứ tự anh em được ghi) không có khoá: giữ vị trí hiện tại
+                        boolean reordered = delta.sortKey() != null
+                                && !Objects.equals(existing.getSortKey(), delta.sortKey());
+                        if (moved) {
+                            existing.setParent(delta.parentId() != null
+                                    ? container.getItemOrNull(delta.parentId())
+                                    : null);
+                        }
+                        if (reordered) {
+                            existing.setSortKey(delta.sortKey());
+                        }
+                        if (moved || reordered) {
+                            place(existing);
+                            structureChanged = true;
+                        } else {
+                            treeDataGrid.getDataProvider().refreshItem(existing);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!detached.isEmpty()) {
+            removeWithDescendants(detached);
+        }
+        if (!toLoad.isEmpty()) {
+            // Một truy vấn theo id cho tất cả node mới của lô
+            List<MetaField> inserted = dataManager.load(MetaField.class)
+                    .ids(toLoad)
+                    .fetchPlan(metaFieldTreeService.treeFetchPlan())
+                    .list();
+            inserted.forEach(this::place);
+        }
+        if (structureChanged) {
+            treeDataGrid.getDataProvider().refreshAll();
+        }
+    }
+
+    /**
+     * Đặt node vào danh sách của container ngay trước anh em đầu tiên đứng sau nó theo ({@code SORT_KEY}, ID); không
+     * có thì ở cuối. Chỉ thứ tự tương đối giữa các anh em có ý nghĩa với TreeDataGrid.
+     */
+    private void place(MetaField item) {
+        List<MetaField> items = container.getMutableItems();
+        items.remove(item);
+        UUID parentId = parentIdOf(item);
+        for (int i = 0; i < items.size(); i++) {
+            MetaField sibling = items.get(i);
+            if (Objects.equals(parentIdOf(sibling), parentId) && SIBLING_ORDER.compare(sibling, item) > 0) {
+                items.add(i, item);
+                return;
+            }
+        }
+        items.add(item);
+    }
+
+    /**
+     * Bỏ các node kèm mọi hậu duệ đang có trong container (một lượt qua container cho cả lô).
+     */
+    private void removeWithDescendants(Set<UUID> rootIds) {
+        List<MetaField> removed = new ArrayList<>();
+        for (MetaField item : container.getItems()) {
+            // Đi lên qua chính các item của container: cha lồng trong fetch plan không có cha của nó
+            for (MetaField node = item; node != null; node = parentOf(node)) {
+                if (rootIds.contains(node.getId())) {
+                    removed.add(item);
+                    break;
+                }
+            }
+        }
+        container.getMutableItems().removeAll(removed);
+    }
+
+    private boolean isParentLoaded(UUID parentId) {
+        return parentId == null ? acceptNewRoots : container.getItemOrNull(parentId) != null;
+    }
+
+    private MetaField parentOf(MetaField metaField) {
+        UUID parentId = parentIdOf(metaField);
+        return parentId != null ? container.getItemOrNull(parentId) : null;
+    }
+
+    private static UUID parentIdOf(MetaField metaField) {
+        return metaField.getParent() != null ? metaField.getParent().getId() : null;
+    }
+}
@@ -1,16 +1,90 @@
 package com.company.treelogic.view.metafield;
 
+import com.company.treelogic.app.MetaFieldTreeService;
 import com.company.treelogic.entity.MetaField;
 import com.company.treelogic.view.main.MainView;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.renderer.LitRenderer;
 import com.vaadin.flow.router.Route;
+import io.jmix.flowui.component.combobox.EntityComboBox;
 import io.jmix.flowui.view.EditedEntityContainer;
+import io.jmix.flowui.view.Install;
 import io.jmix.flowui.view.StandardDetailView;
+import io.jmix.flowui.view.Subscribe;
+import io.jmix.flowui.view.ViewComponent;
 import io.jmix.flowui.view.ViewController;
 import io.jmix.flowui.view.ViewDescriptor;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 @Route(value = "meta-fields/:id", layout = MainView.class)
 @ViewController(id = "MetaField.detail")
 @ViewDescriptor(path = "meta-field-detail-view.xml")
 @EditedEntityContainer("metaFieldDc")
 public class MetaFieldDetailView extends StandardDetailView<MetaField> {
-}
\ No newline at end of file
+
+    // Tên + đường dẫn tổ tiên (dòng phụ) của mỗi ứng viên trong danh sách thả xuống
+    private static final String PARENT_CANDIDATE_TEMPLATE = "<div>${item.name}"
+            + "<div style=\"font-size: var(--lumo-font-size-s); color: var(--lumo-secondary-text-color)\">"
+            + "${item.path}</div></div>";
+
+    @Autowired
+    private MetaFieldTreeService metaFieldTreeService;
+    @ViewComponent
+    private EntityComboBox<MetaField> parentField;
+
+    private final Map<UUID, String> candidatePaths = new HashMap<>();
+    // Dòng cuối của các trang ứng viên đã đọc, theo vị trí kết thúc trang (cho keyset của trang kế tiếp)
+    private final TreeMap<Integer, MetaField> pageEnds = new TreeMap<>();
+    private String pageEndsFilter;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        parentField.setRenderer(LitRenderer.<MetaField>of(PARENT_CANDIDATE_TEMPLATE)
+                .withProperty("name", MetaField::getName)
+                .withProperty("path", item -> candidatePaths.getOrDefault(item.getId(), "")));
+    }
+
+    /**
+     * Mỗi lần gõ (connector của ComboBox đã debounce bộ lọc) chỉ đọc một trang ứng viên theo tiền tố tên và đường dẫn
+     * của chúng. Node đang sửa và hậu duệ của nó bị loại để không tạo vòng. Trang sau nối tiếp trang trước bằng
+     * keyset: offset của ComboBox được đổi thành dòng cuối của trang đã đọc.
+     */
+    @Install(to = "parentField", subject = "itemsFetchCallback")
+    private Stream<MetaField> parentFieldItemsFetchCallback(final Query<MetaField, String> query) {
+        String filter = query.getFilter().orElse("");
+        if (!filter.equals(pageEndsFilter)) {
+            pageEnds.clear();
+            pageEndsFilter = filter;
+        }
+        UUID excluded = getEditedEntity().getId();
+        int offset = query.getOffset();
+        Map.Entry<Integer, MetaField> known = pageEnds.floorEntry(offset);
+        int position = known != null ? known.getKey() : 0;
+        MetaField after = known != null ? known.getValue() : null;
+        while (position < offset) {
+            // Cuộn nhảy qua các trang chưa đọc: đi tiếp bằng keyset, không OFFSET
+            List<MetaField> skipped = metaFieldTreeService.searchByNamePrefix(filter, excluded, after,
+                    Math.min(query.getLimit(), offset - position));
+            if (skipped.isEmpty()) {
+                return Stream.empty();
+            }
+            position += skipped.size();
+            after = skipped.get(skipped.size() - 1);
+            pageEnds.put(position, after);
+        }
+        List<MetaField> candidates = metaFieldTreeService.searchByNamePrefix(filter, excluded, after,
+                query.getLimit());
+        if (!candidates.isEmpty()) {
+            pageEnds.put(offset + candidates.size(), candidates.get(candidates.size() - 1));
+        }
+        candidatePaths.putAll(metaFieldTreeService.loadPaths(candidates.stream().map(MetaField::getId).toList()));
+        return candidates.stream();
+    }
+}
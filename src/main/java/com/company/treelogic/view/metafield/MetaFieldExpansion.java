@@ -0,0 +1,157 @@
+package com.company.treelogic.view.metafield;
+
+import com.company.treelogic.app.MetaFieldTreeService;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.engine.UuidSetCodec;
+import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.settings.UserSettingsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Trạng thái mở / đóng của TreeDataGrid MetaField, lưu theo người dùng và theo view (user settings, id nén bằng
+ * {@link UuidSetCodec}).
+ * <p>
+ * Node cần mở được giữ trong danh sách chờ và mở dần khi {@link com.company.treelogic.generic.TreeChunkLoader} đẩy
+ * chúng vào container ({@link #applyPending()}), nên việc khôi phục không phát sinh truy vấn riêng.
+ * "Mở N tầng" được tính phía server bằng {@link MetaFieldTreeService#collectExpandable}, không mở đệ quy trên grid.
+ */
+class MetaFieldExpansion {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldExpansion.class);
+
+    // Giới hạn số node mở được lưu / mở trong một lần
+    static final int MAX_EXPANDED = 5000;
+
+    private final String settingsKey;
+    private final TreeDataGrid<MetaField> treeDataGrid;
+    private final CollectionContainer<MetaField> container;
+    private final UserSettingsService userSettingsService;
+    private final MetaFieldTreeService metaFieldTreeService;
+
+    private final Set<UUID> expanded = new LinkedHashSet<>();
+    private final Set<UUID> pending = new LinkedHashSet<>();
+    private boolean dirty;
+    // false trong lúc mở node hộ kết quả filter: không phải thao tác của người dùng
+    private boolean recording = true;
+
+    MetaFieldExpansion(String viewId,
+                       TreeDataGrid<MetaField> treeDataGrid,
+                       CollectionContainer<MetaField> container,
+                       UserSettingsService userSettingsService,
+                       MetaFieldTreeService metaFieldTreeService) {
+        this.settingsKey = viewId + ".expanded";
+        this.treeDataGrid = treeDataGrid;
+        this.container = container;
+        this.userSettingsService = userSettingsService;
+        this.metaFieldTreeService = metaFieldTreeService;
+
+        treeDataGrid.addExpandListener(event -> {
+            if (recording) {
+                event.getItems().forEach(item -> dirty |= expanded.add(item.getId()));
+            }
+        });
+        treeDataGrid.addCollapseListener(event -> event.getItems().forEach(item ->
+                dirty |= expanded.remove(item.getId())));
+    }
+
+    /**
+     * Đọc trạng thái đã lưu; các node được mở khi chúng có mặt trong container.
+     */
+    void restore() {
+        try {
+            userSettingsService.load(settingsKey)
+                    .map(UuidSetCodec::decode)
+                    .ifPresent(ids -> {
+                        expanded.addAll(ids);
+                        pending.addAll(ids);
+                    });
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed expansion state {}", settingsKey, e);
+        }
+        applyPending();
+    }
+
+    /**
+     * Mở các node đang chờ đã có trong container.
+     */
+    void applyPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<MetaField> items = new ArrayList<>();
+        for (Iterator<UUID> iterator = pending.iterator(); iterator.hasNext(); ) {
+            MetaField item = container.getItemOrNull(iterator.next());
+            if (item != null) {
+                items.add(item);
+                iterator.remove();
+            }
+        }
+        if (!items.isEmpty()) {
+            treeDataGrid.expand(items);
+        }
+    }
+
+    /**
+     * Mở đường dẫn tới các node khớp filter. Không được ghi vào trạng thái đã lưu của người dùng.
+     */
+    void expandTransient(Collection<MetaField> items) {
+        recording = false;
+        try {
+            treeDataGrid.expand(items);
+        } finally {
+            recording = true;
+        }
+    }
+
+    /**
+     * Mở {@code levels} tầng bên dưới node đang chọn (hoặc bên dưới mọi node gốc đã nạp).
+     */
+    void expandLevels(MetaField selected, int levels) {
+        List<UUID> rootIds = new ArrayList<>();
+        if (selected != null) {
+            rootIds.add(selected.getId());
+        } else {
+            container.getItems().stream()
+                    .filter(item -> item.getParent() == null)
+                    .forEach(item -> rootIds.add(item.getId()));
+        }
+        pending.addAll(metaFieldTreeService.collectExpandable(rootIds, levels, MAX_EXPANDED));
+        applyPending();
+    }
+
+    void collapseAll() {
+        pending.clear();
+        List<MetaField> items = new ArrayList<>();
+        for (UUID id : expanded) {
+            MetaField item = container.getItemOrNull(id);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        treeDataGrid.collapse(items);
+        dirty |= !expanded.isEmpty();
+        expanded.clear();
+    }
+
+    /**
+     * Ghi trạng thái nếu có thay đổi (một lần, khi đóng view).
+     */
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        List<UUID> ids = expanded.stream().limit(MAX_EXPANDED).toList();
+        userSettingsService.save(settingsKey, UuidSetCodec.encode(ids));
+        dirty = false;
+    }
+}
@@ -1,137 +1,159 @@
 package com.company.treelogic.view.metafield;
 
+import com.company.treelogic.app.MetaFieldSortKeys;
 import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.generic.TreeCheckboxHandler;
+import com.company.treelogic.generic.TreeCheckboxHandler.CheckState;
 import com.company.treelogic.view.main.MainView;
-import com.vaadin.flow.data.selection.MultiSelectionEvent;
-import com.vaadin.flow.data.selection.SelectionEvent;
+import com.vaadin.flow.component.AbstractField;
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.grid.dnd.GridDragEndEvent;
+import com.vaadin.flow.component.grid.dnd.GridDragStartEvent;
+import com.vaadin.flow.component.grid.dnd.GridDropEvent;
+import com.vaadin.flow.component.grid.dnd.GridDropLocation;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.renderer.LitRenderer;
+import com.vaadin.flow.data.renderer.Renderer;
 import com.vaadin.flow.router.Route;
-import io.jmix.flowui.component.grid.TreeDataGrid;
-import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.Notifications;
+import io.jmix.flowui.component.combobox.EntityComboBox;
+import io.jmix.flowui.kit.component.button.JmixButton;
 import io.jmix.flowui.view.*;
+import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 @Route(value = "meta-fields", layout = MainView.class)
 @ViewController("MetaField.list")
 @ViewDescriptor("meta-field-list-view.xml")
 @LookupComponent("metaFieldsDataGrid")
 @DialogMode(width = "64em")
-public class MetaFieldListView extends StandardListView<MetaField> {
+public class MetaFieldListView extends MetaFieldTreeView {
 
-    @ViewComponent
-    private TreeDataGrid<MetaField> metaFieldsDataGrid;
+    // Cây đang xem (id node gốc), null = cả rừng. Đọc cả từ background task của TreeChunkLoader
+    private volatile UUID treeScope;
 
-    @ViewComponent
-    private CollectionContainer<MetaField> metaFieldsDc;
+    @Autowired
+    private MetaFieldSortKeys metaFieldSortKeys;
+    @Autowired
+    private Notifications notifications;
+    // Các dòng đang được kéo (từ GridDragStartEvent tới GridDragEndEvent)
+    private List<MetaField> draggedItems = List.of();
 
-    private boolean isProgrammaticChange = false;
-
-    @Subscribe("metaFieldsDataGrid")
-    public void onMetaFieldsDataGridSelection(final SelectionEvent<TreeDataGrid<MetaField>, MetaField> event) {
-        if (isProgrammaticChange || !event.isFromClient() || !(event instanceof MultiSelectionEvent)) {
-            return;
-        }
-
-        MultiSelectionEvent<TreeDataGrid<MetaField>, MetaField> multiEvent =
-                (MultiSelectionEvent<TreeDataGrid<MetaField>, MetaField>) event;
-
-        processSelectionLogic(multiEvent);
+    public MetaFieldListView() {
+        super("MetaField.list");
     }
 
-    private void processSelectionLogic(MultiSelectionEvent<TreeDataGrid<MetaField>, MetaField> event) {
-        try {
-            isProgrammaticChange = true;
-
-            Set<MetaField> workingSelection = new HashSet<>(metaFieldsDataGrid.getSelectedItems());
-            boolean isChanged = false;
-
-            for (MetaField item : event.getAddedSelection()) {
-                if (propagateSelectionDown(item, workingSelection)) isChanged = true;
-                if (propagateSelectionUp(item, workingSelection)) isChanged = true;
-            }
+    @Override
+    protected UUID getTreeScope() {
+        return treeScope;
+    }
 
-            for (MetaField item : event.getRemovedSelection()) {
-                if (propagateDeselectionDown(item, workingSelection)) isChanged = true;
-                if (propagateDeselectionUp(item, workingSelection)) isChanged = true;
-            }
+    @Install(to = "treeScopeField", subject = "itemsFetchCallback")
+    private Stream<MetaField> treeScopeFieldItemsFetchCallback(final Query<MetaField, String> query) {
+        return metaFieldTreeService.searchRoots(query.getFilter().orElse(""), query.getOffset(), query.getLimit())
+                .stream();
+    }
 
-            if (isChanged) {
-                metaFieldsDataGrid.asMultiSelect().setValue(workingSelection);
-            }
+    @Subscribe("treeScopeField")
+    public void onTreeScopeFieldComponentValueChange(
+            final AbstractField.ComponentValueChangeEvent<EntityComboBox<MetaField>, MetaField> event) {
+        // Chỉ nạp / lọc / nhận delta trong một cây, không đụng tới phần còn lại của bảng
+        treeScope = event.getValue() != null ? event.getValue().getId() : null;
+        deltaApplier.setAcceptNewRoots(treeScope == null);
+        reloadTree();
+    }
 
-        } finally {
-            isProgrammaticChange = false;
-        }
+    @Subscribe(id = "selectWithChildrenBtn", subject = "clickListener")
+    public void onSelectWithChildrenBtnClick(final ClickEvent<JmixButton> event) {
+        metaFieldsDataGrid.getSelectedItems().forEach(item -> treeCheckboxHandler.onItemCheckedChange(item, true));
     }
 
-    private boolean propagateSelectionDown(MetaField parent, Set<MetaField> selection) {
-        boolean changed = false;
-        for (MetaField child : getChildrenInContainer(parent)) {
-            if (selection.add(child)) {
-                changed = true;
-            }
-            if (propagateSelectionDown(child, selection)) {
-                changed = true;
-            }
-        }
-        return changed;
+    @Subscribe(id = "deselectWithChildrenBtn", subject = "clickListener")
+    public void onDeselectWithChildrenBtnClick(final ClickEvent<JmixButton> event) {
+        metaFieldsDataGrid.getSelectedItems().forEach(item -> treeCheckboxHandler.onItemCheckedChange(item, false));
     }
 
-    private boolean propagateSelectionUp(MetaField child, Set<MetaField> selection) {
-        MetaField parent = getActualParent(child);
-        if (parent == null) return false;
+    @Subscribe("metaFieldsDataGrid")
+    public void onMetaFieldsDataGridGridDragStart(final GridDragStartEvent<MetaField> event) {
+        draggedItems = event.getDraggedItems();
+    }
 
-        boolean changed = false;
-        if (selection.add(parent)) {
-            changed = true;
-            if (propagateSelectionUp(parent, selection)) {
-                changed = true;
-            }
-        }
-        return changed;
+    @Subscribe("metaFieldsDataGrid")
+    public void onMetaFieldsDataGridGridDragEnd(final GridDragEndEvent<MetaField> event) {
+        draggedItems = List.of();
     }
 
-    private boolean propagateDeselectionDown(MetaField parent, Set<MetaField> selection) {
-        boolean changed = false;
-        for (MetaField child : getChildrenInContainer(parent)) {
-            if (selection.remove(child)) {
-                changed = true;
-            }
-            if (propagateDeselectionDown(child, selection)) {
-                changed = true;
+    /**
+     * Kéo thả để đổi cha / thứ tự anh em: mỗi node chỉ ghi lại dòng của chính nó ({@link MetaFieldSortKeys}), rồi được
+     * đặt lại đúng chỗ trong container.
+     */
+    @Subscribe("metaFieldsDataGrid")
+    public void onMetaFieldsDataGridGridDrop(final GridDropEvent<MetaField> event) {
+        MetaField target = event.getDropTargetItem().orElse(null);
+        GridDropLocation location = event.getDropLocation();
+        if (target == null || location == GridDropLocation.EMPTY) {
+            return;
+        }
+        List<MetaField> dragged = new ArrayList<>(draggedItems);
+        if (location == GridDropLocation.BELOW) {
+            // Mỗi node được đặt ngay sau đích: đi ngược để giữ thứ tự kéo
+            Collections.reverse(dragged);
+        }
+        for (MetaField item : dragged) {
+            if (metaFieldTreeService.isSameOrDescendant(target.getId(), item.getId())) {
+                notifications.create(messageBundle.formatMessage("moveIntoOwnSubtree", item.getName()))
+                        .withType(Notifications.Type.WARNING)
+                        .show();
+                continue;
             }
+            MetaField moved = switch (location) {
+                case ON_TOP -> metaFieldSortKeys.moveBetween(item.getId(), target.getId(), null, null);
+                case ABOVE -> metaFieldSortKeys.moveNextTo(item.getId(), target.getId(), true);
+                default -> metaFieldSortKeys.moveNextTo(item.getId(), target.getId(), false);
+            };
+            place(item, moved.getSortKey(), location == GridDropLocation.ON_TOP ? target : parentInContainer(target),
+                    location == GridDropLocation.ON_TOP ? null : target, location == GridDropLocation.ABOVE);
         }
-        return changed;
+        metaFieldsDataGrid.getDataProvider().refreshAll();
     }
 
-    private boolean propagateDeselectionUp(MetaField child, Set<MetaField> selection) {
-        MetaField parent = getActualParent(child);
-        if (parent == null || !selection.contains(parent)) return false;
-
-        boolean changed = false;
-
-        boolean hasSelectedSiblings = getChildrenInContainer(parent).stream()
-                .anyMatch(selection::contains);
-
-        if (!hasSelectedSiblings) {
-            selection.remove(parent);
-            changed = true;
-            if (propagateDeselectionUp(parent, selection)) {
-                changed = true;
-            }
+    /**
+     * Đặt node vừa di chuyển vào vị trí mới trong container (container giữ thứ tự anh em như lúc nạp).
+     *
+     * @param sibling Anh em đứng cạnh (null = cuối danh sách con của {@code parent})
+     */
+    private void place(MetaField item, String sortKey, MetaField parent, MetaField sibling, boolean before) {
+        List<MetaField> items = metaFieldsDc.getMutableItems();
+        MetaField existing = metaFieldsDc.getItemOrNull(item.getId());
+        if (existing == null) {
+            return;
+        }
+        items.remove(existing);
+        existing.setParent(parent);
+        existing.setSortKey(sortKey);
+        int index = sibling != null ? items.indexOf(sibling) : -1;
+        if (index < 0) {
+            items.add(existing);
+        } else {
+            items.add(before ? index : index + 1, existing);
         }
-        return changed;
     }
 
-    private List<MetaField> getChildrenInContainer(MetaField parent) {
-        return metaFieldsDc.getItems().stream()
-                .filter(item -> Objects.equals(parent, item.getParent()))
-                .collect(Collectors.toList());
+    private MetaField parentInContainer(MetaField item) {
+        return item.getParent() != null ? metaFieldsDc.getItemOrNull(item.getParent().getId()) : null;
     }
 
-    private MetaField getActualParent(MetaField child) {
-        if (child.getParent() == null) return null;
-        return metaFieldsDc.getItemOrNull(child.getParent().getId());
+    @Supply(to = "metaFieldsDataGrid.selected", subject = "renderer")
+    private Renderer<MetaField> metaFieldsDataGridSelectedRenderer() {
+        // Lựa chọn "cả nhánh" lưu nén (gốc + ngoại lệ), không đưa từng hậu duệ vào selection của grid
+        return LitRenderer.<MetaField>of(TreeCheckboxHandler.CHECKBOX_TEMPLATE)
+                .withProperty("checked", item -> treeCheckboxHandler.getState(item) != CheckState.UNCHECKED)
+                .withProperty("indeterminate", item -> treeCheckboxHandler.getState(item) == CheckState.INDETERMINATE)
+                .withFunction("toggle", item -> treeCheckboxHandler.toggle(item));
     }
-}
\ No newline at end of file
+}
@@ -1,64 +1,101 @@
 package com.company.treelogic.view.metafield;
 
+import com.company.treelogic.app.MetaFieldPaths;
+import com.company.treelogic.app.MetaFieldSelectionProfiles;
+import com.company.treelogic.app.MetaFieldSharedSelection;
 import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.engine.SubtreeSelection;
 import com.company.treelogic.generic.ContainerInMemoryFilter; // Import class Generic
 import com.company.treelogic.generic.TreeCheckboxHandler;
+import com.company.treelogic.generic.TreeCheckboxHandler.CheckState;
+import com.company.treelogic.generic.TreeCheckboxHandler.HistoryResult;
 import com.company.treelogic.view.main.MainView;
-import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.AbstractField;
+import com.vaadin.flow.component.ClickEvent;
 import com.vaadin.flow.component.icon.VaadinIcon;
-import com.vaadin.flow.data.renderer.ComponentRenderer;
+import com.vaadin.flow.data.renderer.LitRenderer;
 import com.vaadin.flow.data.renderer.Renderer;
+import com.vaadin.flow.data.renderer.TextRenderer;
 import com.vaadin.flow.router.Route;
-import io.jmix.flowui.UiComponents;
+import com.vaadin.flow.shared.Registration;
+import io.jmix.flowui.Notifications;
 import io.jmix.flowui.component.checkbox.JmixCheckbox;
-import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.component.combobox.JmixComboBox;
 import io.jmix.flowui.kit.action.BaseAction; // Import BaseAction
 import io.jmix.flowui.kit.component.button.JmixButton;
 import io.jmix.flowui.kit.component.button.JmixButtonActionSupport;
-import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.model.CollectionChangeType;
 import io.jmix.flowui.view.*;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BinaryOperator;
+
 @Route(value = "meta-fields-lookup", layout = MainView.class)
 @ViewController(id = "MetaField.lookup")
 @ViewDescriptor(path = "meta-field-lookup-view.xml")
 @LookupComponent("metaFieldsDataGrid")
 @DialogMode(width = "64em")
-public class MetaFieldLookUpView extends StandardListView<MetaField> {
-
-    @Autowired
-    private UiComponents uiComponents;
-    @ViewComponent
-    private CollectionContainer<MetaField> metaFieldsDc;
-    @ViewComponent
-    private TreeDataGrid<MetaField> metaFieldsDataGrid;
+public class MetaFieldLookUpView extends MetaFieldTreeView {
 
     // Inject nút từ XML để set Action
     @ViewComponent
     private JmixButton onlyIncludedBtn;
 
     // Khai báo các Handler Generic
-    private TreeCheckboxHandler<MetaField> treeCheckboxHandler;
     private ContainerInMemoryFilter<MetaField> inMemoryFilter;
 
+    @ViewComponent
+    private JmixButton undoSelectionBtn;
+    @ViewComponent
+    private JmixButton redoSelectionBtn;
+
+    @Autowired
+    private MetaFieldSelectionProfiles metaFieldSelectionProfiles;
+    @Autowired
+    private Notifications notifications;
+    @ViewComponent
+    private JmixComboBox<String> profileField;
+
+    @Autowired
+    private MetaFieldSharedSelection metaFieldSharedSelection;
+    @Autowired
+    private MetaFieldPaths metaFieldPaths;
+    // Khác null khi đang ở chế độ chọn chung: nhận thay đổi của các phiên khác qua @Push
+    private Registration sharedSelectionRegistration;
+
+    public MetaFieldLookUpView() {
+        super("MetaField.lookup");
+    }
+
+    @Override
     @Subscribe
     public void onInit(final InitEvent event) {
-        // 1. Init Checkbox Handler
-        treeCheckboxHandler = new TreeCheckboxHandler<>(
-                metaFieldsDataGrid, metaFieldsDc,
-                MetaField::getParent, MetaField::getIncluded, MetaField::setIncluded
-        );
+        super.onInit(event);
 
-        inMemoryFilter = new ContainerInMemoryFilter<>(metaFieldsDc);
+        inMemoryFilter = new ContainerInMemoryFilter<>(metaFieldsDc, MetaField::getParent);
+        // Nạp sẵn đường dẫn của cha cho cả lô dòng vừa vào container (chunk, trang filter, delta): một truy vấn cho
+        // các cha chưa có trong cache, renderer chỉ đọc cache
+        metaFieldsDc.addCollectionChangeListener(changeEvent -> {
+            if (changeEvent.getChangeType() != CollectionChangeType.REMOVE_ITEMS) {
+                Set<UUID> parentIds = new HashSet<>();
+                for (MetaField item : changeEvent.getChanges()) {
+                    if (item.getParent() != null) {
+                        parentIds.add(item.getParent().getId());
+                    }
+                }
+                metaFieldPaths.getPaths(parentIds);
+            }
+        });
 
         BaseAction filterAction = new BaseAction("toggleFilter")
                 .withText("Only included")
                 .withIcon(VaadinIcon.FILTER.create())
                 .withHandler(e -> {
                     // Gọi vào Generic Handler
-                    boolean isNowFiltered = inMemoryFilter.toggle(
-                            item -> Boolean.TRUE.equals(item.getIncluded())
-                    );
+                    boolean isNowFiltered = inMemoryFilter.toggle(treeCheckboxHandler::isChecked);
 
                     // Cập nhật UI của Action (Text/Icon)
                     if (isNowFiltered) {
@@ -74,27 +111,145 @@ public class MetaFieldLookUpView extends StandardListView<MetaField> {
                 });
 
         onlyIncludedBtn.setAction(filterAction);
+
+        addDetachListener(detachEvent -> leaveSharedSelection());
+
+        profileField.setItems(metaFieldSelectionProfiles.getNames());
+        // Gõ tên mới = profile mới, được tạo khi bấm lưu
+        profileField.addCustomValueSetListener(customValueEvent ->
+                profileField.setValue(customValueEvent.getDetail()));
     }
 
-    @Supply(to = "metaFieldsDataGrid.included", subject = "renderer")
-    private Renderer<MetaField> metaFieldsDataGridIncludedRenderer() {
-        return new ComponentRenderer<>(item -> {
-            if (item == null) return new Span();
-            JmixCheckbox checkbox = uiComponents.create(JmixCheckbox.class);
-            checkbox.setValue(Boolean.TRUE.equals(item.getIncluded()));
+    @Subscribe(id = "saveProfileBtn", subject = "clickListener")
+    public void onSaveProfileBtnClick(final ClickEvent<JmixButton> event) {
+        String name = profileField.getValue();
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        long nodeCount = metaFieldSelectionProfiles.save(name, treeCheckboxHandler.getSelection());
+        profileField.setItems(metaFieldSelectionProfiles.getNames());
+        profileField.setValue(name);
+        notifications.create(messageBundle.formatMessage("profileSaved", name, nodeCount)).show();
+    }
 
-            checkbox.addValueChangeListener(event -> {
-                boolean isChecked = Boolean.TRUE.equals(event.getValue());
+    @Subscribe(id = "loadProfileBtn", subject = "clickListener")
+    public void onLoadProfileBtnClick(final ClickEvent<JmixButton> event) {
+        applyProfile((current, profile) -> profile);
+    }
 
-                // 1. Logic cây
-                treeCheckboxHandler.onItemCheckedChange(item, isChecked);
+    @Subscribe(id = "unionProfileBtn", subject = "clickListener")
+    public void onUnionProfileBtnClick(final ClickEvent<JmixButton> event) {
+        applyProfile(Boolean::logicalOr);
+    }
+
+    @Subscribe(id = "intersectProfileBtn", subject = "clickListener")
+    public void onIntersectProfileBtnClick(final ClickEvent<JmixButton> event) {
+        applyProfile(Boolean::logicalAnd);
+    }
+
+    @Subscribe(id = "subtractProfileBtn", subject = "clickListener")
+    public void onSubtractProfileBtnClick(final ClickEvent<JmixButton> event) {
+        applyProfile((current, profile) -> current && !profile);
+    }
+
+    /**
+     * Kết hợp lựa chọn hiện tại với profile đang chọn rồi hiển thị kết quả. Làm trên marker, không liệt kê node.
+     *
+     * @param operation (node thuộc lựa chọn hiện tại, node thuộc profile) -&gt; node thuộc kết quả
+     */
+    private void applyProfile(BinaryOperator<Boolean> operation) {
+        String name = profileField.getValue();
+        if (name == null) {
+            return;
+        }
+        SubtreeSelection<UUID> profile = metaFieldSelectionProfiles.load(name);
+        if (profile == null) {
+            notifications.create(messageBundle.formatMessage("profileNotFound", name)).show();
+            return;
+        }
+        treeCheckboxHandler.updateSelection(selection -> selection.combine(profile, operation));
+        onSelectionChanged();
+    }
+
+    @Subscribe(id = "undoSelectionBtn", subject = "clickListener")
+    public void onUndoSelectionBtnClick(final ClickEvent<JmixButton> event) {
+        onHistoryResult(treeCheckboxHandler.undo());
+    }
+
+    @Subscribe(id = "redoSelectionBtn", subject = "clickListener")
+    public void onRedoSelectionBtnClick(final ClickEvent<JmixButton> event) {
+        onHistoryResult(treeCheckboxHandler.redo());
+    }
+
+    private void onHistoryResult(HistoryResult result) {
+        if (result == HistoryResult.EMPTY) {
+            return;
+        }
+        if (result == HistoryResult.CONFLICT) {
+            notifications.create(messageBundle.getMessage("selectionHistoryConflict"))
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+        }
+        onSelectionChanged();
+    }
 
-                // 2. Logic Filter (Nếu đang lọc thì refresh ngay)
+    /**
+     * Sau mỗi thay đổi lựa chọn của phiên này: lọc lại nếu đang lọc "Only included", cập nhật nút hoàn tác.
+     */
+    private void onSelectionChanged() {
+        if (inMemoryFilter.isFiltered()) {
+            inMemoryFilter.refresh();
+        }
+        undoSelectionBtn.setEnabled(treeCheckboxHandler.canUndo());
+        redoSelectionBtn.setEnabled(treeCheckboxHandler.canRedo());
+    }
+
+    @Subscribe("sharedSelectionField")
+    public void onSharedSelectionFieldComponentValueChange(
+            final AbstractField.ComponentValueChangeEvent<JmixCheckbox, Boolean> event) {
+        if (Boolean.TRUE.equals(event.getValue())) {
+            treeCheckboxHandler.setSharedSelection(metaFieldSharedSelection.getSelection());
+            sharedSelectionRegistration = metaFieldSharedSelection.subscribe(getUI().orElseThrow(), () -> {
                 if (inMemoryFilter.isFiltered()) {
                     inMemoryFilter.refresh();
                 }
+                metaFieldsDataGrid.getDataProvider().refreshAll();
             });
-            return checkbox;
+        } else {
+            leaveSharedSelection();
+            treeCheckboxHandler.setSharedSelection(null);
+        }
+        onSelectionChanged();
+    }
+
+    private void leaveSharedSelection() {
+        if (sharedSelectionRegistration != null) {
+            sharedSelectionRegistration.remove();
+            sharedSelectionRegistration = null;
+        }
+    }
+
+    @Supply(to = "metaFieldsDataGrid.included", subject = "renderer")
+    private Renderer<MetaField> metaFieldsDataGridIncludedRenderer() {
+        // Checkbox render phía client: không có component / listener server cho từng dòng, click chỉ gửi key dòng
+        return LitRenderer.<MetaField>of(TreeCheckboxHandler.CHECKBOX_TEMPLATE)
+                .withProperty("checked", item -> treeCheckboxHandler.getState(item) != CheckState.UNCHECKED)
+                .withProperty("indeterminate", item -> treeCheckboxHandler.getState(item) == CheckState.INDETERMINATE)
+                .withFunction("toggle", item -> {
+                    // 1. Logic cây
+                    treeCheckboxHandler.toggle(item);
+
+                    // 2. Logic Filter (Nếu đang lọc thì refresh ngay) + nút hoàn tác
+                    onSelectionChanged();
+                });
+    }
+
+    @Supply(to = "metaFieldsDataGrid.parent", subject = "renderer")
+    private Renderer<MetaField> metaFieldsDataGridParentRenderer() {
+        // Đường dẫn đầy đủ của cha từ cache trie (đã nạp theo lô khi dòng vào container), không truy vấn theo từng dòng
+        return new TextRenderer<>(item -> {
+            String path = item.getParent() != null ? metaFieldPaths.getCachedPath(item.getParent().getId()) : null;
+            return path != null ? path : "";
         });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,280 @@
+package com.company.treelogic.view.metafield;
+
+import com.company.treelogic.app.MetaFieldChangeBus;
+import com.company.treelogic.app.MetaFieldPrefetchProperties;
+import com.company.treelogic.app.MetaFieldTreeService;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.generic.KeysetPagination;
+import com.company.treelogic.generic.TreeCheckboxHandler;
+import com.company.treelogic.generic.TreeChunkLoader;
+import com.company.treelogic.generic.TreePrefetcher;
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.data.renderer.Renderer;
+import com.vaadin.flow.data.renderer.TextRenderer;
+import com.vaadin.flow.shared.Registration;
+import io.jmix.core.DataManager;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Messages;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
+import io.jmix.flowui.backgroundtask.BackgroundWorker;
+import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.model.CollectionLoader;
+import io.jmix.flowui.settings.UserSettingsService;
+import io.jmix.flowui.view.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Phần chung của các view cây MetaField ({@code MetaField.list}, {@code MetaField.lookup}): nạp dần trên background,
+ * nạp trước con khi mở cây, nhận delta từ các phiên khác, lưu trạng thái mở / đóng, phân trang keyset kết quả filter
+ * và các cột số liệu của nhánh.
+ * <p>
+ * Descriptor của view con phải có {@code metaFieldsDc}, {@code metaFieldsDl}, {@code metaFieldsDataGrid} (kèm các cột
+ * {@code descendantCount}, {@code leafCount}, {@code maxDepth}), {@code treeLoadingPanel}, {@code treeLoadingLabel},
+ * {@code paginationPanel}, {@code expandLevelsBtn} và {@code collapseAllBtn}. View con ghi đè {@link #onInit} /
+ * {@link #onMetaFieldsDlPostLoad} thì phải gọi lại {@code super}.
+ */
+public abstract class MetaFieldTreeView extends StandardListView<MetaField> {
+
+    @Autowired
+    protected DataManager dataManager;
+    @Autowired
+    protected MetaFieldTreeService metaFieldTreeService;
+
+    @ViewComponent
+    protected TreeDataGrid<MetaField> metaFieldsDataGrid;
+    @ViewComponent
+    protected CollectionContainer<MetaField> metaFieldsDc;
+    @ViewComponent
+    protected CollectionLoader<MetaField> metaFieldsDl;
+    @ViewComponent
+    protected MessageBundle messageBundle;
+
+    protected TreeCheckboxHandler<MetaField, UUID> treeCheckboxHandler;
+    // Trạng thái mở / đóng của cây, lưu theo người dùng
+    protected MetaFieldExpansion expansion;
+    // Nhận delta từ các phiên khác, vá container tại chỗ
+    protected MetaFieldDeltaApplier deltaApplier;
+
+    @Autowired
+    private BackgroundWorker backgroundWorker;
+    @ViewComponent
+    private HorizontalLayout treeLoadingPanel;
+    @ViewComponent
+    private Span treeLoadingLabel;
+
+    @Value("${treelogic.tree.chunk-size:500}")
+    private int treeChunkSize;
+    @Value("${treelogic.tree.expand-levels:2}")
+    private int expandLevels;
+    @Autowired
+    private UserSettingsService userSettingsService;
+    @ViewComponent
+    private JmixButton expandLevelsBtn;
+
+    // Nạp cây dần trên background thay vì chặn UI chờ "select e from MetaField e"
+    private TreeChunkLoader<MetaField, UUID> treeChunkLoader;
+    private boolean loadedByLoader = false;
+
+    @Autowired
+    private MetaFieldPrefetchProperties prefetchProperties;
+    // Nạp trước con của các node vừa hiện ra khi mở cây
+    private TreePrefetcher<MetaField, UUID> treePrefetcher;
+
+    @Autowired
+    private MetaFieldChangeBus metaFieldChangeBus;
+    private Registration changeBusRegistration;
+
+    @Autowired
+    private Messages messages;
+    @ViewComponent
+    private HorizontalLayout paginationPanel;
+    @Value("${treelogic.list.page-size:50}")
+    private int pageSize;
+    // Phân trang keyset trên (NAME, ID) cho kết quả filter, không offset
+    private KeysetPagination<MetaField> pagination;
+
+    // Khoá lưu trạng thái mở / đóng trong user settings (id view)
+    private final String settingsKey;
+
+    protected MetaFieldTreeView(String settingsKey) {
+        this.settingsKey = settingsKey;
+    }
+
+    /**
+     * Cây đang xem (id node gốc): chỉ nạp / lọc trong cây này. Null = cả rừng. Được gọi cả từ background task.
+     */
+    protected UUID getTreeScope() {
+        return null;
+    }
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        treeCheckboxHandler = new TreeCheckboxHandler<>(metaFieldsDataGrid, metaFieldsDc, MetaField::getParent);
+        treeChunkLoader = createTreeChunkLoader();
+        treePrefetcher = createTreePrefetcher();
+        subscribeToChanges();
+        pagination = new KeysetPagination<>(metaFieldsDl, "name", MetaField::getName, MetaField::getId,
+                pageSize, metaFieldTreeService::countMatches, messages);
+        pagination.attachTo(paginationPanel);
+
+        expansion = new MetaFieldExpansion(settingsKey, metaFieldsDataGrid, metaFieldsDc,
+                userSettingsService, metaFieldTreeService);
+        expandLevelsBtn.setText(messageBundle.formatMessage("expandLevelsBtn.text", expandLevels));
+        addDetachListener(detachEvent -> expansion.save());
+    }
+
+    @Subscribe
+    public void onReady(final ReadyEvent event) {
+        expansion.restore();
+        // Loader đã chạy (VD: filter từ URL) -> không nạp dần nữa
+        if (!loadedByLoader) {
+            startTreeLoading();
+        }
+    }
+
+    @Subscribe(id = "metaFieldsDl", target = Target.DATA_LOADER)
+    public void onMetaFieldsDlPreLoad(final CollectionLoader.PreLoadEvent<MetaField> event) {
+        // Không có điều kiện lọc (VD: vừa xoá filter): trang phẳng không dựng được cây, mà nạp kèm tổ tiên cho mọi dòng
+        // thì thành mở toàn bộ cây -> quay lại nạp dần
+        if (!metaFieldTreeService.hasCondition(event.getLoadContext())) {
+            event.preventLoad();
+            if (loadedByLoader) {
+                loadedByLoader = false;
+                startTreeLoading();
+            }
+            return;
+        }
+        // Filter / phân trang dùng loader thường -> dừng nạp dần để 2 nguồn không ghi đè nhau
+        loadedByLoader = true;
+        treeChunkLoader.cancel();
+    }
+
+    /**
+     * Nạp lại cây theo phạm vi hiện tại ({@link #getTreeScope()}), bằng loader nếu đang filter, không thì nạp dần.
+     */
+    protected void reloadTree() {
+        if (loadedByLoader) {
+            metaFieldsDl.load();
+        } else {
+            startTreeLoading();
+        }
+    }
+
+    private void startTreeLoading() {
+        treePrefetcher.reset();
+        treeLoadingLabel.setText(messageBundle.formatMessage("treeLoadingProgress", 0));
+        treeLoadingPanel.setVisible(true);
+        treeChunkLoader.start(
+                loaded -> {
+                    treeLoadingLabel.setText(messageBundle.formatMessage("treeLoadingProgress", loaded));
+                    expansion.applyPending();
+                },
+                () -> treeLoadingPanel.setVisible(false));
+    }
+
+    private void subscribeToChanges() {
+        deltaApplier = new MetaFieldDeltaApplier(metaFieldsDc, metaFieldsDataGrid, dataManager, metaFieldTreeService);
+        addAttachListener(event ->
+                changeBusRegistration = metaFieldChangeBus.subscribe(event.getUI(), deltaApplier::apply));
+        addDetachListener(event -> {
+            if (changeBusRegistration != null) {
+                changeBusRegistration.remove();
+                changeBusRegistration = null;
+            }
+        });
+    }
+
+    private TreeChunkLoader<MetaField, UUID> createTreeChunkLoader() {
+        return new TreeChunkLoader<>(this, backgroundWorker, metaFieldsDc, MetaField::getId,
+                (parentIds, after, limit) -> parentIds == null
+                        ? metaFieldTreeService.loadRootsChunk(getTreeScope(), after, limit)
+                        : metaFieldTreeService.loadChildrenChunk(getTreeScope(), parentIds, after, limit),
+                treeChunkSize);
+    }
+
+    private TreePrefetcher<MetaField, UUID> createTreePrefetcher() {
+        return new TreePrefetcher<>(this, backgroundWorker, metaFieldsDataGrid, metaFieldsDc, MetaField::getId,
+                metaFieldTreeService::getChildIds,
+                (parentIds, limit) -> metaFieldTreeService.loadChildrenChunk(getTreeScope(), parentIds, null, limit),
+                new TreePrefetcher.Policy(prefetchProperties.enabled(), prefetchProperties.batchSize(),
+                        prefetchProperties.maxRows()));
+    }
+
+    @Install(to = "metaFieldsDl", target = Target.DATA_LOADER)
+    protected List<MetaField> metaFieldsDlLoadDelegate(final LoadContext<MetaField> loadContext) {
+        // Chỉ chạy khi có điều kiện filter (xem PreLoad): điều kiện chạy trong DB, kèm tổ tiên của node khớp để giữ
+        // nguyên cấu trúc cây (đọc từ replica). Thứ tự do loader / phân trang quyết định
+        LoadContext.Query query = loadContext.getQuery();
+        UUID treeScope = getTreeScope();
+        if (treeScope != null && query != null) {
+            PropertyCondition inTree = PropertyCondition.equal("rootId", treeScope);
+            query.setCondition(query.getCondition() != null
+                    ? LogicalCondition.and(query.getCondition(), inTree)
+                    : inTree);
+        }
+        return metaFieldTreeService.loadWithAncestors(loadContext,
+                context -> pagination.load(context, dataManager::loadList));
+    }
+
+    @Subscribe(id = "metaFieldsDl", target = Target.DATA_LOADER)
+    public void onMetaFieldsDlPostLoad(final CollectionLoader.PostLoadEvent<MetaField> event) {
+        // Mở sẵn đường dẫn tới các node khớp: chỉ các node có con trong kết quả. Không lưu vào trạng thái mở / đóng
+        // của người dùng
+        Set<MetaField> parents = new HashSet<>();
+        for (MetaField metaField : event.getLoadedEntities()) {
+            if (metaField.getParent() != null) {
+                parents.add(metaField.getParent());
+            }
+        }
+        expansion.expandTransient(parents);
+        expansion.applyPending();
+
+        // Container vừa được thay bằng kết quả filter: nạp trước con của các node lá trong kết quả (đang đóng) để
+        // chúng mở được ngay; không nạp con của tổ tiên đang mở - sẽ lộ ra các node không khớp
+        Set<UUID> parentIds = new HashSet<>();
+        parents.forEach(parent -> parentIds.add(parent.getId()));
+        treePrefetcher.reset();
+        treePrefetcher.prefetch(event.getLoadedEntities().stream()
+                .map(MetaField::getId)
+                .filter(id -> !parentIds.contains(id))
+                .toList());
+    }
+
+    @Subscribe(id = "expandLevelsBtn", subject = "clickListener")
+    public void onExpandLevelsBtnClick(final ClickEvent<JmixButton> event) {
+        expansion.expandLevels(metaFieldsDataGrid.getSingleSelectedItem(), expandLevels);
+    }
+
+    @Subscribe(id = "collapseAllBtn", subject = "clickListener")
+    public void onCollapseAllBtnClick(final ClickEvent<JmixButton> event) {
+        expansion.collapseAll();
+    }
+
+    @Supply(to = "metaFieldsDataGrid.descendantCount", subject = "renderer")
+    protected Renderer<MetaField> metaFieldsDataGridDescendantCountRenderer() {
+        // Số liệu duy trì sẵn trong bộ nhớ, không COUNT(*) theo từng dòng
+        return new TextRenderer<>(item ->
+                String.valueOf(metaFieldTreeService.getAggregate(item.getId()).descendants()));
+    }
+
+    @Supply(to = "metaFieldsDataGrid.leafCount", subject = "renderer")
+    protected Renderer<MetaField> metaFieldsDataGridLeafCountRenderer() {
+        return new TextRenderer<>(item -> String.valueOf(metaFieldTreeService.getAggregate(item.getId()).leaves()));
+    }
+
+    @Supply(to = "metaFieldsDataGrid.maxDepth", subject = "renderer")
+    protected Renderer<MetaField> metaFieldsDataGridMaxDepthRenderer() {
+        return new TextRenderer<>(item -> String.valueOf(metaFieldTreeService.getAggregate(item.getId()).height()));
+    }
+}
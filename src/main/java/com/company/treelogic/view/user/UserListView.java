@@ -1,9 +1,20 @@
 package com.company.treelogic.view.user;
 
+import com.company.treelogic.app.RowCountEstimator;
 import com.company.treelogic.entity.User;
+import com.company.treelogic.generic.KeysetPagination;
 import com.company.treelogic.view.main.MainView;
+import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.router.Route;
+import io.jmix.core.DataManager;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Messages;
+import io.jmix.flowui.model.CollectionLoader;
 import io.jmix.flowui.view.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.List;
 
 @Route(value = "users", layout = MainView.class)
 @ViewController(id = "User.list")
@@ -11,4 +22,34 @@ import io.jmix.flowui.view.*;
 @LookupComponent("usersDataGrid")
 @DialogMode(width = "64em")
 public class UserListView extends StandardListView<User> {
-}
\ No newline at end of file
+
+    @Autowired
+    private DataManager dataManager;
+    @Autowired
+    private Messages messages;
+    @Autowired
+    private RowCountEstimator rowCountEstimator;
+    @ViewComponent
+    private CollectionLoader<User> usersDl;
+    @ViewComponent
+    private HorizontalLayout paginationPanel;
+
+    @Value("${treelogic.list.page-size:50}")
+    private int pageSize;
+
+    // Phân trang keyset trên USERNAME (chỉ mục unique), không offset. Cột của grid không sort được: sort phía client
+    // chỉ sắp lại trang hiện tại, không đổi khoá keyset
+    private KeysetPagination<User> pagination;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        pagination = new KeysetPagination<>(usersDl, "username", User::getUsername, User::getId,
+                pageSize, rowCountEstimator::estimate, messages);
+        pagination.attachTo(paginationPanel);
+    }
+
+    @Install(to = "usersDl", target = Target.DATA_LOADER)
+    private List<User> usersDlLoadDelegate(final LoadContext<User> loadContext) {
+        return pagination.load(loadContext, dataManager::loadList);
+    }
+}
@@ -0,0 +1,201 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.entity.MetaFieldChange;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import com.company.treelogic.test_support.AuthenticatedAsAdmin;
+import io.jmix.core.DataManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compaction của {@link MetaFieldChangeLog}: gộp dòng cũ đã có dòng mới hơn, xoá tombstone quá hạn và buộc bên tiêu
+ * thụ tụt lại phía sau đọc lại snapshot. Dòng log mang cả khoá thứ tự anh em ({@code SORT_KEY}), kể cả khoá do
+ * cân bằng lại ghi bằng JDBC.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class MetaFieldChangeLogTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MetaFieldChangeLog metaFieldChangeLog;
+
+    @Autowired
+    MetaFieldChangeLogProperties properties;
+
+    @Autowired
+    MetaFieldSortKeys metaFieldSortKeys;
+
+    List<UUID> metaFieldIds = new ArrayList<>();
+
+    @Test
+    void test_compactCollapsesSupersededChanges() {
+        MetaField metaField = save(create("collapse"));
+        metaField.setName("collapse-2");
+        metaField = save(metaField);
+        metaField.setName("collapse-3");
+        save(metaField);
+        // Dòng vừa ghi: chưa quá collapse-after -> giữ nguyên
+        age(metaField.getId(), properties.collapseAfter().dividedBy(2));
+        metaFieldChangeLog.compact();
+        assertThat(changesOf(metaField.getId())).hasSize(3);
+
+        age(metaField.getId(), properties.collapseAfter().plusHours(1));
+        metaFieldChangeLog.compact();
+
+        List<MetaFieldChange> changes = changesOf(metaField.getId());
+        assertThat(changes).hasSize(1);
+        assertThat(changes.get(0).getName()).isEqualTo("collapse-3");
+        assertThat(changes.get(0).getType()).isEqualTo(MetaFieldChangeType.UPDATE);
+    }
+
+    @Test
+    void test_compactKeepsLatestChangeOfEveryNode() {
+        MetaField first = save(create("keep-1"));
+        MetaField second = save(create("keep-2"));
+        age(first.getId(), properties.collapseAfter().plusHours(1));
+        age(second.getId(), properties.collapseAfter().plusHours(1));
+
+        metaFieldChangeLog.compact();
+
+        assertThat(changesOf(first.getId())).hasSize(1);
+        assertThat(changesOf(second.getId())).hasSize(1);
+    }
+
+    @Test
+    void test_compactPurgesExpiredTombstonesAndRequiresResync() {
+        MetaField metaField = save(create("tombstone"));
+        long before = metaFieldChangeLog.getCurrentRevision();
+        dataManager.remove(metaField);
+        long deletedAt = metaFieldChangeLog.getCurrentRevision();
+        assertThat(metaFieldChangeLog.changesSince(before, 10).changes())
+                .extracting(MetaFieldChange::getType)
+                .contains(MetaFieldChangeType.DELETE);
+
+        age(metaField.getId(), properties.tombstoneRetention().plusHours(1));
+        metaFieldChangeLog.compact();
+
+        assertThat(changesOf(metaField.getId())).isEmpty();
+        assertThat(metaFieldChangeLog.getCompactedRevision()).isGreaterThanOrEqualTo(deletedAt);
+        MetaFieldChangeBatch batch = metaFieldChangeLog.changesSince(before, 10);
+        assertThat(batch.resyncRequired()).isTrue();
+        assertThat(batch.changes()).isEmpty();
+        assertThat(metaFieldChangeLog.changesSince(metaFieldChangeLog.getCompactedRevision(), 10)
+                .resyncRequired()).isFalse();
+    }
+
+    @Test
+    void test_compactKeepsRecentTombstones() {
+        MetaField metaField = save(create("recent-tombstone"));
+        dataManager.remove(metaField);
+        long compactedBefore = metaFieldChangeLog.getCompactedRevision();
+
+        metaFieldChangeLog.compact();
+
+        assertThat(changesOf(metaField.getId()))
+                .extracting(MetaFieldChange::getType)
+                .contains(MetaFieldChangeType.DELETE);
+        assertThat(metaFieldChangeLog.getCompactedRevision()).isEqualTo(compactedBefore);
+    }
+
+    @Test
+    void test_reorderLogsSortKey() {
+        MetaField first = save(create("order-1"));
+        MetaField second = save(create("order-2"));
+
+        MetaField moved = metaFieldSortKeys.moveBetween(second.getId(), null, null, first.getId());
+
+        List<MetaFieldChange> changes = changesOf(second.getId());
+        MetaFieldChange last = changes.get(changes.size() - 1);
+        assertThat(last.getType()).isEqualTo(MetaFieldChangeType.UPDATE);
+        assertThat(last.getSortKey()).isEqualTo(moved.getSortKey());
+        assertThat(last.getSortKey()).isLessThan(changesOf(first.getId()).get(0).getSortKey());
+    }
+
+    @Test
+    void test_rebalanceLogsRewrittenKeys() {
+        MetaField parent = save(create("rebalance"));
+        MetaField first = save(create("rebalance-1", parent));
+        MetaField second = save(create("rebalance-2", parent));
+        // Khoá trùng như dữ liệu cũ mang khoá mặc định
+        jdbcTemplate.update("update META_FIELD set SORT_KEY = 'a0' where PARENT_ID = ?", parent.getId());
+        long before = metaFieldChangeLog.getCurrentRevision();
+
+        metaFieldSortKeys.rebalance();
+
+        List<String> keys = jdbcTemplate.queryForList("select SORT_KEY from META_FIELD where PARENT_ID = ? "
+                + "order by SORT_KEY", String.class, parent.getId());
+        assertThat(keys).doesNotHaveDuplicates().hasSize(2);
+        assertThat(metaFieldChangeLog.getCurrentRevision()).isGreaterThan(before);
+        List<MetaFieldChange> logged = metaFieldChangeLog.changesSince(before, 100).changes().stream()
+                .filter(change -> change.getParentId() != null && change.getParentId().equals(parent.getId()))
+                .toList();
+        assertThat(logged).extracting(MetaFieldChange::getType).containsOnly(MetaFieldChangeType.UPDATE);
+        assertThat(logged).extracting(MetaFieldChange::getSortKey).isSubsetOf(keys);
+        assertThat(logged).extracting(MetaFieldChange::getMetaFieldId)
+                .isSubsetOf(first.getId(), second.getId())
+                .isNotEmpty();
+    }
+
+    private MetaField create(String name) {
+        return create(name, null);
+    }
+
+    private MetaField create(String name, MetaField parent) {
+        MetaField metaField = dataManager.create(MetaField.class);
+        metaField.setName(name + "-" + System.nanoTime());
+        metaField.setParent(parent);
+        metaFieldIds.add(metaField.getId());
+        return metaField;
+    }
+
+    private MetaField save(MetaField metaField) {
+        return dataManager.save(metaField);
+    }
+
+    /**
+     * Lùi thời điểm ghi của mọi dòng log của node về {@code age} trước.
+     */
+    private void age(UUID metaFieldId, Duration age) {
+        jdbcTemplate.update("update META_FIELD_CHANGE set CHANGED_AT = ? where META_FIELD_ID = ?",
+                Timestamp.from(Instant.now().minus(age)), metaFieldId);
+    }
+
+    private List<MetaFieldChange> changesOf(UUID metaFieldId) {
+        return dataManager.load(MetaFieldChange.class)
+                .query("select e from MetaFieldChange e where e.metaFieldId = :id order by e.revision")
+                .parameter("id", metaFieldId)
+                .list();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Con trước cha
+        List<UUID> ids = new ArrayList<>(metaFieldIds);
+        Collections.reverse(ids);
+        for (UUID id : ids) {
+            jdbcTemplate.update("delete from META_FIELD where ID = ?", id);
+            jdbcTemplate.update("delete from META_FIELD_CHANGE where META_FIELD_ID = ?", id);
+        }
+    }
+}
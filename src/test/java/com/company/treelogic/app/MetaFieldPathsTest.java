@@ -0,0 +1,125 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.test_support.AuthenticatedAsAdmin;
+import io.jmix.core.DataManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cache đường dẫn {@link MetaFieldPaths}: segment dùng chung giữa các node cùng đường dẫn, bỏ cache khi đổi tên / di
+ * chuyển, và kết quả nạp đã cũ không được ghi vào cache.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class MetaFieldPathsTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MetaFieldPaths metaFieldPaths;
+
+    List<UUID> metaFieldIds = new ArrayList<>();
+
+    @Test
+    void test_nodesWithSamePathShareSegments() {
+        int before = metaFieldPaths.segmentCount();
+        MetaField root = save(create(uniqueName("shared"), null));
+        MetaField first = save(create("same", root));
+        MetaField second = save(create("same", root));
+
+        Map<UUID, String> paths = metaFieldPaths.getPaths(List.of(first.getId(), second.getId()));
+        assertThat(paths.get(first.getId())).isEqualTo(root.getName() + " / same");
+        assertThat(paths.get(second.getId())).isEqualTo(root.getName() + " / same");
+        // Gốc + một segment "same" cho cả hai node
+        assertThat(metaFieldPaths.segmentCount()).isEqualTo(before + 2);
+
+        // Segment còn được node kia dùng: giữ lại
+        first.setName("other");
+        save(first);
+        assertThat(metaFieldPaths.getCachedPath(second.getId())).isEqualTo(root.getName() + " / same");
+
+        // Không còn ai dùng: dọn khỏi trie
+        dataManager.remove(second);
+        assertThat(metaFieldPaths.getPaths(List.of(first.getId())).get(first.getId()))
+                .isEqualTo(root.getName() + " / other");
+        assertThat(metaFieldPaths.segmentCount()).isEqualTo(before + 2);
+    }
+
+    @Test
+    void test_renameAndMoveInvalidateSubtree() {
+        MetaField source = save(create(uniqueName("source"), null));
+        MetaField target = save(create(uniqueName("target"), null));
+        MetaField leaf = save(create("leaf", source));
+        assertThat(metaFieldPaths.getPath(leaf.getId())).isEqualTo(source.getName() + " / leaf");
+
+        source.setName(uniqueName("renamed"));
+        source = save(source);
+        assertThat(metaFieldPaths.getCachedPath(leaf.getId())).isNull();
+        assertThat(metaFieldPaths.getPath(leaf.getId())).isEqualTo(source.getName() + " / leaf");
+
+        leaf.setParent(target);
+        save(leaf);
+        assertThat(metaFieldPaths.getCachedPath(leaf.getId())).isNull();
+        assertThat(metaFieldPaths.getPath(leaf.getId())).isEqualTo(target.getName() + " / leaf");
+    }
+
+    @Test
+    void test_staleLoadIsNotCached() {
+        MetaField root = save(create(uniqueName("race"), null));
+        MetaField leaf = save(create("leaf", root));
+
+        // Truy vấn chạy xong trước khi cha bị đổi tên, nhưng ghi vào cache sau đó
+        long epoch = metaFieldPaths.currentEpoch();
+        Map<UUID, List<MetaFieldPaths.Row>> chains = metaFieldPaths.query(List.of(leaf.getId()));
+        root.setName(uniqueName("renamed"));
+        root = save(root);
+        metaFieldPaths.store(chains, epoch);
+
+        assertThat(metaFieldPaths.getCachedPath(leaf.getId())).isNull();
+        assertThat(metaFieldPaths.getPath(leaf.getId())).isEqualTo(root.getName() + " / leaf");
+    }
+
+    private MetaField create(String name, MetaField parent) {
+        MetaField metaField = dataManager.create(MetaField.class);
+        metaField.setName(name);
+        metaField.setParent(parent);
+        metaFieldIds.add(metaField.getId());
+        return metaField;
+    }
+
+    private MetaField save(MetaField metaField) {
+        return dataManager.save(metaField);
+    }
+
+    private static String uniqueName(String prefix) {
+        return prefix + "-" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Con trước cha
+        List<UUID> ids = new ArrayList<>(metaFieldIds);
+        Collections.reverse(ids);
+        for (UUID id : ids) {
+            jdbcTemplate.update("delete from META_FIELD where ID = ?", id);
+            jdbcTemplate.update("delete from META_FIELD_CHANGE where META_FIELD_ID = ?", id);
+        }
+    }
+}
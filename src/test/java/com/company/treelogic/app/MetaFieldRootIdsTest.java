@@ -0,0 +1,139 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.test_support.AuthenticatedAsAdmin;
+import io.jmix.core.DataManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cột {@code ROOT_ID} do {@link MetaFieldRootIds} duy trì: node mới nhận gốc của cha, di chuyển sang cây khác cập
+ * nhật cả cây con theo từng tầng, và dữ liệu cũ thiếu ROOT_ID được điền khi khởi động.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class MetaFieldRootIdsTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MetaFieldRootIds metaFieldRootIds;
+
+    List<UUID> metaFieldIds = new ArrayList<>();
+
+    @Test
+    void test_newNodesInheritRootOfParent() {
+        MetaField root = save(create("root", null));
+        MetaField child = save(create("child", root));
+        MetaField grandchild = save(create("grandchild", child));
+
+        assertThat(rootIdOf(root.getId())).isEqualTo(root.getId());
+        assertThat(rootIdOf(child.getId())).isEqualTo(root.getId());
+        assertThat(rootIdOf(grandchild.getId())).isEqualTo(root.getId());
+    }
+
+    @Test
+    void test_moveToOtherTreeUpdatesWholeSubtree() {
+        // Tạo trước để được xoá sau cây con chuyển sang nó
+        MetaField target = save(create("target", null));
+        MetaField source = save(create("source", null));
+        MetaField moved = save(create("moved", source));
+        MetaField stays = save(create("stays", source));
+        MetaField child = save(create("child", moved));
+        MetaField grandchild = save(create("grandchild", child));
+
+        moved.setParent(target);
+        save(moved);
+
+        assertThat(List.of(moved, child, grandchild))
+                .allSatisfy(metaField -> assertThat(rootIdOf(metaField.getId())).isEqualTo(target.getId()));
+        assertThat(rootIdOf(stays.getId())).isEqualTo(source.getId());
+        assertThat(rootIdOf(source.getId())).isEqualTo(source.getId());
+    }
+
+    @Test
+    void test_assignCountsRowsOfEveryLevelAndSkipsMovesWithinTree() {
+        MetaField target = save(create("target", null));
+        MetaField source = save(create("source", null));
+        MetaField moved = save(create("moved", source));
+        MetaField first = save(create("first", moved));
+        save(create("second", moved));
+        save(create("grandchild", first));
+
+        jdbcTemplate.update("update META_FIELD set PARENT_ID = ? where ID = ?", target.getId(), moved.getId());
+        assertThat(metaFieldRootIds.assign(moved.getId(), target.getId())).isEqualTo(4);
+
+        // Trong cùng cây: ROOT_ID không đổi, cây con không bị duyệt
+        jdbcTemplate.update("update META_FIELD set PARENT_ID = ? where ID = ?", target.getId(), first.getId());
+        assertThat(metaFieldRootIds.assign(first.getId(), target.getId())).isZero();
+    }
+
+    @Test
+    void test_moveToTopLevelMakesNodeRootOfItsSubtree() {
+        MetaField root = save(create("root", null));
+        MetaField moved = save(create("moved", root));
+        MetaField child = save(create("child", moved));
+
+        moved.setParent(null);
+        save(moved);
+
+        assertThat(rootIdOf(moved.getId())).isEqualTo(moved.getId());
+        assertThat(rootIdOf(child.getId())).isEqualTo(moved.getId());
+    }
+
+    @Test
+    void test_backfillFillsMissingRootIdsLevelByLevel() {
+        MetaField root = save(create("root", null));
+        MetaField child = save(create("child", root));
+        MetaField grandchild = save(create("grandchild", child));
+        jdbcTemplate.update("update META_FIELD set ROOT_ID = null where ID in (?, ?)",
+                child.getId(), grandchild.getId());
+
+        metaFieldRootIds.onApplicationReady(null);
+
+        assertThat(rootIdOf(child.getId())).isEqualTo(root.getId());
+        assertThat(rootIdOf(grandchild.getId())).isEqualTo(root.getId());
+    }
+
+    private UUID rootIdOf(UUID id) {
+        return jdbcTemplate.queryForObject("select ROOT_ID from META_FIELD where ID = ?", UUID.class, id);
+    }
+
+    private MetaField create(String name, MetaField parent) {
+        MetaField metaField = dataManager.create(MetaField.class);
+        metaField.setName(name + "-" + System.nanoTime());
+        metaField.setParent(parent);
+        metaFieldIds.add(metaField.getId());
+        return metaField;
+    }
+
+    private MetaField save(MetaField metaField) {
+        return dataManager.save(metaField);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Con trước cha
+        List<UUID> ids = new ArrayList<>(metaFieldIds);
+        Collections.reverse(ids);
+        for (UUID id : ids) {
+            jdbcTemplate.update("delete from META_FIELD where ID = ?", id);
+            jdbcTemplate.update("delete from META_FIELD_CHANGE where META_FIELD_ID = ?", id);
+        }
+    }
+}
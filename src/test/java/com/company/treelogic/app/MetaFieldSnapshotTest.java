@@ -0,0 +1,60 @@
+package com.company.treelogic.app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MetaFieldSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void test_roundTripsRowsThroughMappedFile() throws Exception {
+        UUID root = UUID.randomUUID();
+        UUID child = UUID.randomUUID();
+        UUID orphan = UUID.randomUUID();
+        List<MetaFieldRow> rows = List.of(
+                new MetaFieldRow(child, root, "Tên", null),
+                new MetaFieldRow(root, null, "Tên", "Gốc"),
+                new MetaFieldRow(orphan, UUID.randomUUID(), null, "Gốc"));
+        Path file = dir.resolve("snapshot/meta-field.snap");
+
+        MetaFieldSnapshot.write(file, 42, 1000, rows);
+        MetaFieldSnapshot snapshot = MetaFieldSnapshot.map(file);
+
+        assertThat(snapshot.getRevision()).isEqualTo(42);
+        assertThat(snapshot.getCreatedAt()).isEqualTo(1000);
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.id(0)).isEqualTo(child);
+        assertThat(snapshot.parentIndex(0)).isEqualTo(1);
+        assertThat(snapshot.parentIndex(1)).isEqualTo(-1);
+        assertThat(snapshot.parentIndex(2)).isEqualTo(-1);
+        assertThat(snapshot.name(0)).isEqualTo("Tên");
+        assertThat(snapshot.name(2)).isNull();
+        assertThat(snapshot.description(0)).isNull();
+        assertThat(snapshot.description(1)).isEqualTo("Gốc");
+        assertThat(snapshot.description(2)).isEqualTo("Gốc");
+    }
+
+    @Test
+    void test_rejectsCorruptedFile() throws Exception {
+        Path file = dir.resolve("meta-field.snap");
+        MetaFieldSnapshot.write(file, 1, 1, List.of(new MetaFieldRow(UUID.randomUUID(), null, "a", "b")));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), channel.size() - 6);
+        }
+
+        assertThatThrownBy(() -> MetaFieldSnapshot.map(file))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,143 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.engine.MerkleTree.Change;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.test_support.AuthenticatedAsAdmin;
+import io.jmix.core.DataManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * So sánh và áp dụng cây nhập vào của {@link MetaFieldTreeDiff}: cây băm hiện tại được cập nhật theo delta sau mỗi
+ * lần lưu, và {@code merge} đưa META_FIELD về đúng cây nhập vào.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class MetaFieldTreeDiffTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MetaFieldChangeLog metaFieldChangeLog;
+
+    @Autowired
+    MetaFieldTreeDiff metaFieldTreeDiff;
+
+    List<UUID> metaFieldIds = new ArrayList<>();
+
+    @Test
+    void test_unchangedTreeHasNoChanges() {
+        MetaField root = save(create(uniqueName("same"), null));
+        save(create("leaf", root));
+
+        assertThat(metaFieldTreeDiff.diff(currentRows())).isEmpty();
+    }
+
+    @Test
+    void test_mergeAppliesEveryChangeType() {
+        MetaField source = save(create(uniqueName("source"), null));
+        MetaField target = save(create(uniqueName("target"), null));
+        MetaField renamed = save(create("renamed", source));
+        MetaField moved = save(create("moved", source));
+        MetaField removed = save(create("removed", source));
+        MetaField sibling = save(create("sibling", target));
+        long sourceHash = metaFieldTreeDiff.getSubtreeHash(source.getId());
+
+        List<MetaFieldRow> imported = new ArrayList<>();
+        for (MetaFieldRow row : currentRows()) {
+            if (row.id().equals(renamed.getId())) {
+                imported.add(new MetaFieldRow(row.id(), row.parentId(), "renamed-2", row.description()));
+            } else if (row.id().equals(moved.getId())) {
+                imported.add(new MetaFieldRow(row.id(), target.getId(), row.name(), row.description()));
+            } else if (!row.id().equals(removed.getId())) {
+                imported.add(row);
+            }
+        }
+        UUID addedId = UUID.randomUUID();
+        metaFieldIds.add(addedId);
+        imported.add(new MetaFieldRow(addedId, source.getId(), "added", null));
+
+        List<Change<UUID>> changes = metaFieldTreeDiff.diff(imported);
+        assertThat(changes).containsExactly(
+                new Change<>(Change.Type.ADD, addedId, source.getId()),
+                new Change<>(Change.Type.MOVE, moved.getId(), target.getId()),
+                new Change<>(Change.Type.UPDATE, renamed.getId(), source.getId()),
+                new Change<>(Change.Type.REMOVE, removed.getId(), source.getId()));
+
+        metaFieldTreeDiff.merge(imported, changes);
+
+        // Delta của lần lưu đã tới: cây hiện tại khớp cây nhập vào
+        assertThat(metaFieldTreeDiff.diff(imported)).isEmpty();
+        assertThat(metaFieldTreeDiff.getSubtreeHash(source.getId())).isNotEqualTo(sourceHash);
+        assertThat(metaFieldTreeDiff.getSubtreeHash(removed.getId())).isZero();
+        assertThat(dataManager.load(MetaField.class).id(renamed.getId()).one().getName()).isEqualTo("renamed-2");
+        // Node chuyển cha về cuối danh sách con của cha mới
+        MetaField movedAfter = dataManager.load(MetaField.class).id(moved.getId()).one();
+        assertThat(movedAfter.getParent().getId()).isEqualTo(target.getId());
+        assertThat(movedAfter.getSortKey()).isGreaterThan(sortKeyOf(sibling.getId()));
+    }
+
+    @Test
+    void test_reloadKeepsHashes() {
+        MetaField root = save(create(uniqueName("reload"), null));
+        save(create("leaf", root));
+        long hash = metaFieldTreeDiff.getSubtreeHash(root.getId());
+
+        metaFieldTreeDiff.reload();
+
+        assertThat(metaFieldTreeDiff.getSubtreeHash(root.getId())).isEqualTo(hash);
+        assertThat(metaFieldTreeDiff.diff(currentRows())).isEmpty();
+    }
+
+    private List<MetaFieldRow> currentRows() {
+        List<MetaFieldRow> rows = new ArrayList<>();
+        metaFieldChangeLog.snapshot(1000, rows::addAll);
+        return rows;
+    }
+
+    private String sortKeyOf(UUID id) {
+        return jdbcTemplate.queryForObject("select SORT_KEY from META_FIELD where ID = ?", String.class, id);
+    }
+
+    private MetaField create(String name, MetaField parent) {
+        MetaField metaField = dataManager.create(MetaField.class);
+        metaField.setName(name);
+        metaField.setParent(parent);
+        metaFieldIds.add(metaField.getId());
+        return metaField;
+    }
+
+    private MetaField save(MetaField metaField) {
+        return dataManager.save(metaField);
+    }
+
+    private static String uniqueName(String prefix) {
+        return prefix + "-" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Con trước cha
+        List<UUID> ids = new ArrayList<>(metaFieldIds);
+        Collections.reverse(ids);
+        for (UUID id : ids) {
+            jdbcTemplate.update("delete from META_FIELD where ID = ?", id);
+            jdbcTemplate.update("delete from META_FIELD_CHANGE where META_FIELD_ID = ?", id);
+        }
+    }
+}
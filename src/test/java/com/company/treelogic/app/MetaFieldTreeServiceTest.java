@@ -0,0 +1,227 @@
+package com.company.treelogic.app;
+
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.test_support.AuthenticatedAsAdmin;
+import io.jmix.core.DataManager;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Metadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Truy vấn cây của {@link MetaFieldTreeService}: bổ sung tổ tiên cho node khớp bộ lọc, và tìm ứng viên cho ô chọn
+ * cha (loại cây con của node đang sửa, phân trang keyset theo tên), và các node cần mở để hiện N tầng.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class MetaFieldTreeServiceTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    Metadata metadata;
+
+    @Autowired
+    MetaFieldTreeService metaFieldTreeService;
+
+    List<UUID> metaFieldIds = new ArrayList<>();
+
+    @Test
+    void test_loadAncestorIdsReturnsEveryAncestorOnce() {
+        MetaField root = save(create(uniqueName("ancestors"), null));
+        MetaField first = save(create("mid-1", root));
+        MetaField second = save(create("mid-2", root));
+        MetaField firstLeaf = save(create("leaf-1", first));
+        MetaField secondLeaf = save(create("leaf-2", second));
+
+        assertThat(metaFieldTreeService.loadAncestorIds(List.of(firstLeaf.getId(), secondLeaf.getId())))
+                .containsExactlyInAnyOrder(root.getId(), first.getId(), second.getId());
+        // Chính node không phải tổ tiên của nó; node gốc không có tổ tiên
+        assertThat(metaFieldTreeService.loadAncestorIds(List.of(first.getId(), firstLeaf.getId())))
+                .containsExactlyInAnyOrder(root.getId(), first.getId());
+        assertThat(metaFieldTreeService.loadAncestorIds(List.of(root.getId()))).isEmpty();
+    }
+
+    @Test
+    void test_loadWithAncestorsAppendsMissingAncestorsAfterMatches() {
+        MetaField root = save(create(uniqueName("with-ancestors"), null));
+        MetaField first = save(create("mid-1", root));
+        MetaField second = save(create("mid-2", root));
+        MetaField firstLeaf = save(create("leaf-1", first));
+        MetaField secondLeaf = save(create("leaf-2", second));
+
+        List<MetaField> result = metaFieldTreeService.loadWithAncestors(
+                byIds(first.getId(), firstLeaf.getId(), secondLeaf.getId()));
+
+        // Node khớp giữ thứ tự của loader, mid-1 đã khớp nên không lặp lại trong phần tổ tiên
+        List<UUID> expected = new ArrayList<>(List.of(firstLeaf.getId(), secondLeaf.getId(), first.getId()));
+        expected.addAll(inSiblingOrder(root, second));
+        assertThat(result).extracting(MetaField::getId).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void test_loadWithAncestorsDoesNotCountAncestorsInPage() {
+        MetaField root = save(create(uniqueName("page"), null));
+        MetaField mid = save(create("mid", root));
+        MetaField firstLeaf = save(create("leaf-1", mid));
+        MetaField secondLeaf = save(create("leaf-2", mid));
+
+        // Trang một dòng: chỉ leaf-1, tổ tiên vẫn được nối thêm
+        List<MetaField> result = metaFieldTreeService.loadWithAncestors(
+                byIds(firstLeaf.getId(), secondLeaf.getId()),
+                context -> dataManager.loadList(context).subList(0, 1));
+
+        List<UUID> expected = new ArrayList<>(List.of(firstLeaf.getId()));
+        expected.addAll(inSiblingOrder(root, mid));
+        assertThat(result).extracting(MetaField::getId).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void test_searchByNamePrefixExcludesInnerSubtree() {
+        String prefix = uniqueName("picker");
+        MetaField root = save(create(prefix + "-a", null));
+        MetaField child = save(create(prefix + "-b", root));
+        save(create(prefix + "-c", child));
+        MetaField otherRoot = save(create(prefix + "-d", null));
+        MetaField otherChild = save(create(prefix + "-e", otherRoot));
+
+        List<MetaField> candidates = metaFieldTreeService.searchByNamePrefix(prefix, child.getId(), null, 10);
+
+        assertThat(candidates).extracting(MetaField::getId)
+                .containsExactly(root.getId(), otherRoot.getId(), otherChild.getId());
+    }
+
+    @Test
+    void test_searchByNamePrefixExcludesWholeTreeOfRoot() {
+        String prefix = uniqueName("picker-root");
+        MetaField root = save(create(prefix + "-a", null));
+        save(create(prefix + "-b", root));
+        MetaField otherRoot = save(create(prefix + "-c", null));
+        MetaField otherChild = save(create(prefix + "-d", otherRoot));
+
+        List<MetaField> candidates = metaFieldTreeService.searchByNamePrefix(prefix, root.getId(), null, 10);
+
+        assertThat(candidates).extracting(MetaField::getId).containsExactly(otherRoot.getId(), otherChild.getId());
+    }
+
+    @Test
+    void test_searchByNamePrefixPagesByKeyset() {
+        String prefix = uniqueName("picker-page");
+        MetaField root = save(create(prefix + "-a", null));
+        MetaField child = save(create(prefix + "-b", root));
+        MetaField grandchild = save(create(prefix + "-c", child));
+        // Trùng tên: thứ tự trong trang và giữa các trang theo ID (so sánh byte không dấu như chuỗi hex)
+        MetaField sameName = save(create(prefix + "-c", root));
+
+        List<MetaField> first = metaFieldTreeService.searchByNamePrefix(prefix, null, null, 2);
+        List<MetaField> second = metaFieldTreeService.searchByNamePrefix(prefix, null, first.get(1), 2);
+        List<MetaField> third = metaFieldTreeService.searchByNamePrefix(prefix, null, second.get(1), 2);
+
+        List<UUID> sameNames = grandchild.getId().toString().compareTo(sameName.getId().toString()) < 0
+                ? List.of(grandchild.getId(), sameName.getId())
+                : List.of(sameName.getId(), grandchild.getId());
+        assertThat(first).extracting(MetaField::getId).containsExactly(root.getId(), child.getId());
+        assertThat(second).extracting(MetaField::getId).containsExactlyElementsOf(sameNames);
+        assertThat(third).isEmpty();
+        // Ký tự đại diện của LIKE trong tiền tố được hiểu theo nghĩa đen
+        assertThat(metaFieldTreeService.searchByNamePrefix(prefix.replace("-", "_"), null, null, 10)).isEmpty();
+    }
+
+    @Test
+    void test_collectExpandableReturnsNodesWithChildrenLevelByLevel() {
+        // root -> (a -> a1 -> a11), b; leaf là một cây không có con
+        MetaField root = save(create(uniqueName("expand"), null));
+        MetaField a = save(create("a", root));
+        save(create("b", root));
+        MetaField a1 = save(create("a1", a));
+        save(create("a11", a1));
+        MetaField leaf = save(create(uniqueName("expand-leaf"), null));
+        List<UUID> roots = List.of(root.getId(), leaf.getId());
+
+        assertThat(metaFieldTreeService.collectExpandable(roots, 0, 10)).isEmpty();
+        assertThat(metaFieldTreeService.collectExpandable(roots, 1, 10)).containsExactly(root.getId());
+        assertThat(metaFieldTreeService.collectExpandable(roots, 2, 10)).containsExactly(root.getId(), a.getId());
+        // a11 là lá: tầng thứ tư không thêm node nào
+        assertThat(metaFieldTreeService.collectExpandable(roots, 4, 10))
+                .containsExactly(root.getId(), a.getId(), a1.getId());
+        assertThat(metaFieldTreeService.collectExpandable(roots, 4, 2)).containsExactly(root.getId(), a.getId());
+    }
+
+    @Test
+    void test_collectExpandableFollowsMoves() {
+        MetaField root = save(create(uniqueName("expand-move"), null));
+        MetaField a = save(create("a", root));
+        MetaField b = save(create("b", root));
+        MetaField child = save(create("child", a));
+
+        child.setParent(b);
+        save(child);
+
+        assertThat(metaFieldTreeService.collectExpandable(List.of(root.getId()), 2, 10))
+                .containsExactly(root.getId(), b.getId());
+    }
+
+    /**
+     * Truy vấn các node theo id, sắp theo tên.
+     */
+    private LoadContext<MetaField> byIds(UUID... ids) {
+        return new LoadContext<MetaField>(metadata.getClass(MetaField.class))
+                .setQuery(new LoadContext.Query("select e from MetaField e where e.id in :ids order by e.name")
+                        .setParameter("ids", List.of(ids)));
+    }
+
+    /**
+     * Id các node theo thứ tự tổ tiên được nối vào kết quả: khoá anh em rồi id.
+     */
+    private List<UUID> inSiblingOrder(MetaField... metaFields) {
+        List<MetaField> sorted = new ArrayList<>();
+        for (MetaField metaField : metaFields) {
+            sorted.add(dataManager.load(MetaField.class).id(metaField.getId()).one());
+        }
+        sorted.sort(Comparator.comparing(MetaField::getSortKey).thenComparing(MetaField::getId));
+        return sorted.stream().map(MetaField::getId).toList();
+    }
+
+    private MetaField create(String name, MetaField parent) {
+        MetaField metaField = dataManager.create(MetaField.class);
+        metaField.setName(name);
+        metaField.setParent(parent);
+        metaFieldIds.add(metaField.getId());
+        return metaField;
+    }
+
+    private MetaField save(MetaField metaField) {
+        return dataManager.save(metaField);
+    }
+
+    private static String uniqueName(String prefix) {
+        return prefix + "-" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Con trước cha
+        List<UUID> ids = new ArrayList<>(metaFieldIds);
+        Collections.reverse(ids);
+        for (UUID id : ids) {
+            jdbcTemplate.update("delete from META_FIELD where ID = ?", id);
+            jdbcTemplate.update("delete from META_FIELD_CHANGE where META_FIELD_ID = ?", id);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.company.treelogic.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing test against two independent in-memory HSQLDB instances.
+ */
+public class ReadReplicaRoutingDataSourceTest {
+
+    DataSource primary = new DriverManagerDataSource("jdbc:hsqldb:mem:routing-primary", "sa", "");
+    DataSource replica = new DriverManagerDataSource("jdbc:hsqldb:mem:routing-replica", "sa", "");
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        for (DataSource dataSource : new DataSource[]{primary, replica}) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("create table if not exists PROBE (ID int)");
+            }
+        }
+    }
+
+    @Test
+    void test_readsGoToReplicaUntilUserWrites() throws SQLException {
+        ReadReplicaRoutingDataSource routing =
+                new ReadReplicaRoutingDataSource(primary, replica, new ReadReplicaStickiness(Duration.ofMinutes(1)));
+
+        assertThat(urlOf(routing)).contains("routing-primary");
+        assertThat(ReadReplicaRouting.readOnly(() -> urlOf(routing))).contains("routing-replica");
+
+        try (Connection connection = routing.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("insert into PROBE (ID) values (1)");
+        }
+
+        // read-your-writes: the same user keeps reading from the primary
+        assertThat(ReadReplicaRouting.readOnly(() -> urlOf(routing))).contains("routing-primary");
+    }
+
+    private static String urlOf(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.company.treelogic.diagnostics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlStatementCollectorTest {
+
+    @AfterEach
+    void tearDown() {
+        SqlStatementCollector.setReporter(null);
+        SqlStatementCollector.setOriginResolver(null);
+    }
+
+    @Test
+    void test_shapeIgnoresLiteralsAndInLists() {
+        assertThat(SqlStatementCollector.shapeOf("SELECT ID FROM META_FIELD WHERE NAME = 'a''b' AND X = 42"))
+                .isEqualTo("SELECT ID FROM META_FIELD WHERE NAME = ? AND X = ?");
+        assertThat(SqlStatementCollector.shapeOf("select * from T where ID in (?, ?,   ?)"))
+                .isEqualTo(SqlStatementCollector.shapeOf("select * from T where ID IN (?)"));
+    }
+
+    @Test
+    void test_nestedScopesReportOnceToOutermost() {
+        List<SqlStatementCollector.Scope> reported = new ArrayList<>();
+        SqlStatementCollector.setReporter(reported::add);
+        SqlStatementCollector.setOriginResolver(() -> "MetaField.list");
+
+        try (SqlStatementCollector.Scope outer = SqlStatementCollector.open(null)) {
+            for (int i = 0; i < 3; i++) {
+                SqlStatementCollector.record("SELECT * FROM META_FIELD WHERE ID = " + i);
+            }
+            try (SqlStatementCollector.Scope inner = SqlStatementCollector.open("ignored")) {
+                SqlStatementCollector.record("SELECT * FROM USER_");
+            }
+            assertThat(reported).isEmpty();
+        }
+
+        assertThat(reported).hasSize(1);
+        SqlStatementCollector.Scope scope = reported.get(0);
+        assertThat(scope.getOrigin()).isEqualTo("MetaField.list");
+        assertThat(scope.getTotal()).isEqualTo(4);
+        assertThat(scope.getShapes()).containsEntry("SELECT * FROM META_FIELD WHERE ID = ?", 3);
+        assertThat(SqlStatementCollector.current()).isNull();
+    }
+}
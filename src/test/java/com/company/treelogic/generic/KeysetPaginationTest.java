@@ -0,0 +1,90 @@
+package com.company.treelogic.generic;
+
+import com.company.treelogic.generic.KeysetPagination.Move;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Trạng thái trang (chỉ số, nút trước / sau, mốc keyset) của {@link KeysetPagination} sau mỗi lần nạp trang.
+ */
+public class KeysetPaginationTest {
+
+    // Không gắn vào UI / loader: chỉ kiểm tra chuyển trạng thái, không đếm (ước lượng 0 dòng)
+    private final KeysetPagination<String> pagination = new KeysetPagination<>(null, "name", row -> row, row -> row,
+            2, loadContext -> 0, null);
+
+    @Test
+    void test_firstPage() {
+        pagination.onPageLoaded(Move.FIRST, List.of("a", "b"), true);
+
+        assertThat(pagination.getPageIndex()).isZero();
+        assertThat(pagination.hasPrevious()).isFalse();
+        assertThat(pagination.hasNext()).isTrue();
+        assertThat(pagination.getFirstRow()).isEqualTo("a");
+        assertThat(pagination.getLastRow()).isEqualTo("b");
+    }
+
+    @Test
+    void test_nextUntilLastPage() {
+        pagination.onPageLoaded(Move.FIRST, List.of("a", "b"), true);
+        pagination.onPageLoaded(Move.NEXT, List.of("c", "d"), true);
+        pagination.onPageLoaded(Move.NEXT, List.of("e"), false);
+
+        assertThat(pagination.getPageIndex()).isEqualTo(2);
+        assertThat(pagination.hasPrevious()).isTrue();
+        assertThat(pagination.hasNext()).isFalse();
+        assertThat(pagination.getFirstRow()).isEqualTo("e");
+    }
+
+    @Test
+    void test_previousBackToFirstPage() {
+        pagination.onPageLoaded(Move.FIRST, List.of("a", "b"), true);
+        pagination.onPageLoaded(Move.NEXT, List.of("c", "d"), true);
+        pagination.onPageLoaded(Move.NEXT, List.of("e"), false);
+
+        pagination.onPageLoaded(Move.PREVIOUS, List.of("c", "d"), true);
+        assertThat(pagination.getPageIndex()).isEqualTo(1);
+        assertThat(pagination.hasPrevious()).isTrue();
+        assertThat(pagination.hasNext()).isTrue();
+
+        // Không còn dòng phía trước: đây là trang đầu dù chỉ số đếm được nói gì
+        pagination.onPageLoaded(Move.PREVIOUS, List.of("a", "b"), false);
+        assertThat(pagination.getPageIndex()).isZero();
+        assertThat(pagination.hasPrevious()).isFalse();
+        assertThat(pagination.hasNext()).isTrue();
+    }
+
+    @Test
+    void test_lastPage() {
+        pagination.onPageLoaded(Move.LAST, List.of("e"), true);
+
+        assertThat(pagination.getPageIndex()).isPositive();
+        assertThat(pagination.hasPrevious()).isTrue();
+        assertThat(pagination.hasNext()).isFalse();
+
+        // Mọi dòng vừa một trang: trang cuối cũng là trang đầu
+        pagination.onPageLoaded(Move.LAST, List.of("a"), false);
+        assertThat(pagination.getPageIndex()).isZero();
+        assertThat(pagination.hasPrevious()).isFalse();
+        assertThat(pagination.hasNext()).isFalse();
+    }
+
+    @Test
+    void test_emptyPageKeepsAnchors() {
+        pagination.onPageLoaded(Move.FIRST, List.of("a", "b"), true);
+        // VD: các dòng phía sau vừa bị xoá
+        pagination.onPageLoaded(Move.NEXT, List.of(), false);
+
+        assertThat(pagination.hasPrevious()).isTrue();
+        assertThat(pagination.getFirstRow()).isEqualTo("a");
+        assertThat(pagination.getLastRow()).isEqualTo("b");
+
+        pagination.onPageLoaded(Move.FIRST, List.of(), false);
+        assertThat(pagination.getFirstRow()).isNull();
+        assertThat(pagination.getLastRow()).isNull();
+        assertThat(pagination.hasNext()).isFalse();
+    }
+}
@@ -0,0 +1,143 @@
+package com.company.treelogic.generic;
+
+import io.jmix.flowui.backgroundtask.BackgroundTask;
+import io.jmix.flowui.backgroundtask.BackgroundTaskHandler;
+import io.jmix.flowui.backgroundtask.BackgroundWorker;
+import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.model.CollectionContainer;
+import io.jmix.flowui.view.View;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Gom lô và ngân sách dòng của {@link TreePrefetcher}. Container và BackgroundWorker được giả lập: task không chạy
+ * nền mà được giữ lại để test tự gọi {@code run} / {@code done} / {@code handleException}. Entity là chính id của nó.
+ */
+public class TreePrefetcherTest {
+
+    // a -> a1, a2; b -> b1, b2, b3; c -> c1, c2; d: lá; e -> e1 (đã có trong container)
+    private final Map<String, List<String>> children = Map.of(
+            "a", List.of("a1", "a2"),
+            "b", List.of("b1", "b2", "b3"),
+            "c", List.of("c1", "c2"),
+            "d", List.of(),
+            "e", List.of("e1"));
+    private final Set<String> items = new HashSet<>(Set.of("a", "b", "c", "d", "e", "e1"));
+    private final List<String> added = new ArrayList<>();
+    private final List<BackgroundTask<Void, List<String>>> tasks = new ArrayList<>();
+    private final List<Collection<String>> loads = new ArrayList<>();
+
+    private BackgroundWorker backgroundWorker;
+    private CollectionContainer<String> container;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        backgroundWorker = mock(BackgroundWorker.class);
+        when(backgroundWorker.handle(any())).thenAnswer(invocation -> {
+            tasks.add(invocation.getArgument(0));
+            return mock(BackgroundTaskHandler.class);
+        });
+        container = mock(CollectionContainer.class);
+        when(container.getItemOrNull(any())).thenAnswer(invocation ->
+                items.contains((String) invocation.getArgument(0)) ? invocation.getArgument(0) : null);
+        when(container.getMutableItems()).thenReturn(added);
+    }
+
+    @Test
+    void test_batchesWholeChildGroupsWithinBatchSize() throws Exception {
+        TreePrefetcher<String, String> prefetcher = prefetcher(new TreePrefetcher.Policy(true, 5, 100));
+
+        // c không còn chỗ trong lô 5 dòng; d không có con; e đã đủ con; x không có trong container
+        prefetcher.prefetch(List.of("a", "b", "c", "d", "e", "x"));
+
+        assertThat(tasks).hasSize(1);
+        items.add("b2");
+        runAndFinish(tasks.get(0));
+        assertThat(loads).containsExactly(List.of("a", "b"));
+        // b2 đã được nạp trong lúc chờ: không thêm lần nữa
+        assertThat(added).containsExactly("a1", "a2", "b1", "b3");
+
+        // Node đã nạp trước không được nạp lại; c vào lô tiếp theo
+        prefetcher.prefetch(List.of("a", "b", "c"));
+        assertThat(tasks).hasSize(2);
+        runAndFinish(tasks.get(1));
+        assertThat(loads).containsExactly(List.of("a", "b"), List.of("c"));
+    }
+
+    @Test
+    void test_stopsAtMaxRows() throws Exception {
+        TreePrefetcher<String, String> prefetcher = prefetcher(new TreePrefetcher.Policy(true, 10, 4));
+
+        prefetcher.prefetch(List.of("a", "b", "c"));
+        prefetcher.prefetch(List.of("c"));
+
+        // Ngân sách được kiểm tra trước mỗi nhóm: a (2) còn dưới 4 nên b (3) vẫn vào lô, c thì không
+        assertThat(tasks).hasSize(1);
+        runAndFinish(tasks.get(0));
+        assertThat(loads).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void test_failedTaskReturnsBudgetAndAllowsRetry() throws Exception {
+        TreePrefetcher<String, String> prefetcher = prefetcher(new TreePrefetcher.Policy(true, 10, 3));
+
+        prefetcher.prefetch(List.of("b"));
+        assertThat(tasks.get(0).handleException(new IllegalStateException("DB down"))).isTrue();
+        prefetcher.prefetch(List.of("b"));
+
+        assertThat(tasks).hasSize(2);
+        runAndFinish(tasks.get(1));
+        assertThat(loads).containsExactly(List.of("b"));
+        assertThat(added).containsExactly("b1", "b2", "b3");
+    }
+
+    @Test
+    void test_taskStartedBeforeResetDoesNotTouchNewState() throws Exception {
+        TreePrefetcher<String, String> prefetcher = prefetcher(new TreePrefetcher.Policy(true, 10, 3));
+        prefetcher.prefetch(List.of("a"));
+        BackgroundTask<Void, List<String>> stale = tasks.get(0);
+
+        prefetcher.reset();
+        prefetcher.prefetch(List.of("b"));
+        // Lỗi của task cũ không trả ngân sách của lượt mới (3 dòng của b), kết quả của nó bị bỏ
+        stale.handleException(new IllegalStateException("cancelled"));
+        stale.done(stale.run(null));
+        prefetcher.prefetch(List.of("c"));
+
+        assertThat(tasks).hasSize(2);
+        assertThat(added).isEmpty();
+    }
+
+    private TreePrefetcher<String, String> prefetcher(TreePrefetcher.Policy policy) {
+        @SuppressWarnings("unchecked")
+        TreeDataGrid<String> treeDataGrid = mock(TreeDataGrid.class);
+        return new TreePrefetcher<>(mock(View.class), backgroundWorker, treeDataGrid, container, Function.identity(),
+                id -> children.getOrDefault(id, List.of()),
+                (parentIds, limit) -> {
+                    loads.add(List.copyOf(parentIds));
+                    List<String> result = new ArrayList<>();
+                    parentIds.forEach(id -> result.addAll(children.get(id)));
+                    assertThat(result).hasSizeLessThanOrEqualTo(limit);
+                    return result;
+                },
+                policy);
+    }
+
+    private static void runAndFinish(BackgroundTask<Void, List<String>> task) throws Exception {
+        task.done(task.run(null));
+    }
+}
@@ -0,0 +1,99 @@
+package com.company.treelogic.security;
+
+import com.company.treelogic.entity.User;
+import com.company.treelogic.test_support.AuthenticatedAsAdmin;
+import io.jmix.core.DataManager;
+import io.jmix.security.role.assignment.RoleAssignmentRoleType;
+import io.jmix.securitydata.entity.RoleAssignmentEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cache user + quyền của {@link DatabaseUserRepository}: mục bị xoá sau khi commit thay đổi User / RoleAssignment.
+ */
+@SpringBootTest
+@ExtendWith(AuthenticatedAsAdmin.class)
+public class DatabaseUserRepositoryTest {
+
+    @Autowired
+    DataManager dataManager;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    DatabaseUserRepository userRepository;
+
+    User savedUser;
+    RoleAssignmentEntity savedAssignment;
+
+    @BeforeEach
+    void setUp() {
+        User user = dataManager.create(User.class);
+        user.setUsername("cache-user-" + System.currentTimeMillis());
+        user.setPassword(passwordEncoder.encode("test-passwd"));
+        user.setFirstName("Before");
+        savedUser = dataManager.save(user);
+    }
+
+    @Test
+    void test_userChangeEvictsCachedEntry() {
+        assertThat(userRepository.loadUserByUsername(savedUser.getUsername()).getFirstName()).isEqualTo("Before");
+
+        User user = dataManager.load(User.class).id(savedUser.getId()).one();
+        user.setFirstName("After");
+        savedUser = dataManager.save(user);
+
+        assertThat(userRepository.loadUserByUsername(savedUser.getUsername()).getFirstName()).isEqualTo("After");
+    }
+
+    @Test
+    void test_cachedUserIsReturnedAsCopy() {
+        User first = userRepository.loadUserByUsername(savedUser.getUsername());
+        first.setFirstName("Changed outside");
+
+        User second = userRepository.loadUserByUsername(savedUser.getUsername());
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getFirstName()).isEqualTo("Before");
+    }
+
+    @Test
+    void test_roleAssignmentChangeEvictsAuthorities() {
+        assertThat(userRepository.loadUserByUsername(savedUser.getUsername()).getAuthorities())
+                .extracting(GrantedAuthority::getAuthority)
+                .noneMatch(authority -> authority.endsWith(UiMinimalRole.CODE));
+
+        RoleAssignmentEntity assignment = dataManager.create(RoleAssignmentEntity.class);
+        assignment.setUsername(savedUser.getUsername());
+        assignment.setRoleCode(UiMinimalRole.CODE);
+        assignment.setRoleType(RoleAssignmentRoleType.RESOURCE);
+        savedAssignment = dataManager.save(assignment);
+
+        assertThat(userRepository.loadUserByUsername(savedUser.getUsername()).getAuthorities())
+                .extracting(GrantedAuthority::getAuthority)
+                .anyMatch(authority -> authority.endsWith(UiMinimalRole.CODE));
+
+        dataManager.remove(savedAssignment);
+        savedAssignment = null;
+
+        assertThat(userRepository.loadUserByUsername(savedUser.getUsername()).getAuthorities())
+                .extracting(GrantedAuthority::getAuthority)
+                .noneMatch(authority -> authority.endsWith(UiMinimalRole.CODE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (savedAssignment != null)
+            dataManager.remove(savedAssignment);
+        if (savedUser != null)
+            dataManager.remove(savedUser);
+    }
+}
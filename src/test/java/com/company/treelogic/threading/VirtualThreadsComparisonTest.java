@@ -0,0 +1,126 @@
+package com.company.treelogic.threading;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * So sánh cùng một tải "request chờ JDBC" trên pool platform thread cố định (như Tomcat mặc định, 200 luồng) và trên
+ * virtual thread (một luồng cho mỗi request), với pool kết nối nhỏ (Hikari mặc định) và lớn.
+ * <p>
+ * Mỗi request: 3 lần (mượn kết nối, truy vấn {@value #QUERY_MS} ms, trả kết nối) xen với {@value #WAIT_MS} ms chờ
+ * ngoài DB. Biến thể "pinned" giữ monitor của kết nối trong lúc truy vấn (như driver JDBC dùng {@code synchronized})
+ * - trên Java 21 virtual thread bị pin vào carrier thread, số truy vấn song song bị chặn bởi số carrier (số core).
+ * <p>
+ * Không chạy cùng bộ test thường: {@code ./gradlew test --tests '*VirtualThreadsComparisonTest'
+ * -Dtreelogic.benchmark=true} (cần Java 21). Kết quả ghi ra log.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@EnabledIfSystemProperty(named = "treelogic.benchmark", matches = "true")
+public class VirtualThreadsComparisonTest {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadsComparisonTest.class);
+
+    private static final int REQUESTS = 5000;
+    private static final int PLATFORM_THREADS = 200;
+    private static final int QUERIES_PER_REQUEST = 3;
+    private static final int QUERY_MS = 2;
+    private static final int WAIT_MS = 5;
+
+    private record Result(String name, long elapsedMillis, long p50Micros, long p99Micros) {
+
+        double throughput() {
+            return REQUESTS * 1000.0 / elapsedMillis;
+        }
+    }
+
+    @Test
+    void test_compareVirtualAndPlatformThreads() throws Exception {
+        List<Result> results = new ArrayList<>();
+        for (int connections : new int[]{10, 100}) {
+            for (boolean pinned : new boolean[]{false, true}) {
+                String load = "connections=" + connections + (pinned ? ", pinned" : "");
+                results.add(run("platform(" + PLATFORM_THREADS + "), " + load,
+                        Executors.newFixedThreadPool(PLATFORM_THREADS), connections, pinned));
+                results.add(run("virtual, " + load, newVirtualThreadPerTaskExecutor(), connections, pinned));
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        for (Result result : results) {
+            report.append(String.format("%n  %-40s %8.0f req/s  p50 %6d us  p99 %7d us", result.name(),
+                    result.throughput(), result.p50Micros(), result.p99Micros()));
+        }
+        log.info("Virtual vs platform threads ({} requests):{}", REQUESTS, report);
+        assertThat(results).allMatch(result -> result.elapsedMillis() > 0);
+    }
+
+    private static Result run(String name, ExecutorService executor, int connections, boolean pinned)
+            throws Exception {
+        BlockingQueue<Object> pool = new ArrayBlockingQueue<>(connections, true);
+        for (int i = 0; i < connections; i++) {
+            pool.add(new Object());
+        }
+        List<Future<Long>> futures = new ArrayList<>(REQUESTS);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                long submitted = System.nanoTime();
+                futures.add(executor.submit(() -> request(pool, pinned, submitted)));
+            }
+            List<Long> latencies = new ArrayList<>(REQUESTS);
+            for (Future<Long> future : futures) {
+                latencies.add(future.get());
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            Collections.sort(latencies);
+            return new Result(name, elapsedMillis, latencies.get(REQUESTS / 2) / 1000,
+                    latencies.get(REQUESTS * 99 / 100) / 1000);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return Độ trễ của request (ns) tính từ lúc gửi, gồm cả thời gian chờ luồng / chờ kết nối
+     */
+    private static long request(BlockingQueue<Object> pool, boolean pinned, long submitted)
+            throws InterruptedException {
+        for (int i = 0; i < QUERIES_PER_REQUEST; i++) {
+            Object connection = pool.take();
+            try {
+                if (pinned) {
+                    synchronized (connection) {
+                        Thread.sleep(QUERY_MS);
+                    }
+                } else {
+                    Thread.sleep(QUERY_MS);
+                }
+            } finally {
+                pool.add(connection);
+            }
+            Thread.sleep(WAIT_MS);
+        }
+        return System.nanoTime() - submitted;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+}
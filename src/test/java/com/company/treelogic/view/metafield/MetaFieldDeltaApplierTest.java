@@ -0,0 +1,146 @@
+package com.company.treelogic.view.metafield;
+
+import com.company.treelogic.app.MetaFieldDelta;
+import com.company.treelogic.app.MetaFieldTreeService;
+import com.company.treelogic.entity.MetaField;
+import com.company.treelogic.entity.MetaFieldChangeType;
+import io.jmix.core.DataManager;
+import io.jmix.flowui.component.grid.TreeDataGrid;
+import io.jmix.flowui.model.CollectionContainer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Vá container theo delta của {@link MetaFieldDeltaApplier}: node chuyển ra khỏi phần đang xem bị bỏ cùng hậu duệ,
+ * node đổi cha / đổi khoá được đặt lại đúng thứ tự anh em. Container được giả lập trên một list thật, grid chỉ để ghi
+ * nhận các lần refresh.
+ */
+public class MetaFieldDeltaApplierTest {
+
+    // root -> a (a0) -> a1 (a0) -> a11 (a0); root -> b (a1) -> b1 (a0), b2 (a2)
+    private final List<MetaField> items = new ArrayList<>();
+    private final MetaField root = node("root", null, "a0");
+    private final MetaField a = node("a", root, "a0");
+    private final MetaField a1 = node("a1", a, "a0");
+    private final MetaField a11 = node("a11", a1, "a0");
+    private final MetaField b = node("b", root, "a1");
+    private final MetaField b1 = node("b1", b, "a0");
+    private final MetaField b2 = node("b2", b, "a2");
+
+    private TreeDataGrid<MetaField> treeDataGrid;
+    private MetaFieldDeltaApplier applier;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        CollectionContainer<MetaField> container = mock(CollectionContainer.class);
+        when(container.getItems()).thenReturn(items);
+        when(container.getMutableItems()).thenReturn(items);
+        when(container.getItemOrNull(any())).thenAnswer(invocation -> items.stream()
+                .filter(item -> item.getId().equals(invocation.getArgument(0)))
+                .findFirst()
+                .orElse(null));
+        treeDataGrid = mock(TreeDataGrid.class, Mockito.RETURNS_DEEP_STUBS);
+        applier = new MetaFieldDeltaApplier(container, treeDataGrid, mock(DataManager.class),
+                mock(MetaFieldTreeService.class));
+    }
+
+    @Test
+    void test_moveToUnloadedParentRemovesSubtree() {
+        applier.apply(List.of(move(a, UUID.randomUUID(), "a0")));
+
+        assertThat(items).containsExactly(root, b, b1, b2);
+    }
+
+    @Test
+    void test_splitIntoOwnTreeRemovesSubtreeWhenViewShowsOneTree() {
+        applier.setAcceptNewRoots(false);
+
+        applier.apply(List.of(move(a1, null, "a5")));
+
+        assertThat(items).containsExactly(root, a, b, b1, b2);
+    }
+
+    @Test
+    void test_moveToLoadedParentPlacesAmongNewSiblings() {
+        applier.apply(List.of(move(a, b.getId(), "a1")));
+
+        assertThat(a.getParent()).isSameAs(b);
+        assertThat(a.getSortKey()).isEqualTo("a1");
+        assertThat(childrenOf(b)).containsExactly(b1, a, b2);
+        // Hậu duệ đi theo node, không bị bỏ
+        assertThat(items).contains(a1, a11);
+        verify(treeDataGrid.getDataProvider()).refreshAll();
+    }
+
+    @Test
+    void test_reorderUnderSameParent() {
+        applier.apply(List.of(update(a, root.getId(), "a2")));
+
+        assertThat(childrenOf(root)).containsExactly(b, a);
+        verify(treeDataGrid.getDataProvider()).refreshAll();
+    }
+
+    @Test
+    void test_deltaWithoutSortKeyKeepsPosition() {
+        applier.apply(List.of(new MetaFieldDelta(MetaFieldChangeType.UPDATE, b1.getId(), b.getId(), "renamed", null,
+                null, 1L)));
+
+        assertThat(b1.getName()).isEqualTo("renamed");
+        assertThat(childrenOf(b)).containsExactly(b1, b2);
+        verify(treeDataGrid.getDataProvider()).refreshItem(b1);
+    }
+
+    @Test
+    void test_applyingSameDeltasTwiceIsIdempotent() {
+        List<MetaFieldDelta> deltas = List.of(move(b2, a.getId(), "a5"), delete(b1));
+
+        applier.apply(deltas);
+        List<MetaField> once = List.copyOf(items);
+        applier.apply(deltas);
+
+        assertThat(items).containsExactlyElementsOf(once);
+        assertThat(childrenOf(a)).containsExactly(a1, b2);
+        assertThat(childrenOf(b)).isEmpty();
+    }
+
+    private List<MetaField> childrenOf(MetaField parent) {
+        return items.stream().filter(item -> item.getParent() == parent).toList();
+    }
+
+    private MetaFieldDelta move(MetaField metaField, UUID parentId, String sortKey) {
+        return new MetaFieldDelta(MetaFieldChangeType.MOVE, metaField.getId(), parentId, metaField.getName(), null,
+                sortKey, 1L);
+    }
+
+    private MetaFieldDelta update(MetaField metaField, UUID parentId, String sortKey) {
+        return new MetaFieldDelta(MetaFieldChangeType.UPDATE, metaField.getId(), parentId, metaField.getName(), null,
+                sortKey, 1L);
+    }
+
+    private static MetaFieldDelta delete(MetaField metaField) {
+        return new MetaFieldDelta(MetaFieldChangeType.DELETE, metaField.getId(), metaField.getParent().getId(), null,
+                null, null, 1L);
+    }
+
+    private MetaField node(String name, MetaField parent, String sortKey) {
+        MetaField metaField = new MetaField();
+        metaField.setId(UUID.randomUUID());
+        metaField.setName(name);
+        metaField.setParent(parent);
+        metaField.setSortKey(sortKey);
+        items.add(metaField);
+        return metaField;
+    }
+}
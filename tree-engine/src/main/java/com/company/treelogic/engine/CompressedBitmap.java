@@ -0,0 +1,446 @@
+package com.company.treelogic.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Tập số nguyên không âm nén theo kiểu Roaring: không gian chia thành các khối 2^16 giá trị theo 16 bit cao, mỗi
+ * khối lưu dạng <b>mảng</b> (ít phần tử, tối đa 4096 giá trị 16 bit) hoặc <b>bitmap</b> 8 KB (nhiều phần tử). Khi
+ * ghi ra byte, khối nào gồm ít dải liên tiếp thì được ghi dạng <b>run</b> (đầu, độ dài).
+ * <p>
+ * Hợp / giao / hiệu thực hiện theo từng khối bằng phép toán trên word 64 bit, không duyệt từng phần tử.
+ * Không an toàn khi ghi đồng thời.
+ *
+ * <pre>{@code
+ * CompressedBitmap a = CompressedBitmap.of(1, 2, 3);
+ * CompressedBitmap b = CompressedBitmap.of(3, 4);
+ * a.or(b).cardinality();          // 4
+ * CompressedBitmap.deserialize(a.serialize());
+ * }</pre>
+ */
+public final class CompressedBitmap {
+
+    private static final int MAGIC = 0x544C4231; // "TLB1"
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+    private static final byte RUNS = 2;
+
+    private final TreeMap<Integer, Container> containers = new TreeMap<>();
+
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public void add(int value) {
+        checkValue(value);
+        containers.computeIfAbsent(value >>> 16, key -> new Container()).add((char) value);
+    }
+
+    public void remove(int value) {
+        checkValue(value);
+        Container container = containers.get(value >>> 16);
+        if (container != null) {
+            container.remove((char) value);
+            if (container.cardinality == 0) {
+                containers.remove(value >>> 16);
+            }
+        }
+    }
+
+    public boolean contains(int value) {
+        Container container = value >= 0 ? containers.get(value >>> 16) : null;
+        return container != null && container.contains((char) value);
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (Container container : containers.values()) {
+            cardinality += container.cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return containers.isEmpty();
+    }
+
+    /**
+     * Duyệt các phần tử theo thứ tự tăng dần.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            entry.getValue().forEach(entry.getKey() << 16, consumer);
+        }
+    }
+
+    /**
+     * Hợp (tập mới, hai tập gốc giữ nguyên).
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        containers.forEach((key, container) -> result.containers.put(key, container.copy()));
+        other.containers.forEach((key, container) -> result.containers.merge(key, container.copy(),
+                (left, right) -> Container.combine(left, right, Op.OR)));
+        return result;
+    }
+
+    /**
+     * Giao (tập mới).
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        containers.forEach((key, container) -> {
+            Container right = other.containers.get(key);
+            if (right != null) {
+                result.putIfNotEmpty(key, Container.combine(container, right, Op.AND));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Hiệu: phần tử thuộc tập này nhưng không thuộc {@code other} (tập mới).
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        containers.forEach((key, container) -> {
+            Container right = other.containers.get(key);
+            result.putIfNotEmpty(key, right != null ? Container.combine(container, right, Op.AND_NOT)
+                    : container.copy());
+        });
+        return result;
+    }
+
+    public byte[] serialize() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(containers.size());
+            for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+                out.writeChar(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException nếu dữ liệu không đúng định dạng
+     */
+    public static CompressedBitmap deserialize(byte[] data) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a compressed bitmap");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int key = in.readChar();
+                bitmap.putIfNotEmpty(key, Container.read(in));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted compressed bitmap", e);
+        }
+        return bitmap;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CompressedBitmap other) || other.containers.size() != containers.size()) {
+            return false;
+        }
+        Iterator<Map.Entry<Integer, Container>> left = containers.entrySet().iterator();
+        Iterator<Map.Entry<Integer, Container>> right = other.containers.entrySet().iterator();
+        while (left.hasNext()) {
+            Map.Entry<Integer, Container> a = left.next();
+            Map.Entry<Integer, Container> b = right.next();
+            if (!a.getKey().equals(b.getKey()) || !a.getValue().sameAs(b.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cardinality()) * 31 + containers.keySet().hashCode();
+    }
+
+    private void putIfNotEmpty(int key, Container container) {
+        if (container.cardinality > 0) {
+            containers.put(key, container);
+        }
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+    }
+
+    private enum Op {
+        OR, AND, AND_NOT
+    }
+
+    /**
+     * Một khối 2^16 giá trị: mảng char đã sắp xếp ({@code bits == null}) hoặc bitmap 1024 word.
+     */
+    private static final class Container {
+
+        private char[] array = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        void add(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) == 0) {
+                    bits[value >>> 6] |= mask;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = binarySearch(value);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                add(value);
+                return;
+            }
+            int insertAt = -index - 1;
+            if (cardinality == array.length) {
+                char[] grown = new char[Math.min(ARRAY_MAX, array.length * 2)];
+                System.arraycopy(array, 0, grown, 0, cardinality);
+                array = grown;
+            }
+            System.arraycopy(array, insertAt, array, insertAt + 1, cardinality - insertAt);
+            array[insertAt] = value;
+            cardinality++;
+        }
+
+        void remove(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                if ((bits[value >>> 6] & mask) != 0) {
+                    bits[value >>> 6] &= ~mask;
+                    cardinality--;
+                    if (cardinality <= ARRAY_MAX) {
+                        toArray();
+                    }
+                }
+                return;
+            }
+            int index = binarySearch(value);
+            if (index >= 0) {
+                System.arraycopy(array, index + 1, array, index, cardinality - index - 1);
+                cardinality--;
+            }
+        }
+
+        boolean contains(char value) {
+            return bits != null ? (bits[value >>> 6] & (1L << value)) != 0 : binarySearch(value) >= 0;
+        }
+
+        void forEach(int high, IntConsumer consumer) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    consumer.accept(high | array[i]);
+                }
+                return;
+            }
+            for (int word = 0; word < WORDS; word++) {
+                long value = bits[word];
+                while (value != 0) {
+                    consumer.accept(high | (word << 6) | Long.numberOfTrailingZeros(value));
+                    value &= value - 1;
+                }
+            }
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.cardinality = cardinality;
+            copy.array = bits == null ? array.clone() : null;
+            copy.bits = bits != null ? bits.clone() : null;
+            return copy;
+        }
+
+        boolean sameAs(Container other) {
+            return cardinality == other.cardinality && Arrays.equals(words(), other.words());
+        }
+
+        static Container combine(Container left, Container right, Op op) {
+            long[] a = left.words();
+            long[] b = right.words();
+            long[] result = new long[WORDS];
+            int cardinality = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = switch (op) {
+                    case OR -> a[i] | b[i];
+                    case AND -> a[i] & b[i];
+                    case AND_NOT -> a[i] & ~b[i];
+                };
+                result[i] = word;
+                cardinality += Long.bitCount(word);
+            }
+            Container container = new Container();
+            container.bits = result;
+            container.array = null;
+            container.cardinality = cardinality;
+            if (cardinality <= ARRAY_MAX) {
+                container.toArray();
+            }
+            return container;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            int runs = countRuns();
+            int arrayBytes = cardinality * 2;
+            int bitmapBytes = WORDS * 8;
+            int runBytes = runs * 4;
+            if (runBytes < Math.min(arrayBytes, bitmapBytes)) {
+                out.writeByte(RUNS);
+                out.writeChar(runs);
+                int[] run = {-2, 0};
+                forEach(0, value -> {
+                    if (value != run[0] + run[1]) {
+                        if (run[0] >= 0) {
+                            writeRun(out, run[0], run[1]);
+                        }
+                        run[0] = value;
+                        run[1] = 0;
+                    }
+                    run[1]++;
+                });
+                writeRun(out, run[0], run[1]);
+            } else if (bits == null) {
+                out.writeByte(ARRAY);
+                out.writeChar(cardinality - 1);
+                for (int i = 0; i < cardinality; i++) {
+                    out.writeChar(array[i]);
+                }
+            } else {
+                out.writeByte(BITMAP);
+                for (long word : bits) {
+                    out.writeLong(word);
+                }
+            }
+        }
+
+        static Container read(DataInputStream in) throws IOException {
+            Container container = new Container();
+            byte type = in.readByte();
+            switch (type) {
+                case ARRAY -> {
+                    int count = in.readChar() + 1;
+                    for (int i = 0; i < count; i++) {
+                        container.add(in.readChar());
+                    }
+                }
+                case BITMAP -> {
+                    container.array = null;
+                    container.bits = new long[WORDS];
+                    for (int i = 0; i < WORDS; i++) {
+                        container.bits[i] = in.readLong();
+                        container.cardinality += Long.bitCount(container.bits[i]);
+                    }
+                    if (container.cardinality <= ARRAY_MAX) {
+                        container.toArray();
+                    }
+                }
+                case RUNS -> {
+                    int runs = in.readChar();
+                    for (int i = 0; i < runs; i++) {
+                        int start = in.readChar();
+                        int length = in.readChar() + 1;
+                        for (int value = start; value < start + length; value++) {
+                            container.add((char) value);
+                        }
+                    }
+                }
+                default -> throw new IOException("Unknown container type " + type);
+            }
+            return container;
+        }
+
+        private static void writeRun(DataOutputStream out, int start, int length) {
+            try {
+                out.writeChar(start);
+                out.writeChar(length - 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int countRuns() {
+            int[] state = {-2, 0}; // giá trị trước, số run
+            forEach(0, value -> {
+                if (value != state[0] + 1) {
+                    state[1]++;
+                }
+                state[0] = value;
+            });
+            return state[1];
+        }
+
+        private long[] words() {
+            if (bits != null) {
+                return bits;
+            }
+            long[] words = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[array[i] >>> 6] |= 1L << array[i];
+            }
+            return words;
+        }
+
+        private void toBitmap() {
+            bits = words();
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(4, cardinality)];
+            int[] index = {0};
+            forEach(0, value -> values[index[0]++] = (char) value);
+            array = values;
+            bits = null;
+        }
+
+        private int binarySearch(char value) {
+            int low = 0;
+            int high = cardinality - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (array[mid] < value) {
+                    low = mid + 1;
+                } else if (array[mid] > value) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.company.treelogic.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Khoá sắp xếp dạng phân số (fractional indexing): chuỗi base-62 so sánh theo thứ tự từ điển (ASCII / binary
+ * collation), luôn tìm được một khoá nằm giữa hai khoá bất kỳ. Chèn / di chuyển một phần tử giữa hai anh em chỉ ghi
+ * đúng một dòng, không phải đánh số lại các anh em khác.
+ * <p>
+ * Khoá gồm <b>phần nguyên</b> độ dài thay đổi (ký tự đầu mã hoá độ dài: {@code a..z} = số dương 1..26 chữ số,
+ * {@code Z..A} = số âm) và <b>phần phân số</b> tuỳ chọn. Thêm vào đầu / cuối danh sách chỉ tăng / giảm phần nguyên,
+ * nên khoá dài ra theo log của số lần thêm; chỉ chèn liên tục vào cùng một khe mới làm phần phân số dài ra.
+ * Phần phân số không bao giờ kết thúc bằng {@code '0'}, nên luôn còn chỗ phía trước.
+ *
+ * <pre>{@code
+ * String first = FractionalIndex.between(null, null);    // "a0"
+ * String next = FractionalIndex.between(first, null);    // "a1"
+ * String mid = FractionalIndex.between(first, next);     // "a0V"
+ * }</pre>
+ */
+public final class FractionalIndex {
+
+    static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final char ZERO = DIGITS.charAt(0);
+    private static final char MAX_DIGIT = DIGITS.charAt(DIGITS.length() - 1);
+    // Phần nguyên nhỏ nhất, dành riêng: không khoá nào được bằng nó (để luôn chèn được phía trước)
+    private static final String SMALLEST_INTEGER = "A" + String.valueOf(ZERO).repeat(26);
+
+    private FractionalIndex() {
+    }
+
+    /**
+     * Khoá nằm giữa {@code before} và {@code after}.
+     *
+     * @param before Khoá của phần tử đứng trước (null = đầu danh sách)
+     * @param after  Khoá của phần tử đứng sau (null = cuối danh sách)
+     * @throws IllegalArgumentException nếu {@code before >= after} hoặc khoá không hợp lệ
+     */
+    public static String between(String before, String after) {
+        if (before != null) {
+            validateKey(before);
+        }
+        if (after != null) {
+            validateKey(after);
+        }
+        if (before != null && after != null && before.compareTo(after) >= 0) {
+            throw new IllegalArgumentException(before + " >= " + after);
+        }
+
+        if (before == null) {
+            if (after == null) {
+                return "a" + ZERO;
+            }
+            String integer = integerPart(after);
+            String fraction = after.substring(integer.length());
+            if (integer.equals(SMALLEST_INTEGER)) {
+                return integer + midpoint("", fraction);
+            }
+            if (integer.compareTo(after) < 0) {
+                return integer;
+            }
+            String decremented = decrementInteger(integer);
+            if (decremented == null) {
+                throw new IllegalArgumentException("Cannot decrement " + after);
+            }
+            return decremented;
+        }
+
+        String integerA = integerPart(before);
+        String fractionA = before.substring(integerA.length());
+        if (after == null) {
+            String incremented = incrementInteger(integerA);
+            return incremented != null ? incremented : integerA + midpoint(fractionA, null);
+        }
+
+        String integerB = integerPart(after);
+        if (integerA.equals(integerB)) {
+            return integerA + midpoint(fractionA, after.substring(integerB.length()));
+        }
+        String incremented = incrementInteger(integerA);
+        if (incremented != null && incremented.compareTo(after) < 0) {
+            return incremented;
+        }
+        return integerA + midpoint(fractionA, null);
+    }
+
+    /**
+     * {@code count} khoá tăng dần, ngắn nhất có thể (các số nguyên liên tiếp) - dùng khi cân bằng lại các anh em.
+     */
+    public static List<String> sequence(int count) {
+        List<String> keys = new ArrayList<>(count);
+        String key = null;
+        for (int i = 0; i < count; i++) {
+            key = between(key, null);
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Phân số nằm giữa {@code a} và {@code b} (null = 1), không có phần nguyên.
+     */
+    private static String midpoint(String a, String b) {
+        if (b != null) {
+            // Bỏ phần tiền tố chung ('0' đệm cho a ngắn hơn)
+            int n = 0;
+            while (n < b.length() && (n < a.length() ? a.charAt(n) : ZERO) == b.charAt(n)) {
+                n++;
+            }
+            if (n > 0) {
+                return b.substring(0, n) + midpoint(n < a.length() ? a.substring(n) : "", b.substring(n));
+            }
+        }
+        int digitA = a.isEmpty() ? 0 : DIGITS.indexOf(a.charAt(0));
+        int digitB = b != null ? DIGITS.indexOf(b.charAt(0)) : DIGITS.length();
+        if (digitB - digitA > 1) {
+            return String.valueOf(DIGITS.charAt((digitA + digitB + 1) / 2));
+        }
+        // Hai chữ số liền nhau: lấy b[0] nếu b dài hơn, ngược lại giữ a[0] và đi sâu thêm một chữ số
+        if (b != null && b.length() > 1) {
+            return b.substring(0, 1);
+        }
+        return DIGITS.charAt(digitA) + midpoint(a.isEmpty() ? "" : a.substring(1), null);
+    }
+
+    private static int integerLength(char head) {
+        if (head >= 'a' && head <= 'z') {
+            return head - 'a' + 2;
+        }
+        if (head >= 'A' && head <= 'Z') {
+            return 'Z' - head + 2;
+        }
+        throw new IllegalArgumentException("Invalid fractional key head: " + head);
+    }
+
+    private static String integerPart(String key) {
+        int length = integerLength(key.charAt(0));
+        if (length > key.length()) {
+            throw new IllegalArgumentException("Invalid fractional key: " + key);
+        }
+        return key.substring(0, length);
+    }
+
+    private static void validateKey(String key) {
+        if (key.isEmpty() || key.equals(SMALLEST_INTEGER)) {
+            throw new IllegalArgumentException("Invalid fractional key: " + key);
+        }
+        for (int i = 1; i < key.length(); i++) {
+            if (DIGITS.indexOf(key.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Invalid fractional key: " + key);
+            }
+        }
+        String integer = integerPart(key);
+        if (key.length() > integer.length() && key.charAt(key.length() - 1) == ZERO) {
+            throw new IllegalArgumentException("Fractional key must not end with '0': " + key);
+        }
+    }
+
+    /**
+     * @return null nếu đã là số nguyên lớn nhất
+     */
+    private static String incrementInteger(String integer) {
+        char head = integer.charAt(0);
+        StringBuilder digits = new StringBuilder(integer.substring(1));
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = DIGITS.indexOf(digits.charAt(i)) + 1;
+            if (digit < DIGITS.length()) {
+                digits.setCharAt(i, DIGITS.charAt(digit));
+                return head + digits.toString();
+            }
+            digits.setCharAt(i, ZERO);
+        }
+        // Tràn: chuyển sang độ dài kế tiếp
+        if (head == 'Z') {
+            return "a" + ZERO;
+        }
+        if (head == 'z') {
+            return null;
+        }
+        char nextHead = (char) (head + 1);
+        if (nextHead > 'a') {
+            digits.append(ZERO);
+        } else {
+            digits.setLength(digits.length() - 1);
+        }
+        return nextHead + digits.toString();
+    }
+
+    /**
+     * @return null nếu đã là số nguyên nhỏ nhất
+     */
+    private static String decrementInteger(String integer) {
+        char head = integer.charAt(0);
+        StringBuilder digits = new StringBuilder(integer.substring(1));
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = DIGITS.indexOf(digits.charAt(i)) - 1;
+            if (digit >= 0) {
+                digits.setCharAt(i, DIGITS.charAt(digit));
+                return head + digits.toString();
+            }
+            digits.setCharAt(i, MAX_DIGIT);
+        }
+        if (head == 'a') {
+            return "Z" + MAX_DIGIT;
+        }
+        if (head == 'A') {
+            return null;
+        }
+        char nextHead = (char) (head - 1);
+        if (nextHead < 'Z') {
+            digits.append(MAX_DIGIT);
+        } else {
+            digits.setLength(digits.length() - 1);
+        }
+        return nextHead + digits.toString();
+    }
+}
@@ -0,0 +1,403 @@
+package com.company.treelogic.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Cây băm Merkle trên một rừng cây (id, id cha, mã băm nội dung): mỗi node có mã băm cây con gộp từ nội dung của
+ * chính nó và mã băm cây con của các con. Hai node cùng id có cùng mã băm cây con thì (gần như chắc chắn) hai cây con
+ * giống hệt nhau - cùng các id, cùng nội dung, cùng cấu trúc - nên {@link #diff} chỉ đi xuống những nhánh có mã băm
+ * khác nhau.
+ * <p>
+ * Mã băm của các con được gộp bằng phép cộng (không phụ thuộc thứ tự anh em, thứ tự anh em không thuộc nội dung), nên
+ * mỗi lần {@link #put} / {@link #remove} chỉ tính lại chuỗi tổ tiên: O(độ sâu), không duyệt lại cây con. Nạp cả cây
+ * thì dùng {@link #add} rồi {@link #rebuild} (một lượt). Thứ tự nạp tuỳ ý (cha có thể đến sau con), kết quả không phụ
+ * thuộc thứ tự nạp. Mã băm 64 bit.
+ * <p>
+ * Không an toàn khi ghi đồng thời; đọc song song với ghi phải được bên gọi đồng bộ.
+ *
+ * <pre>{@code
+ * MerkleTree<UUID> imported = new MerkleTree<>();
+ * rows.forEach(row -> imported.add(row.id(), row.parentId(), MerkleTree.hash(row.id(), row.name())));
+ * imported.rebuild();
+ * List<MerkleTree.Change<UUID>> changes = MerkleTree.diff(current, imported);
+ * }</pre>
+ *
+ * @param <K> Kiểu Id của node
+ */
+public class MerkleTree<K> {
+
+    /**
+     * Một thay đổi để biến cây hiện tại thành cây đích.
+     *
+     * @param type     Loại thay đổi
+     * @param id       Node
+     * @param parentId Cha trong cây đích (với {@link Type#REMOVE}: cha trong cây hiện tại); null = node gốc
+     */
+    public record Change<K>(Type type, K id, K parentId) {
+
+        public enum Type {
+            /**
+             * Node chưa có: thêm dưới {@code parentId}.
+             */
+            ADD,
+            /**
+             * Node đổi cha (cây con đi theo).
+             */
+            MOVE,
+            /**
+             * Nội dung của chính node đổi (VD: đổi tên).
+             */
+            UPDATE,
+            /**
+             * Node không còn trong cây đích.
+             */
+            REMOVE
+        }
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    private static final class Node<K> {
+
+        K parent;
+        long content;
+        long hash;
+
+        Node(K parent, long content) {
+            this.parent = parent;
+            this.content = content;
+        }
+    }
+
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    // Khoá là id cha, kể cả khi node cha chưa (hoặc không còn) có trong cây
+    private final Map<K, Set<K>> children = new HashMap<>();
+    private final Map<K, Long> childSums = new HashMap<>();
+    private final Set<K> roots = new LinkedHashSet<>();
+    private long rootSum;
+
+    /**
+     * Mã băm 64 bit của nội dung một node từ các trường (qua {@code toString()}); null khác chuỗi rỗng. Nên gồm cả id
+     * để hai node khác id nhưng cùng nội dung không bị coi là một.
+     */
+    public static long hash(Object... fields) {
+        long hash = FNV_OFFSET;
+        for (Object field : fields) {
+            if (field == null) {
+                hash = (hash ^ 0xff) * FNV_PRIME;
+                continue;
+            }
+            // Độ dài đứng trước: ("ab", "c") khác ("a", "bc")
+            String value = field.toString();
+            hash = (hash ^ value.length()) * FNV_PRIME;
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Thêm node, hoặc cập nhật cha / nội dung của node đã có.
+     *
+     * @param parentId Id cha (null = node gốc)
+     * @param content  Mã băm nội dung của chính node (VD: {@link #hash})
+     */
+    public void put(K id, K parentId, long content) {
+        Node<K> node = nodes.get(id);
+        if (node == null) {
+            node = new Node<>(parentId, content);
+            node.hash = subtreeHash(id, content);
+            nodes.put(id, node);
+            link(id, parentId, node.hash);
+            return;
+        }
+        long oldHash = node.hash;
+        node.content = content;
+        node.hash = subtreeHash(id, content);
+        if (!Objects.equals(node.parent, parentId)) {
+            unlink(id, node.parent, oldHash);
+            node.parent = parentId;
+            link(id, parentId, node.hash);
+        } else if (node.hash != oldHash) {
+            propagate(parentId, node.hash - oldHash);
+        }
+    }
+
+    /**
+     * Nạp hàng loạt: ghi node mà chưa tính mã băm (thứ tự tuỳ ý). Gọi {@link #rebuild} sau khi nạp xong; trước đó các
+     * mã băm không hợp lệ.
+     *
+     * @param parentId Id cha (null = node gốc)
+     * @param content  Mã băm nội dung của chính node
+     */
+    public void add(K id, K parentId, long content) {
+        Node<K> old = nodes.put(id, new Node<>(parentId, content));
+        if (old != null) {
+            if (old.parent == null) {
+                roots.remove(id);
+            } else {
+                children.getOrDefault(old.parent, new HashSet<>()).remove(id);
+            }
+        }
+        if (parentId == null) {
+            roots.add(id);
+        } else {
+            children.computeIfAbsent(parentId, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Tính lại mọi mã băm trong một lượt: duyệt theo chiều rộng từ gốc (và từ đầu các nhánh mồ côi), rồi xử lý theo
+     * thứ tự ngược lại (mọi con được tính trước cha). Node trên vòng lặp không được tính.
+     */
+    public void rebuild() {
+        childSums.clear();
+        rootSum = 0;
+        Deque<K> queue = new ArrayDeque<>();
+        nodes.forEach((id, node) -> {
+            if (node.parent == null || !nodes.containsKey(node.parent)) {
+                queue.add(id);
+            }
+        });
+        // Mỗi node chỉ nằm trong danh sách con của đúng một cha: không bị thăm hai lần
+        List<K> order = new ArrayList<>(nodes.size());
+        while (!queue.isEmpty()) {
+            K id = queue.poll();
+            order.add(id);
+            queue.addAll(children.getOrDefault(id, Set.of()));
+        }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            K id = order.get(i);
+            Node<K> node = nodes.get(id);
+            node.hash = subtreeHash(id, node.content);
+            if (node.parent == null) {
+                rootSum += node.hash;
+            } else {
+                childSums.merge(node.parent, node.hash, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * Xoá node. Con còn lại (nếu có) thành node mồ côi: không thuộc cây nào cho tới khi cha được thêm lại.
+     */
+    public void remove(K id) {
+        Node<K> node = nodes.remove(id);
+        if (node != null) {
+            unlink(id, node.parent, node.hash);
+        }
+    }
+
+    public void clear() {
+        nodes.clear();
+        children.clear();
+        childSums.clear();
+        roots.clear();
+        rootSum = 0;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean contains(K id) {
+        return nodes.containsKey(id);
+    }
+
+    public K getParent(K id) {
+        Node<K> node = nodes.get(id);
+        return node != null ? node.parent : null;
+    }
+
+    /**
+     * Con trực tiếp (chỉ đọc).
+     */
+    public Set<K> getChildren(K id) {
+        return Collections.unmodifiableSet(children.getOrDefault(id, Set.of()));
+    }
+
+    /**
+     * Các node không có cha (chỉ đọc).
+     */
+    public Set<K> getRoots() {
+        return Collections.unmodifiableSet(roots);
+    }
+
+    /**
+     * Mã băm nội dung của chính node (0 nếu không có).
+     */
+    public long getContentHash(K id) {
+        Node<K> node = nodes.get(id);
+        return node != null ? node.content : 0;
+    }
+
+    /**
+     * Mã băm của node kèm toàn bộ cây con (0 nếu không có).
+     */
+    public long getHash(K id) {
+        Node<K> node = nodes.get(id);
+        return node != null ? node.hash : 0;
+    }
+
+    /**
+     * Mã băm của cả rừng: bằng nhau nghĩa là hai cây giống hệt nhau.
+     */
+    public long getRootHash() {
+        return mix(rootSum + GOLDEN);
+    }
+
+    /**
+     * Tập thay đổi nhỏ nhất (theo id) để biến {@code current} thành {@code target}, theo thứ tự áp dụng được: mọi
+     * {@link Change.Type#ADD} (cha trước con), {@link Change.Type#MOVE}, {@link Change.Type#UPDATE}, rồi
+     * {@link Change.Type#REMOVE} (con trước cha).
+     * <p>
+     * Bắt đầu từ gốc, chỉ đi xuống node có mặt ở cả hai cây mà mã băm cây con khác nhau; cây con của node bị xoá chỉ
+     * được duyệt tới các node không còn trong cây đích. Chi phí tỉ lệ với số node trên các nhánh có thay đổi (và số
+     * con của chúng), không với kích thước cây. Node mồ côi / trên vòng lặp không được xét.
+     */
+    public static <K> List<Change<K>> diff(MerkleTree<K> current, MerkleTree<K> target) {
+        List<Change<K>> adds = new ArrayList<>();
+        List<Change<K>> moves = new ArrayList<>();
+        List<Change<K>> updates = new ArrayList<>();
+        List<Change<K>> removes = new ArrayList<>();
+        if (current.getRootHash() == target.getRootHash()) {
+            return List.of();
+        }
+
+        // Theo chiều rộng: cha luôn được xét (và ADD) trước con
+        Deque<K> queue = new ArrayDeque<>(target.roots);
+        collectRemoved(current, target, current.roots, removes);
+        while (!queue.isEmpty()) {
+            K id = queue.poll();
+            Node<K> targetNode = target.nodes.get(id);
+            Node<K> currentNode = current.nodes.get(id);
+            if (currentNode == null) {
+                adds.add(new Change<>(Change.Type.ADD, id, targetNode.parent));
+                queue.addAll(target.getChildren(id));
+                continue;
+            }
+            if (!Objects.equals(currentNode.parent, targetNode.parent)) {
+                moves.add(new Change<>(Change.Type.MOVE, id, targetNode.parent));
+            }
+            if (currentNode.hash == targetNode.hash) {
+                continue;
+            }
+            if (currentNode.content != targetNode.content) {
+                updates.add(new Change<>(Change.Type.UPDATE, id, targetNode.parent));
+            }
+            // Con đã chuyển sang cha khác được báo MOVE khi duyệt tới nó ở cây đích
+            queue.addAll(target.getChildren(id));
+            collectRemoved(current, target, current.getChildren(id), removes);
+        }
+
+        Collections.reverse(removes);
+        List<Change<K>> changes = new ArrayList<>(adds.size() + moves.size() + updates.size() + removes.size());
+        changes.addAll(adds);
+        changes.addAll(moves);
+        changes.addAll(updates);
+        changes.addAll(removes);
+        return changes;
+    }
+
+    /**
+     * REMOVE (cha trước con) cho các node trong {@code ids} không còn ở cây đích, kèm phần cây con của chúng cũng
+     * không còn; node vẫn còn ở cây đích (đã chuyển đi nơi khác) mang cây con của nó theo.
+     */
+    private static <K> void collectRemoved(MerkleTree<K> current, MerkleTree<K> target, Set<K> ids,
+                                           List<Change<K>> removes) {
+        Deque<K> stack = new ArrayDeque<>();
+        for (K id : ids) {
+            if (!target.contains(id)) {
+                stack.push(id);
+            }
+        }
+        while (!stack.isEmpty()) {
+            K id = stack.pop();
+            removes.add(new Change<>(Change.Type.REMOVE, id, current.getParent(id)));
+            for (K child : current.getChildren(id)) {
+                if (!target.contains(child)) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    private long subtreeHash(K id, long content) {
+        return mix(content ^ mix(childSums.getOrDefault(id, 0L) + GOLDEN));
+    }
+
+    private void link(K id, K parentId, long hash) {
+        if (parentId == null) {
+            roots.add(id);
+            rootSum += hash;
+            return;
+        }
+        children.computeIfAbsent(parentId, k -> new HashSet<>()).add(id);
+        propagate(parentId, hash);
+    }
+
+    private void unlink(K id, K parentId, long hash) {
+        if (parentId == null) {
+            roots.remove(id);
+            rootSum -= hash;
+            return;
+        }
+        Set<K> siblings = children.get(parentId);
+        if (siblings != null && siblings.remove(id) && siblings.isEmpty()) {
+            children.remove(parentId);
+        }
+        propagate(parentId, -hash);
+    }
+
+    /**
+     * Cộng {@code delta} vào tổng mã băm con của {@code parentId} rồi tính lại mã băm của chuỗi tổ tiên.
+     */
+    private void propagate(K parentId, long delta) {
+        Set<K> visited = new HashSet<>();
+        K current = parentId;
+        while (delta != 0 && visited.add(current)) {
+            long sum = childSums.getOrDefault(current, 0L) + delta;
+            if (sum == 0 && !children.containsKey(current)) {
+                childSums.remove(current);
+            } else {
+                childSums.put(current, sum);
+            }
+            Node<K> node = nodes.get(current);
+            if (node == null) {
+                // Cha chưa có: tổng được giữ lại, dùng khi cha được thêm
+                return;
+            }
+            long oldHash = node.hash;
+            node.hash = subtreeHash(current, node.content);
+            delta = node.hash - oldHash;
+            if (node.parent == null) {
+                rootSum += delta;
+                return;
+            }
+            current = node.parent;
+        }
+    }
+
+    /**
+     * Bộ trộn 64 bit (splitmix64).
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,102 @@
+package com.company.treelogic.engine;
+
+import com.company.treelogic.engine.SubtreeSelection.Delta;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Nhật ký hoàn tác / làm lại cho một {@link SubtreeSelection}: mỗi thao tác được lưu dưới dạng {@link Delta} (chỉ
+ * các marker đã đổi), không chụp lại cả lựa chọn hay danh sách node. Bộ nhớ tỉ lệ với tổng thay đổi được giữ lại.
+ * <p>
+ * Giới hạn theo số thao tác và tổng số entry marker; vượt giới hạn thì bỏ thao tác cũ nhất. Không an toàn đa luồng
+ * (một nhật ký cho một phiên UI).
+ *
+ * <pre>{@code
+ * history.push(selection.recordChanges(s -> s.select(id)));
+ * Delta<UUID> delta = history.undo();
+ * selection.applyMarkers(delta.before());
+ * }</pre>
+ *
+ * @param <K> Kiểu Id của node
+ */
+public class SelectionHistory<K> {
+
+    private final int maxOperations;
+    private final int maxEntries;
+    private final Deque<Delta<K>> undo = new ArrayDeque<>();
+    private final Deque<Delta<K>> redo = new ArrayDeque<>();
+    private int entries;
+
+    /**
+     * @param maxOperations Số thao tác tối đa giữ lại (undo + redo)
+     * @param maxEntries    Tổng số marker tối đa trong mọi delta giữ lại
+     */
+    public SelectionHistory(int maxOperations, int maxEntries) {
+        this.maxOperations = maxOperations;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Ghi một thao tác mới; xoá các bước làm lại. Delta rỗng bị bỏ qua.
+     */
+    public void push(Delta<K> delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        while (!redo.isEmpty()) {
+            entries -= redo.pop().keys().size();
+        }
+        undo.push(delta);
+        entries += delta.keys().size();
+        // Luôn giữ thao tác vừa ghi, kể cả khi riêng nó đã vượt maxEntries
+        while (undo.size() > 1 && (undo.size() > maxOperations || entries > maxEntries)) {
+            entries -= undo.removeLast().keys().size();
+        }
+    }
+
+    /**
+     * @return Delta cần hoàn tác (áp dụng {@link Delta#before()}), null nếu không còn bước nào
+     */
+    public Delta<K> undo() {
+        Delta<K> delta = undo.poll();
+        if (delta != null) {
+            redo.push(delta);
+        }
+        return delta;
+    }
+
+    /**
+     * @return Delta cần làm lại (áp dụng {@link Delta#after()}), null nếu không còn bước nào
+     */
+    public Delta<K> redo() {
+        Delta<K> delta = redo.poll();
+        if (delta != null) {
+            undo.push(delta);
+        }
+        return delta;
+    }
+
+    /**
+     * Bỏ hẳn một delta khỏi nhật ký (VD: không còn áp dụng được vì phiên khác đã đổi các node của nó).
+     */
+    public void discard(Delta<K> delta) {
+        if (undo.removeFirstOccurrence(delta) || redo.removeFirstOccurrence(delta)) {
+            entries -= delta.keys().size();
+        }
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        entries = 0;
+    }
+}
@@ -0,0 +1,254 @@
+package com.company.treelogic.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link SubtreeSelection} dùng chung giữa nhiều phiên, an toàn đa luồng và không có khoá chung.
+ * <p>
+ * Lựa chọn được chia theo <b>cây</b> (node gốc): mỗi cây là một {@link SubtreeSelection} bất biến sau khi công bố,
+ * giữ trong một {@link AtomicReference}. Một thao tác (chọn / bỏ chọn cả nhánh) sao chép marker của đúng cây đó, áp
+ * dụng lan truyền trên bản sao rồi CAS - người đọc không bao giờ bị chặn và luôn thấy trạng thái trước hoặc sau
+ * thao tác, không thấy trạng thái dở dang. Thao tác trên các cây khác nhau không tranh chấp; trên cùng một cây, bên
+ * thua CAS làm lại trên trạng thái mới (chi phí O(số marker của cây), không phụ thuộc kích thước cây).
+ * <p>
+ * Sau mỗi thay đổi, các listener ({@link #addChangeListener}) được gọi trên thread vừa ghi (VD: để đẩy tới các UI).
+ *
+ * <pre>{@code
+ * SharedSubtreeSelection<UUID> shared = new SharedSubtreeSelection<>(parentIds::get);
+ * shared.update(id, selection -> selection.select(id));
+ * shared.treeOf(id).isSelected(id);   // true
+ * }</pre>
+ *
+ * @param <K> Kiểu Id của node
+ */
+public class SharedSubtreeSelection<K> {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedSubtreeSelection.class);
+
+    private final Function<K, K> parentGetter;
+    private final Map<K, AtomicReference<SubtreeSelection<K>>> trees = new ConcurrentHashMap<>();
+    private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param parentGetter Hàm lấy id cha (null = node gốc), phải an toàn đa luồng
+     */
+    public SharedSubtreeSelection(Function<K, K> parentGetter) {
+        this.parentGetter = parentGetter;
+    }
+
+    /**
+     * Lựa chọn của cây chứa node, chỉ để đọc (không được sửa đối tượng trả về).
+     */
+    public SubtreeSelection<K> treeOf(K id) {
+        AtomicReference<SubtreeSelection<K>> tree = trees.get(rootOf(id));
+        return tree != null ? tree.get() : new SubtreeSelection<>(parentGetter);
+    }
+
+    /**
+     * Áp dụng một thao tác lên cây chứa node {@code id}, nguyên tử. {@code operation} có thể bị gọi lại nhiều lần
+     * khi có tranh chấp, nên chỉ được thay đổi lựa chọn nhận vào.
+     */
+    public void update(K id, Consumer<SubtreeSelection<K>> operation) {
+        trees.computeIfAbsent(rootOf(id), root -> new AtomicReference<>(new SubtreeSelection<>(parentGetter)))
+                .updateAndGet(current -> {
+                    SubtreeSelection<K> next = current.copy();
+                    operation.accept(next);
+                    return next;
+                });
+        fireChanged();
+    }
+
+    /**
+     * Bản sao gộp của mọi cây (VD: để liệt kê / lưu profile).
+     */
+    public SubtreeSelection<K> snapshot() {
+        SubtreeSelection<K> snapshot = new SubtreeSelection<>(parentGetter);
+        for (AtomicReference<SubtreeSelection<K>> tree : trees.values()) {
+            snapshot.putMarkers(tree.get().markers());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Áp dụng một thao tác lên toàn bộ lựa chọn (VD: nạp profile), nguyên tử theo từng cây: mỗi cây chạy thao tác
+     * trên bản sao marker của riêng nó rồi CAS như {@link #update}, bên thua làm lại trên trạng thái mới - thao tác
+     * đồng thời trên cùng cây không bị mất. Không nguyên tử giữa các cây.
+     * <p>
+     * {@code operation} bị gọi một lần cho mỗi cây (và lại khi có tranh chấp), nên phải tác động độc lập lên từng cây
+     * như mọi thao tác của {@link SubtreeSelection}; marker nó đặt ngoài cây đang xét bị bỏ qua ở lần gọi đó.
+     *
+     * @return Phần marker đã đổi trên mọi cây (để hoàn tác)
+     */
+    public SubtreeSelection.Delta<K> updateAll(Consumer<SubtreeSelection<K>> operation) {
+        // Chạy thử trên bản gộp để biết các cây sẽ có marker mà hiện chưa có
+        SubtreeSelection<K> all = snapshot();
+        operation.accept(all);
+        Set<K> roots = new HashSet<>(trees.keySet());
+        roots.addAll(groupByTree(all.markers(), Map.of()).keySet());
+
+        Map<K, Boolean> before = new HashMap<>();
+        Map<K, Boolean> after = new HashMap<>();
+        for (K root : roots) {
+            AtomicReference<SubtreeSelection.Delta<K>> delta = new AtomicReference<>();
+            trees.computeIfAbsent(root, r -> new AtomicReference<>(new SubtreeSelection<>(parentGetter)))
+                    .updateAndGet(current -> {
+                        SubtreeSelection<K> next = current.copy();
+                        delta.set(next.recordChanges(operation));
+                        next.removeMarkers(next.markers().keySet().stream()
+                                .filter(id -> !Objects.equals(rootOf(id), root))
+                                .toList());
+                        return next;
+                    });
+            // Delta của lần chạy được công bố, chỉ phần thuộc cây này
+            delta.get().keys().stream()
+                    .filter(id -> Objects.equals(rootOf(id), root))
+                    .forEach(id -> {
+                        before.put(id, delta.get().before().get(id));
+                        after.put(id, delta.get().after().get(id));
+                    });
+        }
+        fireChanged();
+        return new SubtreeSelection.Delta<>(Collections.unmodifiableMap(before), Collections.unmodifiableMap(after));
+    }
+
+    /**
+     * Ghi đè marker của các node cho trước (giá trị null = xoá marker), VD: hoàn tác một
+     * {@link SubtreeSelection.Delta}. Nguyên tử theo từng cây; chỉ chạm tới các cây chứa node trong {@code changes}.
+     */
+    public void applyMarkers(Map<K, Boolean> changes) {
+        groupByTree(changes, Map.of()).forEach((root, markers) -> trees
+                .computeIfAbsent(root, r -> new AtomicReference<>(new SubtreeSelection<>(parentGetter)))
+                .updateAndGet(current -> {
+                    SubtreeSelection<K> next = current.copy();
+                    next.applyMarkers(markers);
+                    return next;
+                }));
+        fireChanged();
+    }
+
+    /**
+     * Như {@link #applyMarkers}, nhưng chỉ ghi khi marker hiện tại của các node vẫn đúng bằng {@code expected} (giá
+     * trị null = không có marker), VD: hoàn tác chỉ khi không phiên nào đã đổi lại các node mà thao tác đó chạm tới.
+     * Kiểm tra và ghi nằm trong cùng một CAS của từng cây; cây có marker đã bị đổi được giữ nguyên. Không nguyên tử
+     * giữa các cây: các cây còn khớp vẫn được ghi.
+     *
+     * @return false nếu có ít nhất một cây bị giữ nguyên vì xung đột
+     */
+    public boolean applyMarkersIfUnchanged(Map<K, Boolean> expected, Map<K, Boolean> changes) {
+        AtomicBoolean applied = new AtomicBoolean(true);
+        groupByTree(changes, Map.of()).forEach((root, markers) -> {
+            AtomicBoolean conflict = new AtomicBoolean();
+            trees.computeIfAbsent(root, r -> new AtomicReference<>(new SubtreeSelection<>(parentGetter)))
+                    .updateAndGet(current -> {
+                        Map<K, Boolean> currentMarkers = current.markers();
+                        conflict.set(markers.keySet().stream()
+                                .anyMatch(id -> !Objects.equals(currentMarkers.get(id), expected.get(id))));
+                        if (conflict.get()) {
+                            return current;
+                        }
+                        SubtreeSelection<K> next = current.copy();
+                        next.applyMarkers(markers);
+                        return next;
+                    });
+            if (conflict.get()) {
+                applied.set(false);
+            }
+        });
+        fireChanged();
+        return applied.get();
+    }
+
+    /**
+     * Chuyển các marker có node đã sang cây khác (sau khi di chuyển node) về đúng cây mới. Mọi cây được công bố lại
+     * bằng bản sao (số marker trong cây con của {@link SubtreeSelection#isPartial} tính theo quan hệ cha - con
+     * mới), nên chi phí O(tổng số marker &times; độ sâu).
+     *
+     * @param newParents Cha mới của các node vừa di chuyển (null = thành gốc) - dùng thay cho {@code parentGetter}
+     *                   vì chỉ mục cha có thể chưa kịp cập nhật
+     */
+    public void rehome(Map<K, K> newParents) {
+        Function<K, K> parents = id -> newParents.containsKey(id) ? newParents.get(id) : parentGetter.apply(id);
+        for (Map.Entry<K, AtomicReference<SubtreeSelection<K>>> tree : trees.entrySet()) {
+            Map<K, Boolean> moved = new HashMap<>();
+            tree.getValue().updateAndGet(current -> {
+                moved.clear();
+                current.markers().forEach((id, selected) -> {
+                    if (!Objects.equals(rootOf(id, newParents), tree.getKey())) {
+                        moved.put(id, selected);
+                    }
+                });
+                // Bản đã công bố là bất biến: luôn thay bằng bản sao để số đếm được tính lại
+                SubtreeSelection<K> next = current.copy();
+                next.removeMarkers(moved.keySet());
+                next.recount(parents);
+                return next;
+            });
+            groupByTree(moved, newParents).forEach((root, markers) -> trees
+                    .computeIfAbsent(root, r -> new AtomicReference<>(new SubtreeSelection<>(parentGetter)))
+                    .updateAndGet(current -> {
+                        SubtreeSelection<K> next = current.copy();
+                        next.putMarkers(markers);
+                        next.recount(parents);
+                        return next;
+                    }));
+        }
+        // Trạng thái "một phần" có thể đổi cả khi không marker nào chuyển cây
+        fireChanged();
+    }
+
+    /**
+     * Đăng ký listener; phải gọi {@link #removeChangeListener} với đúng đối tượng đó khi không cần nữa.
+     */
+    public void addChangeListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private Map<K, Map<K, Boolean>> groupByTree(Map<K, Boolean> markers, Map<K, K> newParents) {
+        Map<K, Map<K, Boolean>> byTree = new HashMap<>();
+        markers.forEach((id, selected) ->
+                byTree.computeIfAbsent(rootOf(id, newParents), r -> new HashMap<>()).put(id, selected));
+        return byTree;
+    }
+
+    private K rootOf(K id) {
+        return rootOf(id, Map.of());
+    }
+
+    private K rootOf(K id, Map<K, K> newParents) {
+        Set<K> visited = new HashSet<>();
+        K root = id;
+        for (K current = id; current != null && visited.add(current);
+             current = newParents.containsKey(current) ? newParents.get(current) : parentGetter.apply(current)) {
+            root = current;
+        }
+        return root;
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                // Listener lỗi (VD: UI đã đóng) không được làm hỏng thao tác đã áp dụng
+                log.debug("Shared selection listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package com.company.treelogic.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Lựa chọn trên cây ở dạng nén: chỉ lưu các <b>gốc cây con được chọn</b> và các <b>gốc cây con bị loại trừ</b>,
+ * không bao giờ liệt kê từng hậu duệ.
+ * <p>
+ * Một node thuộc lựa chọn nếu marker gần nhất trên đường từ nó lên gốc (kể cả chính nó) là "chọn". Do đó:
+ * <ul>
+ *   <li>Chọn một nhánh 1 triệu node: O(1) bộ nhớ, O(số marker &times; độ sâu) thời gian.</li>
+ *   <li>Kiểm tra thành viên: O(độ sâu) - đi ngược lên tổ tiên.</li>
+ *   <li>Kiểm tra "chọn một phần" ({@link #isPartial}): O(độ sâu) - mỗi node giữ số marker "chọn" / "loại trừ" trong
+ *   cây con của nó, cập nhật theo chuỗi tổ tiên mỗi lần đặt / xoá marker.</li>
+ *   <li>Liệt kê ({@link #forEachSelected}) chỉ chạy khi thật sự cần (VD: export).</li>
+ * </ul>
+ * Node bị di chuyển tự động theo trạng thái của vị trí mới (lựa chọn gắn với đường đi, không gắn với node); riêng
+ * số đếm của {@link #isPartial} được tính theo quan hệ cha - con lúc đặt marker, nên bên gọi phải báo
+ * {@link #invalidateCounts()} khi quan hệ đó đổi.
+ *
+ * <pre>{@code
+ * SubtreeSelection<UUID> selection = new SubtreeSelection<>(id -> parentIds.get(id));
+ * selection.select(rootId);          // cả nhánh rootId
+ * selection.deselect(childId);       // trừ nhánh childId
+ * selection.isSelected(grandChildId) // false
+ * }</pre>
+ *
+ * @param <K> Kiểu Id của node
+ */
+public class SubtreeSelection<K> {
+
+    /**
+     * Phần marker bị một thao tác thay đổi: chỉ các node có marker khác đi, nên kích thước tỉ lệ với thay đổi chứ
+     * không với kích thước cây (tích một gốc trên nhánh 1 triệu node: vài entry).
+     *
+     * @param before Marker trước thao tác (giá trị null = không có marker)
+     * @param after  Marker sau thao tác (giá trị null = không có marker); cùng tập khoá với {@code before}
+     */
+    public record Delta<K>(Map<K, Boolean> before, Map<K, Boolean> after) {
+
+        public boolean isEmpty() {
+            return before.isEmpty();
+        }
+
+        public Set<K> keys() {
+            return before.keySet();
+        }
+    }
+
+    // Đi ngược quá số tầng này mới bắt đầu ghi nhớ node đã qua (phòng vòng lặp): lần đi thông thường không cấp phát
+    private static final int CYCLE_CHECK_DEPTH = 64;
+
+    private final Function<K, K> parentGetter;
+    // true = gốc cây con được chọn, false = gốc cây con bị loại trừ
+    private final Map<K, Boolean> markers = new HashMap<>();
+    // Số marker trong cây con (không tính chính node): [0] = loại trừ, [1] = chọn. Không có entry = 0
+    private final Map<K, int[]> descendantMarkers = new HashMap<>();
+    // Quan hệ cha - con đã đổi: số đếm được tính lại ở lần đọc kế tiếp
+    private boolean countsStale;
+    // Khác null khi đang ghi nhận thay đổi (recordChanges): marker ban đầu của các node đã bị chạm tới
+    private Map<K, Boolean> recording;
+
+    /**
+     * @param parentGetter Hàm lấy id cha (null = node gốc); nên là O(1)
+     */
+    public SubtreeSelection(Function<K, K> parentGetter) {
+        this.parentGetter = parentGetter;
+    }
+
+    SubtreeSelection(Function<K, K> parentGetter, Map<K, Boolean> markers) {
+        this.parentGetter = parentGetter;
+        putMarkers(markers);
+    }
+
+    public boolean isSelected(K id) {
+        // Như walkUp, viết thẳng: được gọi cho mỗi dòng khi render, không cấp phát gì
+        Set<K> visited = null;
+        int depth = 0;
+        for (K current = id; current != null; current = parentGetter.apply(current)) {
+            if (++depth > CYCLE_CHECK_DEPTH) {
+                if (visited == null) {
+                    visited = new HashSet<>();
+                }
+                if (!visited.add(current)) {
+                    return false;
+                }
+            }
+            Boolean marker = markers.get(current);
+            if (marker != null) {
+                return marker;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Chọn node và toàn bộ cây con của nó.
+     */
+    public void select(K id) {
+        set(id, true);
+    }
+
+    /**
+     * Bỏ chọn node và toàn bộ cây con của nó.
+     */
+    public void deselect(K id) {
+        set(id, false);
+    }
+
+    /**
+     * Có hậu duệ (không tính chính node) mang trạng thái {@code selected} khác với trạng thái của node hay không,
+     * tức là cây con chỉ được chọn một phần. O(độ sâu): tra số marker trong cây con, không duyệt các marker.
+     */
+    public boolean isPartial(K id) {
+        ensureCounts();
+        int[] counts = descendantMarkers.get(id);
+        return counts != null && counts[isSelected(id) ? 0 : 1] > 0;
+    }
+
+    /**
+     * Báo quan hệ cha - con đã đổi (node di chuyển, dữ liệu nạp lại): số marker trong cây con dùng cho
+     * {@link #isPartial} được tính lại ở lần đọc kế tiếp, O(số marker &times; độ sâu).
+     */
+    public void invalidateCounts() {
+        countsStale = true;
+    }
+
+    public boolean isEmpty() {
+        return markers.values().stream().noneMatch(Boolean.TRUE::equals);
+    }
+
+    public void clear() {
+        clearMarkers();
+    }
+
+    /**
+     * Chạy thao tác và trả về phần marker nó đã thay đổi (để hoàn tác bằng {@link #applyMarkers}). Chi phí ghi nhận
+     * tỉ lệ với số marker bị chạm tới.
+     */
+    public Delta<K> recordChanges(Consumer<SubtreeSelection<K>> operation) {
+        Map<K, Boolean> previous = recording;
+        recording = new HashMap<>();
+        try {
+            operation.accept(this);
+            Map<K, Boolean> before = new HashMap<>();
+            Map<K, Boolean> after = new HashMap<>();
+            recording.forEach((id, marker) -> {
+                Boolean current = markers.get(id);
+                if (!Objects.equals(marker, current)) {
+                    before.put(id, marker);
+                    after.put(id, current);
+                }
+            });
+            return new Delta<>(Collections.unmodifiableMap(before), Collections.unmodifiableMap(after));
+        } finally {
+            if (previous != null) {
+                // Lồng nhau: lần ghi bên ngoài cũng phải thấy các node bên trong đã chạm tới
+                recording.forEach(previous::putIfAbsent);
+            }
+            recording = previous;
+        }
+    }
+
+    /**
+     * Ghi đè marker của các node cho trước (giá trị null = xoá marker), VD: {@code delta.before()} để hoàn tác.
+     */
+    public void applyMarkers(Map<K, Boolean> changes) {
+        changes.forEach((id, marker) -> {
+            if (marker != null) {
+                putMarker(id, marker);
+            } else {
+                removeMarker(id);
+            }
+        });
+    }
+
+    /**
+     * Duyệt các marker đang lưu (true = gốc được chọn, false = gốc bị loại trừ), VD: để lưu lựa chọn ở dạng nén.
+     */
+    public void forEachMarker(BiConsumer<K, Boolean> consumer) {
+        markers.forEach(consumer);
+    }
+
+    /**
+     * Kết hợp với một lựa chọn khác theo từng node: node thuộc kết quả khi {@code operator(thuộc lựa chọn này, thuộc
+     * other)}. Chỉ xét các node mang marker ở một trong hai bên - mọi node khác có cùng trạng thái với marker gần
+     * nhất phía trên - nên chi phí O(số marker &times; độ sâu), không phụ thuộc số node được chọn.
+     *
+     * @param operator Phải cho false với (false, false), VD: {@code Boolean::logicalOr}, {@code Boolean::logicalAnd}
+     */
+    public void combine(SubtreeSelection<K> other, BinaryOperator<Boolean> operator) {
+        Set<K> candidates = new HashSet<>(markers.keySet());
+        candidates.addAll(other.markers.keySet());
+        Map<K, Boolean> combined = new HashMap<>();
+        for (K id : candidates) {
+            combined.put(id, operator.apply(isSelected(id), other.isSelected(id)));
+        }
+        applyMarkers(combined);
+        // Bỏ marker thừa (trùng trạng thái thừa hưởng từ cha): không làm đổi trạng thái node nào
+        for (K id : candidates) {
+            if (Boolean.valueOf(isSelected(parentGetter.apply(id))).equals(markers.get(id))) {
+                removeMarker(id);
+            }
+        }
+    }
+
+    /**
+     * Số node được chọn, tính từ kích thước cây con tại các marker (không liệt kê node). O(số marker &times; độ sâu).
+     *
+     * @param subtreeSize Số node của cây con (kể cả chính node)
+     */
+    public long countSelected(ToLongFunction<K> subtreeSize) {
+        long count = 0;
+        for (Map.Entry<K, Boolean> marker : markers.entrySet()) {
+            // Marker chỉ đổi trạng thái cây con khi khác trạng thái thừa hưởng từ cha
+            if (marker.getValue() != isSelected(parentGetter.apply(marker.getKey()))) {
+                long size = subtreeSize.applyAsLong(marker.getKey());
+                count += marker.getValue() ? size : -size;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Số marker đang lưu (không phụ thuộc kích thước cây).
+     */
+    public int markerCount() {
+        return markers.size();
+    }
+
+    /**
+     * Bản sao độc lập (chỉ sao chép marker).
+     */
+    public SubtreeSelection<K> copy() {
+        return new SubtreeSelection<>(parentGetter, markers);
+    }
+
+    /**
+     * Marker đang lưu (chỉ đọc): mọi thay đổi phải đi qua các hàm của lớp để số đếm luôn khớp.
+     */
+    Map<K, Boolean> markers() {
+        return Collections.unmodifiableMap(markers);
+    }
+
+    void putMarkers(Map<K, Boolean> added) {
+        added.forEach(this::putMarker);
+    }
+
+    void removeMarkers(Collection<K> ids) {
+        // Sao chép trước: ids có thể là view của chính markers
+        new ArrayList<>(ids).forEach(this::removeMarker);
+    }
+
+    /**
+     * Tính lại số marker trong cây con theo {@code parents} thay cho {@code parentGetter} (VD: cha mới của node vừa di
+     * chuyển khi chỉ mục cha chưa kịp cập nhật).
+     */
+    void recount(Function<K, K> parents) {
+        countsStale = false;
+        descendantMarkers.clear();
+        markers.forEach((id, value) -> count(id, value, 1, parents));
+    }
+
+    /**
+     * Liệt kê mọi node được chọn.
+     *
+     * @param childrenGetter Hàm lấy con trực tiếp của một node
+     * @param consumer       Nhận từng id được chọn
+     */
+    public void forEachSelected(Function<K, Collection<K>> childrenGetter, Consumer<K> consumer) {
+        Deque<K> stack = new ArrayDeque<>();
+        markers.forEach((id, selected) -> {
+            // Điểm bắt đầu của mỗi vùng chọn: gốc chọn mà cha không được chọn (các vùng không giao nhau)
+            if (selected && !isSelected(parentGetter.apply(id))) {
+                stack.push(id);
+            }
+        });
+        while (!stack.isEmpty()) {
+            K id = stack.pop();
+            consumer.accept(id);
+            for (K child : childrenGetter.apply(id)) {
+                // Nhánh bị loại trừ: dừng; gốc chọn lồng bên trong nó là một vùng riêng đã có trong stack
+                if (!Boolean.FALSE.equals(markers.get(child))) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Thay toàn bộ lựa chọn bằng một tập node tường minh (VD: từ profile đã lưu), nén lại thành marker: "chọn" ở node
+     * thuộc tập mà cha không thuộc, "loại trừ" ở con không thuộc tập của một node thuộc tập. O(|members| &times; số
+     * con).
+     *
+     * @param childrenGetter Hàm lấy con trực tiếp của một node
+     */
+    public void replaceWith(Set<K> members, Function<K, Collection<K>> childrenGetter) {
+        clearMarkers();
+        for (K id : members) {
+            K parentId = parentGetter.apply(id);
+            if (parentId == null || !members.contains(parentId)) {
+                putMarker(id, true);
+            }
+            for (K child : childrenGetter.apply(id)) {
+                if (!members.contains(child)) {
+                    putMarker(child, false);
+                }
+            }
+        }
+    }
+
+    private void set(K id, boolean selected) {
+        // Các marker bên trong cây con bị thay thế bởi quyết định mới (không có thì khỏi duyệt)
+        ensureCounts();
+        if (descendantMarkers.containsKey(id)) {
+            List<K> replaced = new ArrayList<>();
+            for (K marker : markers.keySet()) {
+                if (isStrictDescendant(marker, id)) {
+                    replaced.add(marker);
+                }
+            }
+            replaced.forEach(this::removeMarker);
+        }
+        removeMarker(id);
+        // Chỉ đặt marker khi tổ tiên chưa quyết định đúng như vậy
+        if (isSelected(parentGetter.apply(id)) != selected) {
+            putMarker(id, selected);
+        }
+    }
+
+    // Mọi thay đổi marker đi qua 3 hàm dưới để recordChanges thấy được giá trị ban đầu
+
+    private void putMarker(K id, boolean selected) {
+        remember(id);
+        Boolean old = markers.put(id, selected);
+        if (old == null || old != selected) {
+            count(id, old, -1);
+            count(id, selected, 1);
+        }
+    }
+
+    private void removeMarker(K id) {
+        remember(id);
+        count(id, markers.remove(id), -1);
+    }
+
+    private void clearMarkers() {
+        markers.keySet().forEach(this::remember);
+        markers.clear();
+        descendantMarkers.clear();
+        countsStale = false;
+    }
+
+    /**
+     * Cộng {@code delta} vào số marker {@code value} của mọi tổ tiên của {@code id}.
+     */
+    private void count(K id, Boolean value, int delta) {
+        if (!countsStale) {
+            count(id, value, delta, parentGetter);
+        }
+    }
+
+    private void count(K id, Boolean value, int delta, Function<K, K> parents) {
+        if (value == null) {
+            return;
+        }
+        int slot = value ? 1 : 0;
+        walkUp(parents.apply(id), parents, ancestor -> {
+            int[] counts = descendantMarkers.computeIfAbsent(ancestor, k -> new int[2]);
+            counts[slot] += delta;
+            if (counts[0] <= 0 && counts[1] <= 0) {
+                descendantMarkers.remove(ancestor);
+            }
+            return false;
+        });
+    }
+
+    private void ensureCounts() {
+        if (countsStale) {
+            recount(parentGetter);
+        }
+    }
+
+    private void remember(K id) {
+        if (recording != null && !recording.containsKey(id)) {
+            recording.put(id, markers.get(id));
+        }
+    }
+
+    private boolean isStrictDescendant(K candidate, K ancestor) {
+        return walkUp(parentGetter.apply(candidate), parentGetter, current -> Objects.equals(current, ancestor));
+    }
+
+    /**
+     * Đi từ {@code id} (kể cả nó) lên gốc cho tới khi {@code visitor} trả về true. Chỉ ghi nhớ node đã qua khi đã đi
+     * quá {@link #CYCLE_CHECK_DEPTH} tầng (dữ liệu lỗi có vòng lặp), nên lần đi thông thường không cấp phát.
+     *
+     * @return true nếu {@code visitor} đã dừng lại
+     */
+    private boolean walkUp(K id, Function<K, K> parents, Predicate<K> visitor) {
+        Set<K> visited = null;
+        int depth = 0;
+        for (K current = id; current != null; current = parents.apply(current)) {
+            if (++depth > CYCLE_CHECK_DEPTH) {
+                if (visited == null) {
+                    visited = new HashSet<>();
+                }
+                if (!visited.add(current)) {
+                    return false;
+                }
+            }
+            if (visitor.test(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,187 @@
+package com.company.treelogic.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Số liệu tổng hợp của từng node trên cây: số hậu duệ, số lá bên dưới và chiều sâu lớn nhất của cây con.
+ * <p>
+ * Tính một lần bằng {@link #rebuild} (một lượt hậu thứ tự - con trước cha - trên chỉ mục cha), sau đó cập nhật
+ * tăng dần bằng {@link #attach} / {@link #detach}: chỉ các node trên chuỗi tổ tiên bị điều chỉnh, không bao giờ
+ * đếm lại cả cây con.
+ * <p>
+ * Đọc an toàn từ nhiều thread; các hàm ghi phải được gọi tuần tự (VD: trong một khối synchronized).
+ *
+ * @param <K> Kiểu Id của node
+ */
+public class TreeAggregates<K> {
+
+    /**
+     * @param descendants Số hậu duệ (không tính chính node)
+     * @param leaves      Số lá trong cây con (không tính chính node)
+     * @param height      Số tầng bên dưới node (0 = lá)
+     */
+    public record Aggregate(int descendants, int leaves, int height) {
+
+        public static final Aggregate LEAF = new Aggregate(0, 0, 0);
+
+        public boolean isLeaf() {
+            return descendants == 0;
+        }
+
+        /**
+         * Phần đóng góp của node (kèm cây con) vào số lá của tổ tiên.
+         */
+        int leafContribution() {
+            return isLeaf() ? 1 : leaves;
+        }
+    }
+
+    private final Function<K, K> parentGetter;
+    private final Map<K, Set<K>> children = new ConcurrentHashMap<>();
+    private final Map<K, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+    /**
+     * @param parentGetter Hàm lấy id cha hiện tại (null = node gốc)
+     */
+    public TreeAggregates(Function<K, K> parentGetter) {
+        this.parentGetter = parentGetter;
+    }
+
+    public Aggregate get(K id) {
+        return aggregates.getOrDefault(id, Aggregate.LEAF);
+    }
+
+    /**
+     * Con trực tiếp hiện tại của node (chỉ đọc).
+     */
+    public Set<K> getChildren(K id) {
+        return Collections.unmodifiableSet(children.getOrDefault(id, Set.of()));
+    }
+
+    /**
+     * Tính lại toàn bộ trong một lượt: dựng danh sách con, duyệt theo chiều rộng từ gốc, rồi xử lý theo thứ tự
+     * ngược lại (mọi con được tính trước cha).
+     */
+    public void rebuild(Collection<K> nodes) {
+        children.clear();
+        aggregates.clear();
+        List<K> roots = new ArrayList<>();
+        for (K id : nodes) {
+            K parentId = parentGetter.apply(id);
+            if (parentId != null) {
+                children.computeIfAbsent(parentId, k -> ConcurrentHashMap.newKeySet()).add(id);
+            } else {
+                roots.add(id);
+            }
+        }
+
+        List<K> order = new ArrayList<>(nodes.size());
+        Deque<K> queue = new ArrayDeque<>(roots);
+        Set<K> visited = new HashSet<>();
+        while (!queue.isEmpty()) {
+            K id = queue.poll();
+            if (visited.add(id)) {
+                order.add(id);
+                queue.addAll(children.getOrDefault(id, Set.of()));
+            }
+        }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            K id = order.get(i);
+            aggregates.put(id, compute(id));
+        }
+    }
+
+    /**
+     * Gắn node {@code id} (kèm cây con hiện có của nó) vào dưới {@code parentId}. Dùng cho insert và nửa sau của move.
+     */
+    public void attach(K id, K parentId) {
+        aggregates.putIfAbsent(id, Aggregate.LEAF);
+        if (parentId == null) {
+            return;
+        }
+        Aggregate moved = get(id);
+        Set<K> siblings = children.computeIfAbsent(parentId, k -> ConcurrentHashMap.newKeySet());
+        boolean parentWasLeaf = siblings.isEmpty();
+        if (!siblings.add(id)) {
+            return;
+        }
+        // Cha từ lá thành nút trong: nó không còn được tính là lá ở các tầng trên
+        adjustAncestors(parentId, moved.descendants() + 1, moved.leafContribution(), parentWasLeaf ? 1 : 0);
+    }
+
+    /**
+     * Tách node {@code id} (kèm cây con) khỏi {@code parentId}. Dùng cho delete và nửa đầu của move.
+     */
+    public void detach(K id, K parentId) {
+        if (parentId == null) {
+            return;
+        }
+        Set<K> siblings = children.get(parentId);
+        if (siblings == null || !siblings.remove(id)) {
+            return;
+        }
+        Aggregate moved = get(id);
+        boolean parentBecomesLeaf = siblings.isEmpty();
+        if (parentBecomesLeaf) {
+            children.remove(parentId);
+        }
+        adjustAncestors(parentId, -(moved.descendants() + 1), -moved.leafContribution(), parentBecomesLeaf ? -1 : 0);
+    }
+
+    /**
+     * Xoá hẳn node (sau khi đã {@link #detach}). Con còn lại (nếu có) trở thành gốc tạm thời.
+     */
+    public void remove(K id) {
+        aggregates.remove(id);
+        children.remove(id);
+    }
+
+    /**
+     * @param leafDelta         Thay đổi số lá tại {@code parentId}
+     * @param parentLeafChange  +1: cha vừa thành nút trong, -1: cha vừa thành lá - bù lại cho các tầng phía trên
+     */
+    private void adjustAncestors(K parentId, int descendantDelta, int leafDelta, int parentLeafChange) {
+        Set<K> visited = new HashSet<>();
+        boolean heightChanging = true;
+        int leaves = leafDelta;
+        for (K current = parentId; current != null && visited.add(current); current = parentGetter.apply(current)) {
+            Aggregate old = get(current);
+            int height = heightChanging ? computeHeight(current) : old.height();
+            heightChanging = height != old.height();
+            aggregates.put(current, new Aggregate(old.descendants() + descendantDelta, old.leaves() + leaves, height));
+            if (current.equals(parentId)) {
+                leaves = leafDelta - parentLeafChange;
+            }
+        }
+    }
+
+    private Aggregate compute(K id) {
+        Set<K> kids = children.getOrDefault(id, Set.of());
+        int descendants = 0;
+        int leaves = 0;
+        for (K child : kids) {
+            Aggregate aggregate = get(child);
+            descendants += aggregate.descendants() + 1;
+            leaves += aggregate.leafContribution();
+        }
+        return new Aggregate(descendants, leaves, computeHeight(id));
+    }
+
+    private int computeHeight(K id) {
+        int height = 0;
+        for (K child : children.getOrDefault(id, Set.of())) {
+            height = Math.max(height, get(child).height() + 1);
+        }
+        return height;
+    }
+}
@@ -0,0 +1,230 @@
+package com.company.treelogic.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Chỉ mục cha - con của một rừng cây dựng từ dữ liệu phẳng dạng (id, id cha), không phụ thuộc UI hay ORM: dùng được
+ * cả trong view (adapter như {@code TreeCheckboxHandler}) lẫn trong job chạy nền đọc thẳng bảng.
+ * <p>
+ * Nạp từng dòng bằng {@link #add} (thứ tự tuỳ ý, cha có thể đến sau con), sau đó:
+ * <ul>
+ *   <li>Duyệt: {@link #forEachDescendant}, {@link #forEachPreorder}, {@link #getAncestors}.</li>
+ *   <li>Lọc giữ cấu trúc cây: {@link #retainWithAncestors}.</li>
+ *   <li>Kiểm tra hợp lệ: {@link #validate} (cha không tồn tại, vòng lặp).</li>
+ *   <li>Tổng hợp / lựa chọn: {@link #aggregates}, {@link #newSelection}.</li>
+ * </ul>
+ * Mọi phép duyệt đều lặp (không đệ quy) và an toàn với dữ liệu có vòng lặp. Không an toàn khi ghi đồng thời.
+ *
+ * <pre>{@code
+ * TreeIndex<UUID> index = new TreeIndex<>();
+ * rows.forEach(row -> index.add(row.id(), row.parentId()));
+ * index.validate();                                  // [] nếu cây hợp lệ
+ * index.retainWithAncestors(id -> matches(id));      // node khớp + tổ tiên
+ * }</pre>
+ *
+ * @param <K> Kiểu Id của node
+ */
+public class TreeIndex<K> {
+
+    /**
+     * Lỗi cấu trúc của một node.
+     *
+     * @param id   Node bị lỗi
+     * @param type {@link Type#ORPHAN}: cha không có trong chỉ mục; {@link Type#CYCLE}: node nằm trên một vòng lặp
+     */
+    public record Problem<K>(K id, Type type) {
+
+        public enum Type {
+            ORPHAN,
+            CYCLE
+        }
+    }
+
+    private final Set<K> nodes = new LinkedHashSet<>();
+    private final Map<K, K> parents = new HashMap<>();
+    private final Map<K, List<K>> children = new HashMap<>();
+
+    /**
+     * Thêm một node. Thêm lại cùng id sẽ cập nhật cha của nó.
+     *
+     * @param parentId Id cha (null = node gốc)
+     */
+    public void add(K id, K parentId) {
+        if (!nodes.add(id)) {
+            List<K> siblings = children.get(parents.remove(id));
+            if (siblings != null) {
+                siblings.remove(id);
+            }
+        }
+        if (parentId != null) {
+            parents.put(id, parentId);
+            children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(id);
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean contains(K id) {
+        return nodes.contains(id);
+    }
+
+    public K getParent(K id) {
+        return parents.get(id);
+    }
+
+    /**
+     * Con trực tiếp theo thứ tự được thêm (chỉ đọc).
+     */
+    public List<K> getChildren(K id) {
+        List<K> kids = children.get(id);
+        return kids != null ? Collections.unmodifiableList(kids) : List.of();
+    }
+
+    /**
+     * Các node không có cha, theo thứ tự được thêm.
+     */
+    public List<K> getRoots() {
+        return nodes.stream().filter(id -> !parents.containsKey(id)).toList();
+    }
+
+    /**
+     * Tổ tiên của node, gần nhất trước (dừng ở gốc hoặc khi gặp vòng lặp).
+     */
+    public List<K> getAncestors(K id) {
+        List<K> ancestors = new ArrayList<>();
+        Set<K> visited = new HashSet<>();
+        visited.add(id);
+        for (K current = parents.get(id); current != null && visited.add(current); current = parents.get(current)) {
+            ancestors.add(current);
+        }
+        return ancestors;
+    }
+
+    /**
+     * Duyệt node và mọi hậu duệ theo thứ tự trước (cha trước con).
+     */
+    public void forEachDescendant(K id, Consumer<K> consumer) {
+        Deque<K> stack = new ArrayDeque<>();
+        Set<K> visited = new HashSet<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            K current = stack.pop();
+            if (!visited.add(current)) {
+                continue;
+            }
+            consumer.accept(current);
+            List<K> kids = children.getOrDefault(current, List.of());
+            for (int i = kids.size() - 1; i >= 0; i--) {
+                stack.push(kids.get(i));
+            }
+        }
+    }
+
+    /**
+     * Duyệt cả rừng theo thứ tự trước, lần lượt từng gốc. Node nằm trên vòng lặp / dưới cha không tồn tại không được
+     * duyệt (xem {@link #validate}).
+     */
+    public void forEachPreorder(Consumer<K> consumer) {
+        for (K root : getRoots()) {
+            forEachDescendant(root, consumer);
+        }
+    }
+
+    /**
+     * Lọc giữ cấu trúc cây: các node khớp điều kiện cùng toàn bộ tổ tiên của chúng, theo thứ tự được thêm.
+     */
+    public Set<K> retainWithAncestors(Predicate<K> predicate) {
+        Set<K> retained = new HashSet<>();
+        for (K id : nodes) {
+            if (predicate.test(id)) {
+                retained.add(id);
+                // Dừng khi gặp tổ tiên đã có: phần phía trên đã được thêm từ trước
+                K current = parents.get(id);
+                while (current != null && retained.add(current)) {
+                    current = parents.get(current);
+                }
+            }
+        }
+        Set<K> ordered = new LinkedHashSet<>();
+        for (K id : nodes) {
+            if (retained.contains(id)) {
+                ordered.add(id);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Các lỗi cấu trúc: node có cha không tồn tại (báo ở node đầu tiên của nhánh bị treo) và các node nằm trên vòng
+     * lặp cha - con. Cây hợp lệ trả về danh sách rỗng. O(số node).
+     */
+    public List<Problem<K>> validate() {
+        Set<K> checked = new HashSet<>();
+        forEachPreorder(checked::add);
+        List<Problem<K>> problems = new ArrayList<>();
+        for (K id : nodes) {
+            if (checked.contains(id)) {
+                continue;
+            }
+            // Đi ngược lên tới khi gặp node đã xét, cha không tồn tại, hoặc quay lại chính đường đang đi
+            List<K> path = new ArrayList<>();
+            Map<K, Integer> positions = new HashMap<>();
+            K current = id;
+            while (current != null && !checked.contains(current) && !positions.containsKey(current)) {
+                positions.put(current, path.size());
+                path.add(current);
+                K parentId = parents.get(current);
+                if (parentId != null && !nodes.contains(parentId)) {
+                    problems.add(new Problem<>(current, Problem.Type.ORPHAN));
+                    current = null;
+                    break;
+                }
+                current = parentId;
+            }
+            if (current != null && positions.containsKey(current)) {
+                for (K node : path.subList(positions.get(current), path.size())) {
+                    problems.add(new Problem<>(node, Problem.Type.CYCLE));
+                }
+            }
+            checked.addAll(path);
+        }
+        return problems;
+    }
+
+    /**
+     * Số hậu duệ / số lá / chiều sâu của mọi node, tính một lượt.
+     */
+    public TreeAggregates<K> aggregates() {
+        TreeAggregates<K> aggregates = new TreeAggregates<>(parents::get);
+        aggregates.rebuild(nodes);
+        return aggregates;
+    }
+
+    /**
+     * Lựa chọn rỗng trên chỉ mục này (dùng {@code index::getChildren} khi liệt kê).
+     */
+    public SubtreeSelection<K> newSelection() {
+        return new SubtreeSelection<>(parents::get);
+    }
+
+    /**
+     * Mọi node, theo thứ tự được thêm (chỉ đọc).
+     */
+    public Collection<K> getNodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+}
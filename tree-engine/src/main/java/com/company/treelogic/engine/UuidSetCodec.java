@@ -0,0 +1,46 @@
+package com.company.treelogic.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Mã hoá tập UUID thành chuỗi gọn để lưu (VD: user settings): 16 byte nhị phân mỗi id, Base64 URL-safe không padding
+ * - khoảng 21 ký tự / id thay vì 36 của dạng chuỗi.
+ */
+public final class UuidSetCodec {
+
+    private UuidSetCodec() {
+    }
+
+    public static String encode(Collection<UUID> ids) {
+        ByteBuffer buffer = ByteBuffer.allocate(ids.size() * 16);
+        for (UUID id : ids) {
+            buffer.putLong(id.getMostSignificantBits());
+            buffer.putLong(id.getLeastSignificantBits());
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException nếu chuỗi không đúng định dạng
+     */
+    public static Set<UUID> decode(String value) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        if (value == null || value.isEmpty()) {
+            return ids;
+        }
+        byte[] bytes = Base64.getUrlDecoder().decode(value);
+        if (bytes.length % 16 != 0) {
+            throw new IllegalArgumentException("Invalid UUID set length: " + bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            ids.add(new UUID(buffer.getLong(), buffer.getLong()));
+        }
+        return ids;
+    }
+}
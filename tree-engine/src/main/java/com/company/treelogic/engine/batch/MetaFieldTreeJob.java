@@ -0,0 +1,89 @@
+package com.company.treelogic.engine.batch;
+
+import com.company.treelogic.engine.TreeAggregates;
+import com.company.treelogic.engine.TreeAggregates.Aggregate;
+import com.company.treelogic.engine.TreeIndex;
+import com.company.treelogic.engine.TreeIndex.Problem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Job chạy nền kiểm tra cây MetaField trực tiếp trên DB, không cần khởi động ứng dụng (Spring / Jmix / Vaadin):
+ * đọc luồng {@code (ID, PARENT_ID)} bằng JDBC, dựng {@link TreeIndex} rồi báo số node, số gốc, node mồ côi / nằm
+ * trên vòng lặp, chiều cao lớn nhất và số lá.
+ * <p>
+ * Cách dùng: {@code java -cp ... MetaFieldTreeJob <jdbcUrl> [user] [password]}. Thoát với mã 1 nếu cây có lỗi.
+ */
+public class MetaFieldTreeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(MetaFieldTreeJob.class);
+
+    private static final int FETCH_SIZE = 10000;
+    private static final int MAX_REPORTED_PROBLEMS = 100;
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 1) {
+            System.err.println("Usage: MetaFieldTreeJob <jdbcUrl> [user] [password]");
+            System.exit(2);
+        }
+        String user = args.length > 1 ? args[1] : "sa";
+        String password = args.length > 2 ? args[2] : "";
+
+        TreeIndex<UUID> index = load(args[0], user, password);
+        List<Problem<UUID>> problems = index.validate();
+        report(index, problems);
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Đọc toàn bộ quan hệ cha - con theo luồng (fetch size lớn, không giữ cả result set trong bộ nhớ driver).
+     */
+    static TreeIndex<UUID> load(String jdbcUrl, String user, String password) throws SQLException {
+        TreeIndex<UUID> index = new TreeIndex<>();
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, user, password)) {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = statement.executeQuery("select ID, PARENT_ID from META_FIELD")) {
+                    while (rs.next()) {
+                        index.add(rs.getObject(1, UUID.class), rs.getObject(2, UUID.class));
+                    }
+                }
+            }
+            connection.rollback();
+        }
+        return index;
+    }
+
+    private static void report(TreeIndex<UUID> index, List<Problem<UUID>> problems) {
+        TreeAggregates<UUID> aggregates = index.aggregates();
+        List<UUID> roots = index.getRoots();
+        int maxHeight = 0;
+        int leaves = 0;
+        for (UUID root : roots) {
+            Aggregate aggregate = aggregates.get(root);
+            maxHeight = Math.max(maxHeight, aggregate.height());
+            leaves += aggregate.isLeaf() ? 1 : aggregate.leaves();
+        }
+        long orphans = problems.stream().filter(p -> p.type() == Problem.Type.ORPHAN).count();
+        long cycles = problems.size() - orphans;
+
+        log.info("MetaField tree: {} nodes, {} roots, {} leaves, max height {}, {} orphans, {} nodes in cycles",
+                index.size(), roots.size(), leaves, maxHeight, orphans, cycles);
+        problems.stream()
+                .limit(MAX_REPORTED_PROBLEMS)
+                .forEach(problem -> log.warn("{} {}", problem.type(), problem.id()));
+        if (problems.size() > MAX_REPORTED_PROBLEMS) {
+            log.warn("... and {} more problems", problems.size() - MAX_REPORTED_PROBLEMS);
+        }
+    }
+}
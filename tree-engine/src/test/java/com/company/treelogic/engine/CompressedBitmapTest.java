@@ -0,0 +1,73 @@
+package com.company.treelogic.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompressedBitmapTest {
+
+    @Test
+    void test_setOperations() {
+        CompressedBitmap a = CompressedBitmap.of(1, 2, 3, 70_000);
+        CompressedBitmap b = CompressedBitmap.of(3, 4, 70_000, 140_000);
+
+        assertThat(values(a.or(b))).containsExactly(1, 2, 3, 4, 70_000, 140_000);
+        assertThat(values(a.and(b))).containsExactly(3, 70_000);
+        assertThat(values(a.andNot(b))).containsExactly(1, 2);
+        assertThat(a.cardinality()).isEqualTo(4);
+    }
+
+    @Test
+    void test_matchesTreeSetAcrossContainerKinds() {
+        Random random = new Random(42);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            // Khối đầu dày đặc (bitmap), các khối sau thưa (mảng)
+            int value = i % 2 == 0 ? random.nextInt(20_000) : random.nextInt(1_000_000);
+            bitmap.add(value);
+            expected.add(value);
+        }
+        for (int i = 0; i < 5_000; i++) {
+            int value = random.nextInt(20_000);
+            bitmap.remove(value);
+            expected.remove(value);
+        }
+
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        assertThat(values(bitmap)).containsExactlyElementsOf(expected);
+        assertThat(CompressedBitmap.deserialize(bitmap.serialize())).isEqualTo(bitmap);
+    }
+
+    @Test
+    void test_contiguousRangesSerializeAsRuns() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 1_000_000; value++) {
+            bitmap.add(value);
+        }
+
+        byte[] data = bitmap.serialize();
+
+        assertThat(data.length).isLessThan(200);
+        assertThat(CompressedBitmap.deserialize(data).cardinality()).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void test_rejectsInvalidData() {
+        assertThatThrownBy(() -> CompressedBitmap.deserialize(new byte[]{1, 2, 3}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CompressedBitmap.of(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<Integer> values(CompressedBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        return values;
+    }
+}
@@ -0,0 +1,66 @@
+package com.company.treelogic.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FractionalIndexTest {
+
+    @Test
+    void test_keysBetweenNeighbours() {
+        String first = FractionalIndex.between(null, null);
+        String next = FractionalIndex.between(first, null);
+        String previous = FractionalIndex.between(null, first);
+        String middle = FractionalIndex.between(first, next);
+
+        assertThat(List.of(previous, first, middle, next)).isSorted();
+        assertThat(first).isEqualTo("a0");
+        assertThat(next).isEqualTo("a1");
+        assertThat(middle).isEqualTo("a0V");
+    }
+
+    @Test
+    void test_randomInsertsKeepOrder() {
+        Random random = new Random(42);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            int position = random.nextInt(keys.size() + 1);
+            String before = position == 0 ? null : keys.get(position - 1);
+            String after = position == keys.size() ? null : keys.get(position);
+            keys.add(position, FractionalIndex.between(before, after));
+        }
+
+        assertThat(keys).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void test_appendingGrowsLogarithmically() {
+        String key = null;
+        for (int i = 0; i < 100_000; i++) {
+            key = FractionalIndex.between(key, null);
+        }
+
+        assertThat(key).hasSizeLessThanOrEqualTo(4);
+    }
+
+    @Test
+    void test_sequenceIsSortedAndShort() {
+        List<String> keys = FractionalIndex.sequence(5000);
+
+        assertThat(keys).isSorted().doesNotHaveDuplicates();
+        assertThat(keys).allSatisfy(key -> assertThat(key).hasSizeLessThanOrEqualTo(4));
+    }
+
+    @Test
+    void test_rejectsInvalidBounds() {
+        assertThatThrownBy(() -> FractionalIndex.between("a1", "a0"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FractionalIndex.between("a0V0", null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,118 @@
+package com.company.treelogic.engine;
+
+import com.company.treelogic.engine.MerkleTree.Change;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MerkleTreeTest {
+
+    // a -> b -> c, a -> d
+    private static MerkleTree<String> sample() {
+        MerkleTree<String> tree = new MerkleTree<>();
+        tree.put("a", null, MerkleTree.hash("a", "A"));
+        tree.put("b", "a", MerkleTree.hash("b", "B"));
+        tree.put("c", "b", MerkleTree.hash("c", "C"));
+        tree.put("d", "a", MerkleTree.hash("d", "D"));
+        return tree;
+    }
+
+    @Test
+    void test_hashesDoNotDependOnLoadOrder() {
+        MerkleTree<String> reversed = new MerkleTree<>();
+        reversed.put("d", "a", MerkleTree.hash("d", "D"));
+        reversed.put("c", "b", MerkleTree.hash("c", "C"));
+        reversed.put("b", "a", MerkleTree.hash("b", "B"));
+        reversed.put("a", null, MerkleTree.hash("a", "A"));
+
+        MerkleTree<String> bulk = new MerkleTree<>();
+        bulk.add("c", "b", MerkleTree.hash("c", "C"));
+        bulk.add("a", null, MerkleTree.hash("a", "A"));
+        bulk.add("d", "a", MerkleTree.hash("d", "D"));
+        bulk.add("b", "a", MerkleTree.hash("b", "B"));
+        bulk.rebuild();
+
+        MerkleTree<String> tree = sample();
+        assertThat(reversed.getRootHash()).isEqualTo(tree.getRootHash());
+        assertThat(reversed.getHash("b")).isEqualTo(tree.getHash("b"));
+        assertThat(bulk.getRootHash()).isEqualTo(tree.getRootHash());
+        assertThat(bulk.getHash("b")).isEqualTo(tree.getHash("b"));
+    }
+
+    @Test
+    void test_incrementalUpdatesMatchRebuild() {
+        MerkleTree<String> tree = sample();
+        long before = tree.getRootHash();
+
+        tree.put("c", "b", MerkleTree.hash("c", "C2"));
+        assertThat(tree.getRootHash()).isNotEqualTo(before);
+        tree.put("c", "b", MerkleTree.hash("c", "C"));
+        assertThat(tree.getRootHash()).isEqualTo(before);
+
+        // move b (with c) under d, then delete d's new grandchild c
+        tree.put("b", "d", MerkleTree.hash("b", "B"));
+        tree.remove("c");
+
+        MerkleTree<String> rebuilt = new MerkleTree<>();
+        rebuilt.put("a", null, MerkleTree.hash("a", "A"));
+        rebuilt.put("d", "a", MerkleTree.hash("d", "D"));
+        rebuilt.put("b", "d", MerkleTree.hash("b", "B"));
+        assertThat(tree.getRootHash()).isEqualTo(rebuilt.getRootHash());
+        assertThat(tree.getHash("d")).isEqualTo(rebuilt.getHash("d"));
+    }
+
+    @Test
+    void test_identicalTreesHaveNoChanges() {
+        assertThat(MerkleTree.diff(sample(), sample())).isEmpty();
+    }
+
+    @Test
+    void test_diffDescendsOnlyIntoChangedSubtrees() {
+        MerkleTree<String> target = sample();
+        target.put("e", "c", MerkleTree.hash("e", "E"));  // add
+        target.put("d", "a", MerkleTree.hash("d", "D2")); // rename
+        target.put("c", "d", MerkleTree.hash("c", "C"));  // move (with the new e)
+        target.remove("b");                               // remove
+
+        List<Change<String>> changes = MerkleTree.diff(sample(), target);
+
+        assertThat(changes).containsExactly(
+                new Change<>(Change.Type.ADD, "e", "c"),
+                new Change<>(Change.Type.MOVE, "c", "d"),
+                new Change<>(Change.Type.UPDATE, "d", "a"),
+                new Change<>(Change.Type.REMOVE, "b", "a"));
+    }
+
+    @Test
+    void test_removesComeChildrenFirst() {
+        MerkleTree<String> target = new MerkleTree<>();
+        target.put("a", null, MerkleTree.hash("a", "A"));
+        target.put("d", "a", MerkleTree.hash("d", "D"));
+
+        assertThat(MerkleTree.diff(sample(), target)).containsExactly(
+                new Change<>(Change.Type.REMOVE, "c", "b"),
+                new Change<>(Change.Type.REMOVE, "b", "a"));
+    }
+
+    @Test
+    void test_applyingChangesReproducesTarget() {
+        MerkleTree<String> current = sample();
+        MerkleTree<String> target = sample();
+        target.put("x", null, MerkleTree.hash("x", "X"));
+        target.put("b", "x", MerkleTree.hash("b", "B"));
+        target.put("c", "b", MerkleTree.hash("c", "C3"));
+        target.remove("d");
+
+        for (Change<String> change : MerkleTree.diff(current, target)) {
+            if (change.type() == Change.Type.REMOVE) {
+                current.remove(change.id());
+            } else {
+                current.put(change.id(), change.parentId(), target.getContentHash(change.id()));
+            }
+        }
+
+        assertThat(current.getRootHash()).isEqualTo(target.getRootHash());
+    }
+}
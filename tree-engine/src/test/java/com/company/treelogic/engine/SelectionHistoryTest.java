@@ -0,0 +1,87 @@
+package com.company.treelogic.engine;
+
+import com.company.treelogic.engine.SubtreeSelection.Delta;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SelectionHistoryTest {
+
+    // a -> b -> c -> d, a -> e
+    private final Map<String, String> parents = new HashMap<>(Map.of("b", "a", "c", "b", "d", "c", "e", "a"));
+    private final SubtreeSelection<String> selection = new SubtreeSelection<>(parents::get);
+    private final SelectionHistory<String> history = new SelectionHistory<>(10, 100);
+
+    @Test
+    void test_deltaContainsOnlyChangedMarkers() {
+        selection.select("b");
+        selection.deselect("d");
+
+        Delta<String> delta = selection.recordChanges(s -> s.select("a"));
+
+        // "b", "d" bị thay bởi marker ở "a"; các node không có marker không xuất hiện
+        assertThat(delta.keys()).containsExactlyInAnyOrder("a", "b", "d");
+        assertThat(delta.after()).containsEntry("a", true).containsEntry("b", null).containsEntry("d", null);
+        assertThat(selection.recordChanges(s -> s.select("c")).isEmpty()).isTrue();
+    }
+
+    @Test
+    void test_undoAndRedoReapplyDelta() {
+        history.push(selection.recordChanges(s -> s.select("c")));
+        history.push(selection.recordChanges(s -> s.deselect("a")));
+        assertThat(selection.isSelected("d")).isFalse();
+
+        selection.applyMarkers(history.undo().before());
+        assertThat(selection.isSelected("d")).isTrue();
+        assertThat(selection.isSelected("b")).isFalse();
+
+        selection.applyMarkers(history.undo().before());
+        assertThat(selection.isEmpty()).isTrue();
+        assertThat(history.canUndo()).isFalse();
+
+        selection.applyMarkers(history.redo().after());
+        assertThat(selection.isSelected("d")).isTrue();
+        assertThat(history.canRedo()).isTrue();
+
+        // Thao tác mới xoá các bước làm lại
+        history.push(selection.recordChanges(s -> s.select("e")));
+        assertThat(history.canRedo()).isFalse();
+    }
+
+    @Test
+    void test_discardRemovesStepFromEitherStack() {
+        Delta<String> first = selection.recordChanges(s -> s.select("c"));
+        Delta<String> second = selection.recordChanges(s -> s.select("e"));
+        history.push(first);
+        history.push(second);
+
+        history.discard(history.undo());
+        assertThat(history.canRedo()).isFalse();
+        history.discard(first);
+        assertThat(history.canUndo()).isFalse();
+
+        // Số entry được trả lại: giới hạn không còn tính các bước đã bỏ
+        SelectionHistory<String> bounded = new SelectionHistory<>(10, 2);
+        bounded.push(first);
+        bounded.discard(first);
+        bounded.push(second);
+        bounded.push(selection.recordChanges(s -> s.deselect("d")));
+        assertThat(bounded.undo().keys()).containsExactly("d");
+        assertThat(bounded.undo().keys()).containsExactly("e");
+    }
+
+    @Test
+    void test_dropsOldestOperationsBeyondLimits() {
+        SelectionHistory<String> bounded = new SelectionHistory<>(2, 100);
+        bounded.push(selection.recordChanges(s -> s.select("c")));
+        bounded.push(selection.recordChanges(s -> s.select("e")));
+        bounded.push(selection.recordChanges(s -> s.deselect("d")));
+
+        assertThat(bounded.undo().keys()).containsExactly("d");
+        assertThat(bounded.undo().keys()).containsExactly("e");
+        assertThat(bounded.undo()).isNull();
+    }
+}
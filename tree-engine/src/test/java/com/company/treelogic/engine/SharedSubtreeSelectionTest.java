@@ -0,0 +1,119 @@
+package com.company.treelogic.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SharedSubtreeSelectionTest {
+
+    // Hai cây: r1 -> n0..n99, r2 -> m0..m99
+    private final Map<String, String> parents = new ConcurrentHashMap<>();
+    private final SharedSubtreeSelection<String> shared = new SharedSubtreeSelection<>(parents::get);
+
+    SharedSubtreeSelectionTest() {
+        for (int i = 0; i < 100; i++) {
+            parents.put("n" + i, "r1");
+            parents.put("m" + i, "r2");
+        }
+    }
+
+    @Test
+    void test_concurrentOperationsAreNotLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String n = "n" + i;
+            String m = "m" + i;
+            futures.add(executor.submit(() -> shared.update(n, selection -> selection.select(n))));
+            futures.add(executor.submit(() -> shared.update(m, selection -> selection.select(m))));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(shared.snapshot().markerCount()).isEqualTo(200);
+        assertThat(shared.treeOf("r1").isPartial("r1")).isTrue();
+        assertThat(shared.treeOf("n42").isSelected("n42")).isTrue();
+    }
+
+    @Test
+    void test_updateAllRetriesInsteadOfOverwritingConcurrentChanges() {
+        shared.update("n0", selection -> selection.select("n0"));
+        AtomicInteger calls = new AtomicInteger();
+
+        SubtreeSelection.Delta<String> delta = shared.updateAll(selection -> {
+            // Lần 1: chạy thử trên bản gộp, lần 2: cây r1 - một phiên khác ghi vào r1 trước khi CAS
+            if (selection.isSelected("n0") && calls.incrementAndGet() == 2) {
+                shared.update("n1", other -> other.select("n1"));
+            }
+            selection.select("m0");
+        });
+
+        assertThat(shared.treeOf("n1").isSelected("n1")).isTrue();
+        assertThat(shared.treeOf("n0").isSelected("n0")).isTrue();
+        assertThat(shared.treeOf("m0").isSelected("m0")).isTrue();
+        assertThat(delta.keys()).containsExactly("m0");
+    }
+
+    @Test
+    void test_applyMarkersIfUnchangedKeepsConcurrentChanges() {
+        SubtreeSelection.Delta<String> delta = shared.updateAll(selection -> {
+            selection.select("n0");
+            selection.select("m0");
+        });
+        // Phiên khác bỏ chọn n0 sau thao tác: hoàn tác không được ghi đè cây r1
+        shared.update("n0", selection -> selection.deselect("n0"));
+
+        boolean applied = shared.applyMarkersIfUnchanged(delta.after(), delta.before());
+
+        assertThat(applied).isFalse();
+        assertThat(shared.treeOf("n0").isSelected("n0")).isFalse();
+        // Cây r2 vẫn khớp nên được hoàn tác
+        assertThat(shared.treeOf("m0").isSelected("m0")).isFalse();
+        assertThat(shared.treeOf("r2").markerCount()).isZero();
+        assertThat(shared.applyMarkersIfUnchanged(Map.of("m0", false), Map.of("m0", true))).isFalse();
+        assertThat(shared.applyMarkersIfUnchanged(delta.before(), Map.of("m0", true))).isTrue();
+        assertThat(shared.treeOf("m0").isSelected("m0")).isTrue();
+    }
+
+    @Test
+    void test_listenersAreNotifiedAndMovedMarkersFollowTheirTree() {
+        AtomicInteger notifications = new AtomicInteger();
+        shared.addChangeListener(notifications::incrementAndGet);
+        shared.update("n1", selection -> selection.select("n1"));
+
+        parents.put("n1", "r2");
+        shared.rehome(Map.of("n1", "r2"));
+
+        assertThat(notifications.get()).isEqualTo(2);
+        assertThat(shared.treeOf("r1").markerCount()).isZero();
+        assertThat(shared.treeOf("r2").isSelected("n1")).isTrue();
+    }
+
+    @Test
+    void test_rehomeRecountsWithNewParentsBeforeIndexCatchesUp() {
+        parents.put("x", "n1");
+        shared.update("x", selection -> selection.select("x"));
+        assertThat(shared.treeOf("n1").isPartial("n1")).isTrue();
+
+        // Chỉ mục cha chưa cập nhật: cha mới chỉ có trong newParents
+        shared.rehome(Map.of("x", "n2"));
+        parents.put("x", "n2");
+
+        assertThat(shared.treeOf("n1").isPartial("n1")).isFalse();
+        assertThat(shared.treeOf("n2").isPartial("n2")).isTrue();
+        assertThat(shared.treeOf("r1").isPartial("r1")).isTrue();
+    }
+}
@@ -0,0 +1,163 @@
+package com.company.treelogic.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SubtreeSelectionTest {
+
+    // a -> b -> c -> d, a -> e
+    private final Map<String, String> parents = new HashMap<>(Map.of("b", "a", "c", "b", "d", "c", "e", "a"));
+    private final SubtreeSelection<String> selection = new SubtreeSelection<>(parents::get);
+
+    @Test
+    void test_selectingBranchUsesSingleMarker() {
+        selection.select("a");
+
+        assertThat(selection.markerCount()).isEqualTo(1);
+        assertThat(selection.isSelected("d")).isTrue();
+        assertThat(selection.isSelected("e")).isTrue();
+        assertThat(selection.isPartial("a")).isFalse();
+    }
+
+    @Test
+    void test_exclusionsAndNestedSelections() {
+        selection.select("a");
+        selection.deselect("b");
+        selection.select("d");
+
+        assertThat(selection.isSelected("a")).isTrue();
+        assertThat(selection.isSelected("c")).isFalse();
+        assertThat(selection.isSelected("d")).isTrue();
+        assertThat(selection.isPartial("a")).isTrue();
+        assertThat(selection.isPartial("b")).isTrue();
+        assertThat(enumerate()).containsExactlyInAnyOrder("a", "e", "d");
+    }
+
+    @Test
+    void test_reselectingAncestorReplacesInnerMarkers() {
+        selection.select("a");
+        selection.deselect("b");
+        selection.select("d");
+        selection.select("a");
+
+        assertThat(selection.markerCount()).isEqualTo(1);
+        assertThat(enumerate()).containsExactlyInAnyOrder("a", "b", "c", "d", "e");
+
+        selection.deselect("a");
+        assertThat(selection.isEmpty()).isTrue();
+        assertThat(enumerate()).isEmpty();
+    }
+
+    @Test
+    void test_movedNodeFollowsNewLocation() {
+        selection.select("b");
+        parents.put("e", "c");
+
+        assertThat(selection.isSelected("e")).isTrue();
+    }
+
+    @Test
+    void test_replaceWithCompressesMembersToMarkers() {
+        selection.select("e");
+
+        selection.replaceWith(Set.of("a", "b", "d", "e"), id -> children().getOrDefault(id, List.of()));
+
+        assertThat(selection.markerCount()).isEqualTo(3);
+        assertThat(enumerate()).containsExactlyInAnyOrder("a", "b", "d", "e");
+        assertThat(selection.isPartial("a")).isTrue();
+    }
+
+    @Test
+    void test_combineWorksOnMarkersOnly() {
+        selection.select("a");
+        selection.deselect("c");
+        SubtreeSelection<String> other = new SubtreeSelection<>(parents::get);
+        other.select("b");
+        other.deselect("d");
+
+        SubtreeSelection<String> union = selection.copy();
+        union.combine(other, Boolean::logicalOr);
+        assertThat(enumerate(union)).containsExactlyInAnyOrder("a", "b", "c", "e");
+
+        SubtreeSelection<String> intersection = selection.copy();
+        intersection.combine(other, Boolean::logicalAnd);
+        assertThat(enumerate(intersection)).containsExactlyInAnyOrder("b");
+        assertThat(intersection.markerCount()).isEqualTo(2);
+
+        SubtreeSelection<String> difference = selection.copy();
+        difference.combine(other, (current, profile) -> current && !profile);
+        assertThat(enumerate(difference)).containsExactlyInAnyOrder("a", "e");
+
+        SubtreeSelection<String> replaced = selection.copy();
+        replaced.combine(other, (current, profile) -> profile);
+        assertThat(enumerate(replaced)).containsExactlyInAnyOrder("b", "c");
+        assertThat(replaced.markerCount()).isEqualTo(2);
+    }
+
+    @Test
+    void test_combineIsRecordedAsOneDelta() {
+        selection.select("a");
+        SubtreeSelection<String> other = new SubtreeSelection<>(parents::get);
+        other.select("b");
+
+        SubtreeSelection.Delta<String> delta = selection.recordChanges(target -> target.combine(other,
+                (current, profile) -> profile));
+        selection.applyMarkers(delta.before());
+
+        assertThat(enumerate(selection)).containsExactlyInAnyOrder("a", "b", "c", "d", "e");
+    }
+
+    @Test
+    void test_countSelectedUsesSubtreeSizes() {
+        Map<String, Long> sizes = Map.of("a", 5L, "b", 3L, "c", 2L, "d", 1L, "e", 1L);
+        selection.select("a");
+        selection.deselect("b");
+        selection.select("d");
+
+        assertThat(selection.countSelected(sizes::get)).isEqualTo(enumerate().size());
+    }
+
+    @Test
+    void test_partialCountsFollowMarkersAndMoves() {
+        selection.select("d");
+        assertThat(selection.isPartial("a")).isTrue();
+        assertThat(selection.isPartial("c")).isTrue();
+        assertThat(selection.isPartial("d")).isFalse();
+
+        selection.deselect("d");
+        assertThat(selection.isPartial("a")).isFalse();
+
+        // d (đang được chọn) chuyển sang dưới e: số đếm tính lại theo cha mới
+        selection.select("d");
+        parents.put("d", "e");
+        selection.invalidateCounts();
+        assertThat(selection.isPartial("b")).isFalse();
+        assertThat(selection.isPartial("e")).isTrue();
+        assertThat(selection.isPartial("a")).isTrue();
+    }
+
+    private List<String> enumerate() {
+        return enumerate(selection);
+    }
+
+    private List<String> enumerate(SubtreeSelection<String> selection) {
+        Map<String, Collection<String>> children = children();
+        List<String> result = new ArrayList<>();
+        selection.forEachSelected(id -> children.getOrDefault(id, List.of()), result::add);
+        return result;
+    }
+
+    private Map<String, Collection<String>> children() {
+        Map<String, Collection<String>> children = new HashMap<>();
+        parents.forEach((child, parent) -> children.computeIfAbsent(parent, k -> new ArrayList<>()).add(child));
+        return children;
+    }
+}
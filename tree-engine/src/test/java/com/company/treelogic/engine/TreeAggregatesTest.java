@@ -0,0 +1,56 @@
+package com.company.treelogic.engine;
+
+import com.company.treelogic.engine.TreeAggregates.Aggregate;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TreeAggregatesTest {
+
+    // a -> b -> c, a -> d
+    private final Map<String, String> parents = new HashMap<>(Map.of("b", "a", "c", "b", "d", "a"));
+    private final TreeAggregates<String> aggregates = new TreeAggregates<>(parents::get);
+
+    @Test
+    void test_rebuildComputesAllNodesInOnePass() {
+        aggregates.rebuild(List.of("a", "b", "c", "d"));
+
+        assertThat(aggregates.get("a")).isEqualTo(new Aggregate(3, 2, 2));
+        assertThat(aggregates.get("b")).isEqualTo(new Aggregate(1, 1, 1));
+        assertThat(aggregates.get("c")).isEqualTo(Aggregate.LEAF);
+    }
+
+    @Test
+    void test_incrementalUpdatesMatchRebuild() {
+        aggregates.rebuild(List.of("a", "b", "c", "d"));
+
+        // insert e under c
+        parents.put("e", "c");
+        aggregates.attach("e", "c");
+        assertThat(aggregates.get("a")).isEqualTo(new Aggregate(4, 2, 3));
+        assertThat(aggregates.get("c")).isEqualTo(new Aggregate(1, 1, 1));
+
+        // move b (with c, e) under d
+        aggregates.detach("b", "a");
+        parents.put("b", "d");
+        aggregates.attach("b", "d");
+        assertThat(aggregates.get("a")).isEqualTo(new Aggregate(4, 1, 4));
+        assertThat(aggregates.get("d")).isEqualTo(new Aggregate(3, 1, 3));
+
+        // delete e
+        aggregates.detach("e", "c");
+        parents.remove("e");
+        aggregates.remove("e");
+        assertThat(aggregates.get("a")).isEqualTo(new Aggregate(3, 1, 3));
+
+        TreeAggregates<String> rebuilt = new TreeAggregates<>(parents::get);
+        rebuilt.rebuild(List.of("a", "b", "c", "d"));
+        for (String id : List.of("a", "b", "c", "d")) {
+            assertThat(aggregates.get(id)).isEqualTo(rebuilt.get(id));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.company.treelogic.engine;
+
+import com.company.treelogic.engine.TreeIndex.Problem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TreeIndexTest {
+
+    @Test
+    void test_traversalFollowsInsertionOrderWhateverTheRowOrder() {
+        TreeIndex<String> index = new TreeIndex<>();
+        // con đến trước cha
+        index.add("c", "b");
+        index.add("b", "a");
+        index.add("a", null);
+        index.add("d", "a");
+
+        List<String> visited = new ArrayList<>();
+        index.forEachPreorder(visited::add);
+
+        assertThat(index.getRoots()).containsExactly("a");
+        assertThat(visited).containsExactly("a", "b", "c", "d");
+        assertThat(index.getAncestors("c")).containsExactly("b", "a");
+        assertThat(index.retainWithAncestors("c"::equals)).containsExactly("c", "b", "a");
+        assertThat(index.validate()).isEmpty();
+    }
+
+    @Test
+    void test_reAddMovesNode() {
+        TreeIndex<String> index = new TreeIndex<>();
+        index.add("a", null);
+        index.add("b", "a");
+        index.add("c", "b");
+
+        index.add("c", "a");
+
+        assertThat(index.getChildren("a")).containsExactly("b", "c");
+        assertThat(index.getChildren("b")).isEmpty();
+        assertThat(index.aggregates().get("a").descendants()).isEqualTo(2);
+    }
+
+    @Test
+    void test_validateReportsOrphansAndCycles() {
+        TreeIndex<String> index = new TreeIndex<>();
+        index.add("a", null);
+        index.add("o", "missing");
+        index.add("o1", "o");
+        index.add("x", "y");
+        index.add("y", "x");
+        index.add("z", "x");
+
+        assertThat(index.validate()).containsExactlyInAnyOrder(
+                new Problem<>("o", Problem.Type.ORPHAN),
+                new Problem<>("x", Problem.Type.CYCLE),
+                new Problem<>("y", Problem.Type.CYCLE));
+    }
+}
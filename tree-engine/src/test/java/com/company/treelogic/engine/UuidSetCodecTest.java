@@ -0,0 +1,37 @@
+package com.company.treelogic.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UuidSetCodecTest {
+
+    @Test
+    void test_roundTrip() {
+        List<UUID> ids = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        String encoded = UuidSetCodec.encode(ids);
+
+        assertThat(encoded).hasSizeLessThan(ids.size() * 22);
+        assertThat(UuidSetCodec.decode(encoded)).containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    void test_emptyValue() {
+        assertThat(UuidSetCodec.encode(List.of())).isEmpty();
+        assertThat(UuidSetCodec.decode(null)).isEmpty();
+        assertThat(UuidSetCodec.decode("")).isEmpty();
+    }
+
+    @Test
+    void test_rejectsTruncatedValue() {
+        String encoded = UuidSetCodec.encode(List.of(UUID.randomUUID()));
+
+        assertThatThrownBy(() -> UuidSetCodec.decode(encoded.substring(0, 10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}